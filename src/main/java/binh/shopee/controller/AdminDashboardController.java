@@ -1,6 +1,7 @@
 package binh.shopee.controller;
 import binh.shopee.dto.admin.DashboardStatsResponse;
 import binh.shopee.dto.admin.RevenueChartResponse;
+import binh.shopee.dto.admin.SearchQueryStatsResponse;
 import binh.shopee.dto.admin.TopProductResponse;
 import binh.shopee.service.AdminDashboardService;
 import lombok.RequiredArgsConstructor;
@@ -28,6 +29,20 @@ public class AdminDashboardController {
         return ResponseEntity.ok(adminDashboardService.getRevenueChartData(period));
     }
 
+    @PostMapping("/revenue-rollups/rebuild")
+    public ResponseEntity<Void> rebuildRevenueRollups() {
+        adminDashboardService.rebuildRevenueRollups();
+        return ResponseEntity.ok().build();
+    }
+
+    // Truy vấn tìm kiếm / lọc theo cửa sổ tổng hợp, mới nhất trước
+    @GetMapping("/search-queries")
+    public ResponseEntity<List<SearchQueryStatsResponse>> getSearchQueryStats(
+            @RequestParam(defaultValue = "1") int windows
+    ) {
+        return ResponseEntity.ok(adminDashboardService.getSearchQueryStats(windows));
+    }
+
     @GetMapping("/top-products")
     public ResponseEntity<List<TopProductResponse>> getTopProducts() {
         List<TopProductResponse> topProducts = adminDashboardService.getTopProducts();
@@ -1,6 +1,7 @@
 package binh.shopee.controller;
 
 import binh.shopee.dto.category.CategoryResponse;
+import binh.shopee.dto.category.CategoryTreeResponse;
 import binh.shopee.entity.Categories;
 import binh.shopee.service.CategoriesService;
 import lombok.RequiredArgsConstructor;
@@ -24,6 +25,12 @@ public class CategoriesController {
         return ResponseEntity.ok(categories);
     }
 
+    // 🔹 Lấy cả cây danh mục active (thay cho gọi /root + /{parentId}/children từng cấp)
+    @GetMapping("/tree")
+    public ResponseEntity<List<CategoryTreeResponse>> getCategoryTree() {
+        return ResponseEntity.ok(categoriesService.getCategoryTree());
+    }
+
     // 🔹 Lấy danh mục gốc (parent_id IS NULL)
     @GetMapping("/root")
     public ResponseEntity<List<CategoryResponse>> getRootCategories() {
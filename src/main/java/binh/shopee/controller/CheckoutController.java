@@ -79,6 +79,7 @@ public class CheckoutController {
             @RequestParam Long userId) {
 
         SelectVoucherRequest selectRequest = new SelectVoucherRequest();
+        selectRequest.setSessionId(request.getSessionId());
         selectRequest.setVariants(request.getVariants());
         selectRequest.setVouchercode(null);
         selectRequest.setShippingMethodId(request.getShippingMethodId());
@@ -1,6 +1,7 @@
 package binh.shopee.controller;
 import binh.shopee.dto.order.OrderCreateRequest;
 import binh.shopee.dto.order.OrderCreateResponse;
+import binh.shopee.dto.order.OrderHistoryPageResponse;
 import binh.shopee.dto.order.OrderResponse;
 import binh.shopee.service.OrdersService;
 import lombok.RequiredArgsConstructor;
@@ -40,6 +41,16 @@ public class OrdersController {
         return ResponseEntity.ok(orders);
     }
 
+    // 📄 Lịch sử đơn hàng phân trang theo cursor (nextCursor của trang trước)
+    @GetMapping("/user/{userId}/history")
+    public ResponseEntity<OrderHistoryPageResponse> getUserOrderHistory(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size
+    ) {
+        return ResponseEntity.ok(ordersService.getUserOrdersPage(userId, cursor, size));
+    }
+
     @PostMapping("/create")
     public ResponseEntity<OrderCreateResponse> createOrder(
             @RequestBody OrderCreateRequest request
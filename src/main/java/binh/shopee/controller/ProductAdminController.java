@@ -61,6 +61,11 @@ public class ProductAdminController {
         ProductAdminDetailResponse response = productAdminService.toggleProductStatus(productId);
         return ResponseEntity.ok(response);
     }
+    @PostMapping("/effective-prices/refresh")
+    public ResponseEntity<Void> refreshEffectivePrices() {
+        productAdminService.refreshEffectivePrices();
+        return ResponseEntity.noContent().build();
+    }
     @PostMapping("/upload-image")
     public ResponseEntity<ImageUploadResponse> uploadImage(@RequestParam("file") MultipartFile file) {
         ImageUploadResponse response = productAdminService.uploadImage(file);
@@ -1,4 +1,5 @@
 package binh.shopee.controller;
+import binh.shopee.dto.product.ProductCursorPage;
 import binh.shopee.dto.product.ProductSearchResponse;
 import binh.shopee.service.ProductCategoriesService;
 import lombok.RequiredArgsConstructor;
@@ -21,9 +22,22 @@ public class ProductCategoriesController {
     public Page<ProductSearchResponse> getProductsByCategory(
             @PathVariable Long categoryId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean includeDescendants
     ) {
         Pageable pageable = PageRequest.of(page, size);
-        return productCategoriesService.getProductsByCategory(categoryId, pageable);
+        return productCategoriesService.getProductsByCategory(categoryId, includeDescendants, pageable);
+    }
+    // sort: price_asc | price_desc | best_selling | rating | newest; cursor = nextCursor của trang trước
+    @GetMapping("/{categoryId}/products/cursor")
+    public ProductCursorPage getProductsByCategoryCursor(
+            @PathVariable Long categoryId,
+            @RequestParam(defaultValue = "best_selling") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean includeDescendants
+    ) {
+        return productCategoriesService.getProductsByCategoryCursor(
+                categoryId, includeDescendants, sort, cursor, size);
     }
 }
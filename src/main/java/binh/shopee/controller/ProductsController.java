@@ -1,7 +1,11 @@
 package binh.shopee.controller;
 
+import binh.shopee.dto.product.FacetedFilterResponse;
 import binh.shopee.dto.product.ProductDetailResponse;
 import binh.shopee.dto.product.ProductSearchResponse;
+import binh.shopee.dto.product.ProductSearchResult;
+import binh.shopee.dto.product.SuggestionResponse;
+import binh.shopee.dto.product.TrendingProductResponse;
 import binh.shopee.service.ProductsService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -29,16 +33,53 @@ public class ProductsController {
 
         return ResponseEntity.ok(result);
     }
+    // Chỉ đọc nên dùng GET: điều kiện lọc nằm trên query string (?brandId=1&brandId=2&inStock=true...)
+    @GetMapping("/filter/faceted")
+    public ResponseEntity<FacetedFilterResponse> filterFaceted(
+            @RequestParam(required = false) List<Long> brandId,
+            @RequestParam(required = false) List<Long> categoryId,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) BigDecimal minRating,
+            @RequestParam(required = false) Boolean onlyDiscount,
+            @RequestParam(required = false) Boolean inStock,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(productsService.filterFaceted(
+                brandId, categoryId, minPrice, maxPrice, minRating, onlyDiscount, inStock, page, size));
+    }
     @GetMapping("/top-selling")
-    public ResponseEntity<List<ProductSearchResponse>> getTopSellingProducts() {
-        List<ProductSearchResponse> products = productsService.getTopSellingProducts();
+    public ResponseEntity<List<ProductSearchResponse>> getTopSellingProducts(
+            @RequestParam(required = false) Long categoryId
+    ) {
+        List<ProductSearchResponse> products = productsService.getTopSellingProducts(categoryId);
         return ResponseEntity.ok(products);
     }
+    @GetMapping("/trending")
+    public ResponseEntity<List<TrendingProductResponse>> getTrendingProducts(
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        return ResponseEntity.ok(productsService.getTrendingProducts(limit));
+    }
+    // Autocomplete cho ô tìm kiếm, gọi mỗi lần gõ thay cho /search
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SuggestionResponse>> suggest(
+            @RequestParam("q") String q,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return ResponseEntity.ok(productsService.suggest(q, limit));
+    }
     @GetMapping("/search")
     public ResponseEntity<List<ProductSearchResponse>> searchProducts(@RequestParam("keyword") String keyword) {
         List<ProductSearchResponse> results = productsService.searchProducts(keyword);
         return ResponseEntity.ok(results);
     }
+    // Giống /search nhưng trả kèm từ khóa đã sửa lỗi gõ để hiện "Có phải bạn muốn tìm ..."
+    @GetMapping("/search/fuzzy")
+    public ResponseEntity<ProductSearchResult> searchWithSuggestion(@RequestParam("keyword") String keyword) {
+        return ResponseEntity.ok(productsService.searchWithSuggestion(keyword));
+    }
     @GetMapping("/top")
     public List<ProductSearchResponse> getTop50Products() {
         return productsService.getTop50Products();
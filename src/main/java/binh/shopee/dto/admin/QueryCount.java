@@ -0,0 +1,11 @@
+package binh.shopee.dto.admin;
+import lombok.*;
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QueryCount {
+    private String query;    // search: từ khóa đã chuẩn hóa; filter: "filter:" + tham số
+    private long count;
+}
@@ -0,0 +1,23 @@
+package binh.shopee.dto.admin;
+import lombok.*;
+import java.time.LocalDateTime;
+import java.util.List;
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SearchQueryStatsResponse {
+    private LocalDateTime windowStart;
+    private LocalDateTime windowEnd;
+    private long totalQueries;
+    private long zeroResultQueries;
+    // Mục bị ghi đè trước khi kịp tổng hợp (ring buffer đầy)
+    private long dropped;
+    private double p50Ms;
+    private double p95Ms;
+    private double p99Ms;
+    private double maxMs;
+    private List<QueryCount> topQueries;
+    private List<QueryCount> topZeroResultQueries;
+}
@@ -0,0 +1,12 @@
+package binh.shopee.dto.flashsale;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+/**
+ * Tổng số lượng 1 user đã mua giá flash sale (tính từ OrderItems đã commit, đơn chưa hủy).
+ */
+@Getter
+@AllArgsConstructor
+public class FlashSalePurchaseRow {
+    private Long userId;
+    private Long quantity;
+}
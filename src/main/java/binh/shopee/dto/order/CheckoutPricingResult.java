@@ -0,0 +1,16 @@
+package binh.shopee.dto.order;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.util.List;
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CheckoutPricingResult {
+    private List<CheckoutItemResponse> items;   // các dòng hợp lệ đã tính giá
+    private BigDecimal subtotal;                // tổng lineTotal
+    private List<String> validationErrors;      // lỗi tồn kho / flash sale / variant
+}
@@ -11,6 +11,8 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 public class CheckoutResponse {
+    // Id checkout session phía server, gửi lại ở các bước select-*
+    private String checkoutSessionId;
 
     private List<CheckoutItemResponse> items;
     private BigDecimal subtotal;
@@ -19,4 +19,5 @@ public class OrderCreateRequest {
     private List<OrderItemRequest> items; // danh sách biến thể + quantity
     private String voucherCode;
     private Long shippingMethodId;
+    private String checkoutSessionId; // session checkout đang giữ hàng (nullable)
 }
@@ -0,0 +1,15 @@
+package binh.shopee.dto.order;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderHistoryPageResponse {
+    private List<OrderResponse> orders;
+    private String nextCursor;      // truyền lại vào ?cursor= để lấy trang sau, null nếu hết
+    private Boolean hasMore;
+}
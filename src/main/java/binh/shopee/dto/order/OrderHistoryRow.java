@@ -0,0 +1,36 @@
+package binh.shopee.dto.order;
+import binh.shopee.entity.Orders;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+/**
+ * 1 dòng (order x item) của query lịch sử đơn hàng; OrdersService gom lại thành OrderResponse.
+ */
+@Getter
+@AllArgsConstructor
+public class OrderHistoryRow {
+    private Long orderId;
+    private String orderNumber;
+    private Orders.OrderStatus status;
+    private BigDecimal subtotal;
+    private BigDecimal discountTotal;
+    private BigDecimal shippingFee;
+    private BigDecimal grandTotal;
+    private String currency;
+    private String note;
+    private LocalDateTime createdAt;
+    private String recipientName;
+    private String phone;
+    private String street;
+    private String ward;
+    private String district;
+    private String city;
+    private Long orderItemId;           // null nếu đơn không có item
+    private String productNameSnapshot;
+    private BigDecimal unitPrice;
+    private Integer quantity;
+    private BigDecimal totalPrice;
+    private Long productId;
+    private Long variantId;
+}
@@ -13,6 +13,9 @@ import java.util.List;
 
 public class RemoveVoucherRequest {
 
+    // checkoutSessionId từ response trước (null -> build lại từ variants)
+    private String sessionId;
+
     // Danh sách sản phẩm trong checkout
     private List<VariantItem> variants;
 
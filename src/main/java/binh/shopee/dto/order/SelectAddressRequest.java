@@ -9,6 +9,7 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 public class SelectAddressRequest {
+    private String sessionId;            // checkoutSessionId từ response trước (null -> build lại từ variants)
     private List<VariantItem> variants;
     private Long addressId;   // địa chỉ user chọn
     private Long shippingMethodId;      // ⭐ Giữ shipping đã chọn
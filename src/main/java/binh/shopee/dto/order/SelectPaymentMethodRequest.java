@@ -12,6 +12,7 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 public class SelectPaymentMethodRequest {
+    private String sessionId;            // checkoutSessionId từ response trước (null -> build lại từ variants)
     private List<VariantItem> variants;
     private String code;
     private Long shippingMethodId;       // ⭐ Giữ shipping đã chọn
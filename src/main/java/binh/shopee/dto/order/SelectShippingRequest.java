@@ -9,6 +9,7 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 public class SelectShippingRequest {
+    private String sessionId;            // checkoutSessionId từ response trước (null -> build lại từ variants)
     private List<VariantItem> variants;
     private Long shippingMethodId;
     private String voucherCode;          // ⭐ Giữ voucher đã chọn
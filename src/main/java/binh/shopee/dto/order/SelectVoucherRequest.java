@@ -9,6 +9,7 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 public class SelectVoucherRequest {
+    private String sessionId;            // checkoutSessionId từ response trước (null -> build lại từ variants)
     private List<VariantItem> variants;
     private String vouchercode; // nullable → bỏ voucher
     private Long shippingMethodId;       // ⭐ Giữ shipping đã chọn
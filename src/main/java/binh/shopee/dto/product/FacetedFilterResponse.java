@@ -0,0 +1,22 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FacetedFilterResponse {
+    private List<ProductSearchResponse> items;
+    private long total;
+    private int page;
+    private int size;
+    // facet (brand, category, price, rating, discount, inStock) -> giá trị -> số sản phẩm
+    private Map<String, Map<String, Long>> facets;
+}
@@ -0,0 +1,20 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductCursorPage {
+    private List<ProductSearchResponse> items;
+    // null khi đã hết
+    private String nextCursor;
+    // Số sản phẩm theo lần refresh gần nhất (gồm danh mục con thì có thể đếm trùng)
+    private long totalApprox;
+}
@@ -5,6 +5,7 @@ import lombok.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -38,4 +39,9 @@ public class ProductDetailResponse {
 
     // ====== ĐIỂM TRUNG BÌNH & SỐ LƯỢNG ĐÁNH GIÁ ======
     private Long totalReviews;
+    // Số review theo số sao (5 -> 1)
+    private Map<Integer, Long> ratingHistogram;
+
+    // Số lượng bán trong 24 giờ qua (TrendingProductsTracker)
+    private Long soldLast24h;
 }
\ No newline at end of file
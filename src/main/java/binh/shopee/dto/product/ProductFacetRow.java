@@ -0,0 +1,18 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import java.math.BigDecimal;
+/**
+ * Thuộc tính lọc của 1 sản phẩm active để dựng ProductFacetIndex.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductFacetRow {
+    private Long productId;
+    private Long brandId;
+    private BigDecimal effectivePrice;
+    private Double rating;
+    private Boolean discounted;
+    private Long availableQty;
+    private Long totalPurchaseCount;
+}
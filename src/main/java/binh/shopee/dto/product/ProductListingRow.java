@@ -0,0 +1,19 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+/**
+ * 1 dòng (product x category) kèm các khóa sắp xếp để nạp CategoryListingIndex; active = false khi sản phẩm bị ẩn.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductListingRow {
+    private Long productId;
+    private Long categoryId;
+    private Boolean active;
+    private BigDecimal effectivePrice;
+    private Long totalPurchaseCount;
+    private Double rating;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,14 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import java.time.LocalDateTime;
+/**
+ * 1 dòng đơn hàng (sản phẩm, số lượng, thời điểm đặt) để nạp TrendingProductsTracker lúc khởi động.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductSaleEvent {
+    private Long productId;
+    private Integer quantity;
+    private LocalDateTime orderedAt;
+}
@@ -0,0 +1,13 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+/**
+ * 1 dòng (product x category) để nạp TopSellingLeaderboard; categoryId null nếu sản phẩm chưa có danh mục.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductSalesRow {
+    private Long productId;
+    private Long categoryId;
+    private Long totalPurchaseCount;
+}
@@ -0,0 +1,18 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductSearchResult {
+    private List<ProductSearchResponse> items;
+    // Từ khóa đã sửa lỗi gõ (null nếu từ khóa gốc khớp hoặc không có gợi ý); items là kết quả của từ khóa này
+    private String suggestion;
+}
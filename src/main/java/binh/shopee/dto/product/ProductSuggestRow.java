@@ -0,0 +1,14 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+/**
+ * Tên + brand + số đã bán của 1 sản phẩm active để dựng ProductSuggestIndex.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductSuggestRow {
+    private Long productId;
+    private String name;
+    private Long brandId;
+    private Long totalPurchaseCount;
+}
@@ -0,0 +1,17 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SuggestionResponse {
+    private String text;
+    private String type;   // product / brand / category
+    private Long id;
+}
@@ -0,0 +1,26 @@
+package binh.shopee.dto.product;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrendingProductResponse {
+    private Long productId;
+    private String name;
+    private BigDecimal originalPrice;
+    private BigDecimal discountAmount;
+    private BigDecimal finalPrice;
+    private String imageUrl;
+    private Double rating;
+    private Long soldLastHour;
+    private Long soldLast24h;
+    private Long soldLast7d;
+    private Double trendScore;          // số lượng bán giảm dần theo thời gian (half-life cấu hình được)
+}
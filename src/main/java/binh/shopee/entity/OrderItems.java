@@ -17,7 +17,9 @@ import java.time.LocalDateTime;
 @Builder // orderitem manytoone order
 public class OrderItems {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // SEQUENCE (pooled, 50 id / lần gọi) để Hibernate batch insert items; IDENTITY tắt batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_items_seq")
+    @SequenceGenerator(name = "order_items_seq", sequenceName = "order_items_seq", allocationSize = 50)
     @Column(name = "order_item_id")
     private Long orderItemId;
     @ManyToOne(fetch = FetchType.LAZY)
@@ -34,6 +36,9 @@ public class OrderItems {
     private Integer quantity;
     @Column(name = "discount_amount", nullable = false, precision = 12, scale = 2)
     private BigDecimal discountAmount = BigDecimal.ZERO;
+    // Flash sale đã cấp suất cho dòng này (null = mua giá thường / discount), nguồn đối chiếu sold khi nạp lại
+    @Column(name = "flash_sale_id")
+    private Long flashSaleId;
     // Generated column → read-only
     @Column(name = "total_price", insertable = false, updatable = false, precision = 12, scale = 2)
     private BigDecimal totalPrice;
@@ -0,0 +1,47 @@
+package binh.shopee.entity;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import java.time.LocalDateTime;
+/**
+ * Việc phụ sau khi đặt hàng, ghi cùng transaction với đơn và được OrderOutboxService xử lý sau.
+ * Xử lý xong thì xóa dòng; hết lượt retry thì giữ lại với status failed.
+ */
+@Entity
+@Table(
+        name = "order_outbox_events",
+        indexes = {
+                @Index(name = "IX_OrderOutboxEvents_Status_NextAttempt", columnList = "status, next_attempt_at")
+        }
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderOutboxEvents {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_outbox_events_seq")
+    @SequenceGenerator(name = "order_outbox_events_seq", sequenceName = "order_outbox_events_seq", allocationSize = 50)
+    @Column(name = "event_id")
+    private Long eventId;
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 30)
+    private EventType eventType;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private EventStatus status;
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    public enum EventType { cart_cleanup, purchase_count, revenue_rollup }
+    public enum EventStatus { pending, failed }
+}
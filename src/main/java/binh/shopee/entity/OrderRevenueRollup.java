@@ -0,0 +1,41 @@
+package binh.shopee.entity;
+import jakarta.persistence.*;
+import lombok.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+/**
+ * Số đơn + doanh thu gộp theo (giờ/ngày/tháng, trạng thái đơn), cập nhật cộng dồn mỗi khi đơn được tạo / đổi trạng thái.
+ * Bucket tính theo Orders.created_at; revenue = subtotal - discount_total + shipping_fee (= grand_total).
+ */
+@Entity
+@Table(
+        name = "order_revenue_rollups",
+        uniqueConstraints = @UniqueConstraint(
+                name = "UQ_OrderRevenueRollups_Bucket",
+                columnNames = {"granularity", "bucket_start", "status"}
+        )
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderRevenueRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "rollup_id")
+    private Long rollupId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", nullable = false, length = 10)
+    private Granularity granularity;
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Orders.OrderStatus status;
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount;
+    @Column(name = "revenue", nullable = false, precision = 18, scale = 2)
+    private BigDecimal revenue;
+    public enum Granularity { hour, day, month }
+}
@@ -0,0 +1,42 @@
+package binh.shopee.entity;
+import jakarta.persistence.*;
+import lombok.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+/**
+ * Giá đang áp dụng của sản phẩm (flash sale > discount), tính sẵn bởi ProductEffectivePriceService.
+ * Listing / lọc giá đọc bảng này thay vì tính CASE trên Discounts / FlashSales theo CURRENT_TIMESTAMP.
+ */
+@Entity
+@Table(
+        name = "product_effective_prices",
+        indexes = {
+                @Index(name = "IX_ProductEffectivePrices_Price", columnList = "effective_price"),
+                @Index(name = "IX_ProductEffectivePrices_RefreshedAt", columnList = "refreshed_at")
+        }
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductEffectivePrice {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+    @Column(name = "base_price", nullable = false, precision = 12, scale = 2)
+    private BigDecimal basePrice;
+    @Column(name = "discount_amount", nullable = false, precision = 12, scale = 2)
+    private BigDecimal discountAmount;
+    @Column(name = "effective_price", nullable = false, precision = 12, scale = 2)
+    private BigDecimal effectivePrice;
+    // null = không có khuyến mãi đang chạy
+    @Enumerated(EnumType.STRING)
+    @Column(name = "promotion_source", length = 20)
+    private PromotionSource promotionSource;
+    @Column(name = "promotion_id")
+    private Long promotionId;
+    @Column(name = "refreshed_at", nullable = false)
+    private LocalDateTime refreshedAt;
+    public enum PromotionSource { flash_sale, discount }
+}
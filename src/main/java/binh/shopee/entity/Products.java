@@ -44,6 +44,31 @@ public class Products {
     private Set<ShippingMethods> shippingMethods;
     @Column(nullable = false)
     private Long totalPurchaseCount = 0L;
+    // ===== Rating tổng hợp từ review đã duyệt (thay cho AVG/COUNT trên Reviews) =====
+    @Column(name = "rating_count", nullable = false)
+    @Builder.Default
+    private Long ratingCount = 0L;
+    @Column(name = "rating_sum", nullable = false)
+    @Builder.Default
+    private Long ratingSum = 0L;
+    @Column(name = "rating_avg", nullable = false)
+    @Builder.Default
+    private Double ratingAvg = 0.0;
+    @Column(name = "rating_star1_count", nullable = false)
+    @Builder.Default
+    private Long ratingStar1Count = 0L;
+    @Column(name = "rating_star2_count", nullable = false)
+    @Builder.Default
+    private Long ratingStar2Count = 0L;
+    @Column(name = "rating_star3_count", nullable = false)
+    @Builder.Default
+    private Long ratingStar3Count = 0L;
+    @Column(name = "rating_star4_count", nullable = false)
+    @Builder.Default
+    private Long ratingStar4Count = 0L;
+    @Column(name = "rating_star5_count", nullable = false)
+    @Builder.Default
+    private Long ratingStar5Count = 0L;
     @UpdateTimestamp
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
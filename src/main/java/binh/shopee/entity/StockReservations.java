@@ -0,0 +1,53 @@
+package binh.shopee.entity;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+import java.time.LocalDateTime;
+/**
+ * Giữ hàng tạm thời cho 1 checkout session (Inventory.reservedQty đã được cộng tương ứng).
+ * held -> committed (đặt hàng) | expiring -> released (hết hạn / giỏ thay đổi)
+ */
+@Entity
+@Table(
+        name = "stock_reservations",
+        indexes = {
+                @Index(name = "IX_StockReservations_Session", columnList = "checkout_session_id"),
+                @Index(name = "IX_StockReservations_Status_Expires", columnList = "status, expires_at")
+        }
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockReservations {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_reservations_seq")
+    @SequenceGenerator(name = "stock_reservations_seq", sequenceName = "stock_reservations_seq", allocationSize = 50)
+    @Column(name = "reservation_id")
+    private Long reservationId;
+    @Column(name = "checkout_session_id", nullable = false, length = 64)
+    private String checkoutSessionId;
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "variant_id", nullable = false)
+    private ProductVariants variant;
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private ReservationStatus status;
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+    @Column(name = "order_id")
+    private Long orderId;
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    public enum ReservationStatus { held, committed, expiring, released }
+}
@@ -3,10 +3,12 @@ package binh.shopee.repository;
 import binh.shopee.dto.cart.CartItemResponse;
 import binh.shopee.entity.CartItems;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,5 +36,16 @@ public interface CartItemsRepository extends JpaRepository<CartItems, Long> {
     """)
     List<CartItemResponse> findCartItemsByCartId(@Param("cartId") Long cartId);
     Optional<CartItems> findByCart_CartIdAndVariant_VariantId(Long cartId, Long variantId);
+    // 🔹 Xóa các variant đã đặt khỏi giỏ đang active của user (1 câu DELETE)
+    @Modifying
+    @Query("""
+        DELETE FROM CartItems ci
+        WHERE ci.cart.cartId IN (
+            SELECT c.cartId FROM Carts c
+            WHERE c.user.userId = :userId AND c.isActive = true
+        )
+        AND ci.variant.variantId IN :variantIds
+    """)
+    int deleteFromActiveCart(@Param("userId") Long userId, @Param("variantIds") Collection<Long> variantIds);
 
 }
\ No newline at end of file
@@ -7,19 +7,26 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.List;
 
 @Repository
 public interface DiscountsRepository extends JpaRepository<Discounts, Long> {
+    // Discount đang chạy hoặc sắp chạy (nạp PromotionIndex), :productId = null -> tất cả
     @Query("""
     SELECT d
     FROM Discounts d
-    WHERE d.product.productId = :productId
-      AND d.isActive = true
-      AND :now BETWEEN d.startTime AND d.endTime
+    JOIN FETCH d.product p
+    WHERE d.isActive = true
+      AND d.endTime >= :now
+      AND (:productId IS NULL OR p.productId = :productId)
 """)
-    Optional<Discounts> findActiveDiscountByProductId(
+    List<Discounts> findCurrentAndUpcoming(
             @Param("productId") Long productId,
             @Param("now") LocalDateTime now
     );
+    // Mốc bắt đầu / kết thúc gần nhất (lịch refresh giá áp dụng)
+    @Query("SELECT MIN(d.startTime) FROM Discounts d WHERE d.isActive = true AND d.startTime > :now")
+    LocalDateTime findNextStartAfter(@Param("now") LocalDateTime now);
+    @Query("SELECT MIN(d.endTime) FROM Discounts d WHERE d.isActive = true AND d.endTime >= :now")
+    LocalDateTime findNextEndFrom(@Param("now") LocalDateTime now);
 }
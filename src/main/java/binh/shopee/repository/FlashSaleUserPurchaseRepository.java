@@ -2,10 +2,12 @@ package binh.shopee.repository;
 
 import binh.shopee.entity.FlashSaleUserPurchase;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -31,4 +33,35 @@ public interface FlashSaleUserPurchaseRepository extends JpaRepository<FlashSale
             @Param("flashSaleId") Long flashSaleId,
             @Param("userId") Long userId
     );
+
+    @Query("""
+        SELECT COALESCE(SUM(fsup.purchasedQuantity), 0)
+        FROM FlashSaleUserPurchase fsup
+        WHERE fsup.flashSale.flashSaleId = :flashSaleId
+        """)
+    Integer getTotalPurchasedByFlashSale(@Param("flashSaleId") Long flashSaleId);
+
+    @Query("""
+        SELECT fsup FROM FlashSaleUserPurchase fsup
+        WHERE fsup.flashSale.flashSaleId = :flashSaleId
+        """)
+    List<FlashSaleUserPurchase> findByFlashSaleId(@Param("flashSaleId") Long flashSaleId);
+
+    // Cộng dồn số lượng đã mua (tạo record nếu chưa có), delta có thể âm khi hoàn trả
+    @Modifying
+    @Query(value = """
+        MERGE flash_sale_user_purchases AS t
+        USING (SELECT :flashSaleId AS flash_sale_id, :userId AS user_id) AS s
+        ON t.flash_sale_id = s.flash_sale_id AND t.user_id = s.user_id
+        WHEN MATCHED THEN
+            UPDATE SET purchased_quantity = t.purchased_quantity + :delta
+        WHEN NOT MATCHED THEN
+            INSERT (flash_sale_id, user_id, purchased_quantity)
+            VALUES (:flashSaleId, :userId, :delta);
+        """, nativeQuery = true)
+    int addPurchasedQuantity(
+            @Param("flashSaleId") Long flashSaleId,
+            @Param("userId") Long userId,
+            @Param("delta") int delta
+    );
 }
\ No newline at end of file
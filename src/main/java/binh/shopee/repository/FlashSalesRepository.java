@@ -3,10 +3,12 @@ package binh.shopee.repository;
 import binh.shopee.entity.FlashSales;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -37,14 +39,6 @@ public interface FlashSalesRepository extends JpaRepository<FlashSales, Long> {
             @Param("status") FlashSales.FlashSaleStatus status,
             @Param("now") LocalDateTime now
     );
-    @Query("""
-        SELECT fs FROM FlashSales fs
-        WHERE fs.product.productId = :productId
-        AND fs.status = binh.shopee.entity.FlashSales.FlashSaleStatus.active
-        AND CURRENT_TIMESTAMP BETWEEN fs.startTime AND fs.endTime
-        AND fs.sold < fs.quantity
-        """)
-    Optional<FlashSales> findActiveFlashSaleByProductId(@Param("productId") Long productId);
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("""
         SELECT fs
@@ -52,4 +46,63 @@ public interface FlashSalesRepository extends JpaRepository<FlashSales, Long> {
         WHERE fs.flashSaleId = :flashSaleId
     """)
     Optional<FlashSales> findByIdForUpdate(@Param("flashSaleId") Long flashSaleId);
+    // Ghi dồn số lượng đã bán (write-behind từ FlashSaleAdmissionEngine), delta có thể âm khi hoàn trả
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE FlashSales fs
+        SET fs.quantity = fs.quantity - :delta,
+            fs.sold = fs.sold + :delta
+        WHERE fs.flashSaleId = :flashSaleId
+    """)
+    int applySoldDelta(@Param("flashSaleId") Long flashSaleId, @Param("delta") int delta);
+    // Đối chiếu sau crash: nâng sold lên đúng số đã đặt (idempotent, chạy lại không cộng thêm)
+    @Modifying
+    @Transactional
+    @Query("""
+        UPDATE FlashSales fs
+        SET fs.quantity = fs.quantity - (:sold - fs.sold),
+            fs.sold = :sold
+        WHERE fs.flashSaleId = :flashSaleId
+          AND fs.sold < :sold
+    """)
+    int raiseSoldTo(@Param("flashSaleId") Long flashSaleId, @Param("sold") int sold);
+    // Flash sale đang chạy hoặc sắp chạy (nạp PromotionIndex), :productId = null -> tất cả
+    @Query("""
+        SELECT fs
+        FROM FlashSales fs
+        JOIN FETCH fs.product p
+        WHERE fs.status = binh.shopee.entity.FlashSales.FlashSaleStatus.active
+          AND fs.endTime >= :now
+          AND (:productId IS NULL OR p.productId = :productId)
+    """)
+    List<FlashSales> findCurrentAndUpcoming(
+            @Param("productId") Long productId,
+            @Param("now") LocalDateTime now
+    );
+    // Mốc bắt đầu / kết thúc gần nhất (lịch refresh giá áp dụng)
+    @Query("""
+        SELECT MIN(fs.startTime) FROM FlashSales fs
+        WHERE fs.status IN (binh.shopee.entity.FlashSales.FlashSaleStatus.upcoming,
+                            binh.shopee.entity.FlashSales.FlashSaleStatus.active)
+          AND fs.startTime > :now
+    """)
+    LocalDateTime findNextStartAfter(@Param("now") LocalDateTime now);
+    @Query("""
+        SELECT MIN(fs.endTime) FROM FlashSales fs
+        WHERE fs.status = binh.shopee.entity.FlashSales.FlashSaleStatus.active
+          AND fs.endTime >= :now
+    """)
+    LocalDateTime findNextEndFrom(@Param("now") LocalDateTime now);
+    // Sản phẩm có flash sale mở bán trong [from, to] (hâm nóng cache chi tiết sản phẩm)
+    @Query("""
+        SELECT DISTINCT fs.product.productId FROM FlashSales fs
+        WHERE fs.status IN (binh.shopee.entity.FlashSales.FlashSaleStatus.upcoming,
+                            binh.shopee.entity.FlashSales.FlashSaleStatus.active)
+          AND fs.startTime BETWEEN :from AND :to
+    """)
+    List<Long> findProductIdsStartingBetween(
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to
+    );
 }
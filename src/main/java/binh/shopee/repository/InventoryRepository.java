@@ -3,12 +3,16 @@ import binh.shopee.entity.Inventory;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 @Repository
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     Optional<Inventory> findByVariantVariantId(Long variantId);
+    List<Inventory> findByVariantVariantIdIn(Collection<Long> variantIds);
     @Query("""
         SELECT (i.stockQty - i.reservedQty) 
         FROM Inventory i 
@@ -24,4 +28,41 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
           AND (i.stockQty - i.reservedQty) >= :quantity
     """)
     int reserveStock(Long variantId, Integer quantity);
+    // Trả lại phần đã giữ (hold bị hủy)
+    @Modifying
+    @Query("""
+        UPDATE Inventory i
+        SET i.reservedQty = i.reservedQty - :quantity, i.updatedAt = CURRENT_TIMESTAMP
+        WHERE i.variant.variantId = :variantId
+          AND i.reservedQty >= :quantity
+    """)
+    int releaseReserved(@Param("variantId") Long variantId, @Param("quantity") Integer quantity);
+    // Hold -> bán: trừ cả tồn kho lẫn phần đã giữ
+    @Modifying
+    @Query("""
+        UPDATE Inventory i
+        SET i.stockQty = i.stockQty - :quantity,
+            i.reservedQty = i.reservedQty - :quantity,
+            i.updatedAt = CURRENT_TIMESTAMP
+        WHERE i.variant.variantId = :variantId
+          AND i.reservedQty >= :quantity
+          AND i.stockQty >= :quantity
+    """)
+    int commitReserved(@Param("variantId") Long variantId, @Param("quantity") Integer quantity);
+    // Bán thẳng không qua hold: chỉ trừ khi phần khả dụng (stock - reserved) đủ
+    @Modifying
+    @Query("""
+        UPDATE Inventory i
+        SET i.stockQty = i.stockQty - :quantity, i.updatedAt = CURRENT_TIMESTAMP
+        WHERE i.variant.variantId = :variantId
+          AND (i.stockQty - i.reservedQty) >= :quantity
+    """)
+    int reduceAvailable(@Param("variantId") Long variantId, @Param("quantity") Integer quantity);
+    @Modifying
+    @Query("""
+        UPDATE Inventory i
+        SET i.stockQty = i.stockQty + :quantity, i.updatedAt = CURRENT_TIMESTAMP
+        WHERE i.variant.variantId = :variantId
+    """)
+    int restoreStock(@Param("variantId") Long variantId, @Param("quantity") Integer quantity);
 }
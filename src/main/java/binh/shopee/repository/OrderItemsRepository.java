@@ -1,10 +1,48 @@
 package binh.shopee.repository;
 
+import binh.shopee.dto.flashsale.FlashSalePurchaseRow;
+import binh.shopee.dto.product.ProductSaleEvent;
 import binh.shopee.entity.OrderItems;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface OrderItemsRepository extends JpaRepository<OrderItems, Long> {
     List<OrderItems> findByOrder_OrderId(Long orderId);
+
+    // Dòng đơn từ :since (nạp trending lúc khởi động); đơn còn event purchase_count trong outbox
+    // sẽ được cộng khi worker xử lý nên bỏ qua ở đây
+    @Query("""
+        SELECT new binh.shopee.dto.product.ProductSaleEvent(
+            v.products.productId,
+            oi.quantity,
+            o.createdAt
+        )
+        FROM OrderItems oi
+        JOIN oi.order o
+        JOIN oi.variant v
+        WHERE o.createdAt >= :since
+          AND o.status <> binh.shopee.entity.Orders.OrderStatus.canceled
+          AND NOT EXISTS (
+              SELECT 1 FROM OrderOutboxEvents e
+              WHERE e.orderId = o.orderId
+                AND e.eventType = binh.shopee.entity.OrderOutboxEvents.EventType.purchase_count
+          )
+    """)
+    List<ProductSaleEvent> findSaleEventsSince(@Param("since") LocalDateTime since);
+
+    // Số lượng đã mua giá flash sale theo user, đọc từ đơn đã commit và chưa hủy
+    // (nguồn đối chiếu khi nạp lại bộ đếm flash sale: sold / flash_sale_user_purchases là write-behind)
+    @Query("""
+        SELECT new binh.shopee.dto.flashsale.FlashSalePurchaseRow(o.user.userId, SUM(oi.quantity))
+        FROM OrderItems oi
+        JOIN oi.order o
+        WHERE oi.flashSaleId = :flashSaleId
+          AND o.status <> binh.shopee.entity.Orders.OrderStatus.canceled
+        GROUP BY o.user.userId
+    """)
+    List<FlashSalePurchaseRow> findFlashSalePurchases(@Param("flashSaleId") Long flashSaleId);
 }
@@ -0,0 +1,57 @@
+package binh.shopee.repository;
+import binh.shopee.entity.OrderOutboxEvents;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+@Repository
+public interface OrderOutboxEventsRepository extends JpaRepository<OrderOutboxEvents, Long> {
+    @Query(value = """
+        SELECT TOP (:limit) event_id
+        FROM order_outbox_events
+        WHERE status = 'pending' AND next_attempt_at <= :now
+        ORDER BY event_id
+        """, nativeQuery = true)
+    List<Long> findDueIds(@Param("limit") int limit, @Param("now") LocalDateTime now);
+
+    // Khóa các event còn pending; READPAST bỏ qua dòng worker khác đang xử lý
+    @Query(value = """
+        SELECT * FROM order_outbox_events WITH (UPDLOCK, READPAST, ROWLOCK)
+        WHERE event_id IN (:ids) AND status = 'pending'
+        """, nativeQuery = true)
+    List<OrderOutboxEvents> lockPendingByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("""
+        UPDATE OrderOutboxEvents e
+        SET e.attempts = e.attempts + 1,
+            e.nextAttemptAt = :nextAttemptAt,
+            e.lastError = :error,
+            e.status = CASE WHEN e.attempts + 1 >= :maxAttempts
+                            THEN binh.shopee.entity.OrderOutboxEvents.EventStatus.failed
+                            ELSE e.status END
+        WHERE e.eventId = :eventId
+    """)
+    int recordFailure(
+            @Param("eventId") Long eventId,
+            @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+            @Param("error") String error,
+            @Param("maxAttempts") int maxAttempts
+    );
+
+    // Bỏ event 1 loại của các đơn <= maxOrderId (vd: rebuild rollup đã tính các đơn đó từ bảng Orders)
+    @Modifying
+    @Query("""
+        DELETE FROM OrderOutboxEvents e
+        WHERE e.eventType = :eventType
+          AND e.orderId <= :maxOrderId
+    """)
+    int deleteByEventTypeUpTo(
+            @Param("eventType") OrderOutboxEvents.EventType eventType,
+            @Param("maxOrderId") Long maxOrderId
+    );
+}
@@ -0,0 +1,84 @@
+package binh.shopee.repository;
+import binh.shopee.entity.OrderRevenueRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+@Repository
+public interface OrderRevenueRollupRepository extends JpaRepository<OrderRevenueRollup, Long> {
+    @Query("""
+        SELECT r FROM OrderRevenueRollup r
+        WHERE r.granularity = :granularity
+          AND r.bucketStart >= :from
+          AND r.bucketStart < :to
+    """)
+    List<OrderRevenueRollup> findBuckets(
+            @Param("granularity") OrderRevenueRollup.Granularity granularity,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to
+    );
+
+    // Cộng dồn vào bucket (tạo nếu chưa có). HOLDLOCK để 2 đơn cùng bucket không insert trùng
+    @Modifying
+    @Query(value = """
+        MERGE order_revenue_rollups WITH (HOLDLOCK) AS t
+        USING (SELECT :granularity AS granularity, :bucketStart AS bucket_start, :status AS status) AS s
+        ON t.granularity = s.granularity AND t.bucket_start = s.bucket_start AND t.status = s.status
+        WHEN MATCHED THEN
+            UPDATE SET order_count = t.order_count + :countDelta,
+                       revenue = t.revenue + :revenueDelta
+        WHEN NOT MATCHED THEN
+            INSERT (granularity, bucket_start, status, order_count, revenue)
+            VALUES (:granularity, :bucketStart, :status, :countDelta, :revenueDelta);
+        """, nativeQuery = true)
+    int addToBucket(
+            @Param("granularity") String granularity,
+            @Param("bucketStart") LocalDateTime bucketStart,
+            @Param("status") String status,
+            @Param("countDelta") long countDelta,
+            @Param("revenueDelta") BigDecimal revenueDelta
+    );
+
+    // ==================== BACKFILL ====================
+    // Chỉ tính đơn <= :maxOrderId; đơn sau mốc được cộng bởi event revenue_rollup còn trong outbox
+    @Modifying
+    @Query(value = "DELETE FROM order_revenue_rollups", nativeQuery = true)
+    int deleteAllBuckets();
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO order_revenue_rollups (granularity, bucket_start, status, order_count, revenue)
+        SELECT 'hour', DATEADD(hour, DATEDIFF(hour, 0, o.created_at), 0), o.status,
+               COUNT(*), SUM(o.subtotal - o.discount_total + o.shipping_fee)
+        FROM orders o
+        WHERE o.order_id <= :maxOrderId
+        GROUP BY DATEADD(hour, DATEDIFF(hour, 0, o.created_at), 0), o.status
+        """, nativeQuery = true)
+    int backfillHourly(@Param("maxOrderId") Long maxOrderId);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO order_revenue_rollups (granularity, bucket_start, status, order_count, revenue)
+        SELECT 'day', DATEADD(day, DATEDIFF(day, 0, o.created_at), 0), o.status,
+               COUNT(*), SUM(o.subtotal - o.discount_total + o.shipping_fee)
+        FROM orders o
+        WHERE o.order_id <= :maxOrderId
+        GROUP BY DATEADD(day, DATEDIFF(day, 0, o.created_at), 0), o.status
+        """, nativeQuery = true)
+    int backfillDaily(@Param("maxOrderId") Long maxOrderId);
+
+    @Modifying
+    @Query(value = """
+        INSERT INTO order_revenue_rollups (granularity, bucket_start, status, order_count, revenue)
+        SELECT 'month', DATEADD(month, DATEDIFF(month, 0, o.created_at), 0), o.status,
+               COUNT(*), SUM(o.subtotal - o.discount_total + o.shipping_fee)
+        FROM orders o
+        WHERE o.order_id <= :maxOrderId
+        GROUP BY DATEADD(month, DATEDIFF(month, 0, o.created_at), 0), o.status
+        """, nativeQuery = true)
+    int backfillMonthly(@Param("maxOrderId") Long maxOrderId);
+}
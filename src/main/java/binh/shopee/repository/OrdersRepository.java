@@ -1,6 +1,10 @@
 package binh.shopee.repository;
+import binh.shopee.dto.order.OrderHistoryRow;
 import binh.shopee.entity.Orders;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import binh.shopee.entity.Orders.OrderStatus;
@@ -12,4 +16,41 @@ public interface OrdersRepository extends JpaRepository<Orders, Long> {
 
 
     List<Orders> findByUser_UserIdOrderByCreatedAtDesc(Long userId);
+
+    // Lịch sử đơn theo keyset (createdAt, orderId) giảm dần: 1 query lấy luôn địa chỉ + items.
+    // Subquery giới hạn số đơn, mỗi đơn có thể ra nhiều dòng (1 dòng / item).
+    @Query("""
+        SELECT new binh.shopee.dto.order.OrderHistoryRow(
+            o.orderId, o.orderNumber, o.status,
+            o.subtotal, o.discountTotal, o.shippingFee, o.grandTotal, o.currency, o.note, o.createdAt,
+            a.recipientName, a.phone, a.street, a.ward, a.district, a.city,
+            i.orderItemId, i.productNameSnapshot, i.unitPrice, i.quantity, i.totalPrice,
+            p.productId, v.variantId
+        )
+        FROM Orders o
+        LEFT JOIN o.shippingAddress a
+        LEFT JOIN o.items i
+        LEFT JOIN i.variant v
+        LEFT JOIN v.products p
+        WHERE o.orderId IN (
+            SELECT o2.orderId FROM Orders o2
+            WHERE o2.user.userId = :userId
+              AND (:cursorCreatedAt IS NULL
+                   OR o2.createdAt < :cursorCreatedAt
+                   OR (o2.createdAt = :cursorCreatedAt AND o2.orderId < :cursorOrderId))
+            ORDER BY o2.createdAt DESC, o2.orderId DESC
+            LIMIT :limit
+        )
+        ORDER BY o.createdAt DESC, o.orderId DESC, i.orderItemId
+    """)
+    List<OrderHistoryRow> findUserOrderHistoryPage(
+            @Param("userId") Long userId,
+            @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+            @Param("cursorOrderId") Long cursorOrderId,
+            @Param("limit") int limit
+    );
+
+    // Mốc cắt khi rebuild rollup doanh thu: đơn <= mốc tính bằng backfill, đơn sau mốc đi qua outbox
+    @Query("SELECT COALESCE(MAX(o.orderId), 0) FROM Orders o")
+    Long findMaxOrderId();
 }
\ No newline at end of file
@@ -6,47 +6,28 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.Optional;
 public interface ProductCategoriesRepository extends JpaRepository<ProductCategories, Long> {
 
-    @Query("""
+    // countQuery viết tay: COUNT tự sinh từ query GROUP BY phải kéo theo join ảnh / giá
+    @Query(value = """
 SELECT new binh.shopee.dto.product.ProductSearchResponse(
     p.productId,
     p.name,
     p.price,
-    COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN p.price * d.discountValue / 100
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-        END,
-        0
-    ),
-    p.price - COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN p.price * d.discountValue / 100
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-        END,
-        0
-    ),
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
     MAX(CASE WHEN pi.isPrimary = true THEN pi.imageUrl END),
     p.totalPurchaseCount,
-    COALESCE(ROUND(AVG(r.rating), 1), 0.0)
+    ROUND(p.ratingAvg, 1)
 )
 FROM ProductCategories pc
 JOIN pc.product p
 LEFT JOIN ProductImages pi
        ON pi.products = p
-LEFT JOIN Discounts d
-       ON d.product = p
-      AND d.isActive = true
-      AND CURRENT_TIMESTAMP BETWEEN d.startTime AND d.endTime
-LEFT JOIN Reviews r
-       ON r.products = p
-      AND r.status = 'approved'
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
 WHERE
     pc.category.categoryId = :categoryId
     AND p.status = binh.shopee.entity.Products.ProductStatus.active
@@ -55,13 +36,66 @@ GROUP BY
     p.name,
     p.price,
     p.totalPurchaseCount,
-    d.discountType,
-    d.discountValue
+    p.ratingAvg,
+    ep.discountAmount,
+    ep.effectivePrice
+""", countQuery = """
+SELECT COUNT(pc)
+FROM ProductCategories pc
+JOIN pc.product p
+WHERE
+    pc.category.categoryId = :categoryId
+    AND p.status = binh.shopee.entity.Products.ProductStatus.active
 """)
     Page<ProductSearchResponse> findProductSearchByCategory(
             Long categoryId,
             Pageable pageable
     );
+
+    // Danh mục + mọi danh mục con cháu (tập id lấy từ CategoryTreeCache)
+    @Query(value = """
+SELECT new binh.shopee.dto.product.ProductSearchResponse(
+    p.productId,
+    p.name,
+    p.price,
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
+    MAX(CASE WHEN pi.isPrimary = true THEN pi.imageUrl END),
+    p.totalPurchaseCount,
+    ROUND(p.ratingAvg, 1)
+)
+FROM Products p
+LEFT JOIN ProductImages pi
+       ON pi.products = p
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
+WHERE
+    p.status = binh.shopee.entity.Products.ProductStatus.active
+    AND EXISTS (
+        SELECT 1 FROM ProductCategories pc
+        WHERE pc.product = p AND pc.category.categoryId IN :categoryIds
+    )
+GROUP BY
+    p.productId,
+    p.name,
+    p.price,
+    p.totalPurchaseCount,
+    p.ratingAvg,
+    ep.discountAmount,
+    ep.effectivePrice
+""", countQuery = """
+SELECT COUNT(p)
+FROM Products p
+WHERE
+    p.status = binh.shopee.entity.Products.ProductStatus.active
+    AND EXISTS (
+        SELECT 1 FROM ProductCategories pc
+        WHERE pc.product = p AND pc.category.categoryId IN :categoryIds
+    )
+""")
+    Page<ProductSearchResponse> findProductSearchByCategoryIds(
+            @Param("categoryIds") Collection<Long> categoryIds,
+            Pageable pageable
+    );
     // ==================== ADMIN METHODS ====================
 
     /**
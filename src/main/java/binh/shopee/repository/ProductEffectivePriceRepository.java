@@ -0,0 +1,80 @@
+package binh.shopee.repository;
+import binh.shopee.entity.ProductEffectivePrice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+@Repository
+public interface ProductEffectivePriceRepository extends JpaRepository<ProductEffectivePrice, Long> {
+    /**
+     * Tính lại giá áp dụng tại thời điểm :now cho 1 sản phẩm (:productId = 0 -> tất cả).
+     * Ưu tiên flash sale, rồi discount; cùng loại thì lấy mức giảm lớn nhất.
+     * Chỉ ghi dòng có thay đổi (refreshed_at = :now), full refresh xóa dòng của sản phẩm đã bị xóa.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+        MERGE product_effective_prices WITH (HOLDLOCK) AS t
+        USING (
+            SELECT p.product_id,
+                   p.price AS base_price,
+                   COALESCE(promo.discount_amount, 0) AS discount_amount,
+                   promo.promotion_source,
+                   promo.promotion_id
+            FROM products p
+            OUTER APPLY (
+                SELECT TOP 1
+                       x.promotion_source,
+                       x.promotion_id,
+                       CAST(CASE WHEN x.discount_amount > p.price THEN p.price ELSE x.discount_amount END
+                            AS decimal(12, 2)) AS discount_amount
+                FROM (
+                    SELECT 1 AS precedence, 'flash_sale' AS promotion_source, fs.flash_sale_id AS promotion_id,
+                           CASE WHEN fs.discount_type = 'percentage' THEN p.price * fs.discount_value / 100
+                                ELSE fs.discount_value END AS discount_amount
+                    FROM flash_sales fs
+                    WHERE fs.product_id = p.product_id
+                      AND fs.status = 'active'
+                      AND :now BETWEEN fs.start_time AND fs.end_time
+                      -- quantity là số suất còn lại (engine trừ quantity khi cộng sold), khớp bộ đếm remaining
+                      AND fs.quantity > 0
+                    UNION ALL
+                    SELECT 2, 'discount', d.discount_id,
+                           CASE WHEN d.discount_type = 'percentage' THEN p.price * d.discount_value / 100
+                                ELSE d.discount_value END
+                    FROM discounts d
+                    WHERE d.product_id = p.product_id
+                      AND d.is_active = 1
+                      AND :now BETWEEN d.start_time AND d.end_time
+                ) x
+                ORDER BY x.precedence, x.discount_amount DESC, x.promotion_id
+            ) promo
+            WHERE :productId = 0 OR p.product_id = :productId
+        ) s
+        ON t.product_id = s.product_id
+        WHEN MATCHED AND (t.base_price <> s.base_price
+                          OR t.discount_amount <> s.discount_amount
+                          OR ISNULL(t.promotion_source, '') <> ISNULL(s.promotion_source, '')
+                          OR ISNULL(t.promotion_id, 0) <> ISNULL(s.promotion_id, 0)) THEN
+            UPDATE SET base_price = s.base_price,
+                       discount_amount = s.discount_amount,
+                       effective_price = s.base_price - s.discount_amount,
+                       promotion_source = s.promotion_source,
+                       promotion_id = s.promotion_id,
+                       refreshed_at = :now
+        WHEN NOT MATCHED BY TARGET THEN
+            INSERT (product_id, base_price, discount_amount, effective_price,
+                    promotion_source, promotion_id, refreshed_at)
+            VALUES (s.product_id, s.base_price, s.discount_amount, s.base_price - s.discount_amount,
+                    s.promotion_source, s.promotion_id, :now)
+        WHEN NOT MATCHED BY SOURCE AND :productId = 0 THEN
+            DELETE;
+        """, nativeQuery = true)
+    int refresh(@Param("productId") long productId, @Param("now") LocalDateTime now);
+
+    @Query("SELECT MAX(ep.refreshedAt) FROM ProductEffectivePrice ep")
+    LocalDateTime findLatestRefreshedAt();
+}
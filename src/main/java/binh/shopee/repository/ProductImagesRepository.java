@@ -2,7 +2,10 @@ package binh.shopee.repository;
 import binh.shopee.entity.ProductImages;
 import binh.shopee.entity.Products;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 @Repository
@@ -10,6 +13,13 @@ public interface ProductImagesRepository extends JpaRepository<ProductImages, Lo
     Optional<ProductImages> findFirstByProductsAndIsPrimaryTrue(Products product);
     // Lấy danh sách ảnh của 1 sản phẩm
     List<ProductImages> findByProducts_ProductId(Long productId);
+    // Ảnh của nhiều sản phẩm, mỗi sản phẩm: ảnh primary trước, rồi theo sortOrder
+    @Query("""
+        SELECT pi FROM ProductImages pi
+        WHERE pi.products.productId IN :productIds
+        ORDER BY pi.products.productId, pi.isPrimary DESC, pi.sortOrder ASC, pi.imageId ASC
+    """)
+    List<ProductImages> findByProductIdsOrderByPrimary(@Param("productIds") Collection<Long> productIds);
     // ==================== ADMIN METHODS ====================
 
     /**
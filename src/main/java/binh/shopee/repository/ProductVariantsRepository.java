@@ -2,11 +2,20 @@ package binh.shopee.repository;
 import binh.shopee.entity.ProductVariants;
 import binh.shopee.entity.Products;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 public interface ProductVariantsRepository extends JpaRepository<ProductVariants, Long> {
     List<ProductVariants> findByProducts_ProductId(Long productId);
     Optional<ProductVariants> findById(Long variantId);
+    @Query("""
+        SELECT v FROM ProductVariants v
+        JOIN FETCH v.products p
+        WHERE v.variantId IN :variantIds
+    """)
+    List<ProductVariants> findAllWithProductByIdIn(@Param("variantIds") Collection<Long> variantIds);
     // ==================== ADMIN METHODS ====================
 
     /**
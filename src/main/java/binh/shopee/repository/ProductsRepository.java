@@ -1,20 +1,38 @@
 package binh.shopee.repository;
 import binh.shopee.dto.product.ProductDetailResponse;
+import binh.shopee.dto.product.ProductFacetRow;
+import binh.shopee.dto.product.ProductListingRow;
+import binh.shopee.dto.product.ProductSalesRow;
 import binh.shopee.dto.product.ProductSearchResponse;
+import binh.shopee.dto.product.ProductSuggestRow;
 import binh.shopee.entity.Discounts;
 import binh.shopee.entity.ProductImages;
 import binh.shopee.entity.Products;
-import binh.shopee.entity.Reviews;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 public interface ProductsRepository extends JpaRepository<Products, Long> {
     Optional<Products> findById(Long productId);
+    // Cộng dồn số lượng đã bán (worker outbox); updatedAt đổi để search index refresh thấy
+    @Modifying
+    @Query("""
+        UPDATE Products p
+        SET p.totalPurchaseCount = COALESCE(p.totalPurchaseCount, 0) + :delta,
+            p.updatedAt = :now
+        WHERE p.productId = :productId
+    """)
+    int addPurchaseCount(
+            @Param("productId") Long productId,
+            @Param("delta") long delta,
+            @Param("now") LocalDateTime now
+    );
     // ==================== ADMIN METHODS (NEW) ====================
 
     /**
@@ -33,44 +51,171 @@ SELECT new binh.shopee.dto.product.ProductSearchResponse(
     p.productId,
     p.name,
     p.price,
-    COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN (p.price * d.discountValue / 100)
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-            ELSE 0
-        END,
-        0
-    ),
-    (p.price - COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN (p.price * d.discountValue / 100)
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-            ELSE 0
-        END,
-        0
-    )),
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
     MAX(CASE WHEN pi.isPrimary = true THEN pi.imageUrl END),
     p.totalPurchaseCount,
-    COALESCE(ROUND(AVG(r.rating), 1), 0.0)
+    ROUND(p.ratingAvg, 1)
 )
 FROM Products p
 LEFT JOIN ProductImages pi ON pi.products = p
-LEFT JOIN Discounts d
-       ON d.product = p
-      AND d.isActive = true
-      AND CURRENT_TIMESTAMP BETWEEN d.startTime AND d.endTime
-LEFT JOIN Reviews r
-       ON r.products = p
-      AND r.status = 'approved'
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
 WHERE LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%'))
-GROUP BY p.productId, p.name, p.price, p.totalPurchaseCount, d.discountType, d.discountValue
+GROUP BY p.productId, p.name, p.price, p.totalPurchaseCount, p.ratingAvg, ep.discountAmount, ep.effectivePrice
 """)
     List<ProductSearchResponse> searchProducts(@Param("keyword") String keyword);
 
+    // ==================== TOP SELLING LEADERBOARD ====================
+    // Sản phẩm active + danh mục + totalPurchaseCount, :productId = null -> tất cả
+    @Query("""
+SELECT new binh.shopee.dto.product.ProductSalesRow(
+    p.productId,
+    pc.category.categoryId,
+    COALESCE(p.totalPurchaseCount, 0)
+)
+FROM Products p
+LEFT JOIN ProductCategories pc ON pc.product = p
+WHERE p.status = binh.shopee.entity.Products.ProductStatus.active
+  AND (:productId IS NULL OR p.productId = :productId)
+""")
+    List<ProductSalesRow> findSalesRows(@Param("productId") Long productId);
+
+    // ==================== CATEGORY LISTING INDEX ====================
+    // :since = null -> mọi sản phẩm active; ngược lại mọi sản phẩm đổi sau :since (kể cả vừa bị ẩn)
+    @Query("""
+SELECT new binh.shopee.dto.product.ProductListingRow(
+    p.productId,
+    pc.category.categoryId,
+    CASE WHEN p.status = binh.shopee.entity.Products.ProductStatus.active THEN true ELSE false END,
+    COALESCE(ep.effectivePrice, p.price),
+    COALESCE(p.totalPurchaseCount, 0),
+    p.ratingAvg,
+    p.createdAt
+)
+FROM Products p
+LEFT JOIN ProductCategories pc ON pc.product = p
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
+WHERE (:since IS NULL AND p.status = binh.shopee.entity.Products.ProductStatus.active)
+   OR p.updatedAt > :since
+   OR ep.refreshedAt > :since
+""")
+    List<ProductListingRow> findListingRows(@Param("since") LocalDateTime since);
+
+    // ==================== SUGGEST (AUTOCOMPLETE) ====================
+    @Query("""
+SELECT new binh.shopee.dto.product.ProductSuggestRow(
+    p.productId,
+    p.name,
+    b.brandId,
+    COALESCE(p.totalPurchaseCount, 0)
+)
+FROM Products p
+LEFT JOIN p.brand b
+WHERE p.status = binh.shopee.entity.Products.ProductStatus.active
+""")
+    List<ProductSuggestRow> findSuggestRows();
+
+    // ==================== FACET INDEX ====================
+    @Query("""
+SELECT new binh.shopee.dto.product.ProductFacetRow(
+    p.productId,
+    b.brandId,
+    COALESCE(ep.effectivePrice, p.price),
+    p.ratingAvg,
+    CASE WHEN ep.promotionSource IS NOT NULL THEN true ELSE false END,
+    COALESCE(SUM(i.stockQty - i.reservedQty), 0L),
+    COALESCE(p.totalPurchaseCount, 0L)
+)
+FROM Products p
+LEFT JOIN p.brand b
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
+LEFT JOIN ProductVariants v ON v.products = p
+LEFT JOIN Inventory i ON i.variant = v
+WHERE p.status = binh.shopee.entity.Products.ProductStatus.active
+GROUP BY p.productId, b.brandId, p.price, ep.effectivePrice, p.ratingAvg, ep.promotionSource, p.totalPurchaseCount
+""")
+    List<ProductFacetRow> findFacetRows();
+
+    // ==================== SEARCH INDEX ====================
+    @Query("""
+SELECT new binh.shopee.dto.product.ProductSearchResponse(
+    p.productId,
+    p.name,
+    p.price,
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
+    MAX(CASE WHEN pi.isPrimary = true THEN pi.imageUrl END),
+    p.totalPurchaseCount,
+    ROUND(p.ratingAvg, 1)
+)
+FROM Products p
+LEFT JOIN ProductImages pi ON pi.products = p
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
+WHERE (:since IS NULL OR p.updatedAt > :since OR ep.refreshedAt > :since)
+GROUP BY p.productId, p.name, p.price, p.totalPurchaseCount, p.ratingAvg, ep.discountAmount, ep.effectivePrice
+""")
+    List<ProductSearchResponse> findSearchIndexRows(@Param("since") LocalDateTime since);
+
+    // ==================== RATING AGGREGATE ====================
+    // Cộng 1 review đã duyệt vào rating tổng hợp (count/sum/avg + histogram 1-5 sao)
+    @Modifying
+    @Query("""
+        UPDATE Products p
+        SET p.ratingCount = p.ratingCount + 1,
+            p.ratingSum = p.ratingSum + :rating,
+            p.ratingAvg = (p.ratingSum + :rating) * 1.0 / (p.ratingCount + 1),
+            p.ratingStar1Count = p.ratingStar1Count + CASE WHEN :rating = 1 THEN 1 ELSE 0 END,
+            p.ratingStar2Count = p.ratingStar2Count + CASE WHEN :rating = 2 THEN 1 ELSE 0 END,
+            p.ratingStar3Count = p.ratingStar3Count + CASE WHEN :rating = 3 THEN 1 ELSE 0 END,
+            p.ratingStar4Count = p.ratingStar4Count + CASE WHEN :rating = 4 THEN 1 ELSE 0 END,
+            p.ratingStar5Count = p.ratingStar5Count + CASE WHEN :rating = 5 THEN 1 ELSE 0 END,
+            p.updatedAt = :now
+        WHERE p.productId = :productId
+    """)
+    int addRating(
+            @Param("productId") Long productId,
+            @Param("rating") int rating,
+            @Param("now") LocalDateTime now
+    );
+
+    // Tính lại rating tổng hợp từ Reviews, chỉ ghi những sản phẩm bị lệch
+    @Modifying
+    @Query(value = """
+        UPDATE p
+        SET p.rating_count = x.cnt,
+            p.rating_sum = x.total,
+            p.rating_avg = CASE WHEN x.cnt > 0 THEN x.total * 1.0 / x.cnt ELSE 0 END,
+            p.rating_star1_count = x.s1,
+            p.rating_star2_count = x.s2,
+            p.rating_star3_count = x.s3,
+            p.rating_star4_count = x.s4,
+            p.rating_star5_count = x.s5,
+            p.updated_at = GETDATE()
+        FROM products p
+        CROSS APPLY (
+            SELECT COUNT(r.review_id) AS cnt,
+                   COALESCE(SUM(CAST(r.rating AS bigint)), 0) AS total,
+                   COUNT(CASE WHEN r.rating = 1 THEN 1 END) AS s1,
+                   COUNT(CASE WHEN r.rating = 2 THEN 1 END) AS s2,
+                   COUNT(CASE WHEN r.rating = 3 THEN 1 END) AS s3,
+                   COUNT(CASE WHEN r.rating = 4 THEN 1 END) AS s4,
+                   COUNT(CASE WHEN r.rating = 5 THEN 1 END) AS s5
+            FROM reviews r
+            WHERE r.product_id = p.product_id AND r.status = 'approved'
+        ) x
+        WHERE p.rating_count <> x.cnt
+           OR p.rating_sum <> x.total
+           OR p.rating_star1_count <> x.s1
+           OR p.rating_star2_count <> x.s2
+           OR p.rating_star3_count <> x.s3
+           OR p.rating_star4_count <> x.s4
+           OR p.rating_star5_count <> x.s5
+        """, nativeQuery = true)
+    int repairRatingAggregates();
+
+    @Query("SELECT MAX(p.updatedAt) FROM Products p")
+    LocalDateTime findLatestUpdatedAt();
+
     @Query("""
 SELECT new binh.shopee.dto.product.ProductDetailResponse(
     p.productId,
@@ -78,59 +223,10 @@ SELECT new binh.shopee.dto.product.ProductDetailResponse(
     p.description,
     p.price,
     p.totalPurchaseCount,
-    COALESCE(
-        CASE
-          
-            WHEN fs.flashSaleId IS NOT NULL THEN
-                CASE
-                    WHEN fs.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                        THEN (p.price * fs.discountValue / 100)
-                    WHEN fs.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                        THEN fs.discountValue
-                    ELSE 0
-                END
-         
-            WHEN d.discountId IS NOT NULL THEN
-                CASE
-                    WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                        THEN (p.price * d.discountValue / 100)
-                    WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                        THEN d.discountValue
-                    ELSE 0
-                END
-            ELSE 0
-        END,
-        0
-    ),
-    p.price - COALESCE(
-        CASE
-            WHEN fs.flashSaleId IS NOT NULL THEN
-                CASE
-                    WHEN fs.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                        THEN (p.price * fs.discountValue / 100)
-                    WHEN fs.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                        THEN fs.discountValue
-                    ELSE 0
-                END
-            WHEN d.discountId IS NOT NULL THEN
-                CASE
-                    WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                        THEN (p.price * d.discountValue / 100)
-                    WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                        THEN d.discountValue
-                    ELSE 0
-                END
-            ELSE 0
-        END,
-        0
-    ),
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
 
-    COALESCE(
-        (SELECT ROUND(AVG(rv.rating), 1)
-         FROM Reviews rv
-         WHERE rv.products = p AND rv.status = 'approved'),
-        0.0
-    ),
+    ROUND(p.ratingAvg, 1),
 
     p.status,
     p.createdAt,
@@ -148,24 +244,13 @@ SELECT new binh.shopee.dto.product.ProductDetailResponse(
     null,
     null,
     null,
-    COALESCE(
-        (SELECT COUNT(rv.reviewId)
-         FROM Reviews rv
-         WHERE rv.products = p AND rv.status = 'approved'),
-        0
-    )
+    p.ratingCount,
+    null,
+    null
 )
 FROM Products p
 LEFT JOIN p.brand b
-LEFT JOIN Discounts d
-    ON d.product = p
-    AND d.isActive = true
-    AND CURRENT_TIMESTAMP BETWEEN d.startTime AND d.endTime
-LEFT JOIN FlashSales fs
-    ON fs.product = p
-    AND fs.status = binh.shopee.entity.FlashSales.FlashSaleStatus.active
-    AND CURRENT_TIMESTAMP BETWEEN fs.startTime AND fs.endTime
-    AND fs.sold < fs.quantity
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
 WHERE p.productId = :productId
 """)
     Optional<ProductDetailResponse> findProductDetailById(@Param("productId") Long productId);
@@ -175,46 +260,25 @@ SELECT new binh.shopee.dto.product.ProductSearchResponse(
     p.productId,
     p.name,
     p.price,
-    COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN p.price * d.discountValue / 100
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-        END,
-        0
-    ),
-    p.price - COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN p.price * d.discountValue / 100
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-        END,
-        0
-    ),
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
     MAX(CASE WHEN pi.isPrimary = true THEN pi.imageUrl END),
     p.totalPurchaseCount,
-    COALESCE(ROUND(AVG(r.rating), 1), 0.0)
+    ROUND(p.ratingAvg, 1)
 )
 FROM Products p
 LEFT JOIN ProductImages pi
        ON pi.products = p
-LEFT JOIN Discounts d
-       ON d.product = p
-      AND d.isActive = true
-      AND CURRENT_TIMESTAMP BETWEEN d.startTime AND d.endTime
-LEFT JOIN Reviews r
-       ON r.products = p
-      AND r.status = 'approved'
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
 WHERE p.status = binh.shopee.entity.Products.ProductStatus.active
 GROUP BY
     p.productId,
     p.name,
     p.price,
     p.totalPurchaseCount,
-    d.discountType,
-    d.discountValue
+    p.ratingAvg,
+    ep.discountAmount,
+    ep.effectivePrice
 ORDER BY p.totalPurchaseCount DESC
 """)
     List<ProductSearchResponse> findTopSellingProducts(Pageable pageable);
@@ -223,47 +287,58 @@ SELECT new binh.shopee.dto.product.ProductSearchResponse(
     p.productId,
     p.name,
     p.price,
-    COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN p.price * d.discountValue / 100
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-        END,
-        0
-    ),
-    p.price - COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN p.price * d.discountValue / 100
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-        END,
-        0
-    ),
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
     MAX(CASE WHEN pi.isPrimary = true THEN pi.imageUrl END),
     p.totalPurchaseCount,
-    COALESCE(ROUND(AVG(r.rating), 1), 0.0)
+    ROUND(p.ratingAvg, 1)
+)
+FROM ProductCategories pc
+JOIN pc.product p
+LEFT JOIN ProductImages pi
+       ON pi.products = p
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
+WHERE pc.category.categoryId = :categoryId
+  AND p.status = binh.shopee.entity.Products.ProductStatus.active
+GROUP BY
+    p.productId,
+    p.name,
+    p.price,
+    p.totalPurchaseCount,
+    p.ratingAvg,
+    ep.discountAmount,
+    ep.effectivePrice
+ORDER BY p.totalPurchaseCount DESC
+""")
+    List<ProductSearchResponse> findTopSellingProductsByCategory(
+            @Param("categoryId") Long categoryId,
+            Pageable pageable
+    );
+    @Query("""
+SELECT new binh.shopee.dto.product.ProductSearchResponse(
+    p.productId,
+    p.name,
+    p.price,
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
+    MAX(CASE WHEN pi.isPrimary = true THEN pi.imageUrl END),
+    p.totalPurchaseCount,
+    ROUND(p.ratingAvg, 1)
 )
 FROM Products p
 LEFT JOIN ProductImages pi
        ON pi.products = p
-LEFT JOIN Discounts d
-       ON d.product = p
-      AND d.isActive = true
-      AND CURRENT_TIMESTAMP BETWEEN d.startTime AND d.endTime
-LEFT JOIN Reviews r
-       ON r.products = p
-      AND r.status = 'approved'
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
 WHERE p.status = binh.shopee.entity.Products.ProductStatus.active
 GROUP BY
     p.productId,
     p.name,
     p.price,
     p.totalPurchaseCount,
+    p.ratingAvg,
     p.createdAt,
-    d.discountType,
-    d.discountValue
+    ep.discountAmount,
+    ep.effectivePrice
 ORDER BY p.createdAt DESC
 """)
     List<ProductSearchResponse> findTopProducts(Pageable pageable);
@@ -272,48 +347,27 @@ SELECT new binh.shopee.dto.product.ProductSearchResponse(
     p.productId,
     p.name,
     p.price,
-    COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN (p.price * d.discountValue / 100)
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-            ELSE 0
-        END,
-        0
-    ),
-    (p.price - COALESCE(
-        CASE
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.percentage
-                THEN (p.price * d.discountValue / 100)
-            WHEN d.discountType = binh.shopee.entity.Discounts.DiscountType.fixed
-                THEN d.discountValue
-            ELSE 0
-        END,
-        0
-    )),
+    COALESCE(ep.discountAmount, 0),
+    COALESCE(ep.effectivePrice, p.price),
     MAX(CASE WHEN pi.isPrimary = true THEN COALESCE(pi.imageUrl, '') END),
     p.totalPurchaseCount,
-    COALESCE(CAST(AVG(r.rating) AS double), 0.0)
+    p.ratingAvg
 )
 FROM Products p
 LEFT JOIN ProductImages pi ON pi.products = p
-LEFT JOIN Discounts d ON d.product = p
-    AND d.isActive = true
-    AND d.startTime <= CURRENT_TIMESTAMP
-    AND d.endTime >= CURRENT_TIMESTAMP
-LEFT JOIN Reviews r ON r.products = p AND r.status = 'approved'
-WHERE (:minPrice IS NULL OR p.price >= :minPrice)
-  AND (:maxPrice IS NULL OR p.price <= :maxPrice)
-  AND (:onlyDiscount = false OR d.discountId IS NOT NULL)
+LEFT JOIN ProductEffectivePrice ep ON ep.productId = p.productId
+WHERE (:minPrice IS NULL OR ep.effectivePrice >= :minPrice)
+  AND (:maxPrice IS NULL OR ep.effectivePrice <= :maxPrice)
+  AND (:onlyDiscount = false OR ep.promotionSource IS NOT NULL)
+  AND (:minRating IS NULL OR p.ratingAvg >= :minRating)
 GROUP BY 
     p.productId, 
     p.name, 
     p.price, 
-    d.discountType, 
-    d.discountValue, 
-    p.totalPurchaseCount
-HAVING (:minRating IS NULL OR COALESCE(AVG(r.rating), 0) >= :minRating)
+    ep.discountAmount, 
+    ep.effectivePrice, 
+    p.totalPurchaseCount,
+    p.ratingAvg
 """)
     List<ProductSearchResponse> filterProducts(
             @Param("minPrice") BigDecimal minPrice,
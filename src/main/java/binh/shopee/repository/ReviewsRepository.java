@@ -1,4 +1,5 @@
 package binh.shopee.repository;
+import binh.shopee.dto.product.ReviewInfo;
 import binh.shopee.entity.Reviews;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -12,6 +13,25 @@ public interface ReviewsRepository extends JpaRepository<Reviews, Long> {
     // Get all reviews for a product
     List<Reviews> findByProducts_ProductIdAndStatus(Long productId, String status);
 
+    // Review của sản phẩm dạng DTO cho trang chi tiết (kèm tên user, không load entity)
+    @Query("""
+        SELECT new binh.shopee.dto.product.ReviewInfo(
+            r.reviewId,
+            r.rating,
+            r.title,
+            r.content,
+            r.status,
+            COALESCE(u.fullName, 'Khách ẩn danh'),
+            r.created_at
+        )
+        FROM Reviews r
+        LEFT JOIN r.users u
+        WHERE r.products.productId = :productId
+          AND r.status = :status
+        ORDER BY r.created_at DESC
+    """)
+    List<ReviewInfo> findReviewInfos(@Param("productId") Long productId, @Param("status") String status);
+
     // Get all reviews by a user - FIXED: Use createdAt instead of created_at
     @Query("SELECT r FROM Reviews r WHERE r.users.userId = :userId ORDER BY r.created_at DESC")
     List<Reviews> findByUserIdOrderByCreatedAtDesc(@Param("userId") Long userId);
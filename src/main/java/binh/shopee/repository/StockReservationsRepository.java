@@ -0,0 +1,79 @@
+package binh.shopee.repository;
+import binh.shopee.entity.StockReservations;
+import binh.shopee.entity.StockReservations.ReservationStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+@Repository
+public interface StockReservationsRepository extends JpaRepository<StockReservations, Long> {
+    @Query("""
+        SELECT r FROM StockReservations r
+        JOIN FETCH r.variant v
+        WHERE r.checkoutSessionId = :sessionId
+          AND r.status = binh.shopee.entity.StockReservations.ReservationStatus.held
+    """)
+    List<StockReservations> findHeldBySession(@Param("sessionId") String sessionId);
+
+    @Query("""
+        SELECT r FROM StockReservations r
+        JOIN FETCH r.variant v
+        WHERE r.userId = :userId
+          AND r.status = binh.shopee.entity.StockReservations.ReservationStatus.held
+    """)
+    List<StockReservations> findHeldByUser(@Param("userId") Long userId);
+
+    // Chuyển trạng thái có điều kiện: chỉ 1 bên (commit / release / sweeper) thắng
+    @Modifying
+    @Query("""
+        UPDATE StockReservations r
+        SET r.status = :to, r.orderId = :orderId, r.updatedAt = CURRENT_TIMESTAMP
+        WHERE r.reservationId = :reservationId
+          AND r.status = :from
+    """)
+    int transition(
+            @Param("reservationId") Long reservationId,
+            @Param("from") ReservationStatus from,
+            @Param("to") ReservationStatus to,
+            @Param("orderId") Long orderId
+    );
+
+    // ==================== SWEEPER ====================
+    @Modifying
+    @Query("""
+        UPDATE StockReservations r
+        SET r.status = binh.shopee.entity.StockReservations.ReservationStatus.expiring,
+            r.updatedAt = CURRENT_TIMESTAMP
+        WHERE r.status = binh.shopee.entity.StockReservations.ReservationStatus.held
+          AND r.expiresAt < :now
+    """)
+    int markExpired(@Param("now") LocalDateTime now);
+
+    // Trả reservedQty cho mọi hold đang 'expiring', gộp theo variant (1 câu UPDATE)
+    @Modifying
+    @Query(value = """
+        UPDATE i
+        SET i.reserved_qty = CASE WHEN i.reserved_qty >= x.qty THEN i.reserved_qty - x.qty ELSE 0 END,
+            i.updated_at = GETDATE()
+        FROM inventory i
+        JOIN (
+            SELECT variant_id, SUM(quantity) AS qty
+            FROM stock_reservations
+            WHERE status = 'expiring'
+            GROUP BY variant_id
+        ) x ON x.variant_id = i.variant_id
+        """, nativeQuery = true)
+    int releaseExpiringFromInventory();
+
+    @Modifying
+    @Query("""
+        UPDATE StockReservations r
+        SET r.status = binh.shopee.entity.StockReservations.ReservationStatus.released,
+            r.updatedAt = CURRENT_TIMESTAMP
+        WHERE r.status = binh.shopee.entity.StockReservations.ReservationStatus.expiring
+    """)
+    int markExpiringReleased();
+}
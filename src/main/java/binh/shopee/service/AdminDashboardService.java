@@ -2,11 +2,12 @@ package binh.shopee.service;
 import binh.shopee.dto.admin.DashboardStatsResponse;
 import binh.shopee.dto.admin.RevenueChartResponse;
 import binh.shopee.dto.admin.RevenueDataPoint;
+import binh.shopee.dto.admin.SearchQueryStatsResponse;
 import binh.shopee.dto.admin.TopProductResponse;
-import binh.shopee.repository.OrdersRepository;
+import binh.shopee.dto.product.ProductSearchResponse;
 import binh.shopee.repository.UsersRepository;
 import binh.shopee.repository.ProductsRepository;
-import binh.shopee.repository.ProductImagesRepository;
+import binh.shopee.entity.OrderRevenueRollup;
 import binh.shopee.entity.Orders;
 import binh.shopee.entity.Products;
 import lombok.RequiredArgsConstructor;
@@ -15,64 +16,52 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 @Service
 @RequiredArgsConstructor
 public class AdminDashboardService {
-    private final OrdersRepository ordersRepository;
     private final UsersRepository usersRepository;
     private final ProductsRepository productsRepository;
-    private final ProductImagesRepository productImagesRepository;
+    private final ProductImageResolver productImageResolver;
+    private final ProductSearchIndex productSearchIndex;
+    private final OrderRevenueRollupService orderRevenueRollupService;
+    private final TopSellingLeaderboard topSellingLeaderboard;
+    private final SearchQueryLog searchQueryLog;
     public DashboardStatsResponse getDashboardStats(String period) {
         LocalDateTime startDate = getStartDate(period);
         LocalDateTime endDate = LocalDateTime.now();
 
-        // ✅ FIX: Filter orders by period
-        List<Orders> allOrders = ordersRepository.findAll().stream()
-                .filter(o -> o.getCreatedAt() != null &&
-                        o.getCreatedAt().isAfter(startDate) &&
-                        o.getCreatedAt().isBefore(endDate))
-                .collect(Collectors.toList());
-
-        // Count ALL 5 statuses separately
-        long pendingOrders = allOrders.stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.pending)
-                .count();
-
-        long processingOrders = allOrders.stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.processing)
-                .count();
-
-        long shippedOrders = allOrders.stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.shipped)
-                .count();
-
-        long deliveredOrders = allOrders.stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.delivered)
-                .count();
+        // ✅ Đọc rollup (vài chục bucket) thay vì cả bảng Orders
+        Map<Orders.OrderStatus, Long> countByStatus = new EnumMap<>(Orders.OrderStatus.class);
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        for (OrderRevenueRollup bucket : orderRevenueRollupService.findBuckets(
+                getStatsGranularity(period), startDate, endDate)) {
+            countByStatus.merge(bucket.getStatus(), bucket.getOrderCount(), Long::sum);
+            // Revenue from delivered orders only (within period)
+            if (bucket.getStatus() == Orders.OrderStatus.delivered) {
+                totalRevenue = totalRevenue.add(bucket.getRevenue());
+            }
+        }
 
-        long canceledOrders = allOrders.stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.canceled)
-                .count();
+        long pendingOrders = countByStatus.getOrDefault(Orders.OrderStatus.pending, 0L);
+        long processingOrders = countByStatus.getOrDefault(Orders.OrderStatus.processing, 0L);
+        long shippedOrders = countByStatus.getOrDefault(Orders.OrderStatus.shipped, 0L);
+        long deliveredOrders = countByStatus.getOrDefault(Orders.OrderStatus.delivered, 0L);
+        long canceledOrders = countByStatus.getOrDefault(Orders.OrderStatus.canceled, 0L);
 
         // Total should be sum of all statuses
         long totalOrders = pendingOrders + processingOrders + shippedOrders +
                 deliveredOrders + canceledOrders;
 
-        // Revenue from delivered orders only (within period)
-        BigDecimal totalRevenue = allOrders.stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.delivered)
-                .map(Orders::getGrandTotal)
-                .filter(total -> total != null)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
         // ✅ Calculate revenue growth (compare with previous period)
         double revenueGrowth = calculateRevenueGrowth(period, totalRevenue);
 
@@ -97,53 +86,54 @@ public class AdminDashboardService {
         LocalDateTime startDate = getStartDate(period);
         LocalDateTime endDate = LocalDateTime.now();
 
-        // Get all delivered orders in the period
-        List<Orders> deliveredOrders = ordersRepository.findAll().stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.delivered)
-                .filter(o -> o.getCreatedAt() != null &&
-                        o.getCreatedAt().isAfter(startDate) &&
-                        o.getCreatedAt().isBefore(endDate))
-                .collect(Collectors.toList());
-
-        List<RevenueDataPoint> chartData = new ArrayList<>();
+        List<RevenueDataPoint> chartData;
 
         switch (period) {
             case "day":
                 // ✅ For "day": Show hourly data (today)
-                chartData = getHourlyChartData(deliveredOrders, startDate, endDate);
+                chartData = getHourlyChartData(
+                        deliveredRevenueByBucket(OrderRevenueRollup.Granularity.hour, startDate, endDate));
                 break;
 
             case "year":
                 // ✅ For "year": Show monthly data (this year)
-                chartData = getMonthlyChartData(deliveredOrders, startDate, endDate);
+                chartData = getMonthlyChartData(
+                        deliveredRevenueByBucket(OrderRevenueRollup.Granularity.month, startDate, endDate),
+                        startDate, endDate);
                 break;
 
             default: // "month"
                 // ✅ For "month": Show daily data (this month)
-                chartData = getDailyChartData(deliveredOrders, startDate, endDate);
+                chartData = getDailyChartData(
+                        deliveredRevenueByBucket(OrderRevenueRollup.Granularity.day, startDate, endDate),
+                        startDate, endDate);
                 break;
         }
 
         return new RevenueChartResponse(chartData);
     }
+    /**
+     * Doanh thu đơn delivered theo bucket start
+     */
+    private Map<LocalDateTime, BigDecimal> deliveredRevenueByBucket(
+            OrderRevenueRollup.Granularity granularity, LocalDateTime start, LocalDateTime end) {
+        Map<LocalDateTime, BigDecimal> revenueByBucket = new HashMap<>();
+        for (OrderRevenueRollup bucket : orderRevenueRollupService.findBuckets(granularity, start, end)) {
+            if (bucket.getStatus() == Orders.OrderStatus.delivered) {
+                revenueByBucket.merge(bucket.getBucketStart(), bucket.getRevenue(), BigDecimal::add);
+            }
+        }
+        return revenueByBucket;
+    }
     /**
      * Get hourly chart data for "day" period
      */
-    private List<RevenueDataPoint> getHourlyChartData(List<Orders> orders, LocalDateTime start, LocalDateTime end) {
-        // Group by hour
-        Map<Integer, BigDecimal> revenueByHour = orders.stream()
-                .collect(Collectors.groupingBy(
-                        o -> o.getCreatedAt().getHour(),
-                        Collectors.reducing(
-                                BigDecimal.ZERO,
-                                o -> o.getGrandTotal() != null ? o.getGrandTotal() : BigDecimal.ZERO,
-                                BigDecimal::add
-                        )
-                ));
+    private List<RevenueDataPoint> getHourlyChartData(Map<LocalDateTime, BigDecimal> revenueByHour) {
+        LocalDateTime dayStart = LocalDate.now().atStartOfDay();
 
         List<RevenueDataPoint> chartData = new ArrayList<>();
         for (int hour = 0; hour < 24; hour++) {
-            BigDecimal revenue = revenueByHour.getOrDefault(hour, BigDecimal.ZERO);
+            BigDecimal revenue = revenueByHour.getOrDefault(dayStart.plusHours(hour), BigDecimal.ZERO);
             chartData.add(new RevenueDataPoint(
                     String.format("%02d:00", hour),
                     revenue.longValue()
@@ -155,18 +145,8 @@ public class AdminDashboardService {
     /**
      * Get daily chart data for "month" period
      */
-    private List<RevenueDataPoint> getDailyChartData(List<Orders> orders, LocalDateTime start, LocalDateTime end) {
-        // Group by date
-        Map<LocalDate, BigDecimal> revenueByDate = orders.stream()
-                .collect(Collectors.groupingBy(
-                        o -> o.getCreatedAt().toLocalDate(),
-                        Collectors.reducing(
-                                BigDecimal.ZERO,
-                                o -> o.getGrandTotal() != null ? o.getGrandTotal() : BigDecimal.ZERO,
-                                BigDecimal::add
-                        )
-                ));
-
+    private List<RevenueDataPoint> getDailyChartData(Map<LocalDateTime, BigDecimal> revenueByDate,
+                                                     LocalDateTime start, LocalDateTime end) {
         List<RevenueDataPoint> chartData = new ArrayList<>();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM");
 
@@ -174,7 +154,7 @@ public class AdminDashboardService {
         LocalDate endDate = end.toLocalDate();
 
         while (!currentDate.isAfter(endDate)) {
-            BigDecimal revenue = revenueByDate.getOrDefault(currentDate, BigDecimal.ZERO);
+            BigDecimal revenue = revenueByDate.getOrDefault(currentDate.atStartOfDay(), BigDecimal.ZERO);
             chartData.add(new RevenueDataPoint(
                     currentDate.format(formatter),
                     revenue.longValue()
@@ -187,18 +167,8 @@ public class AdminDashboardService {
     /**
      * Get monthly chart data for "year" period
      */
-    private List<RevenueDataPoint> getMonthlyChartData(List<Orders> orders, LocalDateTime start, LocalDateTime end) {
-        // Group by month
-        Map<String, BigDecimal> revenueByMonth = orders.stream()
-                .collect(Collectors.groupingBy(
-                        o -> o.getCreatedAt().format(DateTimeFormatter.ofPattern("MM/yyyy")),
-                        Collectors.reducing(
-                                BigDecimal.ZERO,
-                                o -> o.getGrandTotal() != null ? o.getGrandTotal() : BigDecimal.ZERO,
-                                BigDecimal::add
-                        )
-                ));
-
+    private List<RevenueDataPoint> getMonthlyChartData(Map<LocalDateTime, BigDecimal> revenueByMonth,
+                                                       LocalDateTime start, LocalDateTime end) {
         List<RevenueDataPoint> chartData = new ArrayList<>();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/yyyy");
 
@@ -206,10 +176,9 @@ public class AdminDashboardService {
         LocalDate endMonth = end.toLocalDate();
 
         while (!currentMonth.isAfter(endMonth)) {
-            String monthKey = currentMonth.format(formatter);
-            BigDecimal revenue = revenueByMonth.getOrDefault(monthKey, BigDecimal.ZERO);
+            BigDecimal revenue = revenueByMonth.getOrDefault(currentMonth.atStartOfDay(), BigDecimal.ZERO);
             chartData.add(new RevenueDataPoint(
-                    monthKey,
+                    currentMonth.format(formatter),
                     revenue.longValue()
             ));
             currentMonth = currentMonth.plusMonths(1);
@@ -225,13 +194,8 @@ public class AdminDashboardService {
         LocalDateTime previousEnd = getStartDate(period);
 
         // Get previous period revenue
-        BigDecimal previousRevenue = ordersRepository.findAll().stream()
-                .filter(o -> o.getStatus() == Orders.OrderStatus.delivered)
-                .filter(o -> o.getCreatedAt() != null &&
-                        o.getCreatedAt().isAfter(previousStart) &&
-                        o.getCreatedAt().isBefore(previousEnd))
-                .map(Orders::getGrandTotal)
-                .filter(total -> total != null)
+        BigDecimal previousRevenue = deliveredRevenueByBucket(getStatsGranularity(period), previousStart, previousEnd)
+                .values().stream()
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
 
         if (previousRevenue.compareTo(BigDecimal.ZERO) == 0) {
@@ -240,32 +204,74 @@ public class AdminDashboardService {
 
         // Calculate percentage growth
         BigDecimal growth = currentRevenue.subtract(previousRevenue)
-                .divide(previousRevenue, 4, BigDecimal.ROUND_HALF_UP)
+                .divide(previousRevenue, 4, RoundingMode.HALF_UP)
                 .multiply(BigDecimal.valueOf(100));
 
         return growth.doubleValue();
     }
+    /**
+     * Bucket thô nhất vẫn khớp đúng ranh giới period (day -> ngày, month/year -> tháng)
+     */
+    private OrderRevenueRollup.Granularity getStatsGranularity(String period) {
+        return "day".equals(period)
+                ? OrderRevenueRollup.Granularity.day
+                : OrderRevenueRollup.Granularity.month;
+    }
+    /**
+     * Tính lại rollup doanh thu từ bảng Orders
+     */
+    public void rebuildRevenueRollups() {
+        orderRevenueRollupService.rebuildAll();
+    }
+    /**
+     * Thống kê truy vấn tìm kiếm của các cửa sổ gần nhất (SearchQueryLog)
+     */
+    public List<SearchQueryStatsResponse> getSearchQueryStats(int windows) {
+        return searchQueryLog.recentWindows(Math.min(windows, 60));
+    }
     /**
      * Get top 5 best-selling products based on totalPurchaseCount
      */
     public List<TopProductResponse> getTopProducts() {
+        if (topSellingLeaderboard.isReady() && productSearchIndex.isReady()) {
+            return getTopProductsFromLeaderboard();
+        }
         Pageable topFive = PageRequest.of(0, 5, Sort.by(Sort.Direction.DESC, "totalPurchaseCount"));
         List<Products> products = productsRepository.findAll(topFive).getContent();
+        Map<Long, String> imageUrls = productImageResolver.resolvePrimaryImageUrls(
+                products.stream().map(Products::getProductId).toList());
         return products.stream()
                 .map(product -> {
                     TopProductResponse response = new TopProductResponse();
                     response.setProductId(product.getProductId());
                     response.setName(product.getName());
                     response.setTotalSales(product.getTotalPurchaseCount() != null ? product.getTotalPurchaseCount() : 0L);
-                    // Get first image
-                    productImagesRepository.findByProductsOrderBySortOrder(product)
-                            .stream()
-                            .findFirst()
-                            .ifPresent(img -> response.setImageUrl(img.getImageUrl()));
+                    response.setImageUrl(imageUrls.get(product.getProductId()));
                     return response;
                 })
                 .collect(Collectors.toList());
     }
+
+    // Top 5 sản phẩm active từ bảng xếp hạng trong bộ nhớ (tên lấy từ search index, ảnh từ cache)
+    private List<TopProductResponse> getTopProductsFromLeaderboard() {
+        List<TopSellingLeaderboard.Entry> entries = topSellingLeaderboard.top(null, 5);
+        Map<Long, String> imageUrls = productImageResolver.resolvePrimaryImageUrls(
+                entries.stream().map(TopSellingLeaderboard.Entry::productId).toList());
+        List<TopProductResponse> result = new ArrayList<>();
+        for (TopSellingLeaderboard.Entry entry : entries) {
+            ProductSearchResponse row = productSearchIndex.get(entry.productId());
+            if (row == null) {
+                continue;
+            }
+            TopProductResponse response = new TopProductResponse();
+            response.setProductId(entry.productId());
+            response.setName(row.getName());
+            response.setTotalSales(entry.count());
+            response.setImageUrl(imageUrls.get(entry.productId()));
+            result.add(response);
+        }
+        return result;
+    }
     /**
      * ✅ FIXED: Get start date based on period
      * - "day": Start of today (00:00:00)
@@ -14,6 +14,7 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AdminOrdersService {
     private final OrdersRepository ordersRepository;
+    private final OrderRevenueRollupService orderRevenueRollupService;
     public Page<OrderAdminResponse> getOrders(int page, int size, String status, String search) {
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createdAt"));
 
@@ -75,9 +76,11 @@ public class AdminOrdersService {
     public void updateOrderStatus(Long id, String status) {
         Orders order = ordersRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
+        Orders.OrderStatus oldStatus = order.getStatus();
         // Convert status string to correct enum
         order.setStatus(Orders.OrderStatus.valueOf(status.toLowerCase()));
         ordersRepository.save(order);
+        orderRevenueRollupService.recordStatusChange(order, oldStatus);
     }
     // Map to summary response (for list view)
     private OrderAdminResponse mapToSummaryResponse(Orders order) {
@@ -10,14 +10,13 @@ import binh.shopee.entity.ProductVariants;
 import binh.shopee.entity.Products;
 import binh.shopee.repository.CartItemsRepository;
 import binh.shopee.repository.CartsRepository;
-import binh.shopee.repository.FlashSalesRepository;
 import binh.shopee.repository.ProductVariantsRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.Optional;
+import java.time.LocalDateTime;
 import binh.shopee.entity.Discounts.DiscountType;
 @Service
 @RequiredArgsConstructor
@@ -29,7 +28,7 @@ public class CartItemsService {
     private final CartsService cartsService;
     private final InventoryService inventoryService;
     private final FlashSaleUserPurchaseService flashSaleUserPurchaseService;
-    private final FlashSalesRepository flashSalesRepository;
+    private final PromotionIndex promotionIndex;
     @Transactional
     public CartQuantityResponse updateQuantity(Long cartId, Long variantId, String action) {
         CartItems item = cartItemsRepository
@@ -101,11 +100,9 @@ public class CartItemsService {
                 : product.getPrice();
 
         // ✅ Kiểm tra Flash Sale trước
-        Optional<FlashSales> activeFlashSale = flashSalesRepository
-                .findActiveFlashSaleByProductId(product.getProductId());
+        FlashSales flashSale = promotionIndex.findActiveFlashSale(product.getProductId(), LocalDateTime.now());
 
-        if (activeFlashSale.isPresent()) {
-            FlashSales flashSale = activeFlashSale.get();
+        if (flashSale != null) {
             System.out.println("⚡ Flash Sale detected when adding to cart! ID: " + flashSale.getFlashSaleId());
 
             // Kiểm tra Flash Sale còn hàng không
@@ -126,7 +123,9 @@ public class CartItemsService {
 
             if (totalRequestQty > userAvailableQty) {
                 throw new RuntimeException(
-                        "Bạn chỉ được mua tối đa 2 sản phẩm Flash Sale này. " +
+                        "Bạn chỉ được mua tối đa " +
+                                flashSaleUserPurchaseService.getMaxQuantityPerUser(flashSale.getFlashSaleId()) +
+                                " sản phẩm Flash Sale này. " +
                                 "Hiện tại bạn đã có " + currentQtyInCart + " trong giỏ hàng."
                 );
             }
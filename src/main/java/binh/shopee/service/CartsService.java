@@ -3,17 +3,16 @@ import binh.shopee.dto.cart.CartDetailResponse;
 import binh.shopee.dto.cart.CartItemResponse;
 import binh.shopee.entity.CartItems;
 import binh.shopee.entity.Carts;
-import binh.shopee.entity.ProductImages;
 import binh.shopee.entity.ProductVariants;
 import binh.shopee.repository.CartsRepository;
 import binh.shopee.repository.CartItemsRepository;
-import binh.shopee.repository.ProductImagesRepository;
 import binh.shopee.repository.ProductVariantsRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -22,7 +21,7 @@ public class CartsService {
     private final CartsRepository cartsRepository;
     private final CartItemsRepository cartItemsRepository;
     private final ProductVariantsRepository productVariantsRepository;
-    private final ProductImagesRepository productImagesRepository;
+    private final ProductImageResolver productImageResolver;
 
     @Transactional(readOnly = true)
     public CartDetailResponse getCartDetail(Long cartId) {
@@ -32,25 +31,11 @@ public class CartsService {
         }
 
         List<CartItemResponse> items = cartItemsRepository.findCartItemsByCartId(cartId);
+        Map<Long, String> imageUrls = productImageResolver.resolvePrimaryImageUrls(
+                items.stream().map(CartItemResponse::getProductId).toList());
         items.forEach(item -> {
             item.setFinalPrice(item.getPriceSnapshot().subtract(item.getDiscountSnapshot()));
-
-            try {
-                CartItems cartItem = cartItemsRepository.findById(item.getItemId()).orElse(null);
-                if (cartItem != null &&
-                        cartItem.getVariant() != null &&
-                        cartItem.getVariant().getProducts() != null) {
-
-                    Optional<ProductImages> primaryImage = productImagesRepository
-                            .findFirstByProductsAndIsPrimaryTrue(cartItem.getVariant().getProducts());
-
-                    if (primaryImage.isPresent()) {
-                        item.setImageUrl(primaryImage.get().getImageUrl());
-                    }
-                }
-            } catch (Exception e) {
-                item.setImageUrl(null);
-            }
+            item.setImageUrl(imageUrls.get(item.getProductId()));
         });
 
         cartDetail.setItems(items);
@@ -126,14 +111,9 @@ public class CartsService {
 
     @Transactional
     public void removeOrderedItemsFromCart(Long userId, List<Long> orderedVariantIds) {
-        Carts cart = cartsRepository.findByUser_UserIdAndIsActiveTrue(userId)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy giỏ hàng"));
-
-        for (Long variantId : orderedVariantIds) {
-            Optional<CartItems> item = cartItemsRepository
-                    .findByCart_CartIdAndVariant_VariantId(cart.getCartId(), variantId);
-
-            item.ifPresent(cartItemsRepository::delete);
+        if (orderedVariantIds.isEmpty()) {
+            return;
         }
+        cartItemsRepository.deleteFromActiveCart(userId, orderedVariantIds);
     }
 }
\ No newline at end of file
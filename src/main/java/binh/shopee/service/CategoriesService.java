@@ -1,6 +1,7 @@
 package binh.shopee.service;
 
 import binh.shopee.dto.category.CategoryResponse;
+import binh.shopee.dto.category.CategoryTreeResponse;
 import binh.shopee.entity.Categories;
 import binh.shopee.repository.CategoriesRepository;
 import lombok.RequiredArgsConstructor;
@@ -13,10 +14,16 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class CategoriesService {
     private final CategoriesRepository categoriesRepository;
+    private final CategoryTreeCache categoryTreeCache;
 
-    // 🔹 Lấy toàn bộ danh mục active
+    // 🔹 Lấy toàn bộ danh mục active (từ cây trong bộ nhớ)
     public List<CategoryResponse> getAllActiveCategories() {
-        return categoriesRepository.findAllActiveCategories();
+        return categoryTreeCache.getActiveCategories();
+    }
+
+    // 🔹 Cả cây danh mục active trong 1 lần gọi
+    public List<CategoryTreeResponse> getCategoryTree() {
+        return categoryTreeCache.getTree();
     }
 
     // 🔹 Lấy danh mục gốc (parent_id IS NULL)
@@ -37,7 +44,9 @@ public class CategoriesService {
 
     // 🔹 Thêm mới danh mục
     public Categories createCategory(Categories category) {
-        return categoriesRepository.save(category);
+        Categories saved = categoriesRepository.save(category);
+        categoryTreeCache.reload();
+        return saved;
     }
 
     // 🔹 Lấy chi tiết danh mục theo ID
@@ -48,5 +57,6 @@ public class CategoriesService {
     // 🔹 Xóa danh mục
     public void deleteCategory(Long categoryId) {
         categoriesRepository.deleteById(categoryId);
+        categoryTreeCache.reload();
     }
 }
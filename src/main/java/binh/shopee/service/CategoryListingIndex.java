@@ -0,0 +1,363 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.ProductCursorPage;
+import binh.shopee.dto.product.ProductListingRow;
+import binh.shopee.dto.product.ProductSearchResponse;
+import binh.shopee.repository.ProductEffectivePriceRepository;
+import binh.shopee.repository.ProductsRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Danh sách sản phẩm theo danh mục, phân trang bằng cursor (keyset) thay cho OFFSET.
+ * Mỗi danh mục giữ sẵn 1 mảng sản phẩm đã sắp cho từng kiểu sắp xếp; trang sau = binary search vị trí
+ * của cursor rồi đọc tiếp, nên trang sâu cũng rẻ như trang đầu.
+ * Refresh theo watermark (Products.updatedAt / giá áp dụng): chỉ sắp lại mảng của các danh mục có sản phẩm đổi;
+ * mỗi lần đọc lùi 1 khoảng skew để không sót dòng commit muộn nhưng có updatedAt sớm hơn watermark.
+ * Tổng số = độ dài mảng tại lần refresh gần nhất, không COUNT lại mỗi trang.
+ */
+@Service
+public class CategoryListingIndex {
+    private final ProductsRepository productsRepository;
+    private final ProductEffectivePriceRepository effectivePriceRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final Duration watermarkSkew;
+
+    // Trạng thái dùng để dựng lại, chỉ sửa trong synchronized
+    private final Map<Long, Item> items = new HashMap<>();
+    private final Map<Long, Set<Long>> categoriesByProduct = new HashMap<>();
+    private final Map<Long, Set<Long>> productsByCategory = new HashMap<>();
+    // categoryId -> mảng đã sắp (bất biến), tráo nguyên map khi refresh
+    private volatile Map<Long, Listing> listings;
+    private volatile LocalDateTime watermark;
+    private LocalDateTime lastScanAt;
+
+    public CategoryListingIndex(
+            ProductsRepository productsRepository,
+            ProductEffectivePriceRepository effectivePriceRepository,
+            ProductSearchIndex productSearchIndex,
+            @Value("${category.listing.watermark-skew-seconds:30}") long watermarkSkewSeconds) {
+        this.productsRepository = productsRepository;
+        this.effectivePriceRepository = effectivePriceRepository;
+        this.productSearchIndex = productSearchIndex;
+        this.watermarkSkew = Duration.ofSeconds(watermarkSkewSeconds);
+    }
+
+    public enum Sort {
+        PRICE_ASC(Comparator.comparing(Item::price)),
+        PRICE_DESC(Comparator.comparing(Item::price).reversed()),
+        BEST_SELLING(Comparator.comparingLong(Item::sold).reversed()),
+        RATING(Comparator.comparingDouble(Item::rating).reversed()),
+        NEWEST(Comparator.comparing(Item::createdAt).reversed());
+
+        private final Comparator<Item> order;
+
+        Sort(Comparator<Item> key) {
+            this.order = key.thenComparing(Item::productId);
+        }
+
+        public static Sort parse(String value) {
+            try {
+                return Sort.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Kiểu sắp xếp không hợp lệ: " + value);
+            }
+        }
+
+        private String key(Item item) {
+            return switch (this) {
+                case PRICE_ASC, PRICE_DESC -> item.price().toPlainString();
+                case BEST_SELLING -> String.valueOf(item.sold());
+                case RATING -> String.valueOf(item.rating());
+                case NEWEST -> item.createdAt().toString();
+            };
+        }
+
+        // Item giả chỉ có khóa sắp xếp + productId, đủ để so sánh với comparator của kiểu này
+        private Item probe(String key, Long productId) {
+            return switch (this) {
+                case PRICE_ASC, PRICE_DESC -> new Item(productId, new BigDecimal(key), 0, 0, LocalDateTime.MIN);
+                case BEST_SELLING -> new Item(productId, BigDecimal.ZERO, Long.parseLong(key), 0, LocalDateTime.MIN);
+                case RATING -> new Item(productId, BigDecimal.ZERO, 0, Double.parseDouble(key), LocalDateTime.MIN);
+                case NEWEST -> new Item(productId, BigDecimal.ZERO, 0, 0, LocalDateTime.parse(key));
+            };
+        }
+    }
+
+    private record Item(Long productId, BigDecimal price, long sold, double rating, LocalDateTime createdAt) {
+    }
+
+    private record Listing(Item[][] sorted) {
+        Item[] by(Sort sort) {
+            return sorted[sort.ordinal()];
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // Request đầu tiên sẽ tự dựng
+            System.out.println("⚠️ Không dựng được danh sách theo danh mục: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${category.listing.refresh-interval-ms:5000}")
+    public void scheduledRefresh() {
+        if (listings != null) {
+            refreshChanged();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${category.listing.rebuild-interval-ms:900000}",
+            initialDelayString = "${category.listing.rebuild-interval-ms:900000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    public synchronized void rebuild() {
+        LocalDateTime scanAt = LocalDateTime.now();
+        LocalDateTime latest = latestChange();
+        items.clear();
+        categoriesByProduct.clear();
+        productsByCategory.clear();
+        apply(productsRepository.findListingRows(null));
+        Map<Long, Listing> fresh = new HashMap<>();
+        for (Long categoryId : productsByCategory.keySet()) {
+            fresh.put(categoryId, buildListing(categoryId));
+        }
+        listings = fresh;
+        watermark = latest;
+        lastScanAt = scanAt;
+    }
+
+    /**
+     * Chỉ nạp sản phẩm đổi sau (watermark - skew) và sắp lại mảng của các danh mục chứa chúng (cũ lẫn mới).
+     * Dòng đọc lại không đổi gì thì không đụng tới danh mục của nó.
+     */
+    public synchronized void refreshChanged() {
+        LocalDateTime scanAt = LocalDateTime.now();
+        LocalDateTime latest = latestChange();
+        if (latest == null || (watermark != null && !latest.isAfter(watermark)
+                && lastScanAt != null && lastScanAt.isAfter(watermark.plus(watermarkSkew)))) {
+            return;
+        }
+        List<ProductListingRow> rows = productsRepository.findListingRows(
+                watermark != null ? watermark.minus(watermarkSkew) : null);
+        Map<Long, Item> previousItems = new HashMap<>();
+        Map<Long, Set<Long>> previousCategories = new HashMap<>();
+        for (ProductListingRow row : rows) {
+            if (!previousCategories.containsKey(row.getProductId())) {
+                previousItems.put(row.getProductId(), items.get(row.getProductId()));
+                previousCategories.put(row.getProductId(), untrack(row.getProductId()));
+            }
+        }
+        apply(rows);
+        Set<Long> affected = new HashSet<>();
+        for (Map.Entry<Long, Set<Long>> e : previousCategories.entrySet()) {
+            Set<Long> categories = categoriesByProduct.getOrDefault(e.getKey(), Set.of());
+            if (!Objects.equals(previousItems.get(e.getKey()), items.get(e.getKey()))
+                    || !e.getValue().equals(categories)) {
+                affected.addAll(e.getValue());
+                affected.addAll(categories);
+            }
+        }
+        publish(affected);
+        if (watermark == null || latest.isAfter(watermark)) {
+            watermark = latest;
+        }
+        lastScanAt = scanAt;
+    }
+
+    public synchronized void remove(Long productId) {
+        publish(untrack(productId));
+    }
+
+    /**
+     * 1 trang sau cursor (null = trang đầu) trên các danh mục categoryIds; nhiều danh mục thì trộn
+     * các mảng đã sắp và bỏ sản phẩm trùng.
+     */
+    public ProductCursorPage page(Collection<Long> categoryIds, Sort sort, String cursor, int size) {
+        Map<Long, Listing> current = listings;
+        if (current == null) {
+            synchronized (this) {
+                if (listings == null) {
+                    rebuild();
+                }
+                current = listings;
+            }
+        }
+        Item after = cursor != null && !cursor.isBlank() ? decode(sort, cursor) : null;
+
+        PriorityQueue<Source> queue = new PriorityQueue<>((a, b) -> sort.order.compare(a.head(), b.head()));
+        long total = 0;
+        for (Long categoryId : categoryIds) {
+            Listing listing = current.get(categoryId);
+            if (listing == null) {
+                continue;
+            }
+            Item[] sorted = listing.by(sort);
+            total += sorted.length;
+            int start = 0;
+            if (after != null) {
+                int found = Arrays.binarySearch(sorted, after, sort.order);
+                start = found >= 0 ? found + 1 : -found - 1;
+            }
+            if (start < sorted.length) {
+                queue.add(new Source(sorted, start));
+            }
+        }
+
+        List<ProductSearchResponse> page = new ArrayList<>(size);
+        Item last = null;
+        while (!queue.isEmpty() && page.size() < size) {
+            Source source = queue.poll();
+            Item item = source.head();
+            if (++source.position < source.items.length) {
+                queue.add(source);
+            }
+            if (last != null && last.productId().equals(item.productId())) {
+                continue; // cùng sản phẩm ở 2 danh mục con
+            }
+            last = item;
+            ProductSearchResponse row = productSearchIndex.get(item.productId());
+            if (row != null) {
+                page.add(row);
+            }
+        }
+        // Bỏ bản trùng của phần tử cuối ở danh mục khác, nếu không trang cuối vẫn có cursor dẫn tới trang rỗng
+        while (last != null && !queue.isEmpty() && last.productId().equals(queue.peek().head().productId())) {
+            Source source = queue.poll();
+            if (++source.position < source.items.length) {
+                queue.add(source);
+            }
+        }
+        return ProductCursorPage.builder()
+                .items(page)
+                .nextCursor(last != null && !queue.isEmpty() ? encode(sort, last) : null)
+                .totalApprox(total)
+                .build();
+    }
+
+    private static final class Source {
+        private final Item[] items;
+        private int position;
+
+        Source(Item[] items, int position) {
+            this.items = items;
+            this.position = position;
+        }
+
+        Item head() {
+            return items[position];
+        }
+    }
+
+    private void apply(List<ProductListingRow> rows) {
+        for (ProductListingRow row : rows) {
+            if (!Boolean.TRUE.equals(row.getActive())) {
+                continue;
+            }
+            items.put(row.getProductId(), new Item(
+                    row.getProductId(),
+                    row.getEffectivePrice() != null ? row.getEffectivePrice() : BigDecimal.ZERO,
+                    row.getTotalPurchaseCount() != null ? row.getTotalPurchaseCount() : 0,
+                    row.getRating() != null ? row.getRating() : 0,
+                    row.getCreatedAt() != null ? row.getCreatedAt() : LocalDateTime.MIN));
+            if (row.getCategoryId() != null) {
+                categoriesByProduct.computeIfAbsent(row.getProductId(), id -> new HashSet<>()).add(row.getCategoryId());
+                productsByCategory.computeIfAbsent(row.getCategoryId(), id -> new HashSet<>()).add(row.getProductId());
+            }
+        }
+    }
+
+    private Set<Long> untrack(Long productId) {
+        items.remove(productId);
+        Set<Long> categories = categoriesByProduct.remove(productId);
+        if (categories == null) {
+            return Set.of();
+        }
+        for (Long categoryId : categories) {
+            Set<Long> products = productsByCategory.get(categoryId);
+            if (products != null) {
+                products.remove(productId);
+                if (products.isEmpty()) {
+                    productsByCategory.remove(categoryId);
+                }
+            }
+        }
+        return categories;
+    }
+
+    private void publish(Set<Long> affected) {
+        if (affected.isEmpty() || listings == null) {
+            return;
+        }
+        Map<Long, Listing> next = new HashMap<>(listings);
+        for (Long categoryId : affected) {
+            if (productsByCategory.containsKey(categoryId)) {
+                next.put(categoryId, buildListing(categoryId));
+            } else {
+                next.remove(categoryId);
+            }
+        }
+        listings = next;
+    }
+
+    private Listing buildListing(Long categoryId) {
+        Item[] members = productsByCategory.get(categoryId).stream()
+                .map(items::get)
+                .toArray(Item[]::new);
+        Item[][] sorted = new Item[Sort.values().length][];
+        for (Sort sort : Sort.values()) {
+            Item[] copy = members.clone();
+            Arrays.sort(copy, sort.order);
+            sorted[sort.ordinal()] = copy;
+        }
+        return new Listing(sorted);
+    }
+
+    private LocalDateTime latestChange() {
+        LocalDateTime updatedAt = productsRepository.findLatestUpdatedAt();
+        LocalDateTime refreshedAt = effectivePriceRepository.findLatestRefreshedAt();
+        if (updatedAt == null || (refreshedAt != null && refreshedAt.isAfter(updatedAt))) {
+            return refreshedAt;
+        }
+        return updatedAt;
+    }
+
+    // Cursor = "khóa sắp xếp|productId" của phần tử cuối trang, base64 cho gọn trên URL
+    private static String encode(Sort sort, Item last) {
+        String raw = sort.key(last) + "|" + last.productId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Item decode(Sort sort, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int split = raw.lastIndexOf('|');
+            return sort.probe(raw.substring(0, split), Long.parseLong(raw.substring(split + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Cursor không hợp lệ");
+        }
+    }
+}
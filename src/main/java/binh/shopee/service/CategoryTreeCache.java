@@ -0,0 +1,134 @@
+package binh.shopee.service;
+import binh.shopee.dto.category.CategoryResponse;
+import binh.shopee.dto.category.CategoryTreeResponse;
+import binh.shopee.repository.CategoriesRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cây danh mục active trong bộ nhớ: 1 snapshot bất biến (cây + tập id con cháu của từng danh mục),
+ * dựng từ 1 query và tráo nguyên khối khi danh mục được thêm / xóa.
+ * Danh mục con của 1 danh mục inactive bị loại cùng nhánh (mỗi danh mục chỉ có 1 cha nên không thể có vòng
+ * nối tới gốc).
+ */
+@Service
+@RequiredArgsConstructor
+public class CategoryTreeCache {
+    private final CategoriesRepository categoriesRepository;
+
+    private volatile Snapshot snapshot;
+
+    private record Snapshot(List<CategoryResponse> active,
+                            List<CategoryTreeResponse> roots,
+                            Map<Long, Set<Long>> subtreeIds) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            // Request đầu tiên sẽ tự nạp
+            System.out.println("⚠️ Không nạp được cây danh mục: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Đối chiếu định kỳ với thay đổi sửa thẳng trong DB.
+     */
+    @Scheduled(fixedDelayString = "${category.tree.reload-interval-ms:300000}",
+            initialDelayString = "${category.tree.reload-interval-ms:300000}")
+    public void reload() {
+        snapshot = build(categoriesRepository.findAllActiveCategories());
+    }
+
+    public List<CategoryResponse> getActiveCategories() {
+        return current().active();
+    }
+
+    public List<CategoryTreeResponse> getTree() {
+        return current().roots();
+    }
+
+    /**
+     * categoryId + mọi danh mục con cháu active (categoryId không có trong cây -> chỉ chính nó).
+     */
+    public Set<Long> subtreeIds(Long categoryId) {
+        Set<Long> ids = current().subtreeIds().get(categoryId);
+        return ids != null ? ids : Set.of(categoryId);
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    reload();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private static Snapshot build(List<CategoryResponse> rows) {
+        // rows đã sắp theo sortOrder -> danh sách con giữ đúng thứ tự
+        Map<Long, CategoryResponse> byId = new HashMap<>();
+        Map<Long, List<Long>> childIds = new HashMap<>();
+        for (CategoryResponse row : rows) {
+            byId.put(row.getCategoryId(), row);
+        }
+        List<Long> rootIds = new ArrayList<>();
+        for (CategoryResponse row : rows) {
+            if (row.getParentId() == null) {
+                rootIds.add(row.getCategoryId());
+            } else if (byId.containsKey(row.getParentId())) {
+                childIds.computeIfAbsent(row.getParentId(), id -> new ArrayList<>()).add(row.getCategoryId());
+            }
+        }
+
+        Map<Long, Set<Long>> subtreeIds = new HashMap<>();
+        List<CategoryTreeResponse> roots = new ArrayList<>();
+        for (Long rootId : rootIds) {
+            roots.add(toNode(rootId, byId, childIds, subtreeIds));
+        }
+        // Chỉ giữ danh mục nối được tới gốc (bỏ nhánh dưới danh mục inactive)
+        List<CategoryResponse> active = rows.stream()
+                .filter(row -> subtreeIds.containsKey(row.getCategoryId()))
+                .toList();
+        return new Snapshot(active, List.copyOf(roots), Map.copyOf(subtreeIds));
+    }
+
+    private static CategoryTreeResponse toNode(Long categoryId,
+                                               Map<Long, CategoryResponse> byId,
+                                               Map<Long, List<Long>> childIds,
+                                               Map<Long, Set<Long>> subtreeIds) {
+        CategoryResponse row = byId.get(categoryId);
+        Set<Long> subtree = new LinkedHashSet<>();
+        subtree.add(categoryId);
+        List<CategoryTreeResponse> children = new ArrayList<>();
+        for (Long childId : childIds.getOrDefault(categoryId, List.of())) {
+            children.add(toNode(childId, byId, childIds, subtreeIds));
+            subtree.addAll(subtreeIds.get(childId));
+        }
+        subtreeIds.put(categoryId, Set.copyOf(subtree));
+        return CategoryTreeResponse.builder()
+                .categoryId(row.getCategoryId())
+                .name(row.getName())
+                .slug(row.getSlug())
+                .status(row.getStatus())
+                .sortOrder(row.getSortOrder())
+                .parentId(row.getParentId())
+                .children(List.copyOf(children))
+                .build();
+    }
+}
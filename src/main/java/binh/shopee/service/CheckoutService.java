@@ -1,430 +1,347 @@
 package binh.shopee.service;
-import binh.shopee.entity.FlashSales;
-import binh.shopee.repository.FlashSalesRepository;
 import org.springframework.transaction.annotation.Transactional;
-import binh.shopee.dto.discount.DiscountResult;
-import binh.shopee.dto.order.AddressResponse;
 import binh.shopee.dto.order.CheckoutItemResponse;
+import binh.shopee.dto.order.CheckoutPricingResult;
 import binh.shopee.dto.order.CheckoutRequest;
 import binh.shopee.dto.order.CheckoutResponse;
-import binh.shopee.dto.order.PaymentMethodResponse;
 import binh.shopee.dto.order.SelectAddressRequest;
 import binh.shopee.dto.order.SelectPaymentMethodRequest;
 import binh.shopee.dto.order.SelectShippingRequest;
 import binh.shopee.dto.order.SelectVoucherRequest;
-import binh.shopee.dto.order.ShippingMethodResponse;
 import binh.shopee.dto.order.VariantItem;
-import binh.shopee.entity.Discounts.DiscountType;
-import binh.shopee.entity.ProductVariants;
-import binh.shopee.entity.Products;
-import binh.shopee.repository.ProductImagesRepository;
-import binh.shopee.repository.ProductVariantsRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
-import binh.shopee.dto.voucher.VoucherResponse;
-import binh.shopee.service.FlashSaleUserPurchaseService;
 @Service
 @RequiredArgsConstructor
 public class CheckoutService {
-    private final ProductVariantsRepository variantRepo;
-    private final ProductImagesRepository productImagesRepository;
     private final PaymentMethodsService paymentMethodsService;
-    private final InventoryService inventoryService;
     private final ShippingMethodsService shippingMethodsService;
     private final VoucherService voucherService;
-    private final DiscountService discountService;
     private final AddressesService addressesService;
-    private final FlashSalesRepository flashSalesRepository;
-    private final FlashSaleUserPurchaseService flashSaleUserPurchaseService;
-    @Transactional(readOnly = true)
+    private final CheckoutPricingService checkoutPricingService;
+    private final CheckoutSessionStore checkoutSessionStore;
+    private final StockReservationService stockReservationService;
+    @Transactional
     public CheckoutResponse getCheckoutInfo(CheckoutRequest request, Long userId) {
-        // 1️⃣ Validate và tính items
-        List<CheckoutItemResponse> items = new ArrayList<>();
-        BigDecimal subtotal = BigDecimal.ZERO;
-        List<String> validationErrors = new ArrayList<>();
-
-        for (VariantItem item : request.getVariants()) {
-            try {
-                ProductVariants variant = variantRepo.findById(item.getVariantId())
-                        .orElseThrow(() -> new RuntimeException("Variant không tồn tại"));
-                Products product = variant.getProducts();
-
-                // Kiểm tra tồn kho
-                int availableQty = inventoryService.getAvailableQuantity(variant.getVariantId());
-                if (availableQty < item.getQuantity()) {
-                    validationErrors.add(
-                            "Sản phẩm '" + product.getName() + "' chỉ còn " + availableQty + " sản phẩm"
-                    );
-                    continue;
-                }
-
-                // Xác định giá base
-                BigDecimal basePrice = item.getPriceSnapshot();
-                if (basePrice == null) {
-                    basePrice = variant.getPriceOverride();
-                    if (basePrice == null) {
-                        basePrice = product.getPrice();
-                        if (basePrice == null) {
-                            basePrice = BigDecimal.ZERO;
-                        }
-                    }
-                }
-
-                // ✅ Tính discount: Ưu tiên Flash Sale > Discount thường
-                BigDecimal discountItemAmount = BigDecimal.ZERO;
-
-                // Kiểm tra Flash Sale trước
-                Optional<FlashSales> activeFlashSale = flashSalesRepository
-                        .findActiveFlashSaleByProductId(product.getProductId());
-
-                if (activeFlashSale.isPresent()) {
-                    FlashSales flashSale = activeFlashSale.get();
-                    // Tính discount từ Flash Sale
-                    if (flashSale.getDiscountType() == DiscountType.percentage) {
-                        discountItemAmount = basePrice.multiply(flashSale.getDiscountValue())
-                                .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                    } else if (flashSale.getDiscountType() == DiscountType.fixed) {
-                        discountItemAmount = flashSale.getDiscountValue();
-                    }
-                } else {
-
-                    DiscountResult discountResult = discountService.calculateVariantDiscount(
-                            variant.getVariantId()
-                    );
-                    discountItemAmount = discountResult.getDiscountAmount();
-                }
-
-                BigDecimal discountedPrice = basePrice.subtract(discountItemAmount);
-                BigDecimal lineTotal = discountedPrice.multiply(BigDecimal.valueOf(item.getQuantity()));
-                subtotal = subtotal.add(lineTotal);
-
-                CheckoutItemResponse checkoutItem = CheckoutItemResponse.builder()
-                        .variantId(variant.getVariantId())
-                        .productName(product.getName())
-                        .attribution(variant.getAttributesJson())
-                        .basePrice(basePrice)
-                        .itemDiscountTotal(discountItemAmount)
-                        .discountedPrice(discountedPrice)
-                        .quantity(item.getQuantity())
-                        .lineTotal(lineTotal)
-                        .build();
-
-                items.add(checkoutItem);
-
-            } catch (Exception e) {
-                validationErrors.add("Lỗi xử lý sản phẩm: " + e.getMessage());
-            }
+        CheckoutSession session = checkoutSessionStore.create(userId);
+        synchronized (session) {
+            // 1️⃣ Validate và tính items (batch)
+            repriceLines(session, request.getVariants());
+
+            // 2️⃣ Shipping mặc định
+            session.setAvailableShippingMethods(shippingMethodsService.getAvailableShippingMethods());
+            applyShipping(session, null);
+
+            // 3️⃣ Address mặc định
+            applyDefaultAddress(session, "Chưa có địa chỉ giao hàng. Vui lòng thêm địa chỉ.");
+
+            // 4️⃣ Danh sách payment methods
+            session.setAvailablePaymentMethods(paymentMethodsService.getAvailableMethods());
+
+            CheckoutResponse checkout = toResponse(session);
+            // Bước init chưa chọn payment -> chưa bắt buộc payment
+            checkout.setCanProceedToPayment(checkout.getValidationErrors().isEmpty() &&
+                    checkout.getSelectedAddress() != null &&
+                    !checkout.getItems().isEmpty());
+            return checkout;
         }
-
-        // 2️⃣ Lấy shipping mặc định
-        ShippingMethodResponse defaultShipping = shippingMethodsService.getDefaultShipping();
-        List<ShippingMethodResponse> availableShippingMethods =
-                shippingMethodsService.getAvailableShippingMethods();
-
-        // 3️⃣ Lấy address mặc định
-        AddressResponse defaultAddress = null;
-        try {
-            defaultAddress = addressesService.getDefaultAddress(userId);
-        } catch (Exception e) {
-            validationErrors.add("Chưa có địa chỉ giao hàng. Vui lòng thêm địa chỉ.");
-        }
-
-        // 4️⃣ Lấy danh sách payment methods
-        List<PaymentMethodResponse> availablePaymentMethods =
-                paymentMethodsService.getAvailableMethods();
-
-        // 5️⃣ Tính toán giá cuối
-        BigDecimal shippingFee = defaultShipping.getBaseFee();
-        BigDecimal orderDiscount = BigDecimal.ZERO;
-        BigDecimal finalTotal = calculateFinalTotal(subtotal, shippingFee, orderDiscount);
-
-        // 6️⃣ Validate có thể thanh toán không
-        Boolean canProceedToPayment = validationErrors.isEmpty() &&
-                defaultAddress != null &&
-                !items.isEmpty();
-
-        return CheckoutResponse.builder()
-                .items(items)
-                .subtotal(subtotal)
-                .availableShippingMethods(availableShippingMethods)
-                .selectedShipping(defaultShipping)
-                .shippingFee(shippingFee)
-                .selectedAddress(defaultAddress)
-                .selectedVoucher(null)
-                .orderDiscount(orderDiscount)
-                .availablePaymentMethods(availablePaymentMethods)
-                .selectedPayment(null)
-                .finalTotal(finalTotal)
-                .canProceedToPayment(canProceedToPayment)
-                .validationErrors(validationErrors)
-                .build();
     }
-    @Transactional(readOnly = true)
+
+    /*
+     * Các bước select-*: nếu có checkoutSessionId hợp lệ thì chỉ tính lại phần vừa đổi
+     * (items chỉ tính lại khi variants gửi lên khác giỏ đã lưu). Không có session
+     * (hết hạn, restart, client cũ) thì build lại toàn bộ từ request như trước,
+     * không lưu session và không giữ thêm hàng (chỉ /init mới giữ hàng).
+     * Các bước đều là transaction ghi: nhả hold cũ + giữ lại chạy chung 1 transaction (1 connection),
+     * hàng vừa nhả vẫn bị khóa row tới lúc commit nên session khác không chen vào lấy mất.
+     */
+    @Transactional
     public CheckoutResponse selectAddress(SelectAddressRequest request, Long userId) {
-        CheckoutResponse checkout = buildCheckoutFromRequest(
-                request.getVariants(),
-                request.getShippingMethodId(),
-                request.getVoucherCode(),
-                request.getPaymentMethodCode(),
-                userId
-        );
-        // Cập nhật address
-        AddressResponse addressResponse = addressesService.getAddressByUser(
-                request.getAddressId(),
-                userId
-        );
-        checkout.setSelectedAddress(addressResponse);
-        // Validate lại
-        checkout.setCanProceedToPayment(validateCheckout(checkout));
-        return checkout;
+        CheckoutSession session = checkoutSessionStore.find(request.getSessionId(), userId);
+        if (session == null) {
+            session = openSession(
+                    request.getVariants(),
+                    request.getShippingMethodId(),
+                    request.getVoucherCode(),
+                    request.getPaymentMethodCode(),
+                    userId
+            );
+        }
+        synchronized (session) {
+            syncLines(session, request.getVariants());
+            // Cập nhật address
+            session.setSelectedAddress(addressesService.getAddressByUser(request.getAddressId(), userId));
+            session.setAddressError(null);
+            return toResponse(session);
+        }
     }
-    @Transactional(readOnly = true)
+    @Transactional
     public CheckoutResponse selectShipping(SelectShippingRequest request, Long userId) {
-        // Build checkout với shipping mới
-        CheckoutResponse checkout = buildCheckoutFromRequest(
-                request.getVariants(),
-                request.getShippingMethodId(),
-                request.getVoucherCode(),
-                request.getPaymentMethodCode(),
-                userId
-        );
-        checkout.setCanProceedToPayment(validateCheckout(checkout));
-        return checkout;
+        CheckoutSession session = checkoutSessionStore.find(request.getSessionId(), userId);
+        if (session == null) {
+            session = openSession(
+                    request.getVariants(),
+                    request.getShippingMethodId(),
+                    request.getVoucherCode(),
+                    request.getPaymentMethodCode(),
+                    userId
+            );
+            return toResponse(session);
+        }
+        synchronized (session) {
+            syncLines(session, request.getVariants());
+            applyShipping(session, request.getShippingMethodId());
+            return toResponse(session);
+        }
     }
-    @Transactional(readOnly = true)
+    @Transactional
     public CheckoutResponse selectVoucher(SelectVoucherRequest request, Long userId) {
-        CheckoutResponse checkout = buildCheckoutFromRequest(
-                request.getVariants(),
-                request.getShippingMethodId(),
-                request.getVouchercode(),
-                request.getPaymentMethodCode(),
-                userId
-        );
-        return checkout;
+        CheckoutSession session = checkoutSessionStore.find(request.getSessionId(), userId);
+        if (session == null) {
+            session = openSession(
+                    request.getVariants(),
+                    request.getShippingMethodId(),
+                    request.getVouchercode(),
+                    request.getPaymentMethodCode(),
+                    userId
+            );
+            return toResponse(session);
+        }
+        synchronized (session) {
+            // syncLines đã tính lại voucher nếu subtotal đổi -> chỉ áp voucher mới khi khác voucher cũ
+            syncLines(session, request.getVariants());
+            if (!sameCode(session.getVoucherCode(), request.getVouchercode())) {
+                applyVoucher(session, request.getVouchercode());
+            }
+            return toResponse(session);
+        }
     }
-    @Transactional(readOnly = true)
+    @Transactional
     public CheckoutResponse selectPaymentMethod(SelectPaymentMethodRequest request, Long userId) {
-        // Build checkout với payment method mới
-        CheckoutResponse checkout = buildCheckoutFromRequest(
-                request.getVariants(),
-                request.getShippingMethodId(),
-                request.getVoucherCode(),
-                request.getCode(),
-                userId
-        );
-        return checkout;
+        CheckoutSession session = checkoutSessionStore.find(request.getSessionId(), userId);
+        if (session == null) {
+            session = openSession(
+                    request.getVariants(),
+                    request.getShippingMethodId(),
+                    request.getVoucherCode(),
+                    request.getCode(),
+                    userId
+            );
+            return toResponse(session);
+        }
+        synchronized (session) {
+            syncLines(session, request.getVariants());
+            applyPayment(session, request.getCode());
+            return toResponse(session);
+        }
     }
+
+    /**
+     * Build checkout đầy đủ, không lưu session (dùng khi tạo đơn: luôn tính lại giá).
+     */
     public CheckoutResponse buildCheckoutFromRequest(
             List<VariantItem> variants,
             Long shippingMethodId,
             String voucherCode,
             String paymentMethodCode,
             Long userId) {
-        System.out.println("🔍 ===== START buildCheckoutFromRequest =====");
-        System.out.println("📦 Received variants: " + variants);
-        System.out.println("👤 UserId: " + userId);
-
-        List<CheckoutItemResponse> items = new ArrayList<>();
-        BigDecimal subtotal = BigDecimal.ZERO;
-        List<String> validationErrors = new ArrayList<>();
-
-        for (VariantItem item : variants) {
-            System.out.println("\n🔄 Processing variant: " + item.getVariantId() + " (quantity: " + item.getQuantity() + ")");
-            try {
-                // 1. Tìm variant
-                System.out.println("  ➡️ Finding variant in database...");
-                ProductVariants variant = variantRepo.findById(item.getVariantId())
-                        .orElseThrow(() -> new RuntimeException("Variant không tồn tại"));
-                System.out.println("  ✅ Found variant: " + variant.getVariantId());
+        return buildCheckoutFromRequest(variants, shippingMethodId, voucherCode, paymentMethodCode, userId, null);
+    }
 
-                Products product = variant.getProducts();
-                System.out.println("  ✅ Product: " + product.getName());
+    /**
+     * Như trên; hàng mà checkoutSessionId đang giữ được tính là còn khả dụng cho chính đơn này.
+     */
+    public CheckoutResponse buildCheckoutFromRequest(
+            List<VariantItem> variants,
+            Long shippingMethodId,
+            String voucherCode,
+            String paymentMethodCode,
+            Long userId,
+            String checkoutSessionId) {
+        CheckoutSession session = new CheckoutSession(null, userId);
+        session.setHeldQty(stockReservationService.getHeldQuantities(checkoutSessionId));
+        fillSession(session, variants, shippingMethodId, voucherCode, paymentMethodCode);
+        return toResponse(session);
+    }
 
-                // 2. Kiểm tra inventory
-                System.out.println("  ➡️ Checking inventory...");
-                int availableQty = inventoryService.getAvailableQuantity(variant.getVariantId());
-                System.out.println("  ✅ Available quantity: " + availableQty);
+    private CheckoutSession openSession(
+            List<VariantItem> variants,
+            Long shippingMethodId,
+            String voucherCode,
+            String paymentMethodCode,
+            Long userId) {
+        // Session tạm không id -> repriceLines không giữ hàng; hàng user đang giữ ở session khác vẫn tính là khả dụng
+        CheckoutSession session = new CheckoutSession(null, userId);
+        session.setHeldQty(stockReservationService.getHeldQuantitiesByUser(userId));
+        fillSession(session, variants, shippingMethodId, voucherCode, paymentMethodCode);
+        return session;
+    }
 
-                if (availableQty < item.getQuantity()) {
-                    String error = "Sản phẩm '" + product.getName() + "' chỉ còn " + availableQty + " sản phẩm";
-                    System.out.println("  ⚠️ " + error);
-                    validationErrors.add(error);
-                    continue;
-                }
+    private void fillSession(
+            CheckoutSession session,
+            List<VariantItem> variants,
+            Long shippingMethodId,
+            String voucherCode,
+            String paymentMethodCode) {
+        System.out.println("🔍 ===== START build checkout =====");
+        System.out.println("📦 Received variants: " + variants);
+        System.out.println("👤 UserId: " + session.getUserId());
 
-                // 3. Xác định base price
-                BigDecimal basePrice = item.getPriceSnapshot();
-                if (basePrice == null) {
-                    basePrice = variant.getPriceOverride();
-                    if (basePrice == null) {
-                        basePrice = product.getPrice();
-                        if (basePrice == null) {
-                            basePrice = BigDecimal.ZERO;
-                        }
-                    }
-                    System.out.println("  ⚠️ priceSnapshot not provided, using fallback: " + basePrice);
-                } else {
-                    System.out.println("  ✅ Using priceSnapshot from cart: " + basePrice);
-                }
+        // 1️⃣ Tính giá items: load cả giỏ bằng vài query IN rồi tính trong bộ nhớ
+        repriceLines(session, variants);
 
-                // 4. Tính discount: Ưu tiên Flash Sale > Discount thường
-                System.out.println("  ➡️ Calculating discount...");
-                BigDecimal discountItemAmount = BigDecimal.ZERO;
+        // 2️⃣ Xử lý shipping
+        session.setAvailableShippingMethods(shippingMethodsService.getAvailableShippingMethods());
+        applyShipping(session, shippingMethodId);
 
-                // Kiểm tra Flash Sale trước
-                Optional<FlashSales> activeFlashSale = flashSalesRepository
-                        .findActiveFlashSaleByProductId(product.getProductId());
+        // 3️⃣ Xử lý voucher (cần subtotal)
+        applyVoucher(session, voucherCode);
 
-                if (activeFlashSale.isPresent()) {
-                    FlashSales flashSale = activeFlashSale.get();
-                    System.out.println("  ⚡ Flash Sale detected! ID: " + flashSale.getFlashSaleId());
-                    int userAvailableQty = flashSaleUserPurchaseService.getAvailableQuantityForUser(
-                            flashSale.getFlashSaleId(),
-                            userId
-                    );
+        // 4️⃣ Xử lý address
+        applyDefaultAddress(session, "Chưa có địa chỉ giao hàng");
 
-                    System.out.println("  ⚡ User can buy: " + userAvailableQty + " more items");
+        // 5️⃣ Xử lý payment method
+        session.setAvailablePaymentMethods(paymentMethodsService.getAvailableMethods());
+        applyPayment(session, paymentMethodCode);
 
-                    if (item.getQuantity() > userAvailableQty) {
-                        validationErrors.add(
-                                "Bạn chỉ được mua tối đa " + userAvailableQty +
-                                        " sản phẩm Flash Sale '" + product.getName() + "'"
-                        );
-                        continue;
-                    }
+        System.out.println("🔍 ===== END build checkout =====\n");
+    }
 
+    /**
+     * Chỉ tính lại items khi client gửi variants khác giỏ đang lưu; subtotal đổi thì tính lại voucher.
+     */
+    private void syncLines(CheckoutSession session, List<VariantItem> variants) {
+        if (variants == null || variants.equals(session.getVariants())) {
+            return;
+        }
+        repriceLines(session, variants);
+        applyVoucher(session, session.getVoucherCode());
+    }
 
-                    // Tính discount từ Flash Sale
-                    if (flashSale.getDiscountType() == DiscountType.percentage) {
-                        discountItemAmount = basePrice.multiply(flashSale.getDiscountValue())
-                                .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                        System.out.println("  ⚡ Flash Sale percentage: " + flashSale.getDiscountValue() + "%");
-                    } else if (flashSale.getDiscountType() == DiscountType.fixed) {
-                        discountItemAmount = flashSale.getDiscountValue();
-                        System.out.println("  ⚡ Flash Sale fixed amount: " + flashSale.getDiscountValue());
-                    }
-                    System.out.println("  ⚡ Flash Sale discount applied: " + discountItemAmount);
-                } else {
-                    // Nếu không có Flash Sale, tính discount thường
-                    System.out.println("  ➡️ No Flash Sale, checking regular discount...");
-                    DiscountResult discountResult = discountService.calculateVariantDiscount(
-                            variant.getVariantId()
-                    );
-                    discountItemAmount = discountResult.getDiscountAmount();
-                    System.out.println("  ✅ Regular discount: " + discountItemAmount);
+    private void repriceLines(CheckoutSession session, List<VariantItem> variants) {
+        List<VariantItem> copy = new ArrayList<>();
+        if (variants != null) {
+            for (VariantItem item : variants) {
+                copy.add(new VariantItem(item.getVariantId(), item.getQuantity(), item.getPriceSnapshot()));
+            }
+        }
+        if (session.getSessionId() != null) {
+            // Giỏ đổi / checkout mới -> bỏ mọi hold cũ của user trước khi tính lại (hold cũ không chiếm phần khả dụng),
+            // cùng transaction với bước giữ hàng bên dưới
+            stockReservationService.releaseUser(session.getUserId());
+        }
+        CheckoutPricingResult pricing = checkoutPricingService.priceItems(
+                copy, session.getUserId(), true, session.getHeldQty());
+        if (session.getSessionId() != null && !pricing.getItems().isEmpty()) {
+            // 🔒 Giữ hàng cho các dòng hợp lệ tới khi đặt hàng / hết hạn
+            List<Long> failed = stockReservationService.holdForSession(
+                    session.getSessionId(), session.getUserId(), pricing.getItems());
+            for (CheckoutItemResponse item : pricing.getItems()) {
+                if (failed.contains(item.getVariantId())) {
+                    pricing.getValidationErrors().add("Sản phẩm '" + item.getProductName() + "' vừa hết hàng");
                 }
-
-                BigDecimal discountedPrice = basePrice.subtract(discountItemAmount);
-                BigDecimal lineTotal = discountedPrice.multiply(BigDecimal.valueOf(item.getQuantity()));
-                subtotal = subtotal.add(lineTotal);
-
-                System.out.println("  ✅ Line total: " + lineTotal + " | Running subtotal: " + subtotal);
-
-                CheckoutItemResponse checkoutItem = CheckoutItemResponse.builder()
-                        .variantId(variant.getVariantId())
-                        .productName(product.getName())
-                        .attribution(variant.getAttributesJson())
-                        .basePrice(basePrice)
-                        .itemDiscountTotal(discountItemAmount)
-                        .discountedPrice(discountedPrice)
-                        .quantity(item.getQuantity())
-                        .lineTotal(lineTotal)
-                        .build();
-
-                items.add(checkoutItem);
-                System.out.println("  ✅ Item added to checkout");
-
-            } catch (Exception e) {
-                System.out.println("  ❌ ERROR processing variant " + item.getVariantId() + ":");
-                System.out.println("     Message: " + e.getMessage());
-                System.out.println("     Type: " + e.getClass().getName());
-                e.printStackTrace();
-                validationErrors.add("Lỗi xử lý sản phẩm: " + e.getMessage());
             }
         }
+        pricing.getValidationErrors().forEach(error -> System.out.println("  ⚠️ " + error));
+        System.out.println("📊 Items: " + pricing.getItems().size() + " | 💰 Subtotal: " + pricing.getSubtotal());
+        session.setVariants(copy);
+        session.setPricing(pricing);
+    }
 
-        System.out.println("\n📊 Final items count: " + items.size());
-        System.out.println("💰 Final subtotal: " + subtotal);
-
-        // 2️⃣ Xử lý shipping
-        ShippingMethodResponse selectedShipping;
+    private void applyShipping(CheckoutSession session, Long shippingMethodId) {
         if (shippingMethodId != null) {
-            selectedShipping = shippingMethodsService.getById(shippingMethodId);
+            session.setSelectedShipping(shippingMethodsService.getById(shippingMethodId));
         } else {
-            selectedShipping = shippingMethodsService.getDefaultShipping();
+            session.setSelectedShipping(shippingMethodsService.getDefaultShipping());
         }
-        BigDecimal shippingFee = selectedShipping.getBaseFee();
+    }
 
-        // 3️⃣ Xử lý voucher
-        VoucherResponse selectedVoucher = null;
-        BigDecimal orderDiscount = BigDecimal.ZERO;
-        if (voucherCode != null && !voucherCode.trim().isEmpty()) {
-            try {
-                System.out.println("\n🎫 Calculating voucher discount for: " + voucherCode);
-                System.out.println("   Subtotal for voucher: " + subtotal);
-                orderDiscount = voucherService.calculateDiscount(voucherCode, subtotal);
-                System.out.println("   ✅ Voucher discount: " + orderDiscount);
-                selectedVoucher = voucherService.getVoucherByCode(voucherCode);
-            } catch (Exception e) {
-                System.out.println("   ❌ Voucher error: " + e.getMessage());
-                validationErrors.add("Voucher không hợp lệ: " + e.getMessage());
-            }
+    private void applyVoucher(CheckoutSession session, String voucherCode) {
+        session.setVoucherCode(voucherCode);
+        session.setSelectedVoucher(null);
+        session.setOrderDiscount(BigDecimal.ZERO);
+        session.setVoucherError(null);
+        if (voucherCode == null || voucherCode.trim().isEmpty()) {
+            return;
+        }
+        try {
+            System.out.println("🎫 Calculating voucher discount for: " + voucherCode);
+            session.setOrderDiscount(voucherService.calculateDiscount(voucherCode, session.getPricing().getSubtotal()));
+            session.setSelectedVoucher(voucherService.getVoucherByCode(voucherCode));
+            System.out.println("   ✅ Voucher discount: " + session.getOrderDiscount());
+        } catch (Exception e) {
+            System.out.println("   ❌ Voucher error: " + e.getMessage());
+            session.setOrderDiscount(BigDecimal.ZERO);
+            session.setSelectedVoucher(null);
+            session.setVoucherError("Voucher không hợp lệ: " + e.getMessage());
         }
+    }
 
-        // 4️⃣ Xử lý address
-        AddressResponse selectedAddress = null;
+    private void applyDefaultAddress(CheckoutSession session, String missingAddressError) {
         try {
-            selectedAddress = addressesService.getDefaultAddress(userId);
+            session.setSelectedAddress(addressesService.getDefaultAddress(session.getUserId()));
+            session.setAddressError(null);
         } catch (Exception e) {
-            validationErrors.add("Chưa có địa chỉ giao hàng");
+            session.setSelectedAddress(null);
+            session.setAddressError(missingAddressError);
         }
+    }
 
-        // 5️⃣ Xử lý payment method
-        PaymentMethodResponse selectedPayment = null;
+    private void applyPayment(CheckoutSession session, String paymentMethodCode) {
+        session.setSelectedPayment(null);
+        session.setPaymentError(null);
         if (paymentMethodCode != null && !paymentMethodCode.trim().isEmpty()) {
             try {
-                selectedPayment = paymentMethodsService.getByCode(paymentMethodCode);
+                session.setSelectedPayment(paymentMethodsService.getByCode(paymentMethodCode));
             } catch (Exception e) {
-                validationErrors.add("Phương thức thanh toán không hợp lệ");
+                session.setPaymentError("Phương thức thanh toán không hợp lệ");
             }
         }
+    }
 
-        // 6️⃣ Tính final total
-        BigDecimal finalTotal = calculateFinalTotal(subtotal, shippingFee, orderDiscount);
+    private CheckoutResponse toResponse(CheckoutSession session) {
+        CheckoutPricingResult pricing = session.getPricing();
+        List<String> validationErrors = new ArrayList<>(pricing.getValidationErrors());
+        if (session.getVoucherError() != null) {
+            validationErrors.add(session.getVoucherError());
+        }
+        if (session.getAddressError() != null) {
+            validationErrors.add(session.getAddressError());
+        }
+        if (session.getPaymentError() != null) {
+            validationErrors.add(session.getPaymentError());
+        }
 
-        System.out.println("\n💵 Final calculation:");
-        System.out.println("   Subtotal: " + subtotal);
-        System.out.println("   Shipping: " + shippingFee);
-        System.out.println("   Discount: " + orderDiscount);
-        System.out.println("   Final Total: " + finalTotal);
-        System.out.println("🔍 ===== END buildCheckoutFromRequest =====\n");
+        BigDecimal shippingFee = session.getSelectedShipping().getBaseFee();
+        BigDecimal finalTotal = calculateFinalTotal(pricing.getSubtotal(), shippingFee, session.getOrderDiscount());
 
-        // 7️⃣ Build response
         CheckoutResponse checkout = CheckoutResponse.builder()
-                .items(items)
-                .subtotal(subtotal)
-                .availableShippingMethods(shippingMethodsService.getAvailableShippingMethods())
-                .selectedShipping(selectedShipping)
+                .checkoutSessionId(session.getSessionId())
+                .items(new ArrayList<>(pricing.getItems()))
+                .subtotal(pricing.getSubtotal())
+                .availableShippingMethods(session.getAvailableShippingMethods())
+                .selectedShipping(session.getSelectedShipping())
                 .shippingFee(shippingFee)
-                .selectedAddress(selectedAddress)
-                .selectedVoucher(selectedVoucher)
-                .orderDiscount(orderDiscount)
-                .availablePaymentMethods(paymentMethodsService.getAvailableMethods())
-                .selectedPayment(selectedPayment)
+                .selectedAddress(session.getSelectedAddress())
+                .selectedVoucher(session.getSelectedVoucher())
+                .orderDiscount(session.getOrderDiscount())
+                .availablePaymentMethods(session.getAvailablePaymentMethods())
+                .selectedPayment(session.getSelectedPayment())
                 .finalTotal(finalTotal)
                 .validationErrors(validationErrors)
                 .build();
-
-        // 8️⃣ Validate
         checkout.setCanProceedToPayment(validateCheckout(checkout));
-
         return checkout;
     }
+
+    private boolean sameCode(String a, String b) {
+        boolean aBlank = a == null || a.trim().isEmpty();
+        boolean bBlank = b == null || b.trim().isEmpty();
+        return aBlank ? bBlank : !bBlank && a.trim().equals(b.trim());
+    }
     private BigDecimal calculateFinalTotal(
             BigDecimal subtotal,
             BigDecimal shippingFee,
@@ -441,4 +358,4 @@ public class CheckoutService {
                 !checkout.getItems().isEmpty() &&
                 checkout.getFinalTotal().compareTo(BigDecimal.ZERO) > 0;
     }
-}
\ No newline at end of file
+}
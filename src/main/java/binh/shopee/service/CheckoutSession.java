@@ -0,0 +1,54 @@
+package binh.shopee.service;
+import binh.shopee.dto.order.AddressResponse;
+import binh.shopee.dto.order.CheckoutPricingResult;
+import binh.shopee.dto.order.PaymentMethodResponse;
+import binh.shopee.dto.order.ShippingMethodResponse;
+import binh.shopee.dto.order.VariantItem;
+import binh.shopee.dto.voucher.VoucherResponse;
+import lombok.Getter;
+import lombok.Setter;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trạng thái checkout phía server, giữ giữa các bước select-*.
+ * Mỗi phần (items, shipping, voucher, address, payment) được tính riêng,
+ * bước nào đổi thì chỉ tính lại phần đó.
+ */
+@Getter
+@Setter
+public class CheckoutSession {
+    private final String sessionId;
+    private final Long userId;
+
+    // Items đã tính giá + bản copy variants dùng để phát hiện giỏ thay đổi
+    private List<VariantItem> variants;
+    private CheckoutPricingResult pricing;
+    // Hàng chính checkout / user này đang giữ, cộng lại vào phần khả dụng (tạo đơn, select-* không có session)
+    private Map<Long, Integer> heldQty = Map.of();
+
+    // Shipping
+    private List<ShippingMethodResponse> availableShippingMethods;
+    private ShippingMethodResponse selectedShipping;
+
+    // Voucher (tính lại khi đổi voucher hoặc subtotal đổi)
+    private String voucherCode;
+    private VoucherResponse selectedVoucher;
+    private BigDecimal orderDiscount = BigDecimal.ZERO;
+    private String voucherError;
+
+    // Address
+    private AddressResponse selectedAddress;
+    private String addressError;
+
+    // Payment
+    private List<PaymentMethodResponse> availablePaymentMethods;
+    private PaymentMethodResponse selectedPayment;
+    private String paymentError;
+
+    public CheckoutSession(String sessionId, Long userId) {
+        this.sessionId = sessionId;
+        this.userId = userId;
+    }
+}
@@ -0,0 +1,53 @@
+package binh.shopee.service;
+import binh.shopee.util.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Lưu CheckoutSession trong bộ nhớ: giới hạn số session, hết hạn sau một khoảng không dùng.
+ * Session mất (hết hạn / restart) thì CheckoutService tự build lại từ request.
+ */
+@Service
+public class CheckoutSessionStore {
+    private final BoundedTtlCache<String, CheckoutSession> sessions;
+
+    public CheckoutSessionStore(
+            @Value("${checkout.session.max-sessions:20000}") int maxSessions,
+            @Value("${checkout.session.ttl-minutes:30}") long ttlMinutes) {
+        this.sessions = new BoundedTtlCache<>(maxSessions, Duration.ofMinutes(ttlMinutes));
+    }
+
+    public CheckoutSession create(Long userId) {
+        CheckoutSession session = new CheckoutSession(UUID.randomUUID().toString(), userId);
+        sessions.put(session.getSessionId(), session);
+        return session;
+    }
+
+    /**
+     * @return session còn hạn và thuộc về user, ngược lại null
+     */
+    public CheckoutSession find(String sessionId, Long userId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return null;
+        }
+        CheckoutSession session = sessions.get(sessionId);
+        if (session == null || !session.getUserId().equals(userId)) {
+            return null;
+        }
+        return session;
+    }
+
+    public void remove(String sessionId) {
+        if (sessionId != null) {
+            sessions.remove(sessionId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${checkout.session.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        sessions.purgeExpired();
+    }
+}
@@ -2,41 +2,42 @@ package binh.shopee.service;
 import binh.shopee.entity.Discounts;
 import binh.shopee.entity.ProductVariants;
 import binh.shopee.entity.Products;
-import binh.shopee.repository.DiscountsRepository;
 import binh.shopee.repository.ProductVariantsRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import binh.shopee.dto.discount.DiscountResult;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Optional;
 @Service
 @RequiredArgsConstructor
 public class DiscountService {
-    private final DiscountsRepository discountsRepository;
+    private final PromotionIndex promotionIndex;
     private final ProductVariantsRepository productVariantsRepo;
 
     public DiscountResult calculateVariantDiscount(Long variantId) {
         ProductVariants variant = productVariantsRepo.findById(variantId)
                 .orElseThrow();
         Products product = variant.getProducts();
-        Optional<Discounts> discountOpt =
-                discountsRepository.findActiveDiscountByProductId(
-                        product.getProductId(),
-                        LocalDateTime.now()
-                );
+        Discounts discount = promotionIndex.findActiveDiscount(product.getProductId(), LocalDateTime.now());
+        return calculateVariantDiscount(variant, discount);
+    }
+
+    /**
+     * Tính discount từ variant + discount đã load sẵn (không query thêm).
+     * discount = null nghĩa là sản phẩm không có discount đang chạy.
+     */
+    public DiscountResult calculateVariantDiscount(ProductVariants variant, Discounts discount) {
         // FIX: Handle null priceOverride - use product base price as fallback
         BigDecimal originalPrice = variant.getPriceOverride();
         if (originalPrice == null) {
-            originalPrice = product.getPrice(); // Fallback to product's base price
+            originalPrice = variant.getProducts().getPrice(); // Fallback to product's base price
             if (originalPrice == null) {
                 originalPrice = BigDecimal.ZERO; // Ultimate fallback
             }
         }
 
         BigDecimal discountAmount = BigDecimal.ZERO;
-        if (discountOpt.isPresent()) {
-            Discounts discount = discountOpt.get();
+        if (discount != null) {
             if (discount.getDiscountType() == Discounts.DiscountType.percentage) {
                 discountAmount = originalPrice
                         .multiply(discount.getDiscountValue())
@@ -0,0 +1,263 @@
+package binh.shopee.service;
+import binh.shopee.dto.flashsale.FlashSalePurchaseRow;
+import binh.shopee.entity.FlashSales;
+import binh.shopee.repository.FlashSalesRepository;
+import binh.shopee.repository.OrderItemsRepository;
+import binh.shopee.util.TransactionCallbacks;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cấp suất Flash Sale trong bộ nhớ thay cho PESSIMISTIC_WRITE trên từng lượt mua.
+ * Mỗi flash sale đang chạy có một bộ đếm remaining (AtomicInteger): admit/reject O(1), không khóa row.
+ * Số đã bán được ghi dồn xuống FlashSales theo chu kỳ (write-behind) và khi tắt app.
+ * Lúc load lại (restart) sold được đối chiếu với tổng số lượng trên các dòng đơn mua giá flash sale, chưa hủy
+ * (không dùng flash_sale_user_purchases vì bảng đó cũng write-behind, crash là mất cùng lúc).
+ * Hủy đơn trả suất thẳng xuống DB trong transaction hủy đơn để sold luôn khớp với nguồn đối chiếu đó.
+ * Giả định chỉ chạy 1 instance.
+ */
+@Service
+@RequiredArgsConstructor
+public class FlashSaleAdmissionEngine {
+    private final FlashSalesRepository flashSalesRepository;
+    private final OrderItemsRepository orderItemsRepository;
+    private final FlashSaleUserPurchaseService flashSaleUserPurchaseService;
+    private final ProductEffectivePriceService productEffectivePriceService;
+
+    private final Map<Long, SaleCounter> counters = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            refreshActiveSales();
+        } catch (RuntimeException e) {
+            // Lượt mua đầu tiên sẽ load lazy
+            System.out.println("⚠️ Không load được flash sale đang chạy: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nạp flash sale vừa bắt đầu, gỡ flash sale đã kết thúc (sau khi ghi phần còn lại).
+     */
+    @Scheduled(fixedDelayString = "${flashsale.admission.refresh-interval-ms:10000}")
+    public void refreshActiveSales() {
+        LocalDateTime now = LocalDateTime.now();
+        for (FlashSales flashSale : flashSalesRepository.findActiveFlashSales(FlashSales.FlashSaleStatus.active, now)) {
+            if (!counters.containsKey(flashSale.getFlashSaleId())) {
+                install(activate(flashSale));
+            }
+        }
+        counters.values().removeIf(counter -> {
+            if (!counter.endTime.isAfter(now)) {
+                flushCounter(counter);
+                if (counter.pendingSold.get() == 0) {
+                    flashSaleUserPurchaseService.retire(counter.flashSaleId);
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Giữ buyQuantity suất của flash sale. Transaction hiện tại rollback -> tự trả lại suất.
+     */
+    public void admit(Long flashSaleId, int buyQuantity) {
+        SaleCounter counter = counters.get(flashSaleId);
+        if (counter == null) {
+            counter = install(load(flashSaleId));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(counter.startTime) || now.isAfter(counter.endTime)) {
+            throw new RuntimeException("Flash sale is not in valid time");
+        }
+
+        AtomicInteger remaining = counter.remaining;
+        int current;
+        do {
+            current = remaining.get();
+            if (current < buyQuantity) {
+                throw new RuntimeException("Not enough flash sale quantity");
+            }
+        } while (!remaining.compareAndSet(current, current - buyQuantity));
+        counter.pendingSold.addAndGet(buyQuantity);
+
+        SaleCounter admitted = counter;
+        TransactionCallbacks.afterRollback(() -> release(admitted, buyQuantity));
+    }
+
+    /**
+     * Số suất còn lại theo bộ đếm (null nếu flash sale chưa được nạp).
+     */
+    public Integer getRemaining(Long flashSaleId) {
+        SaleCounter counter = counters.get(flashSaleId);
+        return counter != null ? counter.remaining.get() : null;
+    }
+
+    /**
+     * Số đã bán nhưng chưa ghi xuống DB.
+     */
+    public int getPendingSold(Long flashSaleId) {
+        SaleCounter counter = counters.get(flashSaleId);
+        return counter != null ? counter.pendingSold.get() : 0;
+    }
+
+    /**
+     * Ghi dồn sold/quantity: mỗi flash sale có thay đổi -> 1 UPDATE cộng dồn delta.
+     */
+    @Scheduled(fixedDelayString = "${flashsale.admission.flush-interval-ms:500}")
+    public void flush() {
+        for (SaleCounter counter : counters.values()) {
+            flushCounter(counter);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Bỏ bộ đếm (vd: admin sửa số lượng), lần admit sau sẽ load lại từ DB.
+     */
+    public void evict(Long flashSaleId) {
+        SaleCounter counter = counters.remove(flashSaleId);
+        if (counter != null) {
+            flushCounter(counter);
+        }
+    }
+
+    /**
+     * Dòng đơn flash sale bị hủy: trả suất xuống DB trong transaction hiện tại (không write-behind, để crash
+     * sau khi hủy không làm sold lệch với đơn chưa hủy), bộ đếm trong bộ nhớ cộng lại sau commit.
+     */
+    public void returnUnits(Long flashSaleId, int quantity) {
+        SaleCounter counter = counters.get(flashSaleId);
+        flashSalesRepository.applySoldDelta(flashSaleId, -quantity);
+        if (counter == null) {
+            // Chưa nạp -> lần nạp sau đọc DB đã trừ
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> {
+            if (counters.get(flashSaleId) != counter) {
+                // Đã gỡ / nạp lại từ DB sau khi trả
+                return;
+            }
+            counter.remaining.addAndGet(quantity);
+            // Có suất trở lại -> giá áp dụng quay về giá flash sale
+            if (counter.soldOutRepriced.compareAndSet(true, false)) {
+                try {
+                    productEffectivePriceService.refreshProduct(counter.productId);
+                } catch (RuntimeException e) {
+                    System.out.println("⚠️ Không refresh được giá sản phẩm " + counter.productId + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void release(SaleCounter counter, int quantity) {
+        counter.remaining.addAndGet(quantity);
+        counter.pendingSold.addAndGet(-quantity);
+        if (counters.get(counter.flashSaleId) != counter) {
+            // Bộ đếm đã bị gỡ (sale kết thúc / evict) -> ghi thẳng phần hoàn trả
+            flushCounter(counter);
+        }
+    }
+
+    private void flushCounter(SaleCounter counter) {
+        int delta = counter.pendingSold.getAndSet(0);
+        if (delta == 0) {
+            return;
+        }
+        try {
+            flashSalesRepository.applySoldDelta(counter.flashSaleId, delta);
+        } catch (RuntimeException e) {
+            // Giữ lại để lần flush sau ghi tiếp
+            counter.pendingSold.addAndGet(delta);
+            System.out.println("⚠️ Flush flash sale " + counter.flashSaleId + " thất bại: " + e.getMessage());
+            return;
+        }
+        // Hết suất -> giá áp dụng của sản phẩm quay về discount / giá gốc
+        if (counter.remaining.get() == 0 && counter.soldOutRepriced.compareAndSet(false, true)) {
+            try {
+                productEffectivePriceService.refreshProduct(counter.productId);
+            } catch (RuntimeException e) {
+                counter.soldOutRepriced.set(false);
+                System.out.println("⚠️ Không refresh được giá sản phẩm " + counter.productId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private SaleCounter load(Long flashSaleId) {
+        FlashSales flashSale = flashSalesRepository.findById(flashSaleId)
+                .orElseThrow(() -> new RuntimeException("Flash sale not found"));
+        if (flashSale.getStatus() != FlashSales.FlashSaleStatus.active) {
+            throw new RuntimeException("Flash sale is not active");
+        }
+        return activate(flashSale);
+    }
+
+    // Query DB chạy ngoài map (không giữ bin của ConcurrentHashMap); 2 luồng cùng nạp thì bộ đếm đầu tiên thắng
+    private SaleCounter install(SaleCounter counter) {
+        SaleCounter existing = counters.putIfAbsent(counter.flashSaleId, counter);
+        return existing != null ? existing : counter;
+    }
+
+    /**
+     * Đối chiếu sold với số lượng trên các dòng đơn mua giá flash sale chưa hủy (bù delta bị mất khi app dừng
+     * đột ngột), rồi tạo bộ đếm. Cập nhật sold là idempotent nên nạp trùng / lỗi giữa chừng không cộng lệch.
+     */
+    private SaleCounter activate(FlashSales flashSale) {
+        int quantity = flashSale.getQuantity();
+        int sold = flashSale.getSold();
+        List<FlashSalePurchaseRow> committed = orderItemsRepository.findFlashSalePurchases(flashSale.getFlashSaleId());
+        // Admin giảm tổng suất sau khi đã bán -> không nâng sold quá tổng suất hiện tại
+        int ordered = (int) Math.min(sold + quantity,
+                committed.stream().mapToLong(FlashSalePurchaseRow::getQuantity).sum());
+        if (ordered > sold) {
+            int missing = ordered - sold;
+            flashSalesRepository.raiseSoldTo(flashSale.getFlashSaleId(), ordered);
+            quantity -= missing;
+            System.out.println("🔧 Reconcile flash sale " + flashSale.getFlashSaleId() + ": +" + missing + " sold");
+        }
+        // Nạp luôn số đã mua của từng user (giới hạn mua / user), cùng nguồn đối chiếu
+        flashSaleUserPurchaseService.warm(flashSale, committed);
+        return new SaleCounter(
+                flashSale.getFlashSaleId(),
+                flashSale.getProduct().getProductId(),
+                flashSale.getStartTime(),
+                flashSale.getEndTime(),
+                Math.max(0, quantity)
+        );
+    }
+
+    private static final class SaleCounter {
+        private final Long flashSaleId;
+        private final Long productId;
+        private final LocalDateTime startTime;
+        private final LocalDateTime endTime;
+        private final AtomicInteger remaining;
+        private final AtomicInteger pendingSold = new AtomicInteger();
+        private final AtomicBoolean soldOutRepriced = new AtomicBoolean();
+
+        private SaleCounter(Long flashSaleId, Long productId, LocalDateTime startTime, LocalDateTime endTime,
+                            int remaining) {
+            this.flashSaleId = flashSaleId;
+            this.productId = productId;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.remaining = new AtomicInteger(remaining);
+        }
+    }
+}
@@ -2,43 +2,48 @@ package binh.shopee.service;
 
 import binh.shopee.dto.flashsale.FlashSaleResponse;
 import binh.shopee.entity.FlashSales;
-import binh.shopee.entity.ProductImages;
 import binh.shopee.entity.Discounts.DiscountType;
 import binh.shopee.repository.FlashSalesRepository;
-import binh.shopee.repository.ProductImagesRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class FlashSaleService {
 
     private final FlashSalesRepository flashSalesRepository;
-    private final ProductImagesRepository productImagesRepository;
+    private final ProductImageResolver productImageResolver;
+    private final FlashSaleAdmissionEngine flashSaleAdmissionEngine;
 
     public List<FlashSaleResponse> getActiveFlashSales() {
-        return flashSalesRepository
-                .findActiveFlashSales(FlashSales.FlashSaleStatus.active, LocalDateTime.now())
-                .stream()
-                .map(this::mapToResponse)
-                .toList();
+        return mapToResponses(flashSalesRepository
+                .findActiveFlashSales(FlashSales.FlashSaleStatus.active, LocalDateTime.now()));
     }
 
     public List<FlashSaleResponse> getUpcomingFlashSales() {
-        return flashSalesRepository
-                .findUpcomingFlashSales(FlashSales.FlashSaleStatus.upcoming, LocalDateTime.now())
-                .stream()
-                .map(this::mapToResponse)
-                .toList();
+        return mapToResponses(flashSalesRepository
+                .findUpcomingFlashSales(FlashSales.FlashSaleStatus.upcoming, LocalDateTime.now()));
     }
 
     /* ================== PRIVATE METHODS ================== */
 
-    private FlashSaleResponse mapToResponse(FlashSales fs) {
+    private List<FlashSaleResponse> mapToResponses(List<FlashSales> flashSales) {
+        // Ảnh của cả danh sách resolve 1 lần
+        Map<Long, String> imageUrls = productImageResolver.resolvePrimaryImageUrls(
+                flashSales.stream().map(fs -> fs.getProduct().getProductId()).toList());
+        return flashSales.stream()
+                .map(fs -> mapToResponse(fs, imageUrls.get(fs.getProduct().getProductId())))
+                .toList();
+    }
+
+    private FlashSaleResponse mapToResponse(FlashSales fs, String imageUrl) {
+        // Số liệu realtime từ engine (DB có thể trễ vài trăm ms do ghi dồn)
+        Integer remaining = flashSaleAdmissionEngine.getRemaining(fs.getFlashSaleId());
 
         BigDecimal originalPrice = fs.getProduct().getPrice();
         BigDecimal flashPrice = calculateFlashPrice(
@@ -52,15 +57,15 @@ public class FlashSaleService {
                 flashPrice,
                 fs.getDiscountType().name(),
                 fs.getDiscountValue(),
-                fs.getQuantity(),
-                fs.getSold(),
+                remaining != null ? remaining : fs.getQuantity(),
+                fs.getSold() + flashSaleAdmissionEngine.getPendingSold(fs.getFlashSaleId()),
                 fs.getStartTime(),
                 fs.getEndTime(),
                 fs.getStatus().name(),
                 fs.getProduct().getProductId(),
                 fs.getProduct().getName(),
                 originalPrice,
-                getPrimaryImageUrl(fs)
+                imageUrl
         );
     }
 
@@ -79,35 +84,18 @@ public class FlashSaleService {
                 .divide(BigDecimal.valueOf(100));
     }
 
-    private String getPrimaryImageUrl(FlashSales fs) {
-        return productImagesRepository
-                .findFirstByProductsAndIsPrimaryTrue(fs.getProduct())
-                .map(ProductImages::getImageUrl)
-                .orElse(null);
-    }
-
+    /**
+     * Giữ suất Flash Sale qua FlashSaleAdmissionEngine (không khóa row FlashSales).
+     * sold/quantity được engine ghi dồn xuống DB; transaction rollback thì suất được trả lại.
+     */
     public void purchaseFlashSale(Long flashSaleId, int buyQuantity) {
+        flashSaleAdmissionEngine.admit(flashSaleId, buyQuantity);
+    }
 
-        FlashSales flashSale = flashSalesRepository
-                .findByIdForUpdate(flashSaleId)
-                .orElseThrow(() ->
-                        new RuntimeException("Flash sale not found")
-                );
-
-        if (flashSale.getStatus() != FlashSales.FlashSaleStatus.active) {
-            throw new RuntimeException("Flash sale is not active");
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        if (now.isBefore(flashSale.getStartTime()) || now.isAfter(flashSale.getEndTime())) {
-            throw new RuntimeException("Flash sale is not in valid time");
-        }
-
-        if (flashSale.getQuantity() < buyQuantity) {
-            throw new RuntimeException("Not enough flash sale quantity");
-        }
-        flashSale.setQuantity(flashSale.getQuantity() - buyQuantity);
-        flashSale.setSold(flashSale.getSold() + buyQuantity);
-        flashSalesRepository.save(flashSale);
+    /**
+     * Trả suất của dòng đơn flash sale bị hủy (ghi DB trong transaction hủy đơn).
+     */
+    public void returnFlashSale(Long flashSaleId, int quantity) {
+        flashSaleAdmissionEngine.returnUnits(flashSaleId, quantity);
     }
 }
@@ -1,31 +1,130 @@
 package binh.shopee.service;
 
+import binh.shopee.dto.flashsale.FlashSalePurchaseRow;
 import binh.shopee.entity.FlashSaleUserPurchase;
 import binh.shopee.entity.FlashSales;
-import binh.shopee.entity.Users;
 import binh.shopee.repository.FlashSaleUserPurchaseRepository;
 import binh.shopee.repository.FlashSalesRepository;
-import binh.shopee.repository.UsersRepository;
-import lombok.RequiredArgsConstructor;
+import binh.shopee.repository.OrderItemsRepository;
+import binh.shopee.util.TransactionCallbacks;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Optional;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Giới hạn số lượng Flash Sale mỗi user được mua (FlashSales.maxPurchaseQuantity, mặc định 2).
+ * Bộ đếm (flashSaleId, userId) -> đã mua nằm trong bộ nhớ, nạp 1 lần khi flash sale được kích hoạt;
+ * kiểm tra + cộng là atomic, ghi xuống flash_sale_user_purchases theo lô (write-behind).
+ * Lúc nạp, số đã mua lấy max(bảng write-behind, đơn đã commit) để crash giữa 2 lần flush không nới giới hạn.
+ * Hủy đơn trừ số đã mua thẳng xuống bảng (không write-behind), đơn hủy cũng không nằm trong nguồn đối chiếu,
+ * nên user đã hủy không bị tính lại sau khi nạp.
+ * Chỉ flash sale đang trong khung giờ mới có bộ đếm trong bộ nhớ; sale chưa mở / đã kết thúc đọc thẳng DB.
+ */
 @Service
-@RequiredArgsConstructor
 public class FlashSaleUserPurchaseService {
 
     private final FlashSaleUserPurchaseRepository purchaseRepository;
     private final FlashSalesRepository flashSalesRepository;
-    private final UsersRepository usersRepository;
+    private final OrderItemsRepository orderItemsRepository;
+    private final TransactionTemplate transactionTemplate;
 
-    private static final int MAX_QUANTITY_PER_USER = 2;
+    private static final int DEFAULT_MAX_QUANTITY_PER_USER = 2;
+
+    private final Map<Long, SaleQuota> quotas = new ConcurrentHashMap<>();
+
+    public FlashSaleUserPurchaseService(
+            FlashSaleUserPurchaseRepository purchaseRepository,
+            FlashSalesRepository flashSalesRepository,
+            OrderItemsRepository orderItemsRepository,
+            PlatformTransactionManager transactionManager) {
+        this.purchaseRepository = purchaseRepository;
+        this.flashSalesRepository = flashSalesRepository;
+        this.orderItemsRepository = orderItemsRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public static int getMaxQuantityPerUser(FlashSales flashSale) {
+        Integer max = flashSale.getMaxPurchaseQuantity();
+        return max != null ? max : DEFAULT_MAX_QUANTITY_PER_USER;
+    }
+
+    /**
+     * Nạp số đã mua của mọi user cho flash sale (gọi khi flash sale bắt đầu).
+     * @param committed số lượng theo user trên các dòng đơn mua giá flash sale chưa hủy
+     */
+    public void warm(FlashSales flashSale, List<FlashSalePurchaseRow> committed) {
+        if (!quotas.containsKey(flashSale.getFlashSaleId())) {
+            quotas.putIfAbsent(flashSale.getFlashSaleId(), loadQuota(flashSale, committed));
+        }
+    }
+
+    /**
+     * Flash sale kết thúc: ghi phần còn lại rồi bỏ bộ đếm.
+     */
+    public void retire(Long flashSaleId) {
+        SaleQuota quota = quotas.remove(flashSaleId);
+        if (quota != null) {
+            flushQuotas(List.of(quota));
+        }
+    }
+
+    /**
+     * Gỡ bộ đếm của flash sale đã kết thúc mà engine không gỡ (vd: được nạp lazy bởi lượt mua sát giờ đóng).
+     */
+    @Scheduled(fixedDelayString = "${flashsale.user-quota.retire-interval-ms:60000}")
+    public void retireEnded() {
+        LocalDateTime now = LocalDateTime.now();
+        for (SaleQuota quota : new ArrayList<>(quotas.values())) {
+            if (quota.endTime.isBefore(now)) {
+                flushQuotas(List.of(quota));
+                // Flush lỗi -> giữ lại để lần sau ghi tiếp
+                if (quota.pending.values().stream().allMatch(count -> count.get() == 0)) {
+                    quotas.remove(quota.flashSaleId, quota);
+                }
+            }
+        }
+    }
+
+    public int getMaxQuantityPerUser(Long flashSaleId) {
+        SaleQuota quota = quotas.get(flashSaleId);
+        return quota != null ? quota.limit : getMaxQuantityPerUser(findFlashSale(flashSaleId));
+    }
 
     public int getAvailableQuantityForUser(Long flashSaleId, Long userId) {
-        Integer purchased = purchaseRepository.getTotalPurchasedByUserAndFlashSale(flashSaleId, userId);
-        int remaining = MAX_QUANTITY_PER_USER - purchased;
-        return Math.max(0, remaining);
+        SaleQuota quota = quotas.get(flashSaleId);
+        if (quota == null) {
+            FlashSales flashSale = findFlashSale(flashSaleId);
+            LocalDateTime now = LocalDateTime.now();
+            if (now.isBefore(flashSale.getStartTime()) || now.isAfter(flashSale.getEndTime())) {
+                // Ngoài khung giờ: không nạp cả bộ đếm chỉ để trả lời 1 user
+                int purchased = Math.max(0, purchaseRepository.getTotalPurchasedByUserAndFlashSale(flashSaleId, userId));
+                return Math.max(0, getMaxQuantityPerUser(flashSale) - purchased);
+            }
+            quota = quotaFor(flashSaleId);
+        }
+        return Math.max(0, quota.limit - quota.purchasedBy(userId));
+    }
+
+    /**
+     * Số lượng còn được mua cho nhiều flash sale cùng lúc
+     */
+    public Map<Long, Integer> getAvailableQuantitiesForUser(Collection<Long> flashSaleIds, Long userId) {
+        Map<Long, Integer> available = new HashMap<>();
+        for (Long flashSaleId : flashSaleIds) {
+            available.put(flashSaleId, getAvailableQuantityForUser(flashSaleId, userId));
+        }
+        return available;
     }
 
     public boolean canUserPurchase(Long flashSaleId, Long userId, int quantity) {
@@ -33,33 +132,145 @@ public class FlashSaleUserPurchaseService {
         return quantity <= available;
     }
 
-    @Transactional
+    /**
+     * Kiểm tra giới hạn và cộng số đã mua trong 1 bước atomic.
+     * Transaction hiện tại rollback -> tự trừ lại.
+     */
     public void recordPurchase(Long flashSaleId, Long userId, int quantity) {
-        if (!canUserPurchase(flashSaleId, userId, quantity)) {
-            throw new RuntimeException("Bạn chỉ được mua tối đa " + MAX_QUANTITY_PER_USER + " sản phẩm Flash Sale này");
+        SaleQuota quota = quotaFor(flashSaleId);
+        AtomicInteger purchased = quota.purchased.computeIfAbsent(userId, id -> new AtomicInteger());
+        int current;
+        do {
+            current = purchased.get();
+            if (current + quantity > quota.limit) {
+                throw new RuntimeException("Bạn chỉ được mua tối đa " + quota.limit + " sản phẩm Flash Sale này");
+            }
+        } while (!purchased.compareAndSet(current, current + quantity));
+        quota.pending.computeIfAbsent(userId, id -> new AtomicInteger()).addAndGet(quantity);
+
+        TransactionCallbacks.afterRollback(() -> {
+            purchased.addAndGet(-quantity);
+            quota.pending.computeIfAbsent(userId, id -> new AtomicInteger()).addAndGet(-quantity);
+            if (quotas.get(flashSaleId) != quota) {
+                // Bộ đếm đã bị gỡ -> ghi thẳng phần hoàn trả
+                flushQuotas(List.of(quota));
+            }
+        });
+    }
+
+    /**
+     * Dòng đơn flash sale bị hủy: trừ số đã mua xuống DB trong transaction hiện tại, bộ đếm trừ lại sau commit.
+     */
+    public void returnPurchase(Long flashSaleId, Long userId, int quantity) {
+        SaleQuota quota = quotas.get(flashSaleId);
+        purchaseRepository.addPurchasedQuantity(flashSaleId, userId, -quantity);
+        if (quota == null) {
+            return;
         }
+        TransactionCallbacks.afterCommit(() -> {
+            // Đã gỡ / nạp lại từ DB sau khi trả -> bộ đếm mới đã đúng
+            if (quotas.get(flashSaleId) == quota) {
+                quota.purchased.computeIfAbsent(userId, id -> new AtomicInteger())
+                        .updateAndGet(current -> Math.max(0, current - quantity));
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${flashsale.user-quota.flush-interval-ms:1000}")
+    public void flush() {
+        flushQuotas(new ArrayList<>(quotas.values()));
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * Gom delta của mọi (flashSale, user) rồi MERGE trong 1 transaction; lỗi thì trả delta về để lần sau ghi lại.
+     */
+    private void flushQuotas(List<SaleQuota> toFlush) {
+        List<PendingDelta> batch = new ArrayList<>();
+        for (SaleQuota quota : toFlush) {
+            for (Map.Entry<Long, AtomicInteger> e : quota.pending.entrySet()) {
+                int delta = e.getValue().getAndSet(0);
+                if (delta != 0) {
+                    batch.add(new PendingDelta(quota, e.getKey(), delta));
+                }
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PendingDelta d : batch) {
+                    purchaseRepository.addPurchasedQuantity(d.quota().flashSaleId, d.userId(), d.delta());
+                }
+            });
+        } catch (RuntimeException e) {
+            for (PendingDelta d : batch) {
+                d.quota().pending.computeIfAbsent(d.userId(), id -> new AtomicInteger()).addAndGet(d.delta());
+            }
+            System.out.println("⚠️ Flush flash sale user purchases thất bại: " + e.getMessage());
+        }
+    }
 
-        FlashSales flashSale = flashSalesRepository.findById(flashSaleId)
+    private SaleQuota quotaFor(Long flashSaleId) {
+        SaleQuota quota = quotas.get(flashSaleId);
+        if (quota != null) {
+            return quota;
+        }
+        FlashSales flashSale = findFlashSale(flashSaleId);
+        SaleQuota loaded = loadQuota(flashSale, orderItemsRepository.findFlashSalePurchases(flashSaleId));
+        SaleQuota existing = quotas.putIfAbsent(flashSaleId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private FlashSales findFlashSale(Long flashSaleId) {
+        return flashSalesRepository.findById(flashSaleId)
                 .orElseThrow(() -> new RuntimeException("Flash Sale không tồn tại"));
+    }
+
+    private SaleQuota loadQuota(FlashSales flashSale, List<FlashSalePurchaseRow> committed) {
+        SaleQuota quota = new SaleQuota(flashSale.getFlashSaleId(), getMaxQuantityPerUser(flashSale),
+                flashSale.getEndTime());
+        for (FlashSaleUserPurchase record : purchaseRepository.findByFlashSaleId(flashSale.getFlashSaleId())) {
+            // Hủy đơn trước khi lượt mua kịp flush có thể để bảng âm tạm thời; đơn đã commit bù phần thật
+            quota.purchased.computeIfAbsent(record.getUser().getUserId(), id -> new AtomicInteger())
+                    .addAndGet(Math.max(0, record.getPurchasedQuantity()));
+        }
+        // Phần đơn đã commit nhưng chưa kịp flush (crash) -> bù vào bộ đếm và ghi lại ở lần flush tới
+        for (FlashSalePurchaseRow row : committed) {
+            AtomicInteger purchased = quota.purchased.computeIfAbsent(row.getUserId(), id -> new AtomicInteger());
+            int missing = row.getQuantity().intValue() - purchased.get();
+            if (missing > 0) {
+                purchased.addAndGet(missing);
+                quota.pending.computeIfAbsent(row.getUserId(), id -> new AtomicInteger()).addAndGet(missing);
+            }
+        }
+        return quota;
+    }
+
+    private record PendingDelta(SaleQuota quota, Long userId, int delta) {
+    }
+
+    private static final class SaleQuota {
+        private final Long flashSaleId;
+        private final int limit;
+        private final LocalDateTime endTime;
+        private final Map<Long, AtomicInteger> purchased = new ConcurrentHashMap<>();  // userId -> đã mua
+        private final Map<Long, AtomicInteger> pending = new ConcurrentHashMap<>();    // userId -> chưa ghi DB
+
+        private SaleQuota(Long flashSaleId, int limit, LocalDateTime endTime) {
+            this.flashSaleId = flashSaleId;
+            this.limit = limit;
+            this.endTime = endTime;
+        }
 
-        Users user = usersRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User không tồn tại"));
-
-        Optional<FlashSaleUserPurchase> existingRecord = purchaseRepository
-                .findByFlashSaleIdAndUserId(flashSaleId, userId);
-
-        if (existingRecord.isPresent()) {
-            FlashSaleUserPurchase record = existingRecord.get();
-            record.setPurchasedQuantity(record.getPurchasedQuantity() + quantity);
-            purchaseRepository.save(record);
-        } else {
-            // Tạo record mới
-            FlashSaleUserPurchase newRecord = FlashSaleUserPurchase.builder()
-                    .flashSale(flashSale)
-                    .user(user)
-                    .purchasedQuantity(quantity)
-                    .build();
-            purchaseRepository.save(newRecord);
+        private int purchasedBy(Long userId) {
+            AtomicInteger count = purchased.get(userId);
+            return count != null ? count.get() : 0;
         }
     }
-}
\ No newline at end of file
+}
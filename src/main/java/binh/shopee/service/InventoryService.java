@@ -1,6 +1,6 @@
 package binh.shopee.service;
-import binh.shopee.entity.Inventory;
 import binh.shopee.repository.InventoryRepository;
+import binh.shopee.util.TransactionCallbacks;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -10,6 +10,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class InventoryService {
 
     private final InventoryRepository inventoryRepository;
+    private final ProductDetailAssembler productDetailAssembler;
 
     public int getAvailableQuantity(Long variantId) {
         // ✅ FIX: Xử lý trường hợp null để tránh NullPointerException
@@ -23,28 +24,34 @@ public class InventoryService {
         if (updated == 0) {
             throw new RuntimeException("Không đủ hàng để đặt đơn cho variant: " + variantId);
         }
+        stockChanged(variantId);
     }
 
+    /**
+     * Trừ tồn kho không qua hold: UPDATE có điều kiện, không đọc-sửa-ghi nên không oversell.
+     */
     @Transactional
     public void reduceStock(Long variantId, Integer quantity) {
-        int availableQty = getAvailableQuantity(variantId);
-        if (availableQty < quantity) {
+        int updated = inventoryRepository.reduceAvailable(variantId, quantity);
+        if (updated == 0) {
             throw new RuntimeException("Không đủ tồn kho");
         }
-        Inventory inventory = inventoryRepository.findByVariantVariantId(variantId)
-                .orElseThrow(() -> new RuntimeException("Inventory không tồn tại"));
-        inventory.setStockQty(availableQty - quantity);
-        inventoryRepository.save(inventory);
+        stockChanged(variantId);
     }
 
     @Transactional
     public void restoreInventory(Long variantId, Integer quantity) {
-        Inventory inventory = inventoryRepository.findByVariantVariantId(variantId)
-                .orElseThrow(() -> new RuntimeException("Inventory không tồn tại"));
-        inventory.setReservedQty(
-                Math.max(0, inventory.getReservedQty() - quantity)
-        );
-        inventory.setStockQty(inventory.getStockQty() + quantity);
-        inventoryRepository.save(inventory);
+        int updated = inventoryRepository.restoreStock(variantId, quantity);
+        if (updated == 0) {
+            throw new RuntimeException("Inventory không tồn tại");
+        }
+        stockChanged(variantId);
+    }
+
+    /**
+     * Tồn kho đổi -> bỏ mảnh biến thể trên trang chi tiết (sau khi commit).
+     */
+    public void stockChanged(Long variantId) {
+        TransactionCallbacks.afterCommit(() -> productDetailAssembler.invalidateStock(variantId));
     }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.ProductSaleEvent;
+import binh.shopee.entity.OrderItems;
+import binh.shopee.entity.OrderOutboxEvents;
+import binh.shopee.entity.OrderOutboxEvents.EventStatus;
+import binh.shopee.entity.OrderOutboxEvents.EventType;
+import binh.shopee.entity.Orders;
+import binh.shopee.repository.OrderOutboxEventsRepository;
+import binh.shopee.repository.OrdersRepository;
+import binh.shopee.repository.ProductsRepository;
+import binh.shopee.util.TransactionCallbacks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox cho việc phụ sau khi đặt hàng: dọn giỏ, cộng totalPurchaseCount, rollup doanh thu.
+ * createOrder chỉ insert event (cùng transaction với đơn), worker xử lý theo lô:
+ * cả lô 1 transaction, lô lỗi thì chạy lại từng event, event lỗi được retry với backoff.
+ * Khóa bằng UPDLOCK + READPAST nên nhiều instance có thể cùng drain.
+ */
+@Service
+public class OrderOutboxService {
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final long MAX_BACKOFF_SECONDS = 600;
+
+    private final OrderOutboxEventsRepository outboxRepository;
+    private final OrdersRepository ordersRepository;
+    private final ProductsRepository productsRepository;
+    private final CartsService cartsService;
+    private final OrderRevenueRollupService orderRevenueRollupService;
+    private final TopSellingLeaderboard topSellingLeaderboard;
+    private final TrendingProductsTracker trendingProductsTracker;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+
+    public OrderOutboxService(
+            OrderOutboxEventsRepository outboxRepository,
+            OrdersRepository ordersRepository,
+            ProductsRepository productsRepository,
+            CartsService cartsService,
+            OrderRevenueRollupService orderRevenueRollupService,
+            TopSellingLeaderboard topSellingLeaderboard,
+            TrendingProductsTracker trendingProductsTracker,
+            PlatformTransactionManager transactionManager,
+            @Value("${order.outbox.batch-size:200}") int batchSize,
+            @Value("${order.outbox.max-attempts:10}") int maxAttempts) {
+        this.outboxRepository = outboxRepository;
+        this.ordersRepository = ordersRepository;
+        this.productsRepository = productsRepository;
+        this.cartsService = cartsService;
+        this.orderRevenueRollupService = orderRevenueRollupService;
+        this.topSellingLeaderboard = topSellingLeaderboard;
+        this.trendingProductsTracker = trendingProductsTracker;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Gọi trong transaction đặt hàng: đơn rollback thì event cũng không tồn tại.
+     */
+    public void enqueueOrderCreated(Orders order) {
+        LocalDateTime now = LocalDateTime.now();
+        List<OrderOutboxEvents> events = new ArrayList<>();
+        for (EventType type : EventType.values()) {
+            events.add(OrderOutboxEvents.builder()
+                    .orderId(order.getOrderId())
+                    .eventType(type)
+                    .status(EventStatus.pending)
+                    .attempts(0)
+                    .nextAttemptAt(now)
+                    .build());
+        }
+        outboxRepository.saveAll(events);
+    }
+
+    @Scheduled(fixedDelayString = "${order.outbox.poll-interval-ms:1000}")
+    public void drain() {
+        List<Long> ids;
+        do {
+            ids = outboxRepository.findDueIds(batchSize, LocalDateTime.now());
+            if (ids.isEmpty()) {
+                return;
+            }
+            List<Long> batch = ids;
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        apply(outboxRepository.lockPendingByIds(batch)));
+            } catch (RuntimeException e) {
+                // Lô lỗi -> chạy lại từng event để event hỏng không chặn các event khác
+                for (Long id : batch) {
+                    processSingle(id);
+                }
+            }
+        } while (ids.size() == batchSize);
+    }
+
+    private void processSingle(Long eventId) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    apply(outboxRepository.lockPendingByIds(List.of(eventId))));
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Outbox event " + eventId + " lỗi: " + e.getMessage());
+            recordFailure(eventId, e);
+        }
+    }
+
+    private void recordFailure(Long eventId, RuntimeException error) {
+        transactionTemplate.executeWithoutResult(status -> {
+            int attempts = outboxRepository.findById(eventId)
+                    .map(OrderOutboxEvents::getAttempts)
+                    .orElse(0);
+            // Backoff lũy thừa: 2, 4, 8, ... giây, tối đa 10 phút
+            long backoffSeconds = Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempts + 1, 20));
+            String message = String.valueOf(error.getMessage());
+            outboxRepository.recordFailure(
+                    eventId,
+                    LocalDateTime.now().plusSeconds(backoffSeconds),
+                    message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message,
+                    maxAttempts
+            );
+        });
+    }
+
+    private void apply(List<OrderOutboxEvents> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        Map<Long, Orders> orders = ordersRepository.findAllById(
+                        events.stream().map(OrderOutboxEvents::getOrderId).distinct().toList())
+                .stream()
+                .collect(Collectors.toMap(Orders::getOrderId, Function.identity()));
+
+        // totalPurchaseCount gộp theo sản phẩm: 1 UPDATE / sản phẩm cho cả lô
+        Map<Long, Long> purchaseDeltas = new HashMap<>();
+        List<ProductSaleEvent> sales = new ArrayList<>();
+        for (OrderOutboxEvents event : events) {
+            Orders order = orders.get(event.getOrderId());
+            if (order == null) {
+                continue; // đơn đã bị xóa
+            }
+            switch (event.getEventType()) {
+                case cart_cleanup -> cartsService.removeOrderedItemsFromCart(
+                        order.getUser().getUserId(),
+                        order.getItems().stream()
+                                .map(item -> item.getVariant().getVariantId())
+                                .toList());
+                case purchase_count -> {
+                    for (OrderItems item : order.getItems()) {
+                        Long productId = item.getVariant().getProducts().getProductId();
+                        purchaseDeltas.merge(productId, item.getQuantity().longValue(), Long::sum);
+                        sales.add(new ProductSaleEvent(productId, item.getQuantity(), order.getCreatedAt()));
+                    }
+                }
+                case revenue_rollup -> orderRevenueRollupService.recordOrderCreated(order);
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        purchaseDeltas.forEach((productId, delta) ->
+                productsRepository.addPurchaseCount(productId, delta, now));
+        // Lô rollback sẽ được chạy lại từng event -> chỉ cộng bảng xếp hạng khi đã commit
+        TransactionCallbacks.afterCommit(() -> {
+            purchaseDeltas.forEach(topSellingLeaderboard::add);
+            for (ProductSaleEvent sale : sales) {
+                trendingProductsTracker.record(sale.getProductId(), sale.getQuantity(), sale.getOrderedAt());
+            }
+        });
+
+        outboxRepository.deleteAllInBatch(events);
+    }
+}
@@ -0,0 +1,114 @@
+package binh.shopee.service;
+import binh.shopee.entity.OrderOutboxEvents;
+import binh.shopee.entity.OrderRevenueRollup;
+import binh.shopee.entity.OrderRevenueRollup.Granularity;
+import binh.shopee.entity.Orders;
+import binh.shopee.repository.OrderOutboxEventsRepository;
+import binh.shopee.repository.OrderRevenueRollupRepository;
+import binh.shopee.repository.OrdersRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Duy trì bảng order_revenue_rollups (giờ / ngày / tháng x trạng thái) để dashboard không phải đọc cả bảng Orders.
+ * Các hàm record* chạy trong transaction của đơn hàng nên rollup luôn khớp với đơn đã commit.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderRevenueRollupService {
+    private final OrderRevenueRollupRepository rollupRepository;
+    private final OrdersRepository ordersRepository;
+    private final OrderOutboxEventsRepository outboxEventsRepository;
+
+    // Đơn luôn được tạo ở pending. Ghi qua outbox nên lúc này status có thể đã đổi,
+    // phần đổi status đó đã được recordStatusChange tính riêng.
+    @Transactional
+    public void recordOrderCreated(Orders order) {
+        applyToBuckets(order, Orders.OrderStatus.pending, 1);
+    }
+
+    @Transactional
+    public void recordStatusChange(Orders order, Orders.OrderStatus oldStatus) {
+        if (oldStatus == order.getStatus()) {
+            return;
+        }
+        applyToBuckets(order, oldStatus, -1);
+        applyToBuckets(order, order.getStatus(), 1);
+    }
+
+    public List<OrderRevenueRollup> findBuckets(Granularity granularity, LocalDateTime from, LocalDateTime to) {
+        return rollupRepository.findBuckets(granularity, from, to);
+    }
+
+    /**
+     * Tính lại toàn bộ rollup từ bảng Orders (dữ liệu cũ / sửa lệch). Nên chạy lúc ít đơn.
+     * Chốt mốc maxOrderId: đơn <= mốc tính bằng backfill và event revenue_rollup còn chờ của chúng bị xóa
+     * cùng transaction (nếu không worker sẽ cộng lần nữa); đơn commit sau mốc giữ event để worker cộng.
+     * Xóa bucket trước khi chốt mốc: đơn sau mốc ra đời sau lúc xóa nên phần đổi status của chúng
+     * (recordStatusChange) không bị xóa mất. Event worker đang giữ khóa thì chờ worker commit xong.
+     */
+    @Transactional
+    public void rebuildAll() {
+        rollupRepository.deleteAllBuckets();
+        Long maxOrderId = ordersRepository.findMaxOrderId();
+        outboxEventsRepository.deleteByEventTypeUpTo(OrderOutboxEvents.EventType.revenue_rollup, maxOrderId);
+        rollupRepository.backfillHourly(maxOrderId);
+        rollupRepository.backfillDaily(maxOrderId);
+        rollupRepository.backfillMonthly(maxOrderId);
+    }
+
+    /**
+     * Lần đầu deploy: bảng rollup rỗng nhưng đã có đơn -> backfill.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (rollupRepository.count() == 0 && ordersRepository.count() > 0) {
+                System.out.println("📊 Backfill order revenue rollups...");
+                rebuildAll();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Không backfill được order revenue rollups: " + e.getMessage());
+        }
+    }
+
+    public static LocalDateTime bucketStart(Granularity granularity, LocalDateTime time) {
+        return switch (granularity) {
+            case hour -> time.truncatedTo(ChronoUnit.HOURS);
+            case day -> time.toLocalDate().atStartOfDay();
+            case month -> time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        };
+    }
+
+    private void applyToBuckets(Orders order, Orders.OrderStatus status, int sign) {
+        LocalDateTime createdAt = order.getCreatedAt() != null ? order.getCreatedAt() : LocalDateTime.now();
+        BigDecimal revenue = revenueOf(order);
+        if (sign < 0) {
+            revenue = revenue.negate();
+        }
+        for (Granularity granularity : Granularity.values()) {
+            rollupRepository.addToBucket(
+                    granularity.name(),
+                    bucketStart(granularity, createdAt),
+                    status.name(),
+                    sign,
+                    revenue
+            );
+        }
+    }
+
+    // Giống cột computed grand_total (entity chưa có grand_total ngay sau khi insert)
+    private BigDecimal revenueOf(Orders order) {
+        BigDecimal subtotal = order.getSubtotal() != null ? order.getSubtotal() : BigDecimal.ZERO;
+        BigDecimal discount = order.getDiscountTotal() != null ? order.getDiscountTotal() : BigDecimal.ZERO;
+        BigDecimal shipping = order.getShippingFee() != null ? order.getShippingFee() : BigDecimal.ZERO;
+        return subtotal.subtract(discount).add(shipping);
+    }
+}
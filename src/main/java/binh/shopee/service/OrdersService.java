@@ -3,6 +3,8 @@ import binh.shopee.dto.order.CheckoutItemResponse;
 import binh.shopee.dto.order.CheckoutResponse;
 import binh.shopee.dto.order.OrderCreateRequest;
 import binh.shopee.dto.order.OrderCreateResponse;
+import binh.shopee.dto.order.OrderHistoryPageResponse;
+import binh.shopee.dto.order.OrderHistoryRow;
 import binh.shopee.dto.order.OrderItemResponse;
 import binh.shopee.dto.order.OrderResponse;
 import binh.shopee.dto.order.VariantItem;
@@ -11,26 +13,30 @@ import binh.shopee.entity.FlashSales;
 import binh.shopee.entity.OrderItems;
 import binh.shopee.entity.Orders;
 import binh.shopee.entity.PaymentMethods;
-import binh.shopee.entity.ProductImages;
 import binh.shopee.entity.ProductVariants;
-import binh.shopee.entity.Products;
 import binh.shopee.entity.Users;
 import binh.shopee.entity.Vouchers;
 import binh.shopee.repository.AddressesRepository;
 import binh.shopee.repository.FlashSaleUserPurchaseRepository;
-import binh.shopee.repository.FlashSalesRepository;
 import binh.shopee.repository.OrdersRepository;
-import binh.shopee.repository.ProductImagesRepository;
 import binh.shopee.repository.ProductVariantsRepository;
+import binh.shopee.repository.ProductsRepository;
 import binh.shopee.repository.UsersRepository;
+import binh.shopee.util.TransactionCallbacks;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import binh.shopee.entity.Orders.OrderStatus;
@@ -47,12 +53,20 @@ public class OrdersService {
     private final InventoryService inventoryService;
     private final VoucherService voucherService;
     private final CheckoutService checkoutService;
-    private final CartsService cartsService;
-    private final ProductImagesRepository productImagesRepository;
+    private final ProductImageResolver productImageResolver;
     private static final String BASE_URL = "http://localhost:8080";
+    private static final int DEFAULT_HISTORY_PAGE_SIZE = 20;
+    private static final int MAX_HISTORY_PAGE_SIZE = 50;
     private final FlashSaleUserPurchaseService flashSaleUserPurchaseService;
-    private final FlashSalesRepository flashSalesRepository;
+    private final PromotionIndex promotionIndex;
     private final FlashSaleService flashSaleService;
+    private final OrderRevenueRollupService orderRevenueRollupService;
+    private final OrderOutboxService orderOutboxService;
+    private final StockReservationService stockReservationService;
+    private final CheckoutSessionStore checkoutSessionStore;
+    private final ProductsRepository productsRepository;
+    private final TopSellingLeaderboard topSellingLeaderboard;
+    private final TrendingProductsTracker trendingProductsTracker;
 
     @Transactional
     public OrderCreateResponse createOrder(OrderCreateRequest request) {
@@ -68,7 +82,8 @@ public class OrdersService {
                 request.getShippingMethodId(),
                 request.getVoucherCode(),
                 request.getPaymentMethod(),
-                request.getUserId()
+                request.getUserId(),
+                request.getCheckoutSessionId()
         );
 
         if (!checkout.getCanProceedToPayment()) {
@@ -116,10 +131,7 @@ public class OrdersService {
         order.setStatus(Orders.OrderStatus.pending);
         order.setCurrency("VND");
 
-        // 8️⃣ Save order trước để có orderId
-        Orders savedOrder = ordersRepository.save(order);
-
-        // 9️⃣ Tạo order items từ checkout items
+        // 8️⃣ Tạo order items từ checkout items (variant đã nằm trong persistence context từ bước checkout)
         List<OrderItems> orderItems = new ArrayList<>();
         for (CheckoutItemResponse checkoutItem : checkout.getItems()) {
             ProductVariants variant = productVariantsRepository
@@ -127,7 +139,7 @@ public class OrdersService {
                     .orElseThrow(() -> new RuntimeException("Variant không tồn tại"));
 
             OrderItems orderItem = new OrderItems();
-            orderItem.setOrder(savedOrder);
+            orderItem.setOrder(order);
             orderItem.setVariant(variant);
             orderItem.setProductNameSnapshot(checkoutItem.getProductName());
             orderItem.setUnitPrice(checkoutItem.getDiscountedPrice()); // Giá đã discount
@@ -137,56 +149,47 @@ public class OrdersService {
             orderItems.add(orderItem);
         }
 
-        savedOrder.setItems(orderItems);
-        savedOrder = ordersRepository.save(savedOrder);
-
-        // 🔥 FIX: Only mark voucher as used if voucher code is present
-        if (request.getVoucherCode() != null && !request.getVoucherCode().trim().isEmpty()) {
-            voucherService.markAsUsed(request.getVoucherCode(), savedOrder.getUser().getUserId());
-        }
-
-        // 🔥 UPDATE: Reduce stock AND update totalPurchaseCount
-        for (CheckoutItemResponse checkoutItem : checkout.getItems()) {
-            inventoryService.reduceStock(
-                    checkoutItem.getVariantId(),
-                    checkoutItem.getQuantity()
-            );
+        // 🔥 UPDATE: Flash Sale (tra từ PromotionIndex, không query) — ghi flash_sale_id lên dòng trước khi insert
+        Map<Long, FlashSales> activeFlashSales = promotionIndex.findActiveFlashSales(
+                orderItems.stream().map(item -> item.getVariant().getProducts().getProductId()).toList(),
+                LocalDateTime.now());
+        for (OrderItems orderItem : orderItems) {
+            FlashSales flashSale = activeFlashSales.get(orderItem.getVariant().getProducts().getProductId());
 
-            // Update product's totalPurchaseCount
-            ProductVariants variant = productVariantsRepository.findById(checkoutItem.getVariantId())
-                    .orElseThrow(() -> new RuntimeException("Variant not found"));
-            Products product = variant.getProducts();
-            Optional<FlashSales> activeFlashSale = flashSalesRepository
-                    .findActiveFlashSaleByProductId(product.getProductId());
-
-            if (activeFlashSale.isPresent()) {
-                FlashSales flashSale = activeFlashSale.get();
-                flashSaleService.purchaseFlashSale(flashSale.getFlashSaleId(), checkoutItem.getQuantity());
+            if (flashSale != null) {
+                flashSaleService.purchaseFlashSale(flashSale.getFlashSaleId(), orderItem.getQuantity());
+                orderItem.setFlashSaleId(flashSale.getFlashSaleId());
 
                 // Ghi nhận user đã mua Flash Sale
                 flashSaleUserPurchaseService.recordPurchase(
                         flashSale.getFlashSaleId(),
                         request.getUserId(),
-                        checkoutItem.getQuantity()
+                        orderItem.getQuantity()
                 );
 
             }
+        }
 
-            if (variant.getProducts() != null) {
-                variant.getProducts().setTotalPurchaseCount(
-                        (variant.getProducts().getTotalPurchaseCount() != null
-                                ? variant.getProducts().getTotalPurchaseCount()
-                                : 0L) + checkoutItem.getQuantity()
-                );
-            }
+        // 9️⃣ Save 1 lần: order insert ngay (IDENTITY), items cascade và được batch insert lúc flush
+        order.setItems(orderItems);
+        Orders savedOrder = ordersRepository.save(order);
+
+        // 📬 Việc phụ (dọn giỏ, totalPurchaseCount, rollup doanh thu) ghi vào outbox, worker xử lý sau
+        orderOutboxService.enqueueOrderCreated(savedOrder);
+
+        // 🔥 FIX: Only mark voucher as used if voucher code is present
+        if (request.getVoucherCode() != null && !request.getVoucherCode().trim().isEmpty()) {
+            voucherService.markAsUsed(request.getVoucherCode(), savedOrder.getUser().getUserId());
         }
 
-        // 🔥 Xóa các sản phẩm đã đặt hàng khỏi giỏ hàng
-        List<Long> orderedVariantIds = checkout.getItems().stream()
-                .map(CheckoutItemResponse::getVariantId)
-                .collect(Collectors.toList());
+        // 🔥 Trừ kho: commit hàng đã giữ lúc checkout, dòng không có hold thì trừ thẳng (UPDATE có điều kiện)
+        stockReservationService.commitForOrder(
+                request.getCheckoutSessionId(),
+                savedOrder.getOrderId(),
+                checkout.getItems()
+        );
 
-        cartsService.removeOrderedItemsFromCart(request.getUserId(), orderedVariantIds);
+        checkoutSessionStore.remove(request.getCheckoutSessionId());
 
         return OrderCreateResponse.builder()
                 .orderId(savedOrder.getOrderId())
@@ -221,6 +224,35 @@ public class OrdersService {
             );
         }
 
+        // 3️⃣a Trả suất Flash Sale + giới hạn mua của user cho các dòng mua giá flash
+        for (OrderItems item : order.getItems()) {
+            if (item.getFlashSaleId() != null) {
+                flashSaleService.returnFlashSale(item.getFlashSaleId(), item.getQuantity());
+                flashSaleUserPurchaseService.returnPurchase(
+                        item.getFlashSaleId(),
+                        order.getUser().getUserId(),
+                        item.getQuantity()
+                );
+            }
+        }
+
+        // 3️⃣b Trừ lại totalPurchaseCount + bảng bán chạy
+        Map<Long, Long> purchaseDeltas = new HashMap<>();
+        for (OrderItems item : order.getItems()) {
+            purchaseDeltas.merge(
+                    item.getVariant().getProducts().getProductId(),
+                    -item.getQuantity().longValue(),
+                    Long::sum);
+        }
+        LocalDateTime canceledAt = LocalDateTime.now();
+        purchaseDeltas.forEach((productId, delta) ->
+                productsRepository.addPurchaseCount(productId, delta, canceledAt));
+        LocalDateTime orderedAt = order.getCreatedAt();
+        TransactionCallbacks.afterCommit(() -> purchaseDeltas.forEach((productId, delta) -> {
+            topSellingLeaderboard.add(productId, delta);
+            trendingProductsTracker.record(productId, delta, orderedAt);
+        }));
+
         // 4️⃣ Hoàn trả voucher (nếu có)
         if (order.getVoucher() != null) {
             voucherService.restoreVoucher(
@@ -230,6 +262,7 @@ public class OrdersService {
         }
 
         // 5️⃣ Update order status
+        Orders.OrderStatus oldStatus = order.getStatus();
         order.setStatus(Orders.OrderStatus.canceled);
         order.setNote(
                 (order.getNote() != null ? order.getNote() + "\n" : "") +
@@ -242,6 +275,7 @@ public class OrdersService {
         order.setUpdatedAt(LocalDateTime.now());
 
         Orders savedOrder = ordersRepository.save(order);
+        orderRevenueRollupService.recordStatusChange(savedOrder, oldStatus);
 
         return OrderCreateResponse.builder()
                 .orderId(savedOrder.getOrderId())
@@ -251,7 +285,7 @@ public class OrdersService {
     }
 
     // ✅ HELPER: Tạo OrderItemResponse với imageUrl
-    private OrderItemResponse buildOrderItemResponse(OrderItems item) {
+    private OrderItemResponse buildOrderItemResponse(OrderItems item, Map<Long, String> imageUrls) {
         try {
             OrderItemResponse.OrderItemResponseBuilder builder =
                     OrderItemResponse.builder()
@@ -267,22 +301,10 @@ public class OrdersService {
                                     ? item.getVariant().getVariantId()
                                     : null);
 
-            // ✅ Lấy ảnh chính của sản phẩm
+            // ✅ Lấy ảnh chính của sản phẩm (đã resolve sẵn cho cả danh sách)
             if (item.getVariant() != null && item.getVariant().getProducts() != null) {
-                Optional<ProductImages> primaryImage =
-                        productImagesRepository.findFirstByProductsAndIsPrimaryTrue(
-                                item.getVariant().getProducts()
-                        );
-
-                primaryImage.ifPresent(img -> {
-                    String imageUrl = img.getImageUrl();
-
-                    if (imageUrl != null && !imageUrl.startsWith("http")) {
-                        imageUrl = BASE_URL + imageUrl;
-                    }
-
-                    builder.imageUrl(imageUrl);
-                });
+                builder.imageUrl(absoluteImageUrl(
+                        imageUrls.get(item.getVariant().getProducts().getProductId())));
             }
 
             // ✅ QUAN TRỌNG: build từ builder đã set
@@ -293,8 +315,22 @@ public class OrdersService {
         }
     }
 
+    // Ảnh chính của mọi sản phẩm trong các đơn, resolve 1 lần
+    private Map<Long, String> resolveItemImages(List<Orders> orders) {
+        return productImageResolver.resolvePrimaryImageUrls(orders.stream()
+                .flatMap(order -> order.getItems().stream())
+                .map(item -> item.getVariant() != null && item.getVariant().getProducts() != null
+                        ? item.getVariant().getProducts().getProductId()
+                        : null)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList());
+    }
+
     public List<OrderResponse> getOrdersByStatus(OrderStatus status) {
-        return ordersRepository.findByStatus(status)
+        List<Orders> orders = ordersRepository.findByStatus(status);
+        Map<Long, String> imageUrls = resolveItemImages(orders);
+        return orders
                 .stream()
                 .map(order -> OrderResponse.builder()
                         .orderId(order.getOrderId())
@@ -309,7 +345,7 @@ public class OrdersService {
                         .createdAt(order.getCreatedAt())
                         .items(
                                 order.getItems().stream()
-                                        .map(this::buildOrderItemResponse) // ✅ Dùng helper
+                                        .map(item -> buildOrderItemResponse(item, imageUrls)) // ✅ Dùng helper
                                         .toList()
                         )
                         .build()
@@ -319,6 +355,7 @@ public class OrdersService {
     public OrderResponse getOrderByOrderNumber(String orderNumber) {
         Orders order = ordersRepository.findByOrderNumber(orderNumber)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
+        Map<Long, String> imageUrls = resolveItemImages(List.of(order));
 
         return OrderResponse.builder()
                 .orderId(order.getOrderId())
@@ -333,7 +370,7 @@ public class OrdersService {
                 .createdAt(order.getCreatedAt())
                 .items(
                         order.getItems().stream()
-                                .map(this::buildOrderItemResponse) // ✅ Dùng helper
+                                .map(item -> buildOrderItemResponse(item, imageUrls)) // ✅ Dùng helper
                                 .toList()
                 )
                 .build();
@@ -343,6 +380,7 @@ public class OrdersService {
     @Transactional(readOnly = true)
     public List<OrderResponse> getUserOrders(Long userId) {
         List<Orders> userOrders = ordersRepository.findByUser_UserIdOrderByCreatedAtDesc(userId);
+        Map<Long, String> imageUrls = resolveItemImages(userOrders);
 
         return userOrders.stream()
                 .map(order -> {
@@ -359,7 +397,7 @@ public class OrdersService {
                             .createdAt(order.getCreatedAt())
                             .items(
                                     order.getItems().stream()
-                                            .map(this::buildOrderItemResponse) // ✅ Dùng helper
+                                            .map(item -> buildOrderItemResponse(item, imageUrls)) // ✅ Dùng helper
                                             .toList()
                             );
 
@@ -377,6 +415,116 @@ public class OrdersService {
                 }).toList();
     }
 
+    // 📄 Lịch sử đơn hàng phân trang theo cursor (createdAt, orderId): 1 query + 1 lần resolve ảnh / trang
+    @Transactional(readOnly = true)
+    public OrderHistoryPageResponse getUserOrdersPage(Long userId, String cursor, Integer size) {
+        int pageSize = size == null
+                ? DEFAULT_HISTORY_PAGE_SIZE
+                : Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+
+        HistoryCursor after = cursor != null && !cursor.isBlank() ? decodeCursor(cursor) : null;
+
+        // Lấy dư 1 đơn để biết còn trang sau
+        List<OrderHistoryRow> rows = ordersRepository.findUserOrderHistoryPage(
+                userId,
+                after != null ? after.createdAt() : null,
+                after != null ? after.orderId() : null,
+                pageSize + 1);
+
+        Map<Long, String> imageUrls = productImageResolver.resolvePrimaryImageUrls(rows.stream()
+                .map(OrderHistoryRow::getProductId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList());
+
+        Map<Long, OrderResponse> orders = new LinkedHashMap<>();
+        Map<Long, LocalDateTime> createdAts = new HashMap<>();
+        for (OrderHistoryRow row : rows) {
+            OrderResponse order = orders.computeIfAbsent(row.getOrderId(), id -> {
+                createdAts.put(id, row.getCreatedAt());
+                return toOrderResponse(row);
+            });
+            if (row.getOrderItemId() != null) {
+                order.getItems().add(OrderItemResponse.builder()
+                        .orderItemId(row.getOrderItemId())
+                        .productName(row.getProductNameSnapshot())
+                        .unitPrice(row.getUnitPrice())
+                        .quantity(row.getQuantity())
+                        .totalPrice(row.getTotalPrice())
+                        .productId(row.getProductId())
+                        .variantId(row.getVariantId())
+                        .imageUrl(absoluteImageUrl(imageUrls.get(row.getProductId())))
+                        .build());
+            }
+        }
+
+        List<OrderResponse> page = new ArrayList<>(orders.values());
+        boolean hasMore = page.size() > pageSize;
+        if (hasMore) {
+            page = new ArrayList<>(page.subList(0, pageSize));
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            OrderResponse last = page.get(page.size() - 1);
+            nextCursor = encodeCursor(createdAts.get(last.getOrderId()), last.getOrderId());
+        }
+
+        return OrderHistoryPageResponse.builder()
+                .orders(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private OrderResponse toOrderResponse(OrderHistoryRow row) {
+        return OrderResponse.builder()
+                .orderId(row.getOrderId())
+                .orderNumber(row.getOrderNumber())
+                .status(row.getStatus().name())
+                .subtotal(row.getSubtotal())
+                .discountTotal(row.getDiscountTotal())
+                .shippingFee(row.getShippingFee())
+                .grandTotal(row.getGrandTotal())
+                .currency(row.getCurrency())
+                .note(row.getNote())
+                .createdAt(row.getCreatedAt())
+                .recipientName(row.getRecipientName())
+                .phone(row.getPhone())
+                .street(row.getStreet())
+                .ward(row.getWard())
+                .district(row.getDistrict())
+                .city(row.getCity())
+                .items(new ArrayList<>())
+                .build();
+    }
+
+    private String encodeCursor(LocalDateTime createdAt, Long orderId) {
+        String raw = createdAt + "|" + orderId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private HistoryCursor decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(cursor);
+            }
+            return new HistoryCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new RuntimeException("Cursor không hợp lệ");
+        }
+    }
+
+    private record HistoryCursor(LocalDateTime createdAt, Long orderId) {
+    }
+
+    private String absoluteImageUrl(String imageUrl) {
+        if (imageUrl != null && !imageUrl.startsWith("http")) {
+            return BASE_URL + imageUrl;
+        }
+        return imageUrl;
+    }
+
     // ===========================
     // Tạo mã đơn hàng
     // ===========================
@@ -3,6 +3,8 @@ import binh.shopee.dto.admin.*;
 import binh.shopee.dto.product.*;
 import binh.shopee.entity.*;
 import binh.shopee.repository.*;
+import binh.shopee.util.TransactionCallbacks;
+import binh.shopee.util.VietnameseText;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
@@ -34,6 +36,13 @@ public class ProductAdminService {
     private final ProductCategoriesRepository productCategoriesRepository;
     private final InventoryRepository inventoryRepository;
     private final ReviewsRepository reviewsRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductImageResolver productImageResolver;
+    private final ProductEffectivePriceService productEffectivePriceService;
+    private final PromotionIndex promotionIndex;
+    private final TopSellingLeaderboard topSellingLeaderboard;
+    private final CategoryListingIndex categoryListingIndex;
+    private final ProductDetailAssembler productDetailAssembler;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -103,6 +112,7 @@ public class ProductAdminService {
                 image.setSortOrder(i);
                 productImagesRepository.save(image);
             }
+            productImageResolver.invalidate(product.getProductId());
         }
 
         // ALWAYS create default variant for every product
@@ -141,6 +151,9 @@ public class ProductAdminService {
             inventoryRepository.save(inventory);
         }
 
+        productEffectivePriceService.refreshProduct(product.getProductId());
+        Long createdId = product.getProductId();
+        TransactionCallbacks.afterCommit(() -> topSellingLeaderboard.reloadProduct(createdId));
         return convertToAdminDetailResponse(product);
     }
 
@@ -215,9 +228,30 @@ public class ProductAdminService {
         }
 
         product = productsRepository.save(product);
+        boolean priceChanged = request.getPrice() != null;
+        if (priceChanged) {
+            productEffectivePriceService.refreshProduct(product.getProductId());
+        }
+        // Danh mục / trạng thái có thể đổi -> xếp lại bảng bán chạy
+        TransactionCallbacks.afterCommit(() -> {
+            if (priceChanged) {
+                // Thứ tự ưu tiên giữa các khuyến mãi tính theo giá sản phẩm
+                promotionIndex.reloadProduct(id);
+            }
+            topSellingLeaderboard.reloadProduct(id);
+            productDetailAssembler.invalidate(id);
+        });
         return convertToAdminDetailResponse(product);
     }
 
+    /**
+     * Tính lại toàn bộ giá áp dụng và nạp lại promotion index (sau khi sửa Discounts / FlashSales trực tiếp trong DB)
+     */
+    public void refreshEffectivePrices() {
+        promotionIndex.reload();
+        productEffectivePriceService.refreshAll();
+    }
+
     @Transactional
     public void deleteProduct(Long id) {
         Products product = productsRepository.findById(id)
@@ -257,6 +291,13 @@ public class ProductAdminService {
 
         // 8. Finally delete product
         productsRepository.delete(product);
+        productSearchIndex.remove(id);
+        productImageResolver.invalidate(id);
+        TransactionCallbacks.afterCommit(() -> {
+            topSellingLeaderboard.remove(id);
+            categoryListingIndex.remove(id);
+            productDetailAssembler.invalidate(id);
+        });
     }
 
     @Transactional
@@ -269,6 +310,10 @@ public class ProductAdminService {
                 : Products.ProductStatus.inactive);
         product.setUpdatedAt(LocalDateTime.now());
         productsRepository.save(product);
+        TransactionCallbacks.afterCommit(() -> {
+            topSellingLeaderboard.reloadProduct(id);
+            productDetailAssembler.invalidateCore(id);
+        });
     }
 
     @Transactional
@@ -284,6 +329,10 @@ public class ProductAdminService {
 
         product.setUpdatedAt(LocalDateTime.now());
         Products savedProduct = productsRepository.save(product);
+        TransactionCallbacks.afterCommit(() -> {
+            topSellingLeaderboard.reloadProduct(productId);
+            productDetailAssembler.invalidateCore(productId);
+        });
         return convertToAdminDetailResponse(savedProduct);
     }
 
@@ -418,14 +467,7 @@ public class ProductAdminService {
             return "product-" + UUID.randomUUID().toString().substring(0, 8);
         }
 
-        return name.toLowerCase()
-                .replaceAll("[àáạảãâầấậẩẫăằắặẳẵ]", "a")
-                .replaceAll("[èéẹẻẽêềếệểễ]", "e")
-                .replaceAll("[ìíịỉĩ]", "i")
-                .replaceAll("[òóọỏõôồốộổỗơờớợởỡ]", "o")
-                .replaceAll("[ùúụủũưừứựửữ]", "u")
-                .replaceAll("[ỳýỵỷỹ]", "y")
-                .replaceAll("[đ]", "d")
+        return VietnameseText.fold(name)
                 .replaceAll("[^a-z0-9\\s-]", "")
                 .trim()
                 .replaceAll("\\s+", "-")
@@ -1,22 +1,52 @@
 package binh.shopee.service;
 
+import binh.shopee.dto.product.ProductCursorPage;
 import binh.shopee.dto.product.ProductSearchResponse;
 import binh.shopee.repository.ProductCategoriesRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import java.util.Set;
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 public class    ProductCategoriesService  {
     private final ProductCategoriesRepository productCategoriesRepository;
+    private final CategoryTreeCache categoryTreeCache;
+    private final CategoryListingIndex categoryListingIndex;
     public Page<ProductSearchResponse> getProductsByCategory(
             Long categoryId,
+            boolean includeDescendants,
             Pageable pageable
     ) {
+        if (includeDescendants) {
+            return productCategoriesRepository
+                    .findProductSearchByCategoryIds(categoryTreeCache.subtreeIds(categoryId), pageable);
+        }
         return productCategoriesRepository
                 .findProductSearchByCategory(categoryId, pageable);
     }
+
+    // Phân trang bằng cursor trên mảng đã sắp trong bộ nhớ (không OFFSET / COUNT)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ProductCursorPage getProductsByCategoryCursor(
+            Long categoryId,
+            boolean includeDescendants,
+            String sort,
+            String cursor,
+            int size
+    ) {
+        Set<Long> categoryIds = includeDescendants
+                ? categoryTreeCache.subtreeIds(categoryId)
+                : Set.of(categoryId);
+        return categoryListingIndex.page(
+                categoryIds,
+                CategoryListingIndex.Sort.parse(sort),
+                cursor,
+                Math.max(1, Math.min(size, 100))
+        );
+    }
 }
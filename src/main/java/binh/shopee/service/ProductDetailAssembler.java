@@ -0,0 +1,367 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.BrandInfo;
+import binh.shopee.dto.product.ImageInfo;
+import binh.shopee.dto.product.ProductDetailResponse;
+import binh.shopee.dto.product.ReviewInfo;
+import binh.shopee.dto.product.VariantInfo;
+import binh.shopee.entity.Inventory;
+import binh.shopee.entity.ProductVariants;
+import binh.shopee.entity.Products;
+import binh.shopee.repository.FlashSalesRepository;
+import binh.shopee.repository.InventoryRepository;
+import binh.shopee.repository.ProductImagesRepository;
+import binh.shopee.repository.ProductVariantsRepository;
+import binh.shopee.repository.ProductsRepository;
+import binh.shopee.repository.ReviewsRepository;
+import binh.shopee.util.BoundedTtlCache;
+import binh.shopee.util.SingleFlight;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Ghép trang chi tiết sản phẩm từ 4 mảnh cache riêng, mỗi mảnh invalidate độc lập:
+ * core (thông tin + brand + giá áp dụng), ảnh, biến thể kèm tồn kho (load tồn kho theo lô),
+ * review (danh sách + rating + histogram).
+ * Thay đổi tồn kho chỉ bỏ mảnh biến thể; totalPurchaseCount / soldLast24h lấy trực tiếp từ bộ nhớ.
+ * Mỗi lần trả về là DTO mới, phần tử con (ảnh, biến thể, review, brand) cũng được copy: caller có sửa
+ * kết quả thì mảnh cache vẫn nguyên.
+ * Chống dồn tải khi sản phẩm hot: request đồng thời cùng 1 mảnh chỉ chạy 1 lần load, mảnh sắp hết hạn được
+ * làm mới sớm theo xác suất (tăng dần khi gần hết hạn, tỉ lệ với thời gian load) nên không có lúc cả loạt
+ * request cùng thấy cache trống; sản phẩm flash sale được nạp sẵn ngay trước giờ mở bán.
+ */
+@Service
+public class ProductDetailAssembler {
+    private final ProductsRepository productsRepository;
+    private final ProductImagesRepository productImagesRepository;
+    private final ProductVariantsRepository productVariantsRepository;
+    private final InventoryRepository inventoryRepository;
+    private final ReviewsRepository reviewsRepository;
+    private final FlashSalesRepository flashSalesRepository;
+    private final TopSellingLeaderboard topSellingLeaderboard;
+    private final TrendingProductsTracker trendingProductsTracker;
+    private final double earlyRefreshBeta;
+    private final long prewarmLeadSeconds;
+
+    private final FragmentCache<ProductDetailResponse> cores;
+    private final FragmentCache<List<ImageInfo>> images;
+    private final FragmentCache<List<VariantInfo>> variants;
+    private final FragmentCache<ReviewSummary> reviews;
+    // variantId -> productId của các mảnh biến thể đang cache (để invalidate theo variant).
+    // Giới hạn số phần tử + sống lâu hơn mảnh biến thể; mục bị loại sớm chỉ làm invalidate trượt,
+    // tồn kho khi đó vẫn cũ tối đa bằng TTL ngắn của mảnh biến thể
+    private final BoundedTtlCache<Long, Long> variantProducts;
+
+    private record ReviewSummary(List<ReviewInfo> reviews, Double rating, Long totalReviews,
+                                 Map<Integer, Long> histogram) {
+    }
+
+    public ProductDetailAssembler(
+            ProductsRepository productsRepository,
+            ProductImagesRepository productImagesRepository,
+            ProductVariantsRepository productVariantsRepository,
+            InventoryRepository inventoryRepository,
+            ReviewsRepository reviewsRepository,
+            FlashSalesRepository flashSalesRepository,
+            TopSellingLeaderboard topSellingLeaderboard,
+            TrendingProductsTracker trendingProductsTracker,
+            @Value("${product.detail-cache.max-size:5000}") int maxSize,
+            @Value("${product.detail-cache.ttl-minutes:10}") long ttlMinutes,
+            @Value("${product.detail-cache.variants-ttl-seconds:30}") long variantsTtlSeconds,
+            @Value("${product.detail-cache.variant-index-max-size:50000}") int variantIndexMaxSize,
+            @Value("${product.detail-cache.early-refresh-beta:1.0}") double earlyRefreshBeta,
+            @Value("${product.detail-cache.prewarm-lead-seconds:60}") long prewarmLeadSeconds) {
+        this.productsRepository = productsRepository;
+        this.productImagesRepository = productImagesRepository;
+        this.productVariantsRepository = productVariantsRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.reviewsRepository = reviewsRepository;
+        this.flashSalesRepository = flashSalesRepository;
+        this.topSellingLeaderboard = topSellingLeaderboard;
+        this.trendingProductsTracker = trendingProductsTracker;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+        this.prewarmLeadSeconds = prewarmLeadSeconds;
+        Duration ttl = Duration.ofMinutes(ttlMinutes);
+        this.cores = new FragmentCache<>(maxSize, ttl, id -> productsRepository.findProductDetailById(id)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm có ID = " + id)));
+        this.images = new FragmentCache<>(maxSize, ttl, this::loadImages);
+        this.reviews = new FragmentCache<>(maxSize, ttl, this::loadReviews);
+        // Tồn kho còn đổi qua đường không gọi invalidate (sửa thẳng DB) -> TTL ngắn
+        this.variants = new FragmentCache<>(maxSize, Duration.ofSeconds(variantsTtlSeconds), this::loadVariants);
+        this.variantProducts = new BoundedTtlCache<>(variantIndexMaxSize,
+                Duration.ofSeconds(variantsTtlSeconds).multipliedBy(2), false);
+    }
+
+    public ProductDetailResponse assemble(Long productId) {
+        ProductDetailResponse core = cores.get(productId);
+        List<ImageInfo> imageList = images.get(productId);
+        List<VariantInfo> variantList = variants.get(productId);
+        ReviewSummary reviewSummary = reviews.get(productId);
+
+        Long purchaseCount = topSellingLeaderboard.count(productId);
+        return ProductDetailResponse.builder()
+                .productId(core.getProductId())
+                .name(core.getName())
+                .description(core.getDescription())
+                .price(core.getPrice())
+                .totalPurchaseCount(purchaseCount != null ? purchaseCount : core.getTotalPurchaseCount())
+                .discountAmount(core.getDiscountAmount())
+                .finalPrice(core.getFinalPrice())
+                .rating(reviewSummary.rating())
+                .status(core.getStatus())
+                .createdAt(core.getCreatedAt())
+                .updatedAt(core.getUpdatedAt())
+                .brand(copyBrand(core.getBrand()))
+                .images(imageList.stream().map(ProductDetailAssembler::copyImage).toList())
+                .variants(variantList.stream().map(ProductDetailAssembler::copyVariant).toList())
+                .reviews(reviewSummary.reviews().stream().map(ProductDetailAssembler::copyReview).toList())
+                .totalReviews(reviewSummary.totalReviews())
+                .ratingHistogram(reviewSummary.histogram())
+                .soldLast24h(trendingProductsTracker.soldLast24h(productId))
+                .build();
+    }
+
+    /**
+     * Thông tin sản phẩm / giá áp dụng đổi.
+     */
+    public void invalidateCore(Long productId) {
+        cores.invalidate(productId);
+    }
+
+    public void invalidateAllCores() {
+        cores.clear();
+    }
+
+    /**
+     * Tồn kho của variant đổi -> chỉ bỏ mảnh biến thể của sản phẩm chứa nó.
+     */
+    public void invalidateStock(Long variantId) {
+        Long productId = variantProducts.get(variantId);
+        if (productId != null) {
+            variants.invalidate(productId);
+        }
+    }
+
+    public void invalidateReviews(Long productId) {
+        reviews.invalidate(productId);
+    }
+
+    /**
+     * Admin sửa / xóa sản phẩm: bỏ mọi mảnh.
+     */
+    public void invalidate(Long productId) {
+        cores.invalidate(productId);
+        images.invalidate(productId);
+        variants.invalidate(productId);
+        reviews.invalidate(productId);
+        // Không quét variantProducts: mục cũ trỏ tới mảnh đã bỏ thì vô hại và tự hết hạn
+    }
+
+    /**
+     * Nạp sẵn mọi mảnh cho sản phẩm có flash sale sắp mở bán (hoặc vừa mở: giá áp dụng đổi lúc mở bán
+     * làm mảnh core bị bỏ, lượt này nạp lại trước khi request dồn tới).
+     */
+    @Scheduled(fixedDelayString = "${product.detail-cache.prewarm-check-ms:5000}")
+    public void prewarmFlashSales() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> productIds;
+        try {
+            productIds = flashSalesRepository.findProductIdsStartingBetween(
+                    now.minusSeconds(30), now.plusSeconds(prewarmLeadSeconds));
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Không lấy được flash sale sắp mở bán: " + e.getMessage());
+            return;
+        }
+        for (Long productId : productIds) {
+            try {
+                cores.get(productId);
+                images.get(productId);
+                variants.get(productId);
+                reviews.get(productId);
+            } catch (RuntimeException e) {
+                System.out.println("⚠️ Không nạp sẵn được chi tiết sản phẩm " + productId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static BrandInfo copyBrand(BrandInfo b) {
+        if (b == null) {
+            return null;
+        }
+        return BrandInfo.builder()
+                .brandId(b.getBrandId())
+                .name(b.getName())
+                .slug(b.getSlug())
+                .logoUrl(b.getLogoUrl())
+                .website(b.getWebsite())
+                .description(b.getDescription())
+                .build();
+    }
+
+    private static ImageInfo copyImage(ImageInfo i) {
+        return ImageInfo.builder()
+                .imageId(i.getImageId())
+                .imageUrl(i.getImageUrl())
+                .isPrimary(i.getIsPrimary())
+                .sortOrder(i.getSortOrder())
+                .build();
+    }
+
+    private static VariantInfo copyVariant(VariantInfo v) {
+        return VariantInfo.builder()
+                .variantId(v.getVariantId())
+                .quantity(v.getQuantity())
+                .attributesJson(v.getAttributesJson())
+                .priceOverride(v.getPriceOverride())
+                .imageUrl(v.getImageUrl())
+                .status(v.getStatus())
+                .createdAt(v.getCreatedAt())
+                .build();
+    }
+
+    private static ReviewInfo copyReview(ReviewInfo r) {
+        return ReviewInfo.builder()
+                .reviewId(r.getReviewId())
+                .rating(r.getRating())
+                .title(r.getTitle())
+                .content(r.getContent())
+                .status(r.getStatus())
+                .userName(r.getUserName())
+                .createdAt(r.getCreatedAt())
+                .build();
+    }
+
+    private List<ImageInfo> loadImages(Long productId) {
+        return productImagesRepository.findByProducts_ProductId(productId)
+                .stream()
+                .map(pi -> ImageInfo.builder()
+                        .imageId(pi.getImageId())
+                        .imageUrl(pi.getImageUrl())
+                        .isPrimary(pi.getIsPrimary())
+                        .sortOrder(pi.getSortOrder())
+                        .build())
+                .toList();
+    }
+
+    private List<VariantInfo> loadVariants(Long productId) {
+        List<ProductVariants> variantEntities = productVariantsRepository.findByProducts_ProductId(productId);
+        // Tồn kho khả dụng của mọi variant: 1 query IN thay vì 1 query / variant
+        Map<Long, Integer> available = new HashMap<>();
+        if (!variantEntities.isEmpty()) {
+            for (Inventory inventory : inventoryRepository.findByVariantVariantIdIn(
+                    variantEntities.stream().map(ProductVariants::getVariantId).toList())) {
+                available.put(inventory.getVariant().getVariantId(),
+                        inventory.getStockQty() - inventory.getReservedQty());
+            }
+        }
+        for (ProductVariants v : variantEntities) {
+            variantProducts.put(v.getVariantId(), productId);
+        }
+        return variantEntities.stream()
+                .map(v -> VariantInfo.builder()
+                        .variantId(v.getVariantId())
+                        .quantity(available.getOrDefault(v.getVariantId(), 0))
+                        .attributesJson(v.getAttributesJson())
+                        .priceOverride(v.getPriceOverride())
+                        .status(v.getStatus())
+                        .createdAt(v.getCreatedAt())
+                        .build())
+                .toList();
+    }
+
+    private record Fragment<V>(V value, long expiresAtMillis, long loadMillis) {
+    }
+
+    /**
+     * 1 loại mảnh: cache hết hạn tính từ lúc ghi + single-flight + làm mới sớm theo xác suất (XFetch).
+     * Mốc invalidate theo sản phẩm (và bộ đếm clear toàn cục) chặn load bắt đầu trước lần invalidate
+     * ghi đè dữ liệu cũ. Mốc chỉ cần khi đang có load chạy nên chỉ ghi lúc đó, giữ trong cache có giới hạn;
+     * load dài hơn TTL của mốc hoặc có mốc bị loại trong lúc load thì không ghi cache (an toàn, chỉ mất 1 lần hit).
+     */
+    private final class FragmentCache<V> {
+        private final BoundedTtlCache<Long, Fragment<V>> cache;
+        private final SingleFlight<Long, V> loads = new SingleFlight<>();
+        // productId -> thế hệ lúc invalidate gần nhất (chỉ ghi khi đang có load của sản phẩm đó)
+        private final BoundedTtlCache<Long, Long> invalidatedAt;
+        private final AtomicLong generation = new AtomicLong();
+        private final AtomicLong clears = new AtomicLong();
+        private final long ttlMillis;
+        private final Function<Long, V> loader;
+
+        FragmentCache(int maxSize, Duration ttl, Function<Long, V> loader) {
+            this.cache = new BoundedTtlCache<>(maxSize, ttl, false);
+            this.invalidatedAt = new BoundedTtlCache<>(maxSize, ttl, false);
+            this.ttlMillis = ttl.toMillis();
+            this.loader = loader;
+        }
+
+        V get(Long productId) {
+            Fragment<V> cached = cache.get(productId);
+            if (cached != null && (!refreshEarly(cached) || loads.isRunning(productId))) {
+                return cached.value();
+            }
+            // Hết hạn: mọi request chờ chung 1 load; sắp hết hạn: chỉ request "trúng" tự làm mới
+            return loads.run(productId, () -> load(productId));
+        }
+
+        private V load(Long productId) {
+            long clearsAtStart = clears.get();
+            long generationAtStart = generation.get();
+            long evictionsAtStart = invalidatedAt.evictionCount();
+            long startedAt = System.currentTimeMillis();
+            V value = loader.apply(productId);
+            long now = System.currentTimeMillis();
+            Long lastInvalidated = invalidatedAt.get(productId);
+            boolean stale = clears.get() != clearsAtStart
+                    || (lastInvalidated != null && lastInvalidated > generationAtStart)
+                    || invalidatedAt.evictionCount() != evictionsAtStart
+                    || now - startedAt >= ttlMillis;
+            if (!stale) {
+                cache.put(productId, new Fragment<>(value, now + ttlMillis, now - startedAt));
+            }
+            return value;
+        }
+
+        // XFetch: làm mới khi now + loadMillis * beta * (-ln rand) vượt hạn -> xác suất tăng dần về cuối TTL
+        private boolean refreshEarly(Fragment<V> fragment) {
+            double gap = Math.max(1, fragment.loadMillis()) * earlyRefreshBeta
+                    * -Math.log(ThreadLocalRandom.current().nextDouble(Double.MIN_VALUE, 1));
+            return System.currentTimeMillis() + gap >= fragment.expiresAtMillis();
+        }
+
+        void invalidate(Long productId) {
+            // Không có load đang chạy thì load sau bắt đầu sau thay đổi -> không cần mốc
+            if (loads.isRunning(productId)) {
+                invalidatedAt.put(productId, generation.incrementAndGet());
+            }
+            cache.remove(productId);
+        }
+
+        void clear() {
+            clears.incrementAndGet();
+            cache.clear();
+        }
+    }
+
+    private ReviewSummary loadReviews(Long productId) {
+        List<ReviewInfo> reviewList = reviewsRepository.findReviewInfos(productId, "approved");
+        Products product = productsRepository.findById(productId).orElse(null);
+        if (product == null) {
+            return new ReviewSummary(reviewList, null, 0L, Map.of());
+        }
+        Double rating = product.getRatingAvg() != null
+                ? Math.round(product.getRatingAvg() * 10) / 10.0
+                : null;
+        return new ReviewSummary(reviewList, rating, product.getRatingCount(),
+                Collections.unmodifiableMap(ProductRatingService.histogram(product)));
+    }
+}
@@ -0,0 +1,89 @@
+package binh.shopee.service;
+import binh.shopee.repository.DiscountsRepository;
+import binh.shopee.repository.FlashSalesRepository;
+import binh.shopee.repository.ProductEffectivePriceRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Giữ bảng product_effective_prices khớp với Discounts / FlashSales.
+ * Refresh toàn bộ đúng lúc một khuyến mãi bắt đầu hoặc kết thúc (mốc gần nhất được nhớ trong bộ nhớ),
+ * refresh 1 sản phẩm khi admin sửa giá / khuyến mãi, và đối chiếu định kỳ cho thay đổi ghi thẳng vào DB.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductEffectivePriceService {
+    private static final long ALL_PRODUCTS = 0L;
+
+    private final ProductEffectivePriceRepository effectivePriceRepository;
+    private final DiscountsRepository discountsRepository;
+    private final FlashSalesRepository flashSalesRepository;
+    private final ProductDetailAssembler productDetailAssembler;
+
+    // Mốc khuyến mãi bắt đầu / kết thúc kế tiếp, null = không có
+    private volatile LocalDateTime nextBoundary;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshOnStartup() {
+        try {
+            refreshAll();
+        } catch (RuntimeException e) {
+            // Lần đối chiếu định kỳ sẽ thử lại
+            System.out.println("⚠️ Không refresh được giá áp dụng: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${product.effective-price.boundary-check-ms:1000}")
+    public void refreshAtBoundary() {
+        LocalDateTime boundary = nextBoundary;
+        if (boundary != null && !LocalDateTime.now().isBefore(boundary)) {
+            refreshAll();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${product.effective-price.reconcile-interval-ms:300000}",
+            initialDelayString = "${product.effective-price.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        refreshAll();
+    }
+
+    public synchronized void refreshAll() {
+        LocalDateTime now = LocalDateTime.now();
+        if (effectivePriceRepository.refresh(ALL_PRODUCTS, now) > 0) {
+            productDetailAssembler.invalidateAllCores();
+        }
+        nextBoundary = findNextBoundary(now);
+    }
+
+    /**
+     * Gọi sau khi giá sản phẩm hoặc Discount / FlashSale của sản phẩm thay đổi.
+     */
+    public void refreshProduct(Long productId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (effectivePriceRepository.refresh(productId, now) > 0) {
+            productDetailAssembler.invalidateCore(productId);
+        }
+        // Khuyến mãi mới có thể có mốc sớm hơn mốc đang chờ
+        nextBoundary = findNextBoundary(now);
+    }
+
+    private LocalDateTime findNextBoundary(LocalDateTime now) {
+        // Khoảng hiệu lực là BETWEEN start AND end (gồm cả end) -> hết hiệu lực sau end
+        LocalDateTime discountEnd = discountsRepository.findNextEndFrom(now);
+        LocalDateTime flashSaleEnd = flashSalesRepository.findNextEndFrom(now);
+        return Stream.of(
+                        discountsRepository.findNextStartAfter(now),
+                        flashSalesRepository.findNextStartAfter(now),
+                        discountEnd != null ? discountEnd.plusSeconds(1) : null,
+                        flashSaleEnd != null ? flashSaleEnd.plusSeconds(1) : null)
+                .filter(Objects::nonNull)
+                .min(LocalDateTime::compareTo)
+                .orElse(null);
+    }
+}
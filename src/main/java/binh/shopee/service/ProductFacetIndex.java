@@ -0,0 +1,302 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.FacetedFilterResponse;
+import binh.shopee.dto.product.ProductFacetRow;
+import binh.shopee.dto.product.ProductSalesRow;
+import binh.shopee.dto.product.ProductSearchResponse;
+import binh.shopee.repository.ProductsRepository;
+import binh.shopee.util.FacetBitmap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bộ lọc nhiều facet trong bộ nhớ cho sản phẩm active: brand, category, khoảng giá, mức rating,
+ * đang giảm giá, còn hàng. Mỗi giá trị facet là 1 bitmap trên docId (docId xếp theo totalPurchaseCount giảm dần
+ * nên duyệt bit là ra thứ tự bán chạy); lọc = AND giữa các facet, OR trong cùng facet.
+ * Số đếm mỗi giá trị tính trên kết quả của các facet còn lại (chọn brand A vẫn thấy số lượng brand B).
+ * Dựng lại định kỳ từ DB và tráo nguyên khối.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductFacetIndex {
+    private static final double[] PRICE_BOUNDS = {0, 100_000, 200_000, 500_000, 1_000_000, 2_000_000, 5_000_000, 10_000_000};
+    private static final double[] RATING_BOUNDS = {0, 1, 2, 3, 4, 5};
+
+    private final ProductsRepository productsRepository;
+    private final ProductSearchIndex productSearchIndex;
+
+    private volatile Snapshot snapshot;
+
+    public record FacetQuery(Collection<Long> brandIds, Collection<Long> categoryIds,
+                             BigDecimal minPrice, BigDecimal maxPrice, BigDecimal minRating,
+                             boolean onlyDiscount, boolean inStock, int page, int size) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // Lần lọc đầu tiên sẽ dựng lazy
+            System.out.println("⚠️ Không dựng được facet index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Giá áp dụng / tồn kho đổi liên tục nên dựng lại cả khối theo chu kỳ.
+     */
+    @Scheduled(fixedDelayString = "${product.facet-index.rebuild-interval-ms:60000}",
+            initialDelayString = "${product.facet-index.rebuild-interval-ms:60000}")
+    public void rebuild() {
+        List<ProductFacetRow> rows = new ArrayList<>(productsRepository.findFacetRows());
+        rows.sort(Comparator.comparing(ProductFacetRow::getTotalPurchaseCount, Comparator.reverseOrder())
+                .thenComparing(ProductFacetRow::getProductId));
+        snapshot = new Snapshot(rows, productsRepository.findSalesRows(null));
+    }
+
+    public FacetedFilterResponse filter(FacetQuery query) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    rebuild();
+                }
+                current = snapshot;
+            }
+        }
+        return current.filter(query, productSearchIndex);
+    }
+
+    private static final class Snapshot {
+        private final int universe;
+        private final Long[] productIds;                       // docId -> productId
+        private final Map<Long, FacetBitmap> brands = new HashMap<>();
+        private final Map<Long, FacetBitmap> categories = new HashMap<>();
+        private final RangeFacet prices;
+        private final RangeFacet ratings;
+        private final FacetBitmap discounted;
+        private final FacetBitmap inStock;
+
+        Snapshot(List<ProductFacetRow> rows, List<ProductSalesRow> categoryRows) {
+            universe = rows.size();
+            productIds = new Long[universe];
+            Map<Long, Integer> docIds = new HashMap<>();
+            Map<Long, BitSet> brandBits = new HashMap<>();
+            BitSet discountBits = new BitSet(universe);
+            BitSet stockBits = new BitSet(universe);
+            double[] priceValues = new double[universe];
+            double[] ratingValues = new double[universe];
+            for (int doc = 0; doc < universe; doc++) {
+                ProductFacetRow row = rows.get(doc);
+                productIds[doc] = row.getProductId();
+                docIds.put(row.getProductId(), doc);
+                if (row.getBrandId() != null) {
+                    brandBits.computeIfAbsent(row.getBrandId(), id -> new BitSet()).set(doc);
+                }
+                if (Boolean.TRUE.equals(row.getDiscounted())) {
+                    discountBits.set(doc);
+                }
+                if (row.getAvailableQty() != null && row.getAvailableQty() > 0) {
+                    stockBits.set(doc);
+                }
+                priceValues[doc] = row.getEffectivePrice() != null ? row.getEffectivePrice().doubleValue() : 0;
+                ratingValues[doc] = row.getRating() != null ? row.getRating() : 0;
+            }
+            Map<Long, BitSet> categoryBits = new HashMap<>();
+            for (ProductSalesRow row : categoryRows) {
+                Integer doc = docIds.get(row.getProductId());
+                if (doc != null && row.getCategoryId() != null) {
+                    categoryBits.computeIfAbsent(row.getCategoryId(), id -> new BitSet()).set(doc);
+                }
+            }
+            brandBits.forEach((id, bits) -> brands.put(id, FacetBitmap.of(bits, universe)));
+            categoryBits.forEach((id, bits) -> categories.put(id, FacetBitmap.of(bits, universe)));
+            discounted = FacetBitmap.of(discountBits, universe);
+            inStock = FacetBitmap.of(stockBits, universe);
+            prices = new RangeFacet(PRICE_BOUNDS, priceValues, universe);
+            ratings = new RangeFacet(RATING_BOUNDS, ratingValues, universe);
+        }
+
+        FacetedFilterResponse filter(FacetQuery query, ProductSearchIndex searchIndex) {
+            // Mask của từng facet (null = facet không bị lọc)
+            long[] brandMask = unionOf(brands, query.brandIds());
+            long[] categoryMask = unionOf(categories, query.categoryIds());
+            long[] priceMask = query.minPrice() != null || query.maxPrice() != null
+                    ? prices.range(toDouble(query.minPrice()), toDouble(query.maxPrice()))
+                    : null;
+            long[] ratingMask = query.minRating() != null
+                    ? ratings.range(query.minRating().doubleValue(), null)
+                    : null;
+            long[] discountMask = query.onlyDiscount() ? maskOf(discounted) : null;
+            long[] stockMask = query.inStock() ? maskOf(inStock) : null;
+            List<long[]> masks = Arrays.asList(
+                    brandMask, categoryMask, priceMask, ratingMask, discountMask, stockMask);
+
+            long[] result = intersect(masks, -1);
+            Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+            facets.put("brand", countValues(brands, intersect(masks, 0)));
+            facets.put("category", countValues(categories, intersect(masks, 1)));
+            facets.put("price", prices.count(intersect(masks, 2)));
+            facets.put("rating", ratings.count(intersect(masks, 3)));
+            facets.put("discount", Map.of("true", (long) discounted.andCount(intersect(masks, 4))));
+            facets.put("inStock", Map.of("true", (long) inStock.andCount(intersect(masks, 5))));
+
+            int size = Math.max(1, Math.min(query.size(), 100));
+            int page = Math.max(0, query.page());
+            List<ProductSearchResponse> items = new ArrayList<>(size);
+            int skip = page * size;
+            for (int doc = FacetBitmap.nextSetBit(result, 0); doc >= 0 && items.size() < size;
+                 doc = FacetBitmap.nextSetBit(result, doc + 1)) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                ProductSearchResponse row = searchIndex.get(productIds[doc]);
+                if (row != null) {
+                    items.add(row);
+                }
+            }
+            return FacetedFilterResponse.builder()
+                    .items(items)
+                    .total(FacetBitmap.cardinality(result))
+                    .page(page)
+                    .size(size)
+                    .facets(facets)
+                    .build();
+        }
+
+        // AND mọi mask trừ mask ở vị trí skip
+        private long[] intersect(List<long[]> masks, int skip) {
+            long[] result = FacetBitmap.full(universe);
+            for (int i = 0; i < masks.size(); i++) {
+                if (i != skip && masks.get(i) != null) {
+                    FacetBitmap.and(result, masks.get(i));
+                }
+            }
+            return result;
+        }
+
+        private long[] unionOf(Map<Long, FacetBitmap> values, Collection<Long> ids) {
+            if (ids == null || ids.isEmpty()) {
+                return null;
+            }
+            long[] mask = new long[FacetBitmap.wordCount(universe)];
+            for (Long id : ids) {
+                FacetBitmap bitmap = values.get(id);
+                if (bitmap != null) {
+                    bitmap.orInto(mask);
+                }
+            }
+            return mask;
+        }
+
+        private long[] maskOf(FacetBitmap bitmap) {
+            long[] mask = new long[FacetBitmap.wordCount(universe)];
+            bitmap.orInto(mask);
+            return mask;
+        }
+
+        private static Map<String, Long> countValues(Map<Long, FacetBitmap> values, long[] base) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            values.entrySet().stream()
+                    .map(e -> Map.entry(e.getKey(), (long) e.getValue().andCount(base)))
+                    .filter(e -> e.getValue() > 0)
+                    .sorted(Map.Entry.<Long, Long>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .forEach(e -> counts.put(String.valueOf(e.getKey()), e.getValue()));
+            return counts;
+        }
+
+        private static Double toDouble(BigDecimal value) {
+            return value != null ? value.doubleValue() : null;
+        }
+    }
+
+    /**
+     * Facet dạng khoảng: mỗi bucket [bounds[i], bounds[i+1]) là 1 bitmap, giá trị chính xác giữ theo docId
+     * để xử lý bucket chỉ nằm một phần trong khoảng lọc.
+     */
+    static final class RangeFacet {
+        private final double[] bounds;
+        private final double[] values;
+        private final FacetBitmap[] buckets;
+        private final int universe;
+
+        RangeFacet(double[] bounds, double[] values, int universe) {
+            this.bounds = bounds;
+            this.values = values;
+            this.universe = universe;
+            BitSet[] bits = new BitSet[bounds.length];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = new BitSet();
+            }
+            for (int doc = 0; doc < values.length; doc++) {
+                bits[bucketOf(values[doc])].set(doc);
+            }
+            buckets = new FacetBitmap[bounds.length];
+            for (int i = 0; i < bits.length; i++) {
+                buckets[i] = FacetBitmap.of(bits[i], universe);
+            }
+        }
+
+        // Khoảng [min, max] (gồm 2 đầu), null = không chặn
+        long[] range(Double min, Double max) {
+            long[] mask = new long[FacetBitmap.wordCount(universe)];
+            for (int i = 0; i < buckets.length; i++) {
+                double lo = bounds[i];
+                double hi = i + 1 < bounds.length ? bounds[i + 1] : Double.POSITIVE_INFINITY;
+                boolean below = min != null && hi <= min;
+                boolean above = max != null && lo > max;
+                if (below || above) {
+                    continue;
+                }
+                if ((min == null || lo >= min) && (max == null || hi <= max)) {
+                    buckets[i].orInto(mask);
+                } else {
+                    buckets[i].forEach(doc -> {
+                        double value = values[doc];
+                        if ((min == null || value >= min) && (max == null || value <= max)) {
+                            mask[doc >>> 6] |= 1L << doc;
+                        }
+                    });
+                }
+            }
+            return mask;
+        }
+
+        Map<String, Long> count(long[] base) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length; i++) {
+                String label = i + 1 < bounds.length
+                        ? format(bounds[i]) + "-" + format(bounds[i + 1])
+                        : format(bounds[i]) + "+";
+                counts.put(label, (long) buckets[i].andCount(base));
+            }
+            return counts;
+        }
+
+        private int bucketOf(double value) {
+            int i = bounds.length - 1;
+            while (i > 0 && value < bounds[i]) {
+                i--;
+            }
+            return i;
+        }
+
+        private static String format(double bound) {
+            return String.valueOf((long) bound);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package binh.shopee.service;
+import binh.shopee.entity.ProductImages;
+import binh.shopee.repository.ProductImagesRepository;
+import binh.shopee.util.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ảnh đại diện của sản phẩm (ảnh primary, không có thì ảnh đầu theo sortOrder).
+ * Resolve cả danh sách productId bằng 1 query, kết quả cache có giới hạn;
+ * ProductAdminService gọi invalidate khi ảnh của sản phẩm thay đổi.
+ */
+@Service
+public class ProductImageResolver {
+    // Đánh dấu "sản phẩm không có ảnh" trong cache để không query lại
+    private static final String NO_IMAGE = "";
+
+    private final ProductImagesRepository productImagesRepository;
+    private final BoundedTtlCache<Long, String> cache;
+
+    public ProductImageResolver(
+            ProductImagesRepository productImagesRepository,
+            @Value("${product.image-cache.max-size:20000}") int maxSize,
+            @Value("${product.image-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.productImagesRepository = productImagesRepository;
+        this.cache = new BoundedTtlCache<>(maxSize, Duration.ofMinutes(ttlMinutes));
+    }
+
+    public String resolvePrimaryImageUrl(Long productId) {
+        if (productId == null) {
+            return null;
+        }
+        return resolvePrimaryImageUrls(List.of(productId)).get(productId);
+    }
+
+    /**
+     * @return productId -> imageUrl (sản phẩm không có ảnh thì không có key)
+     */
+    public Map<Long, String> resolvePrimaryImageUrls(Collection<Long> productIds) {
+        Map<Long, String> result = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long productId : productIds) {
+            if (productId == null) {
+                continue;
+            }
+            String cached = cache.get(productId);
+            if (cached == null) {
+                missing.add(productId);
+            } else if (!cached.equals(NO_IMAGE)) {
+                result.put(productId, cached);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, String> loaded = new HashMap<>();
+        for (ProductImages image : productImagesRepository.findByProductIdsOrderByPrimary(missing)) {
+            // Đã sort primary trước -> ảnh đầu tiên của mỗi sản phẩm là ảnh đại diện
+            if (image.getImageUrl() != null) {
+                loaded.putIfAbsent(image.getProducts().getProductId(), image.getImageUrl());
+            }
+        }
+        for (Long productId : missing) {
+            String url = loaded.get(productId);
+            cache.put(productId, url != null ? url : NO_IMAGE);
+            if (url != null) {
+                result.put(productId, url);
+            }
+        }
+        return result;
+    }
+
+    public void invalidate(Long productId) {
+        cache.remove(productId);
+    }
+}
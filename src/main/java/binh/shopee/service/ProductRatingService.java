@@ -0,0 +1,45 @@
+package binh.shopee.service;
+import binh.shopee.entity.Products;
+import binh.shopee.repository.ProductsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rating tổng hợp trên Products (count/sum/avg + histogram 1-5 sao).
+ * Cộng dồn khi có review đã duyệt; job định kỳ tính lại từ Reviews để sửa lệch.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductRatingService {
+    private final ProductsRepository productsRepository;
+
+    @Transactional
+    public void recordApprovedReview(Long productId, int rating) {
+        productsRepository.addRating(productId, rating, LocalDateTime.now());
+    }
+
+    @Scheduled(cron = "${product.rating.repair-cron:0 30 3 * * *}")
+    @Transactional
+    public void repairAggregates() {
+        int repaired = productsRepository.repairRatingAggregates();
+        if (repaired > 0) {
+            System.out.println("⭐ Đã tính lại rating cho " + repaired + " sản phẩm bị lệch");
+        }
+    }
+
+    // Số review theo số sao, 5 -> 1
+    public static Map<Integer, Long> histogram(Products product) {
+        Map<Integer, Long> histogram = new LinkedHashMap<>();
+        histogram.put(5, product.getRatingStar5Count());
+        histogram.put(4, product.getRatingStar4Count());
+        histogram.put(3, product.getRatingStar3Count());
+        histogram.put(2, product.getRatingStar2Count());
+        histogram.put(1, product.getRatingStar1Count());
+        return histogram;
+    }
+}
@@ -0,0 +1,346 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.ProductSearchResponse;
+import binh.shopee.repository.ProductEffectivePriceRepository;
+import binh.shopee.repository.ProductsRepository;
+import binh.shopee.util.NgramDictionary;
+import binh.shopee.util.VietnameseText;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Inverted index trong bộ nhớ phục vụ /api/products/search.
+ * Term được chuẩn hóa bằng {@link VietnameseText} nên "dien thoai" khớp "Điện thoại".
+ * Build 1 lần lúc khởi động, sau đó làm mới theo watermark trên Products.updatedAt và
+ * product_effective_prices.refreshed_at (khuyến mãi mở / đóng là thấy ngay, không cần rebuild);
+ * rebuild toàn bộ định kỳ làm lưới an toàn.
+ * Mỗi lần làm mới đọc lại 1 cửa sổ lệch phía sau watermark: transaction commit muộn nhưng updatedAt sớm hơn
+ * nếu không sẽ rơi dưới watermark và phải chờ lần rebuild toàn bộ kế tiếp.
+ * Term trong tên sản phẩm cũng được nạp vào {@link NgramDictionary} để từ khóa không ra kết quả được sửa
+ * về term gần nhất ("Có phải bạn muốn tìm"); từ điển chứa đúng các term đang có postings
+ * nên từ đã sửa luôn tìm được.
+ */
+@Service
+public class ProductSearchIndex {
+    private static final int EXACT_TERM_SCORE = 2;
+    private static final int PREFIX_TERM_SCORE = 1;
+
+    private final ProductsRepository productsRepository;
+    private final ProductEffectivePriceRepository effectivePriceRepository;
+    private final SearchResultCache searchResultCache;
+    private final Duration watermarkSkew;
+
+    private volatile Index index = new Index();
+    private volatile LocalDateTime watermark;
+    private volatile boolean ready = false;
+    private LocalDateTime lastScanAt;
+
+    public ProductSearchIndex(
+            ProductsRepository productsRepository,
+            ProductEffectivePriceRepository effectivePriceRepository,
+            SearchResultCache searchResultCache,
+            @Value("${search.index.watermark-skew-seconds:30}") long watermarkSkewSeconds) {
+        this.productsRepository = productsRepository;
+        this.effectivePriceRepository = effectivePriceRepository;
+        this.searchResultCache = searchResultCache;
+        this.watermarkSkew = Duration.ofSeconds(watermarkSkewSeconds);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // Chưa build được index -> search vẫn chạy bằng query DB, lần rebuild định kỳ sẽ thử lại
+            System.out.println("⚠️ Không build được search index: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.index.refresh-interval-ms:5000}")
+    public void scheduledRefresh() {
+        if (ready) {
+            refreshChanged();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.index.rebuild-interval-ms:900000}",
+            initialDelayString = "${search.index.rebuild-interval-ms:900000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Rebuild toàn bộ, build xong mới thay index cũ (1 lần gán nguyên tử).
+     */
+    public synchronized void rebuild() {
+        LocalDateTime scanAt = LocalDateTime.now();
+        LocalDateTime latest = latestChange();
+        Index fresh = new Index();
+        for (ProductSearchResponse row : productsRepository.findSearchIndexRows(null)) {
+            fresh.put(row);
+        }
+        index = fresh;
+        watermark = latest;
+        lastScanAt = scanAt;
+        ready = true;
+        searchResultCache.invalidateAll();
+    }
+
+    /**
+     * Chỉ index lại sản phẩm có updatedAt hoặc giá áp dụng mới hơn (watermark - độ lệch).
+     * Không có gì mới và lần quét trước đã vượt watermark + độ lệch -> không còn commit muộn nào, bỏ qua.
+     */
+    public synchronized void refreshChanged() {
+        LocalDateTime scanAt = LocalDateTime.now();
+        LocalDateTime latest = latestChange();
+        if (latest == null || (watermark != null && !latest.isAfter(watermark)
+                && lastScanAt != null && lastScanAt.isAfter(watermark.plus(watermarkSkew)))) {
+            return;
+        }
+        Index current = index;
+        boolean changed = false;
+        for (ProductSearchResponse row : productsRepository.findSearchIndexRows(
+                watermark != null ? watermark.minus(watermarkSkew) : null)) {
+            changed |= current.put(row);
+        }
+        if (watermark == null || latest.isAfter(watermark)) {
+            watermark = latest;
+        }
+        lastScanAt = scanAt;
+        if (changed) {
+            // Tên / giá áp dụng / ảnh đổi -> kết quả search / filter đã cache không còn đúng.
+            // Chỉ số bán / rating đổi (mỗi đơn hàng) thì để cache lệch tối đa 1 TTL, không xóa
+            searchResultCache.invalidateAll();
+        }
+    }
+
+    private LocalDateTime latestChange() {
+        LocalDateTime updatedAt = productsRepository.findLatestUpdatedAt();
+        LocalDateTime refreshedAt = effectivePriceRepository.findLatestRefreshedAt();
+        if (updatedAt == null || (refreshedAt != null && refreshedAt.isAfter(updatedAt))) {
+            return refreshedAt;
+        }
+        return updatedAt;
+    }
+
+    public void remove(Long productId) {
+        index.remove(productId);
+        searchResultCache.invalidateAll();
+    }
+
+    public ProductSearchResponse get(Long productId) {
+        Document doc = index.documents.get(productId);
+        return doc != null ? doc.row() : null;
+    }
+
+    /**
+     * Mọi term của từ khóa phải khớp 1 term trong tên, đúng hoặc theo prefix (từ đang gõ dở vẫn khớp).
+     * Xếp theo điểm khớp term, rồi totalPurchaseCount, rồi rating.
+     */
+    public List<ProductSearchResponse> search(String keyword) {
+        Index current = index;
+        List<String> queryTerms = new ArrayList<>(new LinkedHashSet<>(VietnameseText.tokenize(keyword)));
+
+        Map<Long, Integer> scores = null;
+        if (queryTerms.isEmpty()) {
+            scores = new HashMap<>();
+            for (Long productId : current.documents.keySet()) {
+                scores.put(productId, 0);
+            }
+        }
+        for (String term : queryTerms) {
+            Map<Long, Integer> termScores = current.match(term);
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                Map<Long, Integer> merged = new HashMap<>();
+                for (Map.Entry<Long, Integer> e : scores.entrySet()) {
+                    Integer s = termScores.get(e.getKey());
+                    if (s != null) {
+                        merged.put(e.getKey(), e.getValue() + s);
+                    }
+                }
+                scores = merged;
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, Integer> e : scores.entrySet()) {
+            Document doc = current.documents.get(e.getKey());
+            if (doc != null) {
+                hits.add(new Hit(doc.row(), e.getValue()));
+            }
+        }
+        hits.sort(HIT_ORDER);
+        return hits.stream().map(Hit::row).toList();
+    }
+
+    /**
+     * Gợi ý sửa lỗi gõ: term nào không khớp term nào trong index (kể cả dạng prefix) được thay bằng term gần nhất.
+     * null nếu không có gì để sửa, hoặc từ khóa đã sửa vẫn không ra sản phẩm nào (từng term có nhưng không cùng sản phẩm).
+     */
+    public String suggest(String keyword) {
+        Index current = index;
+        List<String> corrected = new ArrayList<>();
+        boolean changed = false;
+        for (String term : VietnameseText.tokenize(keyword)) {
+            String best = current.correct(term);
+            changed |= !best.equals(term);
+            corrected.add(best);
+        }
+        if (!changed) {
+            return null;
+        }
+        String suggestion = String.join(" ", corrected);
+        return search(suggestion).isEmpty() ? null : suggestion;
+    }
+
+    private static final Comparator<Hit> HIT_ORDER = Comparator
+            .comparingInt(Hit::score).reversed()
+            .thenComparing(h -> nullToZero(h.row().getTotalPurchaseCount()), Comparator.reverseOrder())
+            .thenComparing(h -> h.row().getRating() != null ? h.row().getRating() : 0.0, Comparator.reverseOrder())
+            .thenComparing(h -> h.row().getProductId());
+
+    private static long nullToZero(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private record Document(ProductSearchResponse row, Set<String> terms) {
+    }
+
+    private record Hit(ProductSearchResponse row, int score) {
+    }
+
+    // Ghi (put / remove) tuần tự theo khóa của Index để postings và dictionary luôn khớp nhau; đọc không khóa
+    private static final class Index {
+        private final ConcurrentHashMap<Long, Document> documents = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListMap<String, Set<Long>> postings = new ConcurrentSkipListMap<>();
+        private final NgramDictionary dictionary = new NgramDictionary();
+
+        /**
+         * @return true nếu là sản phẩm mới hoặc tên / giá / ảnh đổi; false nếu dòng giống hệt bản đã index
+         * (đọc lại trong cửa sổ chồng lấn) hoặc chỉ số bán / rating đổi (vẫn cập nhật để xếp hạng dùng số mới)
+         */
+        synchronized boolean put(ProductSearchResponse row) {
+            Document existing = documents.get(row.getProductId());
+            if (existing != null && sameRow(existing.row(), row)) {
+                return false;
+            }
+            boolean listingChanged = existing == null || !sameListing(existing.row(), row);
+            Set<String> terms = new LinkedHashSet<>(VietnameseText.tokenize(row.getName()));
+            Document previous = documents.put(row.getProductId(), new Document(row, terms));
+            if (previous != null) {
+                for (String term : previous.terms()) {
+                    if (!terms.contains(term)) {
+                        removePosting(term, row.getProductId());
+                    }
+                }
+            }
+            for (String term : terms) {
+                Set<Long> ids = postings.get(term);
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                    postings.put(term, ids);
+                    dictionary.add(term);
+                }
+                ids.add(row.getProductId());
+            }
+            return listingChanged;
+        }
+
+        private static boolean sameRow(ProductSearchResponse a, ProductSearchResponse b) {
+            return sameListing(a, b)
+                    && Objects.equals(a.getTotalPurchaseCount(), b.getTotalPurchaseCount())
+                    && Objects.equals(a.getRating(), b.getRating());
+        }
+
+        // Những gì quyết định sản phẩm có khớp / hiển thị ra sao trong kết quả đã cache
+        private static boolean sameListing(ProductSearchResponse a, ProductSearchResponse b) {
+            return Objects.equals(a.getName(), b.getName())
+                    && sameAmount(a.getOriginalPrice(), b.getOriginalPrice())
+                    && sameAmount(a.getDiscountAmount(), b.getDiscountAmount())
+                    && sameAmount(a.getFinalPrice(), b.getFinalPrice())
+                    && Objects.equals(a.getImageUrl(), b.getImageUrl());
+        }
+
+        private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+            return a == null ? b == null : b != null && a.compareTo(b) == 0;
+        }
+
+        synchronized void remove(Long productId) {
+            Document previous = documents.remove(productId);
+            if (previous != null) {
+                for (String term : previous.terms()) {
+                    removePosting(term, productId);
+                }
+            }
+        }
+
+        private void removePosting(String term, Long productId) {
+            Set<Long> ids = postings.get(term);
+            if (ids != null && ids.remove(productId) && ids.isEmpty()) {
+                postings.remove(term);
+                dictionary.remove(term);
+            }
+        }
+
+        String correct(String term) {
+            String next = postings.ceilingKey(term);
+            if (next != null && next.startsWith(term)) {
+                return term; // khớp đúng hoặc đang gõ dở
+            }
+            // Từ ngắn sửa 1 ký tự là ra từ khác hẳn nghĩa -> không sửa
+            int maxDistance = term.length() <= 3 ? 0 : term.length() <= 7 ? 1 : 2;
+            String best = term;
+            int bestDistance = Integer.MAX_VALUE;
+            int bestFrequency = -1;
+            for (NgramDictionary.Match match : dictionary.closest(term, maxDistance)) {
+                if (match.distance() > bestDistance) {
+                    break;
+                }
+                Set<Long> ids = postings.get(match.term());
+                int frequency = ids != null ? ids.size() : 0;
+                if (frequency > bestFrequency) {
+                    best = match.term();
+                    bestDistance = match.distance();
+                    bestFrequency = frequency;
+                }
+            }
+            return best;
+        }
+
+        Map<Long, Integer> match(String queryTerm) {
+            Map<Long, Integer> result = new HashMap<>();
+            for (Map.Entry<String, Set<Long>> e : postings
+                    .subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false).entrySet()) {
+                int score = e.getKey().equals(queryTerm) ? EXACT_TERM_SCORE : PREFIX_TERM_SCORE;
+                for (Long productId : e.getValue()) {
+                    result.merge(productId, score, Math::max);
+                }
+            }
+            return result;
+        }
+    }
+}
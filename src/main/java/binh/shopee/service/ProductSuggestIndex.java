@@ -0,0 +1,106 @@
+package binh.shopee.service;
+import binh.shopee.dto.category.CategoryResponse;
+import binh.shopee.dto.product.ProductSalesRow;
+import binh.shopee.dto.product.ProductSuggestRow;
+import binh.shopee.dto.product.SuggestionResponse;
+import binh.shopee.entity.Brands;
+import binh.shopee.repository.BrandsRepository;
+import binh.shopee.repository.ProductsRepository;
+import binh.shopee.util.CompletionTrie;
+import binh.shopee.util.VietnameseText;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gợi ý khi đang gõ (/api/products/suggest): tên sản phẩm, brand, danh mục đã fold về không dấu
+ * trong 1 {@link CompletionTrie}, trọng số = số đã bán (brand / danh mục = tổng của sản phẩm thuộc nó).
+ * Dựng lại nền định kỳ từ catalog rồi tráo nguyên cây; chưa dựng xong thì trả rỗng, không rơi xuống DB.
+ */
+@Service
+public class ProductSuggestIndex {
+    private final ProductsRepository productsRepository;
+    private final BrandsRepository brandsRepository;
+    private final CategoryTreeCache categoryTreeCache;
+    private final int topK;
+
+    private volatile CompletionTrie<SuggestionResponse> trie;
+
+    public ProductSuggestIndex(
+            ProductsRepository productsRepository,
+            BrandsRepository brandsRepository,
+            CategoryTreeCache categoryTreeCache,
+            @Value("${search.suggest.top-k:10}") int topK) {
+        this.productsRepository = productsRepository;
+        this.brandsRepository = brandsRepository;
+        this.categoryTreeCache = categoryTreeCache;
+        this.topK = topK;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Không dựng được cây gợi ý tìm kiếm: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${search.suggest.rebuild-interval-ms:300000}",
+            initialDelayString = "${search.suggest.rebuild-interval-ms:300000}")
+    public void rebuild() {
+        List<CompletionTrie.Entry<SuggestionResponse>> entries = new ArrayList<>();
+        Map<Long, Long> brandWeights = new HashMap<>();
+        for (ProductSuggestRow row : productsRepository.findSuggestRows()) {
+            long sold = row.getTotalPurchaseCount() != null ? row.getTotalPurchaseCount() : 0;
+            entries.add(new CompletionTrie.Entry<>(normalize(row.getName()), sold,
+                    new SuggestionResponse(row.getName(), "product", row.getProductId())));
+            if (row.getBrandId() != null) {
+                brandWeights.merge(row.getBrandId(), sold, Long::sum);
+            }
+        }
+        for (Brands brand : brandsRepository.findAll()) {
+            entries.add(new CompletionTrie.Entry<>(normalize(brand.getName()),
+                    brandWeights.getOrDefault(brand.getBrandId(), 0L),
+                    new SuggestionResponse(brand.getName(), "brand", brand.getBrandId())));
+        }
+        Map<Long, Long> categoryWeights = new HashMap<>();
+        for (ProductSalesRow row : productsRepository.findSalesRows(null)) {
+            if (row.getCategoryId() != null) {
+                categoryWeights.merge(row.getCategoryId(), row.getTotalPurchaseCount(), Long::sum);
+            }
+        }
+        for (CategoryResponse category : categoryTreeCache.getActiveCategories()) {
+            entries.add(new CompletionTrie.Entry<>(normalize(category.getName()),
+                    categoryWeights.getOrDefault(category.getCategoryId(), 0L),
+                    new SuggestionResponse(category.getName(), "category", category.getCategoryId())));
+        }
+        trie = CompletionTrie.build(entries, topK);
+    }
+
+    public List<SuggestionResponse> suggest(String query, int limit) {
+        CompletionTrie<SuggestionResponse> current = trie;
+        String prefix = normalize(query);
+        if (current == null || prefix.isEmpty()) {
+            return List.of();
+        }
+        // Nhiều sản phẩm trùng tên -> chỉ hiện 1 dòng
+        Map<String, SuggestionResponse> distinct = new LinkedHashMap<>();
+        for (SuggestionResponse suggestion : current.complete(prefix, topK)) {
+            distinct.putIfAbsent(suggestion.getType() + ":" + suggestion.getText(), suggestion);
+        }
+        return distinct.values().stream().limit(Math.max(1, Math.min(limit, topK))).toList();
+    }
+
+    // "Áo  Khoác" và "ao khoac" cùng 1 key
+    private static String normalize(String text) {
+        return String.join(" ", VietnameseText.tokenize(text));
+    }
+}
@@ -1,46 +1,120 @@
 package binh.shopee.service;
-import binh.shopee.dto.product.ImageInfo;
+import binh.shopee.dto.product.FacetedFilterResponse;
 import binh.shopee.dto.product.ProductDetailResponse;
 import binh.shopee.dto.product.ProductSearchResponse;
-import binh.shopee.dto.product.ReviewInfo;
-import binh.shopee.dto.product.VariantInfo;
+import binh.shopee.dto.product.ProductSearchResult;
+import binh.shopee.dto.product.SuggestionResponse;
+import binh.shopee.dto.product.TrendingProductResponse;
 import binh.shopee.entity.Products;
-import binh.shopee.repository.ProductImagesRepository;
-import binh.shopee.repository.ProductVariantsRepository;
 import binh.shopee.repository.ProductsRepository;
-import binh.shopee.repository.ReviewsRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 @Service
 @RequiredArgsConstructor
 @Transactional
 public class ProductsService {
     private final ProductsRepository productsRepository;
-    private final ProductImagesRepository productImagesRepository;
-    private final ProductVariantsRepository productVariantsRepository;
-    private final ReviewsRepository reviewsRepository;
-    private final InventoryService inventoryService;
+    private final ProductSearchIndex productSearchIndex;
+    private final TopSellingLeaderboard topSellingLeaderboard;
+    private final TrendingProductsTracker trendingProductsTracker;
+    private final ProductDetailAssembler productDetailAssembler;
+    private final ProductFacetIndex productFacetIndex;
+    private final CategoryListingIndex categoryListingIndex;
+    private final ProductSuggestIndex productSuggestIndex;
+    private final SearchQueryLog searchQueryLog;
+    private final SearchResultCache searchResultCache;
+    // Số từ khóa hot được hâm nóng mỗi lượt
+    private static final int WARM_TOP_QUERIES = 20;
     public List<ProductSearchResponse> filterProducts(
             BigDecimal minPrice,
             BigDecimal maxPrice,
             Boolean onlyDiscount,
             BigDecimal minRating
     ) {
-        return productsRepository.filterProducts(
+        long startedAt = System.nanoTime();
+        List<ProductSearchResponse> result = searchResultCache.get(
+                SearchResultCache.Key.filter(minPrice, maxPrice, onlyDiscount, minRating),
+                () -> new ProductSearchResult(productsRepository.filterProducts(
+                        minPrice,
+                        maxPrice,
+                        onlyDiscount != null && onlyDiscount,
+                        minRating
+                ), null)
+        ).getItems();
+        searchQueryLog.recordFilter(minPrice, maxPrice, onlyDiscount, minRating,
+                result.size(), System.nanoTime() - startedAt);
+        return result;
+    }
+
+    /**
+     * Lọc nhiều facet + phân trang trên bitmap trong bộ nhớ, kèm số đếm từng giá trị facet.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FacetedFilterResponse filterFaceted(
+            List<Long> brandIds,
+            List<Long> categoryIds,
+            BigDecimal minPrice,
+            BigDecimal maxPrice,
+            BigDecimal minRating,
+            Boolean onlyDiscount,
+            Boolean inStock,
+            int page,
+            int size
+    ) {
+        return productFacetIndex.filter(new ProductFacetIndex.FacetQuery(
+                brandIds,
+                categoryIds,
                 minPrice,
                 maxPrice,
+                minRating,
                 onlyDiscount != null && onlyDiscount,
-                minRating
-        );
+                inStock != null && inStock,
+                page,
+                size
+        ));
     }
     public List<ProductSearchResponse> getTopSellingProducts() {
-        Pageable top10 = PageRequest.of(0, 10);
-        return productsRepository.findTopSellingProducts(top10);
+        return getTopSellingProducts(null);
+    }
+
+    /**
+     * Top 10 bán chạy (categoryId = null -> toàn sàn), lấy từ bảng xếp hạng + search index trong bộ nhớ.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<ProductSearchResponse> getTopSellingProducts(Long categoryId) {
+        if (!topSellingLeaderboard.isReady() || !productSearchIndex.isReady()) {
+            Pageable top10 = PageRequest.of(0, 10);
+            return categoryId == null
+                    ? productsRepository.findTopSellingProducts(top10)
+                    : productsRepository.findTopSellingProductsByCategory(categoryId, top10);
+        }
+        List<ProductSearchResponse> result = new ArrayList<>();
+        for (TopSellingLeaderboard.Entry entry : topSellingLeaderboard.top(categoryId, 10)) {
+            ProductSearchResponse row = productSearchIndex.get(entry.productId());
+            if (row == null) {
+                continue; // index chưa kịp nhận sản phẩm mới
+            }
+            // Số đã bán trong bảng xếp hạng mới hơn bản trong index
+            result.add(ProductSearchResponse.builder()
+                    .productId(row.getProductId())
+                    .name(row.getName())
+                    .originalPrice(row.getOriginalPrice())
+                    .discountAmount(row.getDiscountAmount())
+                    .finalPrice(row.getFinalPrice())
+                    .imageUrl(row.getImageUrl())
+                    .totalPurchaseCount(entry.count())
+                    .rating(row.getRating())
+                    .build());
+        }
+        return result;
     }
     public List<ProductSearchResponse> getTop50Products() {
         return productsRepository.findTopProducts(
@@ -48,8 +122,85 @@ public class ProductsService {
         );
     }
 
+    /**
+     * Sản phẩm đang hot (điểm bán giảm dần theo thời gian), kèm số bán 1 giờ / 24 giờ / 7 ngày.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<TrendingProductResponse> getTrendingProducts(int limit) {
+        List<TrendingProductResponse> result = new ArrayList<>();
+        for (Long productId : trendingProductsTracker.trending(Math.max(1, Math.min(limit, 50)))) {
+            ProductSearchResponse row = productSearchIndex.get(productId);
+            if (row == null) {
+                continue;
+            }
+            TrendingProductsTracker.Snapshot trend = trendingProductsTracker.snapshot(productId);
+            result.add(TrendingProductResponse.builder()
+                    .productId(productId)
+                    .name(row.getName())
+                    .originalPrice(row.getOriginalPrice())
+                    .discountAmount(row.getDiscountAmount())
+                    .finalPrice(row.getFinalPrice())
+                    .imageUrl(row.getImageUrl())
+                    .rating(row.getRating())
+                    .soldLastHour(trend.soldLastHour())
+                    .soldLast24h(trend.soldLast24h())
+                    .soldLast7d(trend.soldLast7d())
+                    .trendScore(trend.score())
+                    .build());
+        }
+        return result;
+    }
+
+    // Gợi ý khi đang gõ: chỉ đọc cây prefix trong bộ nhớ
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<SuggestionResponse> suggest(String query, int limit) {
+        return productSuggestIndex.suggest(query, limit);
+    }
+
+    // Trả lời từ chỉ mục trong bộ nhớ, không cần mở transaction/connection
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public List<ProductSearchResponse> searchProducts(String keyword) {
-        return productsRepository.searchProducts(keyword);
+        return searchWithSuggestion(keyword).getItems();
+    }
+
+    /**
+     * Tìm theo index; không có kết quả thì thử lại với từ khóa đã sửa lỗi gõ thay vì để người dùng gõ lại.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ProductSearchResult searchWithSuggestion(String keyword) {
+        long startedAt = System.nanoTime();
+        ProductSearchResult result = searchResultCache.get(
+                SearchResultCache.Key.search(keyword), () -> loadSearch(keyword));
+        // Ghi số kết quả của từ khóa gốc: từ khóa phải nhờ sửa lỗi gõ vẫn tính là 0 kết quả
+        int exactCount = result.getSuggestion() != null ? 0 : result.getItems().size();
+        searchQueryLog.recordSearch(keyword, exactCount, System.nanoTime() - startedAt);
+        return result;
+    }
+
+    private ProductSearchResult loadSearch(String keyword) {
+        if (!productSearchIndex.isReady()) {
+            return new ProductSearchResult(productsRepository.searchProducts(keyword), null);
+        }
+        List<ProductSearchResponse> items = productSearchIndex.search(keyword);
+        String suggestion = items.isEmpty() ? productSearchIndex.suggest(keyword) : null;
+        return suggestion == null
+                ? new ProductSearchResult(items, null)
+                : new ProductSearchResult(productSearchIndex.search(suggestion), suggestion);
+    }
+
+    /**
+     * Nạp sẵn kết quả cho các từ khóa hot gần đây (theo SearchQueryLog) đã hết hạn trong cache.
+     */
+    @Scheduled(fixedDelayString = "${search.result-cache.warm-interval-ms:20000}",
+            initialDelayString = "${search.result-cache.warm-interval-ms:20000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void warmSearchCache() {
+        for (String keyword : searchQueryLog.hotSearchQueries(5, WARM_TOP_QUERIES)) {
+            SearchResultCache.Key key = SearchResultCache.Key.search(keyword);
+            if (!searchResultCache.contains(key)) {
+                searchResultCache.get(key, () -> loadSearch(keyword));
+            }
+        }
     }
 
 
@@ -59,57 +210,14 @@ public class ProductsService {
                 .orElseThrow(() -> new RuntimeException("Sản phẩm không tồn tại"));
 
         productsRepository.delete(product);
+        productSearchIndex.remove(id);
+        categoryListingIndex.remove(id);
+        productDetailAssembler.invalidate(id);
     }
 
+    // Ghép từ các mảnh cache của ProductDetailAssembler, mảnh nào thiếu mới query mảnh đó
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ProductDetailResponse getProductDetail(Long productId) {
-
-        // 1️⃣ Truy vấn thông tin chính (Products + Brand + thống kê)
-        ProductDetailResponse detail = productsRepository.findProductDetailById(productId)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm có ID = " + productId));
-
-        // 2️⃣ Lấy danh sách ảnh
-        List<ImageInfo> images = productImagesRepository.findByProducts_ProductId(productId)
-                .stream()
-                .map(pi -> ImageInfo.builder()
-                        .imageId(pi.getImageId())
-                        .imageUrl(pi.getImageUrl())
-                        .isPrimary(pi.getIsPrimary())
-                        .sortOrder(pi.getSortOrder())
-                        .build())
-                .toList();
-
-        // 3️⃣ Lấy danh sách biến thể
-        List<VariantInfo> variants = productVariantsRepository.findByProducts_ProductId(productId)
-                .stream()
-                .map(v -> VariantInfo.builder()
-                        .variantId(v.getVariantId())
-                        .quantity(inventoryService.getAvailableQuantity(v.getVariantId()))
-                        .attributesJson(v.getAttributesJson())
-                        .priceOverride(v.getPriceOverride())
-                        .status(v.getStatus())
-                        .createdAt(v.getCreatedAt())
-                        .build())
-                .toList();
-
-        // 4️⃣ Lấy danh sách đánh giá
-        List<ReviewInfo> reviews = reviewsRepository.findByProducts_ProductIdAndStatus(productId, "approved")
-                .stream()
-                .map(r -> ReviewInfo.builder()
-                        .reviewId(r.getReviewId())
-                        .rating(r.getRating())
-                        .title(r.getTitle())
-                        .content(r.getContent())
-                        .status(r.getStatus())
-                        .userName(r.getUsers() != null ? r.getUsers().getFullName() : "Khách ẩn danh")
-                        .createdAt(r.getCreated_at())
-                        .build())
-                .toList();
-
-        // 5️⃣ Gán vào DTO tổng
-        detail.setImages(images);
-        detail.setVariants(variants);
-        detail.setReviews(reviews);
-
-        return detail;
+        return productDetailAssembler.assemble(productId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+package binh.shopee.service;
+import binh.shopee.entity.Discounts;
+import binh.shopee.entity.Discounts.DiscountType;
+import binh.shopee.entity.FlashSales;
+import binh.shopee.repository.DiscountsRepository;
+import binh.shopee.repository.FlashSalesRepository;
+import binh.shopee.util.IntervalIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Khung giờ Discount / FlashSale đang chạy và sắp chạy của từng sản phẩm, giữ trong bộ nhớ
+ * để cart / checkout / đặt hàng không phải query khuyến mãi mỗi dòng.
+ * Quy tắc chọn cố định: flash sale > discount; cùng loại thì mức giảm (theo giá sản phẩm) lớn nhất,
+ * bằng nhau thì id nhỏ hơn — giống bảng product_effective_prices.
+ * Entity trả về là bản snapshot lúc nạp (detached), số suất flash sale còn lại lấy từ FlashSaleAdmissionEngine.
+ */
+@Service
+@RequiredArgsConstructor
+public class PromotionIndex {
+    private final DiscountsRepository discountsRepository;
+    private final FlashSalesRepository flashSalesRepository;
+    private final FlashSaleAdmissionEngine flashSaleAdmissionEngine;
+
+    private volatile Map<Long, ProductPromotions> byProduct;
+
+    public record ActivePromotion(FlashSales flashSale, Discounts discount) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            // Lần tra cứu đầu tiên sẽ load lazy
+            System.out.println("⚠️ Không nạp được promotion index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nạp lại toàn bộ: bỏ khung đã hết hạn, nhận khuyến mãi được thêm / sửa thẳng trong DB.
+     */
+    @Scheduled(fixedDelayString = "${promotion.index.reload-interval-ms:60000}",
+            initialDelayString = "${promotion.index.reload-interval-ms:60000}")
+    public synchronized void reload() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, List<FlashSales>> flashSales = new HashMap<>();
+        for (FlashSales flashSale : flashSalesRepository.findCurrentAndUpcoming(null, now)) {
+            flashSales.computeIfAbsent(flashSale.getProduct().getProductId(), id -> new ArrayList<>()).add(flashSale);
+        }
+        Map<Long, List<Discounts>> discounts = new HashMap<>();
+        for (Discounts discount : discountsRepository.findCurrentAndUpcoming(null, now)) {
+            discounts.computeIfAbsent(discount.getProduct().getProductId(), id -> new ArrayList<>()).add(discount);
+        }
+
+        Map<Long, ProductPromotions> fresh = new ConcurrentHashMap<>();
+        for (Long productId : union(flashSales.keySet(), discounts.keySet())) {
+            fresh.put(productId, new ProductPromotions(
+                    flashSales.getOrDefault(productId, List.of()),
+                    discounts.getOrDefault(productId, List.of())));
+        }
+        byProduct = fresh;
+    }
+
+    /**
+     * Gọi sau khi khuyến mãi hoặc giá của một sản phẩm thay đổi (sau commit, để rollback không lộ vào index).
+     * Cùng khóa với reload() nên không sửa nhầm map sắp bị tráo.
+     */
+    public synchronized void reloadProduct(Long productId) {
+        Map<Long, ProductPromotions> current = snapshot();
+        LocalDateTime now = LocalDateTime.now();
+        ProductPromotions promotions = new ProductPromotions(
+                flashSalesRepository.findCurrentAndUpcoming(productId, now),
+                discountsRepository.findCurrentAndUpcoming(productId, now));
+        if (promotions.isEmpty()) {
+            current.remove(productId);
+        } else {
+            current.put(productId, promotions);
+        }
+    }
+
+    /**
+     * Khuyến mãi áp dụng cho sản phẩm tại thời điểm at (tối đa 1 trong 2 field khác null).
+     */
+    public ActivePromotion findActivePromotion(Long productId, LocalDateTime at) {
+        ProductPromotions promotions = snapshot().get(productId);
+        if (promotions == null) {
+            return new ActivePromotion(null, null);
+        }
+        FlashSales flashSale = promotions.flashSaleAt(at);
+        return new ActivePromotion(flashSale, flashSale == null ? promotions.discountAt(at) : null);
+    }
+
+    public FlashSales findActiveFlashSale(Long productId, LocalDateTime at) {
+        ProductPromotions promotions = snapshot().get(productId);
+        return promotions != null ? promotions.flashSaleAt(at) : null;
+    }
+
+    public Discounts findActiveDiscount(Long productId, LocalDateTime at) {
+        ProductPromotions promotions = snapshot().get(productId);
+        return promotions != null ? promotions.discountAt(at) : null;
+    }
+
+    /**
+     * productId -> flash sale đang chạy (sản phẩm không có flash sale thì không có key).
+     */
+    public Map<Long, FlashSales> findActiveFlashSales(Collection<Long> productIds, LocalDateTime at) {
+        Map<Long, FlashSales> result = new HashMap<>();
+        for (Long productId : productIds) {
+            FlashSales flashSale = findActiveFlashSale(productId, at);
+            if (flashSale != null) {
+                result.put(productId, flashSale);
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, ProductPromotions> snapshot() {
+        Map<Long, ProductPromotions> current = byProduct;
+        if (current == null) {
+            synchronized (this) {
+                if (byProduct == null) {
+                    reload();
+                }
+                current = byProduct;
+            }
+        }
+        return current;
+    }
+
+    // Chưa có bộ đếm (sale sắp chạy / lúc khởi động): quantity trong DB là số suất còn lại, cùng nghĩa với remaining
+    private boolean hasRemaining(FlashSales flashSale) {
+        Integer remaining = flashSaleAdmissionEngine.getRemaining(flashSale.getFlashSaleId());
+        return remaining != null ? remaining > 0 : flashSale.getQuantity() > 0;
+    }
+
+    private static List<Long> union(Collection<Long> a, Collection<Long> b) {
+        List<Long> ids = new ArrayList<>(a);
+        for (Long id : b) {
+            if (!a.contains(id)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static BigDecimal discountAmount(DiscountType type, BigDecimal value, BigDecimal price) {
+        BigDecimal base = price != null ? price : BigDecimal.ZERO;
+        BigDecimal amount = type == DiscountType.percentage
+                ? base.multiply(value).divide(BigDecimal.valueOf(100))
+                : value;
+        return amount.min(base);
+    }
+
+    private static final Comparator<FlashSales> FLASH_SALE_ORDER = Comparator
+            .comparing((FlashSales fs) -> discountAmount(fs.getDiscountType(), fs.getDiscountValue(),
+                    fs.getProduct().getPrice()), Comparator.reverseOrder())
+            .thenComparing(FlashSales::getFlashSaleId);
+
+    private static final Comparator<Discounts> DISCOUNT_ORDER = Comparator
+            .comparing((Discounts d) -> discountAmount(d.getDiscountType(), d.getDiscountValue(),
+                    d.getProduct().getPrice()), Comparator.reverseOrder())
+            .thenComparing(Discounts::getDiscountId);
+
+    private final class ProductPromotions {
+        private final IntervalIndex<FlashSales> flashSales;
+        private final IntervalIndex<Discounts> discounts;
+
+        private ProductPromotions(List<FlashSales> flashSales, List<Discounts> discounts) {
+            this.flashSales = new IntervalIndex<>(flashSales, FlashSales::getStartTime, FlashSales::getEndTime);
+            this.discounts = new IntervalIndex<>(discounts, Discounts::getStartTime, Discounts::getEndTime);
+        }
+
+        boolean isEmpty() {
+            return flashSales.isEmpty() && discounts.isEmpty();
+        }
+
+        FlashSales flashSaleAt(LocalDateTime at) {
+            return flashSales.stab(at).stream()
+                    .filter(PromotionIndex.this::hasRemaining)
+                    .min(FLASH_SALE_ORDER)
+                    .orElse(null);
+        }
+
+        Discounts discountAt(LocalDateTime at) {
+            return discounts.stab(at).stream()
+                    .min(DISCOUNT_ORDER)
+                    .orElse(null);
+        }
+    }
+}
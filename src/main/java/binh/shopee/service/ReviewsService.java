@@ -9,6 +9,7 @@ import binh.shopee.repository.OrdersRepository;
 import binh.shopee.repository.ProductsRepository;
 import binh.shopee.repository.ReviewsRepository;
 import binh.shopee.repository.UsersRepository;
+import binh.shopee.util.TransactionCallbacks;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,6 +23,8 @@ public class ReviewsService {
     private final UsersRepository usersRepository;
     private final ProductsRepository productsRepository;
     private final OrdersRepository ordersRepository;
+    private final ProductRatingService productRatingService;
+    private final ProductDetailAssembler productDetailAssembler;
     /**
      * Check if user can review a product from a specific order
      */
@@ -78,6 +81,12 @@ public class ReviewsService {
                 .updated_at(LocalDateTime.now())
                 .build();
         Reviews savedReview = reviewsRepository.save(review);
+        // Cập nhật rating tổng hợp của sản phẩm
+        if ("approved".equals(savedReview.getStatus())) {
+            productRatingService.recordApprovedReview(product.getProductId(), request.getRating());
+            Long productId = product.getProductId();
+            TransactionCallbacks.afterCommit(() -> productDetailAssembler.invalidateReviews(productId));
+        }
         return mapToResponse(savedReview);
     }
     /**
@@ -0,0 +1,182 @@
+package binh.shopee.service;
+import binh.shopee.dto.admin.QueryCount;
+import binh.shopee.dto.admin.SearchQueryStatsResponse;
+import binh.shopee.util.VietnameseText;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Nhật ký truy vấn tìm kiếm / lọc: ring buffer cấp phát sẵn (mảng song song), ghi không khóa,
+ * mỗi lần ghi chỉ tốn chuỗi truy vấn đã chuẩn hóa. Khi buffer đầy thì mục cũ nhất bị ghi đè.
+ * Bộ tổng hợp chạy nền theo cửa sổ: top truy vấn, truy vấn 0 kết quả, phân vị độ trễ;
+ * giữ lại vài cửa sổ gần nhất cho trang admin và để hâm nóng cache kết quả tìm kiếm.
+ */
+@Service
+public class SearchQueryLog {
+    private final int mask;
+    private final String[] queries;
+    private final int[] resultCounts;
+    private final long[] latencyNanos;
+    // Số thứ tự của mục đã ghi xong ở mỗi ô (-1 = trống); reader so khớp để bỏ ô đang ghi dở / bị ghi đè
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();
+
+    private final int topSize;
+    private final int windowsKept;
+    private final Deque<SearchQueryStatsResponse> windows = new ArrayDeque<>();
+    private long readSequence;
+    private LocalDateTime windowStart = LocalDateTime.now();
+
+    public SearchQueryLog(
+            @Value("${search.query-log.capacity:16384}") int capacity,
+            @Value("${search.query-log.top-size:20}") int topSize,
+            @Value("${search.query-log.windows:60}") int windowsKept) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // lũy thừa của 2
+        this.mask = size - 1;
+        this.queries = new String[size];
+        this.resultCounts = new int[size];
+        this.latencyNanos = new long[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.topSize = topSize;
+        this.windowsKept = windowsKept;
+    }
+
+    public void recordSearch(String keyword, int resultCount, long latencyNanos) {
+        record(String.join(" ", VietnameseText.tokenize(keyword)), resultCount, latencyNanos);
+    }
+
+    public void recordFilter(BigDecimal minPrice, BigDecimal maxPrice, Boolean onlyDiscount, BigDecimal minRating,
+                             int resultCount, long latencyNanos) {
+        record("filter:minPrice=" + minPrice + "&maxPrice=" + maxPrice
+                + "&onlyDiscount=" + onlyDiscount + "&minRating=" + minRating, resultCount, latencyNanos);
+    }
+
+    private void record(String query, int resultCount, long nanos) {
+        long sequence = head.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        published.set(slot, -1);               // đánh dấu đang ghi
+        VarHandle.storeStoreFence();
+        queries[slot] = query;
+        resultCounts[slot] = resultCount;
+        latencyNanos[slot] = nanos;
+        published.set(slot, sequence);         // volatile write: các field trên nhìn thấy được sau khi đọc ô này
+    }
+
+    /**
+     * Đóng cửa sổ hiện tại: đọc các mục mới từ lần trước và tổng hợp.
+     */
+    @Scheduled(fixedDelayString = "${search.query-log.aggregate-interval-ms:60000}",
+            initialDelayString = "${search.query-log.aggregate-interval-ms:60000}")
+    public synchronized void aggregate() {
+        long end = head.get();
+        long start = Math.max(readSequence, end - queries.length);
+        long dropped = start - readSequence;
+        Map<String, long[]> counts = new HashMap<>();
+        Map<String, long[]> zeroCounts = new HashMap<>();
+        long[] latencies = new long[(int) (end - start)];
+        int n = 0;
+        long zero = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            if (published.get(slot) != sequence) {
+                dropped++;
+                continue;
+            }
+            String query = queries[slot];
+            int resultCount = resultCounts[slot];
+            long nanos = latencyNanos[slot];
+            VarHandle.acquireFence();
+            if (published.get(slot) != sequence) {
+                dropped++; // bị ghi đè trong lúc đọc
+                continue;
+            }
+            latencies[n++] = nanos;
+            counts.computeIfAbsent(query, q -> new long[1])[0]++;
+            if (resultCount == 0) {
+                zero++;
+                zeroCounts.computeIfAbsent(query, q -> new long[1])[0]++;
+            }
+        }
+        readSequence = end;
+
+        Arrays.sort(latencies, 0, n);
+        LocalDateTime now = LocalDateTime.now();
+        SearchQueryStatsResponse window = SearchQueryStatsResponse.builder()
+                .windowStart(windowStart)
+                .windowEnd(now)
+                .totalQueries(n)
+                .zeroResultQueries(zero)
+                .dropped(dropped)
+                .p50Ms(percentileMs(latencies, n, 0.50))
+                .p95Ms(percentileMs(latencies, n, 0.95))
+                .p99Ms(percentileMs(latencies, n, 0.99))
+                .maxMs(n > 0 ? latencies[n - 1] / 1_000_000d : 0)
+                .topQueries(top(counts))
+                .topZeroResultQueries(top(zeroCounts))
+                .build();
+        windowStart = now;
+        windows.addFirst(window);
+        while (windows.size() > windowsKept) {
+            windows.removeLast();
+        }
+    }
+
+    /**
+     * Các cửa sổ gần nhất, mới nhất trước.
+     */
+    public synchronized List<SearchQueryStatsResponse> recentWindows(int limit) {
+        return windows.stream().limit(Math.max(1, limit)).toList();
+    }
+
+    /**
+     * Từ khóa tìm kiếm (không gồm filter) xuất hiện nhiều nhất trong các cửa sổ gần nhất, để hâm nóng cache.
+     */
+    public synchronized List<String> hotSearchQueries(int windowCount, int limit) {
+        Map<String, long[]> merged = new HashMap<>();
+        windows.stream().limit(Math.max(1, windowCount)).forEach(window -> {
+            for (QueryCount qc : window.getTopQueries()) {
+                if (!qc.getQuery().startsWith("filter:") && !qc.getQuery().isEmpty()) {
+                    merged.computeIfAbsent(qc.getQuery(), q -> new long[1])[0] += qc.getCount();
+                }
+            }
+        });
+        return merged.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private List<QueryCount> top(Map<String, long[]> counts) {
+        List<QueryCount> result = new ArrayList<>(counts.size());
+        counts.forEach((query, count) -> result.add(new QueryCount(query, count[0])));
+        result.sort((a, b) -> a.getCount() != b.getCount()
+                ? Long.compare(b.getCount(), a.getCount())
+                : a.getQuery().compareTo(b.getQuery()));
+        return result.size() > topSize ? new ArrayList<>(result.subList(0, topSize)) : result;
+    }
+
+    private static double percentileMs(long[] sorted, int n, double p) {
+        if (n == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * n) - 1;
+        return sorted[Math.max(0, Math.min(index, n - 1))] / 1_000_000d;
+    }
+}
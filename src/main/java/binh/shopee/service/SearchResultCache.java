@@ -0,0 +1,110 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.ProductSearchResult;
+import binh.shopee.util.BoundedTtlCache;
+import binh.shopee.util.SingleFlight;
+import binh.shopee.util.VietnameseText;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả /search và /filter theo bộ tham số đã chuẩn hóa, giới hạn số phần tử + TTL ngắn tính từ lúc ghi.
+ * Nhiều request trượt cùng 1 key lúc cache trống chỉ chạy 1 lần load, các request còn lại chờ kết quả đó.
+ * Bị xóa toàn bộ khi sản phẩm / giá áp dụng / khuyến mãi đổi; số bán / rating chỉ lệch tối đa 1 TTL.
+ * Metric search.result.cache.* (hit, miss, coalesced, eviction, size) xem qua /actuator/metrics.
+ */
+@Service
+public class SearchResultCache {
+    private final BoundedTtlCache<Key, ProductSearchResult> cache;
+    private final SingleFlight<Key, ProductSearchResult> loads = new SingleFlight<>();
+    // Tăng mỗi lần invalidate: load bắt đầu trước đó không được ghi kết quả cũ vào cache
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * keyword = null với /filter; giá chuẩn hóa bỏ số 0 thừa để 100000 và 100000.00 cùng key.
+     */
+    public record Key(String keyword, BigDecimal minPrice, BigDecimal maxPrice, boolean onlyDiscount,
+                      BigDecimal minRating) {
+        public static Key search(String keyword) {
+            return new Key(String.join(" ", VietnameseText.tokenize(keyword)), null, null, false, null);
+        }
+
+        public static Key filter(BigDecimal minPrice, BigDecimal maxPrice, Boolean onlyDiscount, BigDecimal minRating) {
+            return new Key(null, normalize(minPrice), normalize(maxPrice),
+                    onlyDiscount != null && onlyDiscount, normalize(minRating));
+        }
+
+        private static BigDecimal normalize(BigDecimal value) {
+            return value != null ? value.stripTrailingZeros() : null;
+        }
+    }
+
+    public SearchResultCache(
+            MeterRegistry meterRegistry,
+            @Value("${search.result-cache.max-size:2000}") int maxSize,
+            @Value("${search.result-cache.ttl-seconds:30}") long ttlSeconds) {
+        this.cache = new BoundedTtlCache<>(maxSize, Duration.ofSeconds(ttlSeconds), false);
+        FunctionCounter.builder("search.result.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("search.result.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("search.result.cache.coalesced", loads, SingleFlight::coalescedCount)
+                .description("Request trượt cache nhưng dùng chung load đang chạy")
+                .register(meterRegistry);
+        FunctionCounter.builder("search.result.cache.evictions", cache, BoundedTtlCache::evictionCount)
+                .tag("cause", "size").register(meterRegistry);
+        FunctionCounter.builder("search.result.cache.evictions", cache, BoundedTtlCache::expirationCount)
+                .tag("cause", "expired").register(meterRegistry);
+        Gauge.builder("search.result.cache.size", cache, BoundedTtlCache::size).register(meterRegistry);
+        Gauge.builder("search.result.cache.hit.ratio", this, SearchResultCache::hitRatio).register(meterRegistry);
+    }
+
+    public ProductSearchResult get(Key key, Supplier<ProductSearchResult> loader) {
+        ProductSearchResult cached = cache.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        return loads.run(key, () -> {
+            long startGeneration = generation.get();
+            ProductSearchResult result = loader.get();
+            if (generation.get() == startGeneration) {
+                cache.put(key, result);
+            }
+            return result;
+        });
+    }
+
+    public boolean contains(Key key) {
+        return cache.get(key) != null;
+    }
+
+    /**
+     * Kết quả phụ thuộc tên / giá / khuyến mãi của mọi sản phẩm khớp nên xóa cả cache.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    @Scheduled(fixedDelayString = "${search.result-cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        cache.purgeExpired();
+    }
+
+    private double hitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+}
@@ -0,0 +1,186 @@
+package binh.shopee.service;
+import binh.shopee.dto.order.CheckoutItemResponse;
+import binh.shopee.entity.ProductVariants;
+import binh.shopee.entity.StockReservations;
+import binh.shopee.entity.StockReservations.ReservationStatus;
+import binh.shopee.repository.InventoryRepository;
+import binh.shopee.repository.ProductVariantsRepository;
+import binh.shopee.repository.StockReservationsRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Giữ hàng 2 pha trên Inventory.reservedQty:
+ * checkout -> hold (UPDATE có điều kiện + 1 dòng stock_reservations có hạn),
+ * đặt hàng -> commit (trừ stock + reserved), hết hạn / giỏ đổi -> release.
+ * Mọi thay đổi đều là UPDATE có điều kiện nên không cần khóa row hay retry.
+ */
+@Service
+public class StockReservationService {
+    private final StockReservationsRepository reservationsRepository;
+    private final InventoryRepository inventoryRepository;
+    private final ProductVariantsRepository variantRepo;
+    private final InventoryService inventoryService;
+    private final TransactionTemplate transactionTemplate;
+    private final long holdMinutes;
+
+    public StockReservationService(
+            StockReservationsRepository reservationsRepository,
+            InventoryRepository inventoryRepository,
+            ProductVariantsRepository variantRepo,
+            InventoryService inventoryService,
+            PlatformTransactionManager transactionManager,
+            @Value("${inventory.reservation.hold-minutes:15}") long holdMinutes) {
+        this.reservationsRepository = reservationsRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.variantRepo = variantRepo;
+        this.inventoryService = inventoryService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.holdMinutes = holdMinutes;
+    }
+
+    /**
+     * Giữ hàng cho các dòng checkout của session, trong transaction của bước checkout (cùng transaction với releaseUser).
+     * @return variantId giữ không được (vừa bị người khác mua hết)
+     */
+    @Transactional
+    public List<Long> holdForSession(String sessionId, Long userId, List<CheckoutItemResponse> items) {
+        List<Long> failed = new ArrayList<>();
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(holdMinutes);
+        for (CheckoutItemResponse item : items) {
+            if (inventoryRepository.reserveStock(item.getVariantId(), item.getQuantity()) == 0) {
+                failed.add(item.getVariantId());
+                continue;
+            }
+            inventoryService.stockChanged(item.getVariantId());
+            reservationsRepository.save(StockReservations.builder()
+                    .checkoutSessionId(sessionId)
+                    .userId(userId)
+                    .variant(variantRepo.getReferenceById(item.getVariantId()))
+                    .quantity(item.getQuantity())
+                    .status(ReservationStatus.held)
+                    .expiresAt(expiresAt)
+                    .build());
+        }
+        return failed;
+    }
+
+    /**
+     * Bỏ mọi hold còn hiệu lực của user, ở bất kỳ session nào (giỏ thay đổi, mở checkout mới,
+     * session cũ hết hạn / bị đẩy khỏi store). Mỗi user chỉ có tối đa 1 bộ hold sống.
+     * Chạy trong transaction của người gọi: nhả rồi giữ lại trong cùng transaction thì không có khoảng hở.
+     */
+    @Transactional
+    public void releaseUser(Long userId) {
+        for (StockReservations reservation : reservationsRepository.findHeldByUser(userId)) {
+            release(reservation);
+        }
+    }
+
+    /**
+     * Số lượng session đang giữ theo variant (cộng lại vào phần khả dụng khi chính session đó đặt hàng).
+     */
+    public Map<Long, Integer> getHeldQuantities(String sessionId) {
+        Map<Long, Integer> held = new HashMap<>();
+        if (sessionId == null) {
+            return held;
+        }
+        for (StockReservations reservation : reservationsRepository.findHeldBySession(sessionId)) {
+            held.merge(reservation.getVariant().getVariantId(), reservation.getQuantity(), Integer::sum);
+        }
+        return held;
+    }
+
+    /**
+     * Số lượng user đang giữ theo variant, ở mọi session (checkout không có session không bị chính hold của mình chặn).
+     */
+    public Map<Long, Integer> getHeldQuantitiesByUser(Long userId) {
+        Map<Long, Integer> held = new HashMap<>();
+        for (StockReservations reservation : reservationsRepository.findHeldByUser(userId)) {
+            held.merge(reservation.getVariant().getVariantId(), reservation.getQuantity(), Integer::sum);
+        }
+        return held;
+    }
+
+    /**
+     * Trừ kho cho đơn hàng trong transaction của đơn: dòng có hold khớp -> commit hold,
+     * còn lại (hết hạn, khác số lượng, không có session) -> trừ thẳng phần khả dụng.
+     */
+    @Transactional
+    public void commitForOrder(String sessionId, Long orderId, List<CheckoutItemResponse> items) {
+        Map<Long, StockReservations> heldByVariant = new HashMap<>();
+        if (sessionId != null) {
+            for (StockReservations reservation : reservationsRepository.findHeldBySession(sessionId)) {
+                StockReservations previous = heldByVariant.put(reservation.getVariant().getVariantId(), reservation);
+                if (previous != null) {
+                    release(previous);
+                }
+            }
+        }
+
+        for (CheckoutItemResponse item : items) {
+            StockReservations reservation = heldByVariant.remove(item.getVariantId());
+            if (reservation != null && reservation.getQuantity().equals(item.getQuantity())
+                    && reservationsRepository.transition(
+                    reservation.getReservationId(), ReservationStatus.held, ReservationStatus.committed, orderId) == 1) {
+                if (inventoryRepository.commitReserved(item.getVariantId(), item.getQuantity()) == 0) {
+                    throw new RuntimeException("Không đủ tồn kho");
+                }
+                inventoryService.stockChanged(item.getVariantId());
+                continue;
+            }
+            if (reservation != null) {
+                release(reservation);
+            }
+            if (inventoryRepository.reduceAvailable(item.getVariantId(), item.getQuantity()) == 0) {
+                throw new RuntimeException("Không đủ tồn kho");
+            }
+            inventoryService.stockChanged(item.getVariantId());
+        }
+
+        // Hold thừa (variant không có trong đơn)
+        for (StockReservations leftover : heldByVariant.values()) {
+            release(leftover);
+        }
+    }
+
+    /**
+     * Trả hàng cho các hold hết hạn theo lô: đánh dấu expiring -> trừ reservedQty gộp theo variant -> released.
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval-ms:30000}")
+    public void sweepExpired() {
+        try {
+            Integer released = transactionTemplate.execute(status -> {
+                int expired = reservationsRepository.markExpired(LocalDateTime.now());
+                if (expired == 0) {
+                    return 0;
+                }
+                reservationsRepository.releaseExpiringFromInventory();
+                return reservationsRepository.markExpiringReleased();
+            });
+            if (released != null && released > 0) {
+                System.out.println("🧹 Released " + released + " expired stock reservations");
+            }
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Sweep stock reservations thất bại: " + e.getMessage());
+        }
+    }
+
+    private void release(StockReservations reservation) {
+        if (reservationsRepository.transition(
+                reservation.getReservationId(), ReservationStatus.held, ReservationStatus.released, null) == 1) {
+            ProductVariants variant = reservation.getVariant();
+            inventoryRepository.releaseReserved(variant.getVariantId(), reservation.getQuantity());
+            inventoryService.stockChanged(variant.getVariantId());
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.ProductSalesRow;
+import binh.shopee.repository.ProductsRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Bảng xếp hạng bán chạy trong bộ nhớ: top N sản phẩm active theo totalPurchaseCount, toàn sàn và theo danh mục.
+ * Mỗi bảng là TreeSet giới hạn N phần tử; số đã bán của mọi sản phẩm active được giữ trong map
+ * để sản phẩm ngoài top có thể chen vào khi được cộng.
+ * Cộng khi outbox ghi totalPurchaseCount, trừ khi hủy đơn (sau commit). Trừ làm 1 phần tử trong top tụt hạng
+ * thì bảng đó được dựng lại từ map (hủy đơn ít nên chấp nhận O(n)).
+ * Query DB khi dựng lại chạy ngoài khóa; delta tới trong lúc đó được ghi lại và cộng lên dữ liệu mới lúc tráo
+ * (delta của giao dịch commit ngay trước lúc đọc có thể bị tính 2 lần, lần dựng lại sau sẽ sửa).
+ */
+@Service
+public class TopSellingLeaderboard {
+    private static final Long OVERALL = 0L;
+
+    private final ProductsRepository productsRepository;
+    private final int capacity;
+
+    private final Map<Long, Long> counts = new HashMap<>();                  // productId -> đã bán
+    private final Map<Long, Set<Long>> categoriesByProduct = new HashMap<>();
+    private final Map<Long, Set<Long>> productsByCategory = new HashMap<>();
+    private final Map<Long, Board> boards = new HashMap<>();                 // OVERALL / categoryId -> bảng
+    // Delta nhận được trong lúc có query dựng lại đang chạy (null khi không có)
+    private List<Delta> deltaLog;
+    private int readsInFlight;
+    private volatile boolean ready = false;
+
+    public TopSellingLeaderboard(
+            ProductsRepository productsRepository,
+            @Value("${product.leaderboard.size:50}") int capacity) {
+        this.productsRepository = productsRepository;
+        this.capacity = capacity;
+    }
+
+    public record Entry(Long productId, long count) {
+    }
+
+    private record Delta(Long productId, long delta) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // Trang chủ dùng query DB cho tới lần rebuild định kỳ
+            System.out.println("⚠️ Không dựng được bảng bán chạy: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dựng lại toàn bộ từ DB (đối chiếu thay đổi không đi qua đặt / hủy đơn).
+     */
+    @Scheduled(fixedDelayString = "${product.leaderboard.rebuild-interval-ms:600000}",
+            initialDelayString = "${product.leaderboard.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        int mark = beginRead();
+        List<ProductSalesRow> rows;
+        try {
+            rows = productsRepository.findSalesRows(null);
+        } catch (RuntimeException e) {
+            endRead(mark);
+            throw e;
+        }
+        synchronized (this) {
+            List<Delta> missed = endRead(mark);
+            counts.clear();
+            categoriesByProduct.clear();
+            productsByCategory.clear();
+            boards.clear();
+            for (ProductSalesRow row : rows) {
+                track(row);
+            }
+            for (Delta d : missed) {
+                replay(d);
+            }
+            rebuildBoard(OVERALL);
+            for (Long categoryId : productsByCategory.keySet()) {
+                rebuildBoard(categoryId);
+            }
+            ready = true;
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Top sản phẩm bán chạy; categoryId = null -> toàn sàn.
+     */
+    public synchronized List<Entry> top(Long categoryId, int limit) {
+        Board board = boards.get(categoryId != null ? categoryId : OVERALL);
+        if (board == null) {
+            return List.of();
+        }
+        List<Entry> result = new ArrayList<>(Math.min(limit, board.entries.size()));
+        for (Entry entry : board.entries) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Số đã bán hiện tại (null nếu sản phẩm không active / chưa nạp).
+     */
+    public synchronized Long count(Long productId) {
+        return counts.get(productId);
+    }
+
+    /**
+     * Cộng / trừ số đã bán (delta âm khi hủy đơn). Sản phẩm không active thì bỏ qua.
+     */
+    public synchronized void add(Long productId, long delta) {
+        Long previous = counts.get(productId);
+        if (previous == null || delta == 0) {
+            return;
+        }
+        if (deltaLog != null) {
+            deltaLog.add(new Delta(productId, delta));
+        }
+        long count = Math.max(0, previous + delta);
+        counts.put(productId, count);
+        for (Long scope : scopesOf(productId)) {
+            Board board = boards.computeIfAbsent(scope, id -> new Board());
+            if (delta > 0) {
+                board.offer(productId, count, capacity);
+            } else if (board.members.containsKey(productId)) {
+                rebuildBoard(scope);
+            }
+        }
+    }
+
+    /**
+     * Nạp lại 1 sản phẩm sau khi admin tạo / sửa (trạng thái, danh mục).
+     */
+    public void reloadProduct(Long productId) {
+        int mark = beginRead();
+        List<ProductSalesRow> rows;
+        try {
+            rows = productsRepository.findSalesRows(productId);
+        } catch (RuntimeException e) {
+            endRead(mark);
+            throw e;
+        }
+        synchronized (this) {
+            List<Delta> missed = endRead(mark);
+            Set<Long> affected = untrack(productId);
+            for (ProductSalesRow row : rows) {
+                track(row);
+            }
+            for (Delta d : missed) {
+                if (d.productId().equals(productId)) {
+                    replay(d);
+                }
+            }
+            affected.addAll(scopesOf(productId));
+            for (Long scope : affected) {
+                rebuildBoard(scope);
+            }
+        }
+    }
+
+    public synchronized void remove(Long productId) {
+        for (Long scope : untrack(productId)) {
+            rebuildBoard(scope);
+        }
+    }
+
+    private synchronized int beginRead() {
+        if (readsInFlight++ == 0) {
+            deltaLog = new ArrayList<>();
+        }
+        return deltaLog.size();
+    }
+
+    // Delta ghi lại từ lúc beginRead tương ứng
+    private synchronized List<Delta> endRead(int mark) {
+        List<Delta> missed = new ArrayList<>(deltaLog.subList(mark, deltaLog.size()));
+        if (--readsInFlight == 0) {
+            deltaLog = null;
+        }
+        return missed;
+    }
+
+    // Chỉ cộng vào counts, bảng được dựng lại ngay sau đó
+    private void replay(Delta d) {
+        Long previous = counts.get(d.productId());
+        if (previous != null) {
+            counts.put(d.productId(), Math.max(0, previous + d.delta()));
+        }
+    }
+
+    private void track(ProductSalesRow row) {
+        counts.put(row.getProductId(), row.getTotalPurchaseCount());
+        if (row.getCategoryId() != null) {
+            categoriesByProduct.computeIfAbsent(row.getProductId(), id -> new HashSet<>()).add(row.getCategoryId());
+            productsByCategory.computeIfAbsent(row.getCategoryId(), id -> new HashSet<>()).add(row.getProductId());
+        }
+    }
+
+    private Set<Long> untrack(Long productId) {
+        Set<Long> scopes = new HashSet<>();
+        if (counts.remove(productId) == null) {
+            return scopes;
+        }
+        scopes.add(OVERALL);
+        Set<Long> categories = categoriesByProduct.remove(productId);
+        if (categories != null) {
+            for (Long categoryId : categories) {
+                Set<Long> products = productsByCategory.get(categoryId);
+                if (products != null) {
+                    products.remove(productId);
+                    if (products.isEmpty()) {
+                        productsByCategory.remove(categoryId);
+                    }
+                }
+                scopes.add(categoryId);
+            }
+        }
+        return scopes;
+    }
+
+    private List<Long> scopesOf(Long productId) {
+        List<Long> scopes = new ArrayList<>();
+        if (!counts.containsKey(productId)) {
+            return scopes;
+        }
+        scopes.add(OVERALL);
+        scopes.addAll(categoriesByProduct.getOrDefault(productId, Set.of()));
+        return scopes;
+    }
+
+    private void rebuildBoard(Long scope) {
+        Iterable<Long> productIds = OVERALL.equals(scope)
+                ? counts.keySet()
+                : productsByCategory.getOrDefault(scope, Set.of());
+        Board board = new Board();
+        for (Long productId : productIds) {
+            board.offer(productId, counts.get(productId), capacity);
+        }
+        if (board.entries.isEmpty()) {
+            boards.remove(scope);
+        } else {
+            boards.put(scope, board);
+        }
+    }
+
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingLong(Entry::count).reversed()
+            .thenComparing(Entry::productId);
+
+    /**
+     * Top N sắp giảm dần theo số đã bán, bằng nhau thì productId nhỏ trước.
+     */
+    private static final class Board {
+        private final TreeSet<Entry> entries = new TreeSet<>(RANKING);
+        private final Map<Long, Entry> members = new HashMap<>();
+
+        void offer(Long productId, long count, int capacity) {
+            Entry current = members.remove(productId);
+            if (current != null) {
+                entries.remove(current);
+            } else if (entries.size() >= capacity
+                    && RANKING.compare(new Entry(productId, count), entries.last()) > 0) {
+                return; // vẫn ngoài top
+            }
+            Entry entry = new Entry(productId, count);
+            entries.add(entry);
+            members.put(productId, entry);
+            while (entries.size() > capacity) {
+                members.remove(entries.pollLast().productId());
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package binh.shopee.service;
+import binh.shopee.dto.product.ProductSaleEvent;
+import binh.shopee.repository.OrderItemsRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sản phẩm đang hot, tính hoàn toàn trong bộ nhớ từ các dòng đơn hàng.
+ * Mỗi sản phẩm có 2 ring buffer (60 ô phút, 168 ô giờ) cho số bán trong 1 giờ / 24 giờ / 7 ngày
+ * và 1 điểm giảm dần theo hàm mũ (half-life cấu hình được) để xếp hạng; mỗi sự kiện O(1).
+ * Nạp 7 ngày gần nhất lúc khởi động, sau đó nhận sự kiện từ outbox (đặt đơn) và hủy đơn.
+ */
+@Service
+public class TrendingProductsTracker {
+    private static final int MINUTES = 60;
+    private static final int HOURS = 24 * 7;
+
+    private final OrderItemsRepository orderItemsRepository;
+    private final double decayPerMilli;
+    private final int size;
+
+    private volatile Map<Long, ProductTrend> trends = new ConcurrentHashMap<>();
+    private volatile List<Long> ranking = List.of();
+    private volatile boolean ready = false;
+
+    public TrendingProductsTracker(
+            OrderItemsRepository orderItemsRepository,
+            @Value("${product.trending.half-life-hours:6}") double halfLifeHours,
+            @Value("${product.trending.size:50}") int size) {
+        this.orderItemsRepository = orderItemsRepository;
+        this.decayPerMilli = Math.log(2) / (halfLifeHours * 3_600_000d);
+        this.size = size;
+    }
+
+    public record Snapshot(long soldLastHour, long soldLast24h, long soldLast7d, double score) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            load();
+        } catch (RuntimeException e) {
+            // Vẫn nhận sự kiện mới, chỉ thiếu lịch sử 7 ngày
+            System.out.println("⚠️ Không nạp được dữ liệu trending: " + e.getMessage());
+        }
+    }
+
+    public synchronized void load() {
+        long nowMillis = System.currentTimeMillis();
+        Map<Long, ProductTrend> fresh = new ConcurrentHashMap<>();
+        for (ProductSaleEvent event : orderItemsRepository.findSaleEventsSince(LocalDateTime.now().minusDays(7))) {
+            fresh.computeIfAbsent(event.getProductId(), id -> new ProductTrend())
+                    .record(toMillis(event.getOrderedAt()), event.getQuantity(), nowMillis, decayPerMilli);
+        }
+        trends = fresh;
+        ready = true;
+        rerank();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Ghi nhận quantity sản phẩm bán lúc orderedAt (âm khi hủy đơn).
+     */
+    public void record(Long productId, long quantity, LocalDateTime orderedAt) {
+        if (quantity == 0 || orderedAt == null) {
+            return;
+        }
+        long nowMillis = System.currentTimeMillis();
+        long eventMillis = toMillis(orderedAt);
+        if (eventMillis <= nowMillis - HOURS * 3_600_000L) {
+            return; // ngoài cửa sổ 7 ngày
+        }
+        trends.computeIfAbsent(productId, id -> new ProductTrend())
+                .record(eventMillis, quantity, nowMillis, decayPerMilli);
+    }
+
+    public Snapshot snapshot(Long productId) {
+        ProductTrend trend = trends.get(productId);
+        if (trend == null) {
+            return new Snapshot(0, 0, 0, 0);
+        }
+        return trend.snapshot(System.currentTimeMillis(), decayPerMilli);
+    }
+
+    public long soldLast24h(Long productId) {
+        return snapshot(productId).soldLast24h();
+    }
+
+    /**
+     * productId theo điểm trending giảm dần (tính lại định kỳ).
+     */
+    public List<Long> trending(int limit) {
+        List<Long> current = ranking;
+        return current.size() <= limit ? current : current.subList(0, limit);
+    }
+
+    /**
+     * Xếp hạng lại theo điểm tại thời điểm hiện tại, bỏ sản phẩm không bán được gì trong 7 ngày.
+     */
+    @Scheduled(fixedDelayString = "${product.trending.rank-interval-ms:30000}")
+    public void rerank() {
+        long nowMillis = System.currentTimeMillis();
+        long oldestHour = nowMillis / 3_600_000L - HOURS;
+        PriorityQueue<Map.Entry<Long, Double>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<Long, ProductTrend> e : trends.entrySet()) {
+            ProductTrend trend = e.getValue();
+            if (trend.lastEventHour() <= oldestHour) {
+                trends.remove(e.getKey(), trend);
+                continue;
+            }
+            double score = trend.snapshot(nowMillis, decayPerMilli).score();
+            if (score <= 0) {
+                continue;
+            }
+            top.offer(Map.entry(e.getKey(), score));
+            if (top.size() > size) {
+                top.poll();
+            }
+        }
+        List<Map.Entry<Long, Double>> sorted = new ArrayList<>(top);
+        sorted.sort(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        ranking = sorted.stream().map(Map.Entry::getKey).toList();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final class ProductTrend {
+        private final long[] minuteCounts = new long[MINUTES];
+        private final long[] minuteStamps = new long[MINUTES];   // epoch minute của ô, ô cũ bị ghi đè
+        private final long[] hourCounts = new long[HOURS];
+        private final long[] hourStamps = new long[HOURS];
+        private double score;                                   // giá trị tại scoreAtMillis
+        private long scoreAtMillis;
+        private long lastEventHour;
+
+        synchronized void record(long eventMillis, long quantity, long nowMillis, double decayPerMilli) {
+            add(minuteCounts, minuteStamps, eventMillis / 60_000L, quantity);
+            add(hourCounts, hourStamps, eventMillis / 3_600_000L, quantity);
+            score = decayedScore(nowMillis, decayPerMilli)
+                    + quantity * Math.exp(-decayPerMilli * Math.max(0, nowMillis - eventMillis));
+            scoreAtMillis = nowMillis;
+            lastEventHour = Math.max(lastEventHour, eventMillis / 3_600_000L);
+        }
+
+        synchronized Snapshot snapshot(long nowMillis, double decayPerMilli) {
+            long nowMinute = nowMillis / 60_000L;
+            long nowHour = nowMillis / 3_600_000L;
+            return new Snapshot(
+                    sum(minuteCounts, minuteStamps, nowMinute - MINUTES, nowMinute),
+                    sum(hourCounts, hourStamps, nowHour - 24, nowHour),
+                    sum(hourCounts, hourStamps, nowHour - HOURS, nowHour),
+                    decayedScore(nowMillis, decayPerMilli));
+        }
+
+        synchronized long lastEventHour() {
+            return lastEventHour;
+        }
+
+        private double decayedScore(long nowMillis, double decayPerMilli) {
+            if (scoreAtMillis == 0) {
+                return 0;
+            }
+            return score * Math.exp(-decayPerMilli * Math.max(0, nowMillis - scoreAtMillis));
+        }
+
+        private static void add(long[] counts, long[] stamps, long slot, long quantity) {
+            int i = (int) Math.floorMod(slot, (long) counts.length);
+            if (stamps[i] > slot) {
+                return; // ô đã thuộc về khoảng mới hơn -> sự kiện quá cũ cho ring này
+            }
+            if (stamps[i] < slot) {
+                stamps[i] = slot;
+                counts[i] = 0;
+            }
+            counts[i] += quantity;
+        }
+
+        // Tổng các ô có slot trong (fromExclusive, toInclusive]
+        private static long sum(long[] counts, long[] stamps, long fromExclusive, long toInclusive) {
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (stamps[i] > fromExclusive && stamps[i] <= toInclusive) {
+                    total += counts[i];
+                }
+            }
+            return Math.max(0, total);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package binh.shopee.util;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache trong bộ nhớ có giới hạn số phần tử (LRU) và TTL tính từ lần truy cập cuối
+ * (hoặc từ lúc ghi, nếu tạo với extendOnAccess = false).
+ * Thread-safe bằng synchronized; phù hợp cho map nhỏ/vừa, truy cập ngắn.
+ */
+public class BoundedTtlCache<K, V> {
+    private final int maxSize;
+    private final long ttlMillis;
+    private final boolean extendOnAccess;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private long evictions;     // bị loại vì vượt maxSize
+    private long expirations;   // bị loại vì hết TTL
+
+    public BoundedTtlCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, true);
+    }
+
+    public BoundedTtlCache(int maxSize, Duration ttl, boolean extendOnAccess) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize phải > 0");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.extendOnAccess = extendOnAccess;
+        // accessOrder = true -> phần tử ít dùng nhất nằm đầu, bị loại khi vượt maxSize
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > BoundedTtlCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return value, hoặc null nếu không có / đã hết hạn. Truy cập thành công sẽ gia hạn TTL (nếu extendOnAccess).
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.expiresAt <= now) {
+            entries.remove(key);
+            expirations++;
+            return null;
+        }
+        if (extendOnAccess) {
+            entry.expiresAt = now + ttlMillis;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    public synchronized long expirationCount() {
+        return expirations;
+    }
+
+    /**
+     * Xóa các phần tử đã hết hạn, trả về số phần tử bị xóa.
+     */
+    public synchronized int purgeExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt <= now) {
+                it.remove();
+                removed++;
+            }
+        }
+        expirations += removed;
+        return removed;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
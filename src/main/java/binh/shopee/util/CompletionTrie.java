@@ -0,0 +1,120 @@
+package binh.shopee.util;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Radix trie bất biến cho autocomplete: mỗi cạnh mang cả đoạn chuỗi chung (không 1 node / ký tự),
+ * mỗi node giữ sẵn top-k phần tử nặng nhất trong nhánh của nó.
+ * Tra prefix = đi theo cạnh rồi đọc top-k tại node dừng, O(độ dài prefix) và không phụ thuộc số key.
+ */
+public final class CompletionTrie<T> {
+    private final Entry<T>[] entries;
+    private final Node root;
+
+    public record Entry<T>(String key, long weight, T value) {
+    }
+
+    private static final class Node {
+        private String label = "";
+        private char[] firstChars = new char[0];
+        private Node[] children = new Node[0];
+        private int[] top = new int[0];         // chỉ số trong entries, nặng nhất trước
+    }
+
+    private CompletionTrie(Entry<T>[] entries, Node root) {
+        this.entries = entries;
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> CompletionTrie<T> build(List<Entry<T>> source, int k) {
+        Entry<T>[] entries = source.stream()
+                .filter(e -> e.key() != null && !e.key().isEmpty())
+                .sorted(Comparator.comparing((Entry<T> e) -> e.key()))
+                .toArray(Entry[]::new);
+        Comparator<Integer> heaviest = Comparator
+                .comparingLong((Integer i) -> entries[i].weight()).reversed()
+                .thenComparing(i -> entries[i].key());
+        Node root = entries.length == 0 ? new Node() : build(entries, 0, entries.length, 0, k, heaviest);
+        return new CompletionTrie<>(entries, root);
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * Tối đa limit phần tử (limit <= k lúc build) có key bắt đầu bằng prefix, nặng nhất trước.
+     */
+    public List<T> complete(String prefix, int limit) {
+        Node node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            int i = Arrays.binarySearch(node.firstChars, prefix.charAt(pos));
+            if (i < 0) {
+                return List.of();
+            }
+            Node child = node.children[i];
+            int n = Math.min(child.label.length(), prefix.length() - pos);
+            if (!prefix.regionMatches(pos, child.label, 0, n)) {
+                return List.of();
+            }
+            pos += n;
+            node = child;
+        }
+        List<T> result = new ArrayList<>(Math.min(limit, node.top.length));
+        for (int i = 0; i < node.top.length && result.size() < limit; i++) {
+            result.add(entries[node.top[i]].value());
+        }
+        return result;
+    }
+
+    // entries[lo, hi) đã sắp theo key và có chung depth ký tự đầu
+    private static <T> Node build(Entry<T>[] entries, int lo, int hi, int depth, int k,
+                                  Comparator<Integer> heaviest) {
+        Node node = new Node();
+        List<Integer> candidates = new ArrayList<>();
+        int i = lo;
+        while (i < hi && entries[i].key().length() == depth) {
+            candidates.add(i++);
+        }
+        List<Character> firstChars = new ArrayList<>();
+        List<Node> children = new ArrayList<>();
+        while (i < hi) {
+            char c = entries[i].key().charAt(depth);
+            int j = i;
+            while (j < hi && entries[j].key().charAt(depth) == c) {
+                j++;
+            }
+            // Dãy đã sắp: prefix chung của cả nhóm = prefix chung của phần tử đầu và cuối
+            int end = commonPrefix(entries[i].key(), entries[j - 1].key());
+            Node child = build(entries, i, j, end, k, heaviest);
+            child.label = entries[i].key().substring(depth, end);
+            firstChars.add(c);
+            children.add(child);
+            for (int top : child.top) {
+                candidates.add(top);
+            }
+            i = j;
+        }
+        node.firstChars = new char[firstChars.size()];
+        for (int c = 0; c < firstChars.size(); c++) {
+            node.firstChars[c] = firstChars.get(c);
+        }
+        node.children = children.toArray(new Node[0]);
+        candidates.sort(heaviest);
+        node.top = candidates.stream().limit(k).mapToInt(Integer::intValue).toArray();
+        return node;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
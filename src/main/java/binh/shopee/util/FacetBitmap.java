@@ -0,0 +1,145 @@
+package binh.shopee.util;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Bitmap bất biến trên tập docId dày đặc [0, universe), nén theo mật độ:
+ * ít phần tử -> mảng docId đã sắp (4 byte / phần tử), nhiều -> mảng word 64 bit (universe / 8 byte).
+ * Kết hợp với mask dạng long[] (bitmap thường, có thể sửa) qua các hàm static bên dưới.
+ */
+public final class FacetBitmap {
+    private final int[] docs;      // != null khi lưu dạng thưa
+    private final long[] words;    // != null khi lưu dạng dày
+    private final int cardinality;
+
+    private FacetBitmap(int[] docs, long[] words, int cardinality) {
+        this.docs = docs;
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    public static FacetBitmap of(BitSet bits, int universe) {
+        int cardinality = bits.cardinality();
+        int wordCount = wordCount(universe);
+        // Mảng docId rẻ hơn khi 32 bit * cardinality < 64 bit * số word
+        if ((long) cardinality < 2L * wordCount) {
+            return new FacetBitmap(bits.stream().toArray(), null, cardinality);
+        }
+        long[] words = new long[wordCount];
+        long[] raw = bits.toLongArray();
+        System.arraycopy(raw, 0, words, 0, Math.min(raw.length, wordCount));
+        return new FacetBitmap(null, words, cardinality);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * target |= this
+     */
+    public void orInto(long[] target) {
+        if (docs != null) {
+            for (int doc : docs) {
+                target[doc >>> 6] |= 1L << doc;
+            }
+        } else {
+            for (int i = 0; i < words.length; i++) {
+                target[i] |= words[i];
+            }
+        }
+    }
+
+    /**
+     * |this AND mask|
+     */
+    public int andCount(long[] mask) {
+        int count = 0;
+        if (docs != null) {
+            for (int doc : docs) {
+                if ((mask[doc >>> 6] & (1L << doc)) != 0) {
+                    count++;
+                }
+            }
+        } else {
+            for (int i = 0; i < words.length; i++) {
+                count += Long.bitCount(words[i] & mask[i]);
+            }
+        }
+        return count;
+    }
+
+    public void forEach(IntConsumer action) {
+        if (docs != null) {
+            for (int doc : docs) {
+                action.accept(doc);
+            }
+        } else {
+            for (int doc = nextSetBit(words, 0); doc >= 0; doc = nextSetBit(words, doc + 1)) {
+                action.accept(doc);
+            }
+        }
+    }
+
+    // ===== mask long[] =====
+
+    public static int wordCount(int universe) {
+        return (universe + 63) >>> 6;
+    }
+
+    public static long[] full(int universe) {
+        long[] mask = new long[wordCount(universe)];
+        Arrays.fill(mask, -1L);
+        int tail = universe & 63;
+        if (tail != 0) {
+            mask[mask.length - 1] = (1L << tail) - 1;
+        }
+        return mask;
+    }
+
+    /**
+     * target &= other
+     */
+    public static void and(long[] target, long[] other) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] &= other[i];
+        }
+    }
+
+    public static int cardinality(long[] mask) {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public static boolean get(long[] mask, int doc) {
+        return (mask[doc >>> 6] & (1L << doc)) != 0;
+    }
+
+    public static void clear(long[] mask, int doc) {
+        mask[doc >>> 6] &= ~(1L << doc);
+    }
+
+    /**
+     * docId set đầu tiên >= from, -1 nếu hết.
+     */
+    public static int nextSetBit(long[] mask, int from) {
+        int i = from >>> 6;
+        if (i >= mask.length) {
+            return -1;
+        }
+        long word = mask[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++i == mask.length) {
+                return -1;
+            }
+            word = mask[i];
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package binh.shopee.util;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Tập khoảng thời gian [start, end] (gồm cả 2 đầu) bất biến, trả lời "khoảng nào chứa thời điểm T".
+ * Khoảng được sắp theo start kèm maxEnd cộng dồn: tìm nhị phân vị trí start cuối cùng <= T,
+ * rồi lùi dần chừng nào maxEnd còn >= T -> O(log n + k).
+ */
+public final class IntervalIndex<T> {
+    private final List<T> values;
+    private final LocalDateTime[] starts;
+    private final LocalDateTime[] ends;
+    private final LocalDateTime[] maxEnds;
+
+    public IntervalIndex(List<T> items, Function<T, LocalDateTime> startOf, Function<T, LocalDateTime> endOf) {
+        List<T> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparing(startOf));
+        this.values = List.copyOf(sorted);
+        int n = sorted.size();
+        this.starts = new LocalDateTime[n];
+        this.ends = new LocalDateTime[n];
+        this.maxEnds = new LocalDateTime[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = startOf.apply(sorted.get(i));
+            ends[i] = endOf.apply(sorted.get(i));
+            maxEnds[i] = i == 0 || ends[i].isAfter(maxEnds[i - 1]) ? ends[i] : maxEnds[i - 1];
+        }
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * Mọi khoảng chứa thời điểm at.
+     */
+    public List<T> stab(LocalDateTime at) {
+        List<T> result = new ArrayList<>(2);
+        for (int i = lastStartAtOrBefore(at); i >= 0 && !maxEnds[i].isBefore(at); i--) {
+            if (!ends[i].isBefore(at)) {
+                result.add(values.get(i));
+            }
+        }
+        return result;
+    }
+
+    private int lastStartAtOrBefore(LocalDateTime at) {
+        int lo = 0;
+        int hi = starts.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid].isAfter(at)) {
+                hi = mid - 1;
+            } else {
+                found = mid;
+                lo = mid + 1;
+            }
+        }
+        return found;
+    }
+}
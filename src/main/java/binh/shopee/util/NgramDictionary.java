@@ -0,0 +1,135 @@
+package binh.shopee.util;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Từ điển term (đã fold) có chỉ mục trigram để tìm term gần đúng (sai chính tả).
+ * Ứng viên = term chung đủ nhiều trigram với term cần sửa (mỗi lỗi gõ chỉ phá được vài trigram),
+ * sau đó mới tính khoảng cách sửa (Levenshtein + đảo 2 ký tự liền kề) có chặn trên.
+ * Mỗi term đếm số lần add / remove nên nhiều nguồn (tên sản phẩm, tên brand) có thể dùng chung.
+ */
+public final class NgramDictionary {
+    private static final int GRAM = 3;
+    // 1 lần đảo 2 ký tự phá tối đa GRAM + 1 trigram
+    private static final int GRAMS_PER_EDIT = GRAM + 1;
+    private static final char PAD = '$';
+
+    private final ConcurrentHashMap<String, Integer> terms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> grams = new ConcurrentHashMap<>();
+
+    public record Match(String term, int distance) {
+    }
+
+    public void add(String term) {
+        if (terms.merge(term, 1, Integer::sum) == 1) {
+            for (String gram : gramsOf(term)) {
+                grams.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(term);
+            }
+        }
+    }
+
+    public void remove(String term) {
+        Integer left = terms.computeIfPresent(term, (t, count) -> count > 1 ? count - 1 : null);
+        if (left == null) {
+            for (String gram : gramsOf(term)) {
+                grams.computeIfPresent(gram, (g, set) -> {
+                    set.remove(term);
+                    return set.isEmpty() ? null : set;
+                });
+            }
+        }
+    }
+
+    public boolean contains(String term) {
+        return terms.containsKey(term);
+    }
+
+    /**
+     * Các term cách term cần sửa tối đa maxDistance, gần nhất trước (không gồm chính nó).
+     */
+    public List<Match> closest(String query, int maxDistance) {
+        if (maxDistance <= 0) {
+            return List.of();
+        }
+        Set<String> queryGrams = gramsOf(query);
+        int minShared = Math.max(1, queryGrams.size() - GRAMS_PER_EDIT * maxDistance);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String gram : queryGrams) {
+            Set<String> candidates = grams.get(gram);
+            if (candidates == null) {
+                continue;
+            }
+            for (String term : candidates) {
+                if (Math.abs(term.length() - query.length()) <= maxDistance) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : shared.entrySet()) {
+            if (e.getValue() < minShared || e.getKey().equals(query)) {
+                continue;
+            }
+            int distance = distance(query, e.getKey(), maxDistance);
+            if (distance <= maxDistance) {
+                matches.add(new Match(e.getKey(), distance));
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::distance).thenComparing(Match::term));
+        return matches;
+    }
+
+    // Trigram của "$term$" để đầu / cuối từ cũng có trọng số
+    private static Set<String> gramsOf(String term) {
+        String padded = PAD + term + PAD;
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            result.add(padded.substring(i, i + GRAM));
+        }
+        return result;
+    }
+
+    /**
+     * Khoảng cách sửa (optimal string alignment), trả về max + 1 ngay khi chắc chắn vượt max.
+     */
+    static int distance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > max) {
+            return max + 1;
+        }
+        int[] prevPrev = new int[m + 1];
+        int[] prev = new int[m + 1];
+        int[] cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, prevPrev[j - 2] + 1);
+                }
+                cur[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = prevPrev;
+            prevPrev = prev;
+            prev = cur;
+            cur = recycled;
+        }
+        return prev[m];
+    }
+}
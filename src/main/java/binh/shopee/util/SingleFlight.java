@@ -0,0 +1,53 @@
+package binh.shopee.util;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Gộp các lần load đồng thời cùng key: request đầu tiên chạy loader, các request tới trong lúc đó
+ * chờ và nhận chung kết quả (hoặc chung exception). Load xong là key được nhả, lần sau load lại.
+ */
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public V run(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        try {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            // Error cũng phải hoàn tất future, nếu không các request đang chờ treo mãi
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public boolean isRunning(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * Số lần request dùng chung load của request khác thay vì tự load.
+     */
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,55 @@
+package binh.shopee.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa chuỗi tiếng Việt: chữ thường + bỏ dấu.
+ * Dùng chung cho slug sản phẩm và chỉ mục tìm kiếm.
+ */
+public final class VietnameseText {
+    private static final Pattern A = Pattern.compile("[àáạảãâầấậẩẫăằắặẳẵ]");
+    private static final Pattern E = Pattern.compile("[èéẹẻẽêềếệểễ]");
+    private static final Pattern I = Pattern.compile("[ìíịỉĩ]");
+    private static final Pattern O = Pattern.compile("[òóọỏõôồốộổỗơờớợởỡ]");
+    private static final Pattern U = Pattern.compile("[ùúụủũưừứựửữ]");
+    private static final Pattern Y = Pattern.compile("[ỳýỵỷỹ]");
+    private static final Pattern D = Pattern.compile("[đ]");
+    private static final Pattern NON_ALNUM = Pattern.compile("[^a-z0-9]+");
+
+    private VietnameseText() {
+    }
+
+    /**
+     * Chuyển chữ thường và bỏ dấu tiếng Việt ("Điện Thoại" -> "dien thoai").
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String s = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase();
+        s = A.matcher(s).replaceAll("a");
+        s = E.matcher(s).replaceAll("e");
+        s = I.matcher(s).replaceAll("i");
+        s = O.matcher(s).replaceAll("o");
+        s = U.matcher(s).replaceAll("u");
+        s = Y.matcher(s).replaceAll("y");
+        s = D.matcher(s).replaceAll("d");
+        return s;
+    }
+
+    /**
+     * Chuẩn hóa rồi tách thành các term chữ / số.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String term : NON_ALNUM.split(fold(text))) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+}
@@ -249,4 +249,187 @@ GO
 
 ALTER TABLE products
     ADD CONSTRAINT UQ_Products_Slug UNIQUE ()
-    GO
\ No newline at end of file
+    GO
+
+CREATE TABLE order_revenue_rollups
+(
+    rollup_id    bigint IDENTITY (1, 1) NOT NULL,
+    granularity  varchar(10)    NOT NULL,
+    bucket_start datetime       NOT NULL,
+    status       varchar(20)    NOT NULL,
+    order_count  bigint         NOT NULL,
+    revenue      decimal(18, 2) NOT NULL,
+    CONSTRAINT pk_order_revenue_rollups PRIMARY KEY (rollup_id),
+    CONSTRAINT UQ_OrderRevenueRollups_Bucket UNIQUE (granularity, bucket_start, status)
+)
+    GO
+
+CREATE SEQUENCE stock_reservations_seq AS bigint START WITH 1 INCREMENT BY 50
+    GO
+
+CREATE TABLE stock_reservations
+(
+    reservation_id      bigint      NOT NULL,
+    checkout_session_id varchar(64) NOT NULL,
+    user_id             bigint      NOT NULL,
+    variant_id          bigint      NOT NULL,
+    quantity            int         NOT NULL,
+    status              varchar(20) NOT NULL,
+    expires_at          datetime    NOT NULL,
+    order_id            bigint,
+    created_at          datetime    NOT NULL,
+    updated_at          datetime    NOT NULL,
+    CONSTRAINT pk_stock_reservations PRIMARY KEY (reservation_id),
+    CONSTRAINT FK_StockReservations_Variant FOREIGN KEY (variant_id) REFERENCES product_variants (variant_id)
+)
+    GO
+
+CREATE INDEX IX_StockReservations_Session ON stock_reservations (checkout_session_id)
+    GO
+
+CREATE INDEX IX_StockReservations_Status_Expires ON stock_reservations (status, expires_at)
+    GO
+
+CREATE SEQUENCE order_outbox_events_seq AS bigint START WITH 1 INCREMENT BY 50
+    GO
+
+CREATE TABLE order_outbox_events
+(
+    event_id        bigint       NOT NULL,
+    order_id        bigint       NOT NULL,
+    event_type      varchar(30)  NOT NULL,
+    status          varchar(20)  NOT NULL,
+    attempts        int          NOT NULL,
+    next_attempt_at datetime     NOT NULL,
+    last_error      nvarchar(500),
+    created_at      datetime     NOT NULL,
+    CONSTRAINT pk_order_outbox_events PRIMARY KEY (event_id)
+)
+    GO
+
+CREATE INDEX IX_OrderOutboxEvents_Status_NextAttempt ON order_outbox_events (status, next_attempt_at)
+    GO
+
+-- order_items: IDENTITY -> SEQUENCE để Hibernate batch insert order items (allocationSize = 50).
+-- Pooled optimizer dùng giá trị sequence làm đầu trên của block nên START WITH = max + 50.
+-- Chạy lúc bảo trì (copy toàn bộ bảng).
+DECLARE @start bigint = (SELECT ISNULL(MAX(order_item_id), 0) + 50 FROM order_items);
+EXEC ('CREATE SEQUENCE order_items_seq AS bigint START WITH ' + CAST(@start AS varchar(20)) + ' INCREMENT BY 50');
+    GO
+
+ALTER TABLE shipment_items DROP CONSTRAINT FK_SHIPMENTITEMS_ON_ORDER_ITEM
+    GO
+
+CREATE TABLE order_items_new
+(
+    order_item_id         bigint         NOT NULL,
+    order_id              bigint         NOT NULL,
+    variant_id            bigint         NOT NULL,
+    product_name_snapshot varchar(255)   NOT NULL,
+    unit_price            decimal(12, 2) NOT NULL,
+    quantity              int            NOT NULL,
+    discount_amount       decimal(12, 2) NOT NULL,
+    total_price           decimal(12, 2),
+    created_at            datetime       NOT NULL,
+    updated_at            datetime       NOT NULL,
+    CONSTRAINT pk_orderitems_new PRIMARY KEY (order_item_id)
+)
+    GO
+
+INSERT INTO order_items_new (order_item_id, order_id, variant_id, product_name_snapshot, unit_price,
+                             quantity, discount_amount, total_price, created_at, updated_at)
+SELECT order_item_id, order_id, variant_id, product_name_snapshot, unit_price,
+       quantity, discount_amount, total_price, created_at, updated_at
+FROM order_items
+    GO
+
+DROP TABLE order_items
+    GO
+
+EXEC sp_rename 'order_items_new', 'order_items'
+    GO
+
+EXEC sp_rename 'pk_orderitems_new', 'pk_orderitems'
+    GO
+
+ALTER TABLE order_items
+    ADD CONSTRAINT FK_ORDERITEMS_ON_ORDER FOREIGN KEY (order_id) REFERENCES orders (order_id)
+    GO
+
+ALTER TABLE order_items
+    ADD CONSTRAINT FK_ORDERITEMS_ON_VARIANT FOREIGN KEY (variant_id) REFERENCES product_variants (variant_id)
+    GO
+
+ALTER TABLE shipment_items
+    ADD CONSTRAINT FK_SHIPMENTITEMS_ON_ORDER_ITEM FOREIGN KEY (order_item_id) REFERENCES order_items (order_item_id)
+    GO
+
+-- Keyset lịch sử đơn hàng của user (createdAt, orderId giảm dần)
+CREATE INDEX IX_Orders_User_CreatedAt ON orders (user_id, created_at DESC, order_id DESC)
+    GO
+
+-- Rating tổng hợp trên products (thay AVG/COUNT trên reviews)
+ALTER TABLE products ADD
+    rating_count       bigint NOT NULL CONSTRAINT DF_Products_RatingCount DEFAULT 0,
+    rating_sum         bigint NOT NULL CONSTRAINT DF_Products_RatingSum DEFAULT 0,
+    rating_avg         float  NOT NULL CONSTRAINT DF_Products_RatingAvg DEFAULT 0,
+    rating_star1_count bigint NOT NULL CONSTRAINT DF_Products_RatingStar1 DEFAULT 0,
+    rating_star2_count bigint NOT NULL CONSTRAINT DF_Products_RatingStar2 DEFAULT 0,
+    rating_star3_count bigint NOT NULL CONSTRAINT DF_Products_RatingStar3 DEFAULT 0,
+    rating_star4_count bigint NOT NULL CONSTRAINT DF_Products_RatingStar4 DEFAULT 0,
+    rating_star5_count bigint NOT NULL CONSTRAINT DF_Products_RatingStar5 DEFAULT 0
+    GO
+
+-- Backfill từ reviews đã duyệt
+UPDATE p
+SET p.rating_count = x.cnt,
+    p.rating_sum = x.total,
+    p.rating_avg = x.total * 1.0 / x.cnt,
+    p.rating_star1_count = x.s1,
+    p.rating_star2_count = x.s2,
+    p.rating_star3_count = x.s3,
+    p.rating_star4_count = x.s4,
+    p.rating_star5_count = x.s5
+FROM products p
+JOIN (
+    SELECT product_id,
+           COUNT(*) AS cnt,
+           SUM(CAST(rating AS bigint)) AS total,
+           COUNT(CASE WHEN rating = 1 THEN 1 END) AS s1,
+           COUNT(CASE WHEN rating = 2 THEN 1 END) AS s2,
+           COUNT(CASE WHEN rating = 3 THEN 1 END) AS s3,
+           COUNT(CASE WHEN rating = 4 THEN 1 END) AS s4,
+           COUNT(CASE WHEN rating = 5 THEN 1 END) AS s5
+    FROM reviews
+    WHERE status = 'approved'
+    GROUP BY product_id
+) x ON x.product_id = p.product_id
+    GO
+
+-- Giá áp dụng materialized theo sản phẩm (refresh khi khuyến mãi bắt đầu / kết thúc)
+CREATE TABLE product_effective_prices (
+    product_id bigint NOT NULL PRIMARY KEY,
+    base_price decimal(12,2) NOT NULL,
+    discount_amount decimal(12,2) NOT NULL,
+    effective_price decimal(12,2) NOT NULL,
+    promotion_source varchar(20) NULL,
+    promotion_id bigint NULL,
+    refreshed_at datetime NOT NULL,
+    CONSTRAINT FK_ProductEffectivePrices_Products FOREIGN KEY (product_id)
+        REFERENCES products(product_id) ON DELETE CASCADE
+)
+    GO
+
+CREATE INDEX IX_ProductEffectivePrices_Price ON product_effective_prices (effective_price)
+    GO
+
+CREATE INDEX IX_ProductEffectivePrices_RefreshedAt ON product_effective_prices (refreshed_at)
+    GO
+
+-- Dòng đơn mua giá flash sale ghi lại flash_sale_id (đối chiếu sold / giới hạn mua theo user khi nạp lại).
+-- Dòng cũ để NULL: không truy được dòng nào thực sự mua giá flash.
+ALTER TABLE order_items ADD flash_sale_id bigint NULL
+    GO
+
+CREATE INDEX IX_OrderItems_FlashSale ON order_items (flash_sale_id) WHERE flash_sale_id IS NOT NULL
+    GO
@@ -0,0 +1,132 @@
+package binh.shopee.service;
+
+import binh.shopee.dto.product.ProductCursorPage;
+import binh.shopee.dto.product.ProductListingRow;
+import binh.shopee.dto.product.ProductSearchResponse;
+import binh.shopee.repository.ProductEffectivePriceRepository;
+import binh.shopee.repository.ProductsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CategoryListingIndexTest {
+    private static final LocalDateTime JAN = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final LocalDateTime FEB = LocalDateTime.of(2025, 2, 1, 0, 0);
+    private static final List<Long> BOTH_CATEGORIES = List.of(1L, 2L);
+
+    // Thứ tự đúng của 5 sản phẩm theo từng kiểu (p1, p2 trùng mọi khóa; p3, p5 không có createdAt)
+    private static final Map<CategoryListingIndex.Sort, List<Long>> EXPECTED = Map.of(
+            CategoryListingIndex.Sort.PRICE_ASC, List.of(3L, 1L, 2L, 5L, 4L),
+            CategoryListingIndex.Sort.PRICE_DESC, List.of(4L, 5L, 1L, 2L, 3L),
+            CategoryListingIndex.Sort.BEST_SELLING, List.of(3L, 5L, 1L, 2L, 4L),
+            CategoryListingIndex.Sort.RATING, List.of(3L, 1L, 2L, 5L, 4L),
+            CategoryListingIndex.Sort.NEWEST, List.of(4L, 1L, 2L, 3L, 5L));
+
+    private CategoryListingIndex index;
+
+    @BeforeEach
+    void setUp() {
+        ProductsRepository productsRepository = mock(ProductsRepository.class);
+        ProductEffectivePriceRepository effectivePriceRepository = mock(ProductEffectivePriceRepository.class);
+        ProductSearchIndex productSearchIndex = mock(ProductSearchIndex.class);
+        // Danh mục 1: p1, p3, p5; danh mục 2: p2, p4, p5 (p5 nằm ở cả 2)
+        when(productsRepository.findListingRows(any())).thenReturn(List.of(
+                row(1L, 1L, "100", 5L, 4.0, JAN),
+                row(3L, 1L, "50", 10L, 5.0, null),
+                row(5L, 1L, "150", 7L, 3.5, null),
+                row(2L, 2L, "100", 5L, 4.0, JAN),
+                row(4L, 2L, "200", 0L, null, FEB),
+                row(5L, 2L, "150", 7L, 3.5, null)));
+        when(productSearchIndex.get(anyLong())).thenAnswer(invocation ->
+                ProductSearchResponse.builder().productId(invocation.getArgument(0)).build());
+        index = new CategoryListingIndex(productsRepository, effectivePriceRepository, productSearchIndex, 30);
+        index.rebuild();
+    }
+
+    private static ProductListingRow row(Long productId, Long categoryId, String price, Long sold, Double rating,
+                                         LocalDateTime createdAt) {
+        return new ProductListingRow(productId, categoryId, true, new BigDecimal(price), sold, rating, createdAt);
+    }
+
+    private List<Long> pageThrough(List<Long> categoryIds, CategoryListingIndex.Sort sort, int size) {
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            ProductCursorPage page = index.page(categoryIds, sort, cursor, size);
+            page.getItems().forEach(item -> seen.add(item.getProductId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return seen;
+    }
+
+    @ParameterizedTest
+    @EnumSource(CategoryListingIndex.Sort.class)
+    void cursorPagingVisitsEveryProductOnceInOrder(CategoryListingIndex.Sort sort) {
+        // Trang 2 phần tử: cursor rơi đúng vào p1 (trùng khóa với p2) và vào createdAt = LocalDateTime.MIN
+        assertEquals(EXPECTED.get(sort), pageThrough(BOTH_CATEGORIES, sort, 2));
+        assertEquals(EXPECTED.get(sort), pageThrough(BOTH_CATEGORIES, sort, 1));
+        assertEquals(EXPECTED.get(sort), pageThrough(BOTH_CATEGORIES, sort, 10));
+    }
+
+    @Test
+    void singleCategoryKeepsOnlyItsProducts() {
+        assertEquals(List.of(3L, 1L, 5L), pageThrough(List.of(1L), CategoryListingIndex.Sort.PRICE_ASC, 2));
+        assertEquals(List.of(4L, 2L, 5L), pageThrough(List.of(2L), CategoryListingIndex.Sort.NEWEST, 2));
+    }
+
+    @Test
+    void lastPageHasNoCursorAndTotalCountsPerCategory() {
+        ProductCursorPage page = index.page(BOTH_CATEGORIES, CategoryListingIndex.Sort.BEST_SELLING, null, 10);
+
+        assertNull(page.getNextCursor());
+        assertEquals(6, page.getTotalApprox());
+    }
+
+    @Test
+    void lastPageEndingOnSharedProductHasNoCursor() {
+        // NEWEST kết thúc ở p5, p5 nằm ở cả 2 danh mục: bản còn lại trong hàng đợi không được sinh cursor
+        ProductCursorPage page = index.page(BOTH_CATEGORIES, CategoryListingIndex.Sort.NEWEST, null, 5);
+
+        assertEquals(5, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void unknownCategoryIsEmpty() {
+        ProductCursorPage page = index.page(List.of(99L), CategoryListingIndex.Sort.RATING, null, 10);
+
+        assertEquals(List.of(), page.getItems());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(RuntimeException.class,
+                () -> index.page(BOTH_CATEGORIES, CategoryListingIndex.Sort.PRICE_ASC, "not-a-cursor", 2));
+        // Cursor của kiểu sắp xếp khác: khóa không parse được theo kiểu này
+        String newestCursor = index.page(BOTH_CATEGORIES, CategoryListingIndex.Sort.NEWEST, null, 1).getNextCursor();
+        assertThrows(RuntimeException.class,
+                () -> index.page(BOTH_CATEGORIES, CategoryListingIndex.Sort.PRICE_ASC, newestCursor, 2));
+    }
+
+    @Test
+    void parseAcceptsAnyCaseAndRejectsUnknownSorts() {
+        assertEquals(CategoryListingIndex.Sort.BEST_SELLING, CategoryListingIndex.Sort.parse(" best_selling "));
+        assertThrows(RuntimeException.class, () -> CategoryListingIndex.Sort.parse("cheapest"));
+    }
+}
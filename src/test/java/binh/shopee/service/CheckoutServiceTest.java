@@ -0,0 +1,103 @@
+package binh.shopee.service;
+
+import binh.shopee.dto.order.CheckoutItemResponse;
+import binh.shopee.dto.order.CheckoutPricingResult;
+import binh.shopee.dto.order.CheckoutRequest;
+import binh.shopee.dto.order.CheckoutResponse;
+import binh.shopee.dto.order.SelectAddressRequest;
+import binh.shopee.dto.order.ShippingMethodResponse;
+import binh.shopee.dto.order.VariantItem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CheckoutServiceTest {
+    private static final Long USER_ID = 5L;
+    private static final List<VariantItem> CART = List.of(new VariantItem(1L, 2, null), new VariantItem(2L, 1, null));
+
+    private CheckoutPricingService pricingService;
+    private CheckoutSessionStore sessionStore;
+    private StockReservationService reservationService;
+    private CheckoutService service;
+
+    @BeforeEach
+    void setUp() {
+        ShippingMethodsService shippingMethodsService = mock(ShippingMethodsService.class);
+        pricingService = mock(CheckoutPricingService.class);
+        sessionStore = mock(CheckoutSessionStore.class);
+        reservationService = mock(StockReservationService.class);
+        when(shippingMethodsService.getDefaultShipping()).thenReturn(
+                ShippingMethodResponse.builder().id(1L).baseFee(new BigDecimal("15000")).build());
+        when(pricingService.priceItems(any(), eq(USER_ID), anyBoolean(), any())).thenAnswer(invocation ->
+                CheckoutPricingResult.builder()
+                        .items(List.of(
+                                CheckoutItemResponse.builder().variantId(1L).productName("A").quantity(2).build(),
+                                CheckoutItemResponse.builder().variantId(2L).productName("B").quantity(1).build()))
+                        .subtotal(new BigDecimal("300000"))
+                        .validationErrors(new ArrayList<>())
+                        .build());
+        service = new CheckoutService(mock(PaymentMethodsService.class), shippingMethodsService,
+                mock(VoucherService.class), mock(AddressesService.class), pricingService, sessionStore,
+                reservationService);
+    }
+
+    @Test
+    void initReleasesOldHoldsPricesAndHoldsAgainInOrder() {
+        when(sessionStore.create(USER_ID)).thenReturn(new CheckoutSession("s-1", USER_ID));
+        when(reservationService.holdForSession(eq("s-1"), eq(USER_ID), any())).thenReturn(List.of(2L));
+
+        CheckoutResponse response = service.getCheckoutInfo(CheckoutRequest.builder().variants(CART).build(), USER_ID);
+
+        // Nhả hold cũ trước khi tính phần khả dụng, giữ lại sau (cùng transaction của bước checkout)
+        InOrder order = inOrder(reservationService, pricingService);
+        order.verify(reservationService).releaseUser(USER_ID);
+        order.verify(pricingService).priceItems(any(), eq(USER_ID), eq(true), eq(Map.of()));
+        order.verify(reservationService).holdForSession(eq("s-1"), eq(USER_ID), any());
+        assertTrue(response.getValidationErrors().contains("Sản phẩm 'B' vừa hết hàng"));
+    }
+
+    @Test
+    void stepWithoutSessionCountsTheUsersHoldsButHoldsNothing() {
+        when(sessionStore.find(anyString(), anyLong())).thenReturn(null);
+        when(reservationService.getHeldQuantitiesByUser(USER_ID)).thenReturn(Map.of(1L, 2));
+
+        service.selectAddress(SelectAddressRequest.builder().sessionId("gone").variants(CART).addressId(3L).build(),
+                USER_ID);
+
+        verify(pricingService).priceItems(any(), eq(USER_ID), eq(true), eq(Map.of(1L, 2)));
+        verify(reservationService, never()).releaseUser(any());
+        verify(reservationService, never()).holdForSession(any(), any(), any());
+    }
+
+    @Test
+    void unchangedCartDoesNotTouchHolds() {
+        CheckoutSession session = new CheckoutSession("s-1", USER_ID);
+        when(sessionStore.create(USER_ID)).thenReturn(session);
+        when(sessionStore.find("s-1", USER_ID)).thenReturn(session);
+        service.getCheckoutInfo(CheckoutRequest.builder().variants(CART).build(), USER_ID);
+
+        service.selectAddress(SelectAddressRequest.builder().sessionId("s-1").variants(CART).addressId(3L).build(),
+                USER_ID);
+
+        // Chỉ lần /init nhả + giữ hàng
+        verify(reservationService).releaseUser(USER_ID);
+        verify(reservationService).holdForSession(eq("s-1"), eq(USER_ID), any());
+    }
+}
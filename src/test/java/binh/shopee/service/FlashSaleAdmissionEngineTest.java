@@ -0,0 +1,142 @@
+package binh.shopee.service;
+
+import binh.shopee.dto.flashsale.FlashSalePurchaseRow;
+import binh.shopee.entity.FlashSales;
+import binh.shopee.entity.Products;
+import binh.shopee.repository.FlashSalesRepository;
+import binh.shopee.repository.OrderItemsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FlashSaleAdmissionEngineTest {
+    private static final Long SALE_ID = 7L;
+    private static final Long PRODUCT_ID = 70L;
+
+    private FlashSalesRepository flashSalesRepository;
+    private OrderItemsRepository orderItemsRepository;
+    private FlashSaleUserPurchaseService userPurchaseService;
+    private ProductEffectivePriceService effectivePriceService;
+    private FlashSaleAdmissionEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        flashSalesRepository = mock(FlashSalesRepository.class);
+        orderItemsRepository = mock(OrderItemsRepository.class);
+        userPurchaseService = mock(FlashSaleUserPurchaseService.class);
+        effectivePriceService = mock(ProductEffectivePriceService.class);
+        engine = new FlashSaleAdmissionEngine(flashSalesRepository, orderItemsRepository, userPurchaseService,
+                effectivePriceService);
+    }
+
+    // quantity = số suất còn lại (applySoldDelta / raiseSoldTo trừ quantity khi cộng sold)
+    private void givenSale(int quantity, int sold, FlashSalePurchaseRow... committed) {
+        LocalDateTime now = LocalDateTime.now();
+        FlashSales sale = FlashSales.builder()
+                .flashSaleId(SALE_ID)
+                .product(Products.builder().productId(PRODUCT_ID).build())
+                .quantity(quantity)
+                .sold(sold)
+                .startTime(now.minusHours(1))
+                .endTime(now.plusHours(1))
+                .status(FlashSales.FlashSaleStatus.active)
+                .build();
+        when(flashSalesRepository.findById(SALE_ID)).thenReturn(Optional.of(sale));
+        when(orderItemsRepository.findFlashSalePurchases(SALE_ID)).thenReturn(List.of(committed));
+    }
+
+    private static FlashSalePurchaseRow row(long userId, long quantity) {
+        return new FlashSalePurchaseRow(userId, quantity);
+    }
+
+    @Test
+    void admitTakesFromTheCounterAndRejectsOverselling() {
+        givenSale(3, 0);
+
+        engine.admit(SALE_ID, 2);
+
+        assertEquals(1, engine.getRemaining(SALE_ID));
+        assertEquals(2, engine.getPendingSold(SALE_ID));
+        assertThrows(RuntimeException.class, () -> engine.admit(SALE_ID, 2));
+        assertEquals(1, engine.getRemaining(SALE_ID));
+    }
+
+    @Test
+    void flushWritesPendingSoldOnce() {
+        givenSale(5, 0);
+        engine.admit(SALE_ID, 2);
+
+        engine.flush();
+        engine.flush();
+
+        verify(flashSalesRepository).applySoldDelta(SALE_ID, 2);
+        assertEquals(0, engine.getPendingSold(SALE_ID));
+    }
+
+    @Test
+    void restartRaisesSoldToCommittedFlashLines() {
+        // Crash trước khi flush: DB sold = 1 nhưng đơn chưa hủy đã lấy 3 suất
+        givenSale(9, 1, row(1L, 2L), row(2L, 1L));
+
+        engine.admit(SALE_ID, 1);
+
+        verify(flashSalesRepository).raiseSoldTo(SALE_ID, 3);
+        assertEquals(9 - 2 - 1, engine.getRemaining(SALE_ID));
+    }
+
+    @Test
+    void cancelReturnsUnitsAndRestartDoesNotChargeThemAgain() {
+        givenSale(8, 2);
+        engine.admit(SALE_ID, 1);
+        engine.flush();
+
+        // Hủy đơn: trả suất xuống DB ngay, bộ đếm cộng lại (không có transaction -> chạy ngay)
+        engine.returnUnits(SALE_ID, 1);
+        verify(flashSalesRepository).applySoldDelta(SALE_ID, -1);
+        assertEquals(8, engine.getRemaining(SALE_ID));
+
+        // Restart: DB đã trừ, đơn hủy không còn trong nguồn đối chiếu
+        engine.evict(SALE_ID);
+        givenSale(8, 2, row(1L, 2L));
+
+        engine.admit(SALE_ID, 1);
+
+        verify(flashSalesRepository, never()).raiseSoldTo(anyLong(), anyInt());
+        assertEquals(7, engine.getRemaining(SALE_ID));
+    }
+
+    @Test
+    void returnedUnitsRestoreFlashPriceAfterSellOut() {
+        givenSale(1, 4);
+        engine.admit(SALE_ID, 1);
+        engine.flush();
+        verify(effectivePriceService).refreshProduct(PRODUCT_ID);
+
+        engine.returnUnits(SALE_ID, 1);
+
+        assertEquals(1, engine.getRemaining(SALE_ID));
+        verify(effectivePriceService, times(2)).refreshProduct(PRODUCT_ID);
+    }
+
+    @Test
+    void returnForUnloadedSaleOnlyWritesTheDatabase() {
+        engine.returnUnits(SALE_ID, 2);
+
+        verify(flashSalesRepository).applySoldDelta(SALE_ID, -2);
+        assertNull(engine.getRemaining(SALE_ID));
+    }
+}
@@ -0,0 +1,130 @@
+package binh.shopee.service;
+
+import binh.shopee.dto.flashsale.FlashSalePurchaseRow;
+import binh.shopee.entity.FlashSaleUserPurchase;
+import binh.shopee.entity.FlashSales;
+import binh.shopee.entity.Products;
+import binh.shopee.entity.Users;
+import binh.shopee.repository.FlashSaleUserPurchaseRepository;
+import binh.shopee.repository.FlashSalesRepository;
+import binh.shopee.repository.OrderItemsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FlashSaleUserPurchaseServiceTest {
+    private static final Long SALE_ID = 7L;
+    private static final Long USER_ID = 1L;
+
+    private FlashSaleUserPurchaseRepository purchaseRepository;
+    private FlashSalesRepository flashSalesRepository;
+    private OrderItemsRepository orderItemsRepository;
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        purchaseRepository = mock(FlashSaleUserPurchaseRepository.class);
+        flashSalesRepository = mock(FlashSalesRepository.class);
+        orderItemsRepository = mock(OrderItemsRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        LocalDateTime now = LocalDateTime.now();
+        when(flashSalesRepository.findById(SALE_ID)).thenReturn(Optional.of(FlashSales.builder()
+                .flashSaleId(SALE_ID)
+                .product(Products.builder().productId(70L).build())
+                .maxPurchaseQuantity(2)
+                .startTime(now.minusHours(1))
+                .endTime(now.plusHours(1))
+                .build()));
+    }
+
+    // Mỗi lần gọi là 1 lần nạp lại (như sau restart): bộ đếm đọc từ bảng + đơn đã commit
+    private FlashSaleUserPurchaseService reload(int tableQuantity, FlashSalePurchaseRow... committed) {
+        when(purchaseRepository.findByFlashSaleId(SALE_ID)).thenReturn(tableQuantity == 0 ? List.of() : List.of(
+                FlashSaleUserPurchase.builder()
+                        .user(Users.builder().userId(USER_ID).build())
+                        .purchasedQuantity(tableQuantity)
+                        .build()));
+        when(orderItemsRepository.findFlashSalePurchases(SALE_ID)).thenReturn(List.of(committed));
+        return new FlashSaleUserPurchaseService(purchaseRepository, flashSalesRepository, orderItemsRepository,
+                transactionManager);
+    }
+
+    @Test
+    void recordPurchaseEnforcesTheLimitAtomically() {
+        FlashSaleUserPurchaseService service = reload(0);
+
+        service.recordPurchase(SALE_ID, USER_ID, 2);
+
+        assertEquals(0, service.getAvailableQuantityForUser(SALE_ID, USER_ID));
+        assertThrows(RuntimeException.class, () -> service.recordPurchase(SALE_ID, USER_ID, 1));
+        assertEquals(2, service.getAvailableQuantityForUser(SALE_ID, 2L));
+    }
+
+    @Test
+    void reloadChargesCommittedOrdersMissingFromTheTable() {
+        // Crash trước flush: bảng mới ghi 1, đơn chưa hủy có 2
+        FlashSaleUserPurchaseService service = reload(1, new FlashSalePurchaseRow(USER_ID, 2L));
+
+        assertEquals(0, service.getAvailableQuantityForUser(SALE_ID, USER_ID));
+        service.flush();
+        verify(purchaseRepository).addPurchasedQuantity(SALE_ID, USER_ID, 1);
+    }
+
+    @Test
+    void cancelThenReloadDoesNotChargeTheUserAgain() {
+        FlashSaleUserPurchaseService service = reload(0);
+        service.recordPurchase(SALE_ID, USER_ID, 2);
+        service.flush();
+
+        // Hủy đơn: bảng trừ ngay, bộ đếm trừ sau commit (không có transaction -> chạy ngay)
+        service.returnPurchase(SALE_ID, USER_ID, 2);
+        verify(purchaseRepository).addPurchasedQuantity(SALE_ID, USER_ID, -2);
+        assertEquals(2, service.getAvailableQuantityForUser(SALE_ID, USER_ID));
+
+        // Nạp lại: bảng đã về 0, đơn hủy không còn trong nguồn đối chiếu
+        FlashSaleUserPurchaseService reloaded = reload(0);
+        assertEquals(2, reloaded.getAvailableQuantityForUser(SALE_ID, USER_ID));
+        reloaded.flush();
+        // Chỉ lần flush lượt mua ban đầu, nạp lại không ghi thêm
+        verify(purchaseRepository, times(1)).addPurchasedQuantity(SALE_ID, USER_ID, 2);
+    }
+
+    @Test
+    void cancelBeforeFlushThenCrashDoesNotLoosenTheLimit() {
+        FlashSaleUserPurchaseService service = reload(0);
+        service.recordPurchase(SALE_ID, USER_ID, 1);
+        service.recordPurchase(SALE_ID, USER_ID, 1);
+        service.returnPurchase(SALE_ID, USER_ID, 1);
+
+        // Crash: lượt mua chưa flush mất, bảng còn -1; đơn chưa hủy có 1
+        FlashSaleUserPurchaseService reloaded = reload(-1, new FlashSalePurchaseRow(USER_ID, 1L));
+
+        assertEquals(1, reloaded.getAvailableQuantityForUser(SALE_ID, USER_ID));
+    }
+
+    @Test
+    void returnForUnloadedSaleOnlyWritesTheTable() {
+        FlashSaleUserPurchaseService service = reload(0);
+
+        service.returnPurchase(SALE_ID, USER_ID, 1);
+
+        verify(purchaseRepository).addPurchasedQuantity(SALE_ID, USER_ID, -1);
+        verify(orderItemsRepository, never()).findFlashSalePurchases(anyLong());
+        verify(purchaseRepository, never()).addPurchasedQuantity(anyLong(), anyLong(), eq(1));
+        verify(purchaseRepository, never()).findByFlashSaleId(anyLong());
+    }
+}
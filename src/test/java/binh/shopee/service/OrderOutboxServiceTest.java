@@ -0,0 +1,162 @@
+package binh.shopee.service;
+
+import binh.shopee.entity.OrderItems;
+import binh.shopee.entity.OrderOutboxEvents;
+import binh.shopee.entity.OrderOutboxEvents.EventStatus;
+import binh.shopee.entity.OrderOutboxEvents.EventType;
+import binh.shopee.entity.Orders;
+import binh.shopee.entity.ProductVariants;
+import binh.shopee.entity.Products;
+import binh.shopee.entity.Users;
+import binh.shopee.repository.OrderOutboxEventsRepository;
+import binh.shopee.repository.OrdersRepository;
+import binh.shopee.repository.ProductsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderOutboxServiceTest {
+    private static final Long USER_ID = 5L;
+    private static final Long PRODUCT_ID = 70L;
+    private static final LocalDateTime ORDERED_AT = LocalDateTime.of(2025, 1, 1, 10, 0);
+
+    private OrderOutboxEventsRepository outboxRepository;
+    private OrdersRepository ordersRepository;
+    private ProductsRepository productsRepository;
+    private CartsService cartsService;
+    private OrderRevenueRollupService rollupService;
+    private TopSellingLeaderboard leaderboard;
+    private TrendingProductsTracker trendingTracker;
+    private OrderOutboxService service;
+
+    @BeforeEach
+    void setUp() {
+        outboxRepository = mock(OrderOutboxEventsRepository.class);
+        ordersRepository = mock(OrdersRepository.class);
+        productsRepository = mock(ProductsRepository.class);
+        cartsService = mock(CartsService.class);
+        rollupService = mock(OrderRevenueRollupService.class);
+        leaderboard = mock(TopSellingLeaderboard.class);
+        trendingTracker = mock(TrendingProductsTracker.class);
+        service = new OrderOutboxService(outboxRepository, ordersRepository, productsRepository, cartsService,
+                rollupService, leaderboard, trendingTracker, mock(PlatformTransactionManager.class), 200, 10);
+    }
+
+    private static Orders order(Long orderId, int... quantities) {
+        Products product = Products.builder().productId(PRODUCT_ID).build();
+        Orders order = Orders.builder()
+                .orderId(orderId)
+                .user(Users.builder().userId(USER_ID).build())
+                .createdAt(ORDERED_AT)
+                .build();
+        List<OrderItems> items = new ArrayList<>();
+        for (int i = 0; i < quantities.length; i++) {
+            items.add(OrderItems.builder()
+                    .order(order)
+                    .variant(ProductVariants.builder().variantId(100L + i).products(product).build())
+                    .quantity(quantities[i])
+                    .build());
+        }
+        order.setItems(items);
+        return order;
+    }
+
+    private static OrderOutboxEvents event(Long eventId, Long orderId, EventType type) {
+        return OrderOutboxEvents.builder()
+                .eventId(eventId)
+                .orderId(orderId)
+                .eventType(type)
+                .status(EventStatus.pending)
+                .attempts(0)
+                .build();
+    }
+
+    @Test
+    void enqueueWritesOnePendingEventPerType() {
+        service.enqueueOrderCreated(order(1L, 1));
+
+        verify(outboxRepository).saveAll(ArgumentMatchers.<List<OrderOutboxEvents>>argThat(events ->
+                events.size() == EventType.values().length
+                        && events.stream().allMatch(e -> e.getOrderId() == 1L && e.getStatus() == EventStatus.pending)));
+    }
+
+    @Test
+    void drainAppliesEveryEventTypeAndDeletesTheBatch() {
+        List<OrderOutboxEvents> events = List.of(
+                event(1L, 1L, EventType.cart_cleanup),
+                event(2L, 1L, EventType.purchase_count),
+                event(3L, 1L, EventType.revenue_rollup));
+        Orders order = order(1L, 2, 3);
+        when(outboxRepository.findDueIds(anyInt(), any())).thenReturn(List.of(1L, 2L, 3L), List.of());
+        when(outboxRepository.lockPendingByIds(List.of(1L, 2L, 3L))).thenReturn(events);
+        when(ordersRepository.findAllById(List.of(1L))).thenReturn(List.of(order));
+
+        service.drain();
+
+        verify(cartsService).removeOrderedItemsFromCart(USER_ID, List.of(100L, 101L));
+        // 2 dòng cùng sản phẩm -> 1 UPDATE
+        verify(productsRepository).addPurchaseCount(eq(PRODUCT_ID), eq(5L), any());
+        verify(leaderboard).add(PRODUCT_ID, 5L);
+        verify(trendingTracker).record(PRODUCT_ID, 2, ORDERED_AT);
+        verify(trendingTracker).record(PRODUCT_ID, 3, ORDERED_AT);
+        verify(rollupService).recordOrderCreated(order);
+        verify(outboxRepository).deleteAllInBatch(events);
+    }
+
+    @Test
+    void failedBatchIsRetriedPerEventAndOnlyTheBrokenEventBacksOff() {
+        OrderOutboxEvents broken = event(1L, 1L, EventType.cart_cleanup);
+        OrderOutboxEvents healthy = event(2L, 2L, EventType.revenue_rollup);
+        Orders brokenOrder = order(1L, 1);
+        Orders healthyOrder = order(2L, 1);
+        when(outboxRepository.findDueIds(anyInt(), any())).thenReturn(List.of(1L, 2L), List.of());
+        when(outboxRepository.lockPendingByIds(List.of(1L, 2L))).thenReturn(List.of(broken, healthy));
+        when(outboxRepository.lockPendingByIds(List.of(1L))).thenReturn(List.of(broken));
+        when(outboxRepository.lockPendingByIds(List.of(2L))).thenReturn(List.of(healthy));
+        when(ordersRepository.findAllById(any())).thenReturn(List.of(brokenOrder, healthyOrder));
+        when(outboxRepository.findById(1L)).thenReturn(Optional.of(broken));
+        doThrow(new IllegalStateException("cart down")).when(cartsService).removeOrderedItemsFromCart(eq(USER_ID), any());
+
+        service.drain();
+
+        verify(outboxRepository).recordFailure(eq(1L), any(), eq("cart down"), eq(10));
+        verify(outboxRepository, never()).recordFailure(eq(2L), any(), anyString(), anyInt());
+        verify(outboxRepository).deleteAllInBatch(List.of(healthy));
+        verify(outboxRepository, never()).deleteAllInBatch(List.of(broken));
+        // Lô dừng ở event lỗi -> event lành chỉ được áp dụng ở lần chạy đơn lẻ
+        verify(rollupService, times(1)).recordOrderCreated(healthyOrder);
+    }
+
+    @Test
+    void eventForDeletedOrderIsDroppedWithoutSideEffects() {
+        OrderOutboxEvents orphan = event(1L, 99L, EventType.purchase_count);
+        when(outboxRepository.findDueIds(anyInt(), any())).thenReturn(List.of(1L), List.of());
+        when(outboxRepository.lockPendingByIds(List.of(1L))).thenReturn(List.of(orphan));
+        when(ordersRepository.findAllById(List.of(99L))).thenReturn(List.of());
+
+        service.drain();
+
+        verify(productsRepository, never()).addPurchaseCount(anyLong(), anyLong(), any());
+        verify(outboxRepository).deleteAllInBatch(List.of(orphan));
+        assertEquals(0, orphan.getAttempts());
+    }
+}
@@ -0,0 +1,128 @@
+package binh.shopee.service;
+
+import binh.shopee.entity.OrderOutboxEvents.EventType;
+import binh.shopee.entity.OrderRevenueRollup.Granularity;
+import binh.shopee.entity.Orders;
+import binh.shopee.entity.Orders.OrderStatus;
+import binh.shopee.repository.OrderOutboxEventsRepository;
+import binh.shopee.repository.OrderRevenueRollupRepository;
+import binh.shopee.repository.OrdersRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class OrderRevenueRollupServiceTest {
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2025, 3, 15, 10, 42, 7);
+    private static final LocalDateTime HOUR = LocalDateTime.of(2025, 3, 15, 10, 0);
+    private static final LocalDateTime DAY = LocalDateTime.of(2025, 3, 15, 0, 0);
+    private static final LocalDateTime MONTH = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    private OrderRevenueRollupRepository rollupRepository;
+    private OrdersRepository ordersRepository;
+    private OrderOutboxEventsRepository outboxRepository;
+    private OrderRevenueRollupService service;
+
+    @BeforeEach
+    void setUp() {
+        rollupRepository = mock(OrderRevenueRollupRepository.class);
+        ordersRepository = mock(OrdersRepository.class);
+        outboxRepository = mock(OrderOutboxEventsRepository.class);
+        service = new OrderRevenueRollupService(rollupRepository, ordersRepository, outboxRepository);
+    }
+
+    private static Orders order(OrderStatus status) {
+        return Orders.builder()
+                .orderId(1L)
+                .status(status)
+                .subtotal(new BigDecimal("200"))
+                .discountTotal(new BigDecimal("30"))
+                .shippingFee(new BigDecimal("15"))
+                .createdAt(CREATED_AT)
+                .build();
+    }
+
+    private void verifyBuckets(String status, long count, String revenue) {
+        BigDecimal amount = new BigDecimal(revenue);
+        verify(rollupRepository).addToBucket("hour", HOUR, status, count, amount);
+        verify(rollupRepository).addToBucket("day", DAY, status, count, amount);
+        verify(rollupRepository).addToBucket("month", MONTH, status, count, amount);
+    }
+
+    @Test
+    void bucketStartTruncatesToEachGranularity() {
+        assertEquals(HOUR, OrderRevenueRollupService.bucketStart(Granularity.hour, CREATED_AT));
+        assertEquals(DAY, OrderRevenueRollupService.bucketStart(Granularity.day, CREATED_AT));
+        assertEquals(MONTH, OrderRevenueRollupService.bucketStart(Granularity.month, CREATED_AT));
+    }
+
+    @Test
+    void createdOrderIsCountedAsPendingWithGrandTotal() {
+        // Outbox chạy sau: đơn có thể đã đổi status, phần đó do recordStatusChange tính
+        service.recordOrderCreated(order(OrderStatus.processing));
+
+        verifyBuckets("pending", 1, "185");
+    }
+
+    @Test
+    void statusChangeMovesTheOrderBetweenBuckets() {
+        service.recordStatusChange(order(OrderStatus.canceled), OrderStatus.pending);
+
+        verifyBuckets("pending", -1, "-185");
+        verifyBuckets("canceled", 1, "185");
+    }
+
+    @Test
+    void unchangedStatusWritesNothing() {
+        service.recordStatusChange(order(OrderStatus.pending), OrderStatus.pending);
+
+        verify(rollupRepository, never()).addToBucket(anyString(), any(), anyString(), anyLong(), any());
+        verifyNoInteractions(ordersRepository, outboxRepository);
+    }
+
+    @Test
+    void rebuildBackfillsAndDropsEventsOnlyUpToTheCutoff() {
+        when(ordersRepository.findMaxOrderId()).thenReturn(42L);
+
+        service.rebuildAll();
+
+        // Xóa bucket trước khi chốt mốc, rồi event và backfill dùng cùng mốc
+        InOrder order = inOrder(rollupRepository, ordersRepository, outboxRepository);
+        order.verify(rollupRepository).deleteAllBuckets();
+        order.verify(ordersRepository).findMaxOrderId();
+        order.verify(outboxRepository).deleteByEventTypeUpTo(EventType.revenue_rollup, 42L);
+        order.verify(rollupRepository).backfillHourly(42L);
+        order.verify(rollupRepository).backfillDaily(42L);
+        order.verify(rollupRepository).backfillMonthly(42L);
+    }
+
+    @Test
+    void backfillRunsOnlyWhenRollupsAreEmptyAndOrdersExist() {
+        when(rollupRepository.count()).thenReturn(3L);
+        when(ordersRepository.count()).thenReturn(10L);
+
+        service.backfillIfEmpty();
+
+        verify(rollupRepository, never()).deleteAllBuckets();
+
+        when(rollupRepository.count()).thenReturn(0L);
+        when(ordersRepository.findMaxOrderId()).thenReturn(10L);
+
+        service.backfillIfEmpty();
+
+        verify(rollupRepository).backfillHourly(10L);
+    }
+}
@@ -0,0 +1,117 @@
+package binh.shopee.service;
+
+import binh.shopee.dto.product.ProductDetailResponse;
+import binh.shopee.entity.Inventory;
+import binh.shopee.entity.ProductVariants;
+import binh.shopee.repository.FlashSalesRepository;
+import binh.shopee.repository.InventoryRepository;
+import binh.shopee.repository.ProductImagesRepository;
+import binh.shopee.repository.ProductVariantsRepository;
+import binh.shopee.repository.ProductsRepository;
+import binh.shopee.repository.ReviewsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductDetailAssemblerTest {
+    private static final Long PRODUCT_ID = 5L;
+    private static final Long VARIANT_ID = 51L;
+
+    private ProductsRepository productsRepository;
+    private ProductVariantsRepository productVariantsRepository;
+    private InventoryRepository inventoryRepository;
+    private ProductDetailAssembler assembler;
+
+    @BeforeEach
+    void setUp() {
+        productsRepository = mock(ProductsRepository.class);
+        productVariantsRepository = mock(ProductVariantsRepository.class);
+        inventoryRepository = mock(InventoryRepository.class);
+        ProductImagesRepository productImagesRepository = mock(ProductImagesRepository.class);
+        ReviewsRepository reviewsRepository = mock(ReviewsRepository.class);
+        when(productsRepository.findProductDetailById(PRODUCT_ID)).thenAnswer(inv -> Optional.of(core()));
+        when(productsRepository.findById(PRODUCT_ID)).thenReturn(Optional.empty());
+        when(reviewsRepository.findReviewInfos(any(), anyString())).thenReturn(List.of());
+        when(productImagesRepository.findByProducts_ProductId(PRODUCT_ID)).thenReturn(List.of());
+        ProductVariants variant = ProductVariants.builder().variantId(VARIANT_ID).build();
+        when(productVariantsRepository.findByProducts_ProductId(PRODUCT_ID)).thenReturn(List.of(variant));
+        when(inventoryRepository.findByVariantVariantIdIn(any())).thenReturn(List.of(Inventory.builder()
+                .variant(variant).stockQty(10).reservedQty(2).build()));
+        assembler = new ProductDetailAssembler(productsRepository, productImagesRepository,
+                productVariantsRepository, inventoryRepository, reviewsRepository,
+                mock(FlashSalesRepository.class), mock(TopSellingLeaderboard.class),
+                mock(TrendingProductsTracker.class), 100, 10, 30, 100, 1.0, 60);
+    }
+
+    private static ProductDetailResponse core() {
+        return ProductDetailResponse.builder()
+                .productId(PRODUCT_ID)
+                .name("Áo")
+                .price(new BigDecimal("100"))
+                .build();
+    }
+
+    @Test
+    void callerMutationDoesNotLeakIntoCache() {
+        ProductDetailResponse first = assembler.assemble(PRODUCT_ID);
+        // Caller sửa phần tử con của kết quả
+        first.getVariants().get(0).setQuantity(999);
+
+        ProductDetailResponse second = assembler.assemble(PRODUCT_ID);
+
+        assertEquals(8, second.getVariants().get(0).getQuantity());
+        verify(productVariantsRepository, times(1)).findByProducts_ProductId(PRODUCT_ID);
+    }
+
+    @Test
+    void stockChangeReloadsOnlyVariants() {
+        assembler.assemble(PRODUCT_ID);
+
+        assembler.invalidateStock(VARIANT_ID);
+        assembler.assemble(PRODUCT_ID);
+
+        verify(productVariantsRepository, times(2)).findByProducts_ProductId(PRODUCT_ID);
+        verify(productsRepository, times(1)).findProductDetailById(PRODUCT_ID);
+    }
+
+    @Test
+    void productInvalidateThenStockChangeStillWorks() {
+        assembler.assemble(PRODUCT_ID);
+        assembler.invalidate(PRODUCT_ID);
+        assembler.assemble(PRODUCT_ID);
+
+        // Map variant -> product được ghi lại khi load lại mảnh biến thể
+        assembler.invalidateStock(VARIANT_ID);
+        assembler.assemble(PRODUCT_ID);
+
+        verify(productVariantsRepository, times(3)).findByProducts_ProductId(PRODUCT_ID);
+    }
+
+    @Test
+    void invalidateDuringLoadKeepsResultOutOfCache() {
+        // Giá đổi đúng lúc đang load mảnh core: kết quả load đó không được ghi cache
+        when(productsRepository.findProductDetailById(PRODUCT_ID))
+                .thenAnswer(inv -> {
+                    assembler.invalidateCore(PRODUCT_ID);
+                    return Optional.of(core());
+                })
+                .thenAnswer(inv -> Optional.of(core()));
+
+        assembler.assemble(PRODUCT_ID);
+        assembler.assemble(PRODUCT_ID);
+        assembler.assemble(PRODUCT_ID);
+
+        verify(productsRepository, times(2)).findProductDetailById(PRODUCT_ID);
+    }
+}
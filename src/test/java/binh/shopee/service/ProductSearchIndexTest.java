@@ -0,0 +1,106 @@
+package binh.shopee.service;
+
+import binh.shopee.dto.product.ProductSearchResponse;
+import binh.shopee.repository.ProductEffectivePriceRepository;
+import binh.shopee.repository.ProductsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductSearchIndexTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private ProductsRepository productsRepository;
+    private SearchResultCache searchResultCache;
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        productsRepository = mock(ProductsRepository.class);
+        ProductEffectivePriceRepository effectivePriceRepository = mock(ProductEffectivePriceRepository.class);
+        searchResultCache = mock(SearchResultCache.class);
+        when(productsRepository.findLatestUpdatedAt()).thenReturn(T0);
+        when(productsRepository.findSearchIndexRows(isNull())).thenReturn(List.of(
+                row(1L, "Điện thoại A", "100", 5L),
+                row(2L, "Điện thoại B", "100", 3L)));
+        index = new ProductSearchIndex(productsRepository, effectivePriceRepository, searchResultCache, 30);
+        index.rebuild();
+        clearInvocations(searchResultCache);
+    }
+
+    private static ProductSearchResponse row(Long productId, String name, String price, Long sold) {
+        return ProductSearchResponse.builder()
+                .productId(productId)
+                .name(name)
+                .originalPrice(new BigDecimal(price))
+                .discountAmount(BigDecimal.ZERO)
+                .finalPrice(new BigDecimal(price))
+                .totalPurchaseCount(sold)
+                .build();
+    }
+
+    // Đơn mới / sửa sản phẩm: updatedAt vượt watermark, refresh đọc lại các dòng đổi
+    private void changed(ProductSearchResponse... rows) {
+        when(productsRepository.findLatestUpdatedAt()).thenReturn(T0.plusMinutes(1));
+        when(productsRepository.findSearchIndexRows(any())).thenReturn(List.of(rows));
+        index.refreshChanged();
+    }
+
+    private List<Long> searchIds(String keyword) {
+        return index.search(keyword).stream().map(ProductSearchResponse::getProductId).toList();
+    }
+
+    @Test
+    void purchaseCountChangeReranksWithoutClearingTheResultCache() {
+        assertEquals(List.of(1L, 2L), searchIds("dien thoai"));
+
+        changed(row(2L, "Điện thoại B", "100", 9L));
+
+        verify(searchResultCache, never()).invalidateAll();
+        assertEquals(List.of(2L, 1L), searchIds("dien thoai"));
+    }
+
+    @Test
+    void priceChangeClearsTheResultCache() {
+        changed(row(2L, "Điện thoại B", "90", 3L));
+
+        verify(searchResultCache).invalidateAll();
+        assertEquals(new BigDecimal("90"), index.get(2L).getFinalPrice());
+    }
+
+    @Test
+    void renameClearsTheResultCacheAndReindexesTerms() {
+        changed(row(2L, "Tai nghe B", "100", 3L));
+
+        verify(searchResultCache).invalidateAll();
+        assertEquals(List.of(1L), searchIds("dien thoai"));
+        assertEquals(List.of(2L), searchIds("tai nghe"));
+    }
+
+    @Test
+    void newProductClearsTheResultCache() {
+        changed(row(3L, "Điện thoại C", "50", 0L));
+
+        verify(searchResultCache).invalidateAll();
+        assertEquals(List.of(1L, 2L, 3L), searchIds("dien thoai"));
+    }
+
+    @Test
+    void rereadingAnUnchangedRowInTheSkewWindowIsANoOp() {
+        changed(row(1L, "Điện thoại A", "100", 5L));
+
+        verify(searchResultCache, never()).invalidateAll();
+    }
+}
@@ -0,0 +1,93 @@
+package binh.shopee.service;
+
+import binh.shopee.entity.Discounts;
+import binh.shopee.entity.Discounts.DiscountType;
+import binh.shopee.entity.FlashSales;
+import binh.shopee.entity.Products;
+import binh.shopee.repository.DiscountsRepository;
+import binh.shopee.repository.FlashSalesRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PromotionIndexTest {
+    private static final Long PRODUCT_ID = 70L;
+    private static final LocalDateTime NOW = LocalDateTime.now();
+
+    private final Products product = Products.builder().productId(PRODUCT_ID).price(new BigDecimal("100")).build();
+
+    private FlashSalesRepository flashSalesRepository;
+    private FlashSaleAdmissionEngine engine;
+    private PromotionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        flashSalesRepository = mock(FlashSalesRepository.class);
+        DiscountsRepository discountsRepository = mock(DiscountsRepository.class);
+        engine = mock(FlashSaleAdmissionEngine.class);
+        // Mặc định chưa có bộ đếm (Mockito trả 0 cho Integer)
+        when(engine.getRemaining(anyLong())).thenReturn(null);
+        when(discountsRepository.findCurrentAndUpcoming(any(), any())).thenReturn(List.of(Discounts.builder()
+                .discountId(1L)
+                .product(product)
+                .discountType(DiscountType.fixed)
+                .discountValue(new BigDecimal("5"))
+                .startTime(NOW.minusDays(1))
+                .endTime(NOW.plusDays(1))
+                .build()));
+        index = new PromotionIndex(discountsRepository, flashSalesRepository, engine);
+    }
+
+    // quantity = số suất còn lại (sold đã bán không trừ thêm)
+    private FlashSales givenFlashSale(int quantity, int sold) {
+        FlashSales flashSale = FlashSales.builder()
+                .flashSaleId(7L)
+                .product(product)
+                .discountType(DiscountType.percentage)
+                .discountValue(new BigDecimal("50"))
+                .quantity(quantity)
+                .sold(sold)
+                .startTime(NOW.minusHours(1))
+                .endTime(NOW.plusHours(1))
+                .build();
+        when(flashSalesRepository.findCurrentAndUpcoming(any(), any())).thenReturn(List.of(flashSale));
+        index.reload();
+        return flashSale;
+    }
+
+    @Test
+    void flashSaleWithoutCounterStaysActivePastHalfSellThrough() {
+        FlashSales flashSale = givenFlashSale(3, 7);
+
+        assertEquals(flashSale, index.findActiveFlashSale(PRODUCT_ID, NOW));
+        assertNull(index.findActivePromotion(PRODUCT_ID, NOW).discount());
+    }
+
+    @Test
+    void soldOutFlashSaleFallsBackToDiscount() {
+        givenFlashSale(0, 10);
+
+        PromotionIndex.ActivePromotion promotion = index.findActivePromotion(PRODUCT_ID, NOW);
+
+        assertNull(promotion.flashSale());
+        assertEquals(1L, promotion.discount().getDiscountId());
+    }
+
+    @Test
+    void engineCounterWinsOverTheLoadedSnapshot() {
+        givenFlashSale(3, 7);
+        when(engine.getRemaining(7L)).thenReturn(0);
+
+        assertNull(index.findActiveFlashSale(PRODUCT_ID, NOW));
+    }
+}
@@ -0,0 +1,59 @@
+package binh.shopee.service;
+
+import binh.shopee.util.FacetBitmap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RangeFacetTest {
+    private static final double[] BOUNDS = {0, 100, 200, 500};
+    // docId = vị trí trong mảng
+    private static final double[] VALUES = {0, 50, 99.5, 100, 150, 200, 499, 500, 1_000};
+
+    private final ProductFacetIndex.RangeFacet facet = new ProductFacetIndex.RangeFacet(BOUNDS, VALUES, VALUES.length);
+
+    private static List<Integer> docs(long[] mask) {
+        List<Integer> docs = new ArrayList<>();
+        for (int doc = FacetBitmap.nextSetBit(mask, 0); doc >= 0; doc = FacetBitmap.nextSetBit(mask, doc + 1)) {
+            docs.add(doc);
+        }
+        return docs;
+    }
+
+    @Test
+    void rangeIsInclusiveOnBothEnds() {
+        assertEquals(List.of(3, 4, 5), docs(facet.range(100.0, 200.0)));
+        assertEquals(List.of(2, 3, 4), docs(facet.range(99.5, 150.0)));
+    }
+
+    @Test
+    void openEndedRanges() {
+        assertEquals(List.of(0, 1, 2, 3), docs(facet.range(null, 100.0)));
+        assertEquals(List.of(7, 8), docs(facet.range(500.0, null)));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8), docs(facet.range(null, null)));
+    }
+
+    @Test
+    void rangeInsideOneBucketFiltersExactValues() {
+        assertEquals(List.of(1), docs(facet.range(10.0, 60.0)));
+        assertEquals(List.of(), docs(facet.range(101.0, 149.0)));
+    }
+
+    @Test
+    void countsPerBucketRespectTheBaseMask() {
+        Map<String, Long> all = new LinkedHashMap<>();
+        all.put("0-100", 3L);
+        all.put("100-200", 2L);
+        all.put("200-500", 2L);
+        all.put("500+", 2L);
+        assertEquals(all, facet.count(FacetBitmap.full(VALUES.length)));
+
+        long[] base = facet.range(150.0, 500.0);
+        assertEquals(Map.of("0-100", 0L, "100-200", 1L, "200-500", 2L, "500+", 1L), facet.count(base));
+    }
+}
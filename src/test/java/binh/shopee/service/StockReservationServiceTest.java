@@ -0,0 +1,146 @@
+package binh.shopee.service;
+
+import binh.shopee.dto.order.CheckoutItemResponse;
+import binh.shopee.entity.ProductVariants;
+import binh.shopee.entity.StockReservations;
+import binh.shopee.entity.StockReservations.ReservationStatus;
+import binh.shopee.repository.InventoryRepository;
+import binh.shopee.repository.ProductVariantsRepository;
+import binh.shopee.repository.StockReservationsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StockReservationServiceTest {
+    private static final String SESSION = "s-1";
+    private static final Long USER_ID = 5L;
+    private static final Long ORDER_ID = 900L;
+
+    private StockReservationsRepository reservationsRepository;
+    private InventoryRepository inventoryRepository;
+    private InventoryService inventoryService;
+    private StockReservationService service;
+
+    @BeforeEach
+    void setUp() {
+        reservationsRepository = mock(StockReservationsRepository.class);
+        inventoryRepository = mock(InventoryRepository.class);
+        inventoryService = mock(InventoryService.class);
+        ProductVariantsRepository variantRepo = mock(ProductVariantsRepository.class);
+        when(variantRepo.getReferenceById(anyLong())).thenAnswer(invocation ->
+                ProductVariants.builder().variantId(invocation.getArgument(0)).build());
+        // Chuyển trạng thái có điều kiện: mặc định thành công
+        when(reservationsRepository.transition(anyLong(), any(), any(), any())).thenReturn(1);
+        service = new StockReservationService(reservationsRepository, inventoryRepository, variantRepo,
+                inventoryService, mock(PlatformTransactionManager.class), 15);
+    }
+
+    private static CheckoutItemResponse item(Long variantId, int quantity) {
+        return CheckoutItemResponse.builder().variantId(variantId).quantity(quantity).build();
+    }
+
+    private static StockReservations held(Long reservationId, Long variantId, int quantity) {
+        return StockReservations.builder()
+                .reservationId(reservationId)
+                .checkoutSessionId(SESSION)
+                .userId(USER_ID)
+                .variant(ProductVariants.builder().variantId(variantId).build())
+                .quantity(quantity)
+                .status(ReservationStatus.held)
+                .build();
+    }
+
+    @Test
+    void holdReservesEachLineAndReportsLinesThatSoldOut() {
+        when(inventoryRepository.reserveStock(1L, 2)).thenReturn(1);
+        when(inventoryRepository.reserveStock(2L, 1)).thenReturn(0);
+
+        List<Long> failed = service.holdForSession(SESSION, USER_ID, List.of(item(1L, 2), item(2L, 1)));
+
+        assertEquals(List.of(2L), failed);
+        verify(reservationsRepository, times(1)).save(any(StockReservations.class));
+        verify(inventoryService).stockChanged(1L);
+        verify(inventoryService, never()).stockChanged(2L);
+    }
+
+    @Test
+    void releaseUserReturnsEveryLiveHoldOnce() {
+        when(reservationsRepository.findHeldByUser(USER_ID)).thenReturn(List.of(held(10L, 1L, 2), held(11L, 2L, 1)));
+        // Hold 11 vừa bị sweep / đơn khác chuyển trạng thái -> không trả reservedQty lần nữa
+        when(reservationsRepository.transition(11L, ReservationStatus.held, ReservationStatus.released, null))
+                .thenReturn(0);
+
+        service.releaseUser(USER_ID);
+
+        verify(inventoryRepository).releaseReserved(1L, 2);
+        verify(inventoryRepository, never()).releaseReserved(eq(2L), anyInt());
+    }
+
+    @Test
+    void heldQuantitiesAreSummedPerVariant() {
+        when(reservationsRepository.findHeldByUser(USER_ID)).thenReturn(List.of(held(10L, 1L, 2), held(11L, 1L, 3)));
+
+        assertEquals(Map.of(1L, 5), service.getHeldQuantitiesByUser(USER_ID));
+        assertEquals(Map.of(), service.getHeldQuantities(null));
+    }
+
+    @Test
+    void commitConsumesMatchingHoldsAndTakesOtherLinesFromAvailableStock() {
+        when(reservationsRepository.findHeldBySession(SESSION)).thenReturn(List.of(
+                held(10L, 1L, 2),    // khớp -> commit
+                held(11L, 2L, 5),    // khác số lượng -> nhả, trừ thẳng
+                held(12L, 3L, 1)));  // không có trong đơn -> nhả
+        when(inventoryRepository.commitReserved(1L, 2)).thenReturn(1);
+        when(inventoryRepository.reduceAvailable(anyLong(), anyInt())).thenReturn(1);
+
+        service.commitForOrder(SESSION, ORDER_ID, List.of(item(1L, 2), item(2L, 1), item(4L, 1)));
+
+        verify(reservationsRepository).transition(10L, ReservationStatus.held, ReservationStatus.committed, ORDER_ID);
+        verify(inventoryRepository).commitReserved(1L, 2);
+        verify(inventoryRepository).releaseReserved(2L, 5);
+        verify(inventoryRepository).reduceAvailable(2L, 1);
+        verify(inventoryRepository).reduceAvailable(4L, 1);
+        verify(inventoryRepository).releaseReserved(3L, 1);
+        verify(inventoryRepository, never()).reduceAvailable(eq(1L), anyInt());
+    }
+
+    @Test
+    void commitFallsBackToAvailableStockWhenTheHoldWasSweptMeanwhile() {
+        when(reservationsRepository.findHeldBySession(SESSION)).thenReturn(List.of(held(10L, 1L, 2)));
+        when(reservationsRepository.transition(10L, ReservationStatus.held, ReservationStatus.committed, ORDER_ID))
+                .thenReturn(0);
+        when(reservationsRepository.transition(10L, ReservationStatus.held, ReservationStatus.released, null))
+                .thenReturn(0);
+        when(inventoryRepository.reduceAvailable(1L, 2)).thenReturn(1);
+
+        service.commitForOrder(SESSION, ORDER_ID, List.of(item(1L, 2)));
+
+        verify(inventoryRepository, never()).commitReserved(anyLong(), anyInt());
+        verify(inventoryRepository, never()).releaseReserved(anyLong(), anyInt());
+        verify(inventoryRepository).reduceAvailable(1L, 2);
+    }
+
+    @Test
+    void commitFailsWhenStockRanOut() {
+        when(inventoryRepository.reduceAvailable(1L, 2)).thenReturn(0);
+
+        assertThrows(RuntimeException.class,
+                () -> service.commitForOrder(null, ORDER_ID, List.of(item(1L, 2))));
+        verify(reservationsRepository, never()).findHeldBySession(any());
+    }
+}
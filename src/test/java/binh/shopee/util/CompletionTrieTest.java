@@ -0,0 +1,62 @@
+package binh.shopee.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompletionTrieTest {
+
+    private static CompletionTrie.Entry<String> entry(String key, long weight) {
+        return new CompletionTrie.Entry<>(key, weight, key);
+    }
+
+    private final CompletionTrie<String> trie = CompletionTrie.build(List.of(
+            entry("ao", 1),
+            entry("ao khoac", 50),
+            entry("ao khoac da", 30),
+            entry("ao thun", 80),
+            entry("ao so mi", 50),
+            entry("quan jean", 70),
+            entry("", 1_000)), 3);
+
+    @Test
+    void prefixEndingInsideAnEdgeLabel() {
+        // "ao kh" dừng giữa cạnh "khoac"
+        assertEquals(List.of("ao khoac", "ao khoac da"), trie.complete("ao kh", 3));
+        assertEquals(List.of("quan jean"), trie.complete("qu", 3));
+    }
+
+    @Test
+    void prefixDivergingInsideAnEdgeLabelMatchesNothing() {
+        assertTrue(trie.complete("ao kx", 3).isEmpty());
+        assertTrue(trie.complete("quan x", 3).isEmpty());
+        assertTrue(trie.complete("z", 3).isEmpty());
+    }
+
+    @Test
+    void heaviestFirstWithKeyAsTieBreakAndTopKCap() {
+        // ao khoac và ao so mi cùng 50 -> key nhỏ trước; k = 3 nên "ao khoac da", "ao" bị cắt
+        assertEquals(List.of("ao thun", "ao khoac", "ao so mi"), trie.complete("ao", 10));
+        assertEquals(List.of("ao thun", "quan jean", "ao khoac"), trie.complete("", 10));
+        assertEquals(List.of("ao thun"), trie.complete("a", 1));
+    }
+
+    @Test
+    void exactKeyThatIsAlsoAPrefixOfOthers() {
+        assertEquals(List.of("ao khoac", "ao khoac da"), trie.complete("ao khoac", 3));
+        assertEquals(List.of("ao khoac da"), trie.complete("ao khoac ", 3));
+        assertEquals(List.of("ao khoac da"), trie.complete("ao khoac da", 3));
+    }
+
+    @Test
+    void emptyKeysAreDroppedAndEmptyTrieAnswersNothing() {
+        assertEquals(6, trie.size());
+        CompletionTrie<String> empty = CompletionTrie.build(List.of(), 3);
+        assertEquals(0, empty.size());
+        assertTrue(empty.complete("", 3).isEmpty());
+        assertTrue(empty.complete("ao", 3).isEmpty());
+    }
+}
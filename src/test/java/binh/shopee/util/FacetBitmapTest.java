@@ -0,0 +1,95 @@
+package binh.shopee.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FacetBitmapTest {
+    // Không chia hết cho 64 để đụng cả word cuối dở dang
+    private static final int UNIVERSE = 200;
+
+    private static BitSet randomBits(long seed, int cardinality) {
+        Random random = new Random(seed);
+        BitSet bits = new BitSet(UNIVERSE);
+        while (bits.cardinality() < cardinality) {
+            bits.set(random.nextInt(UNIVERSE));
+        }
+        return bits;
+    }
+
+    private static List<Integer> docs(FacetBitmap bitmap) {
+        List<Integer> docs = new ArrayList<>();
+        bitmap.forEach(docs::add);
+        return docs;
+    }
+
+    @Test
+    void sparseAndDenseFormsBehaveLikeTheSourceBitSet() {
+        // wordCount(200) = 4 -> dưới 8 phần tử lưu dạng thưa, từ 8 trở lên dạng dày
+        BitSet maskBits = randomBits(42, 90);
+        long[] mask = maskBits.toLongArray();
+        mask = Arrays.copyOf(mask, FacetBitmap.wordCount(UNIVERSE));
+        for (int cardinality : new int[] {0, 1, 7, 8, 9, 100, UNIVERSE}) {
+            BitSet bits = randomBits(cardinality, cardinality);
+            FacetBitmap bitmap = FacetBitmap.of(bits, UNIVERSE);
+
+            assertEquals(cardinality, bitmap.cardinality());
+            assertEquals(bits.stream().boxed().toList(), docs(bitmap));
+
+            long[] target = new long[FacetBitmap.wordCount(UNIVERSE)];
+            bitmap.orInto(target);
+            assertArrayEquals(Arrays.copyOf(bits.toLongArray(), target.length), target);
+
+            BitSet expectedAnd = (BitSet) bits.clone();
+            expectedAnd.and(maskBits);
+            assertEquals(expectedAnd.cardinality(), bitmap.andCount(mask), "cardinality " + cardinality);
+        }
+    }
+
+    @Test
+    void fullMaskStopsAtUniverse() {
+        long[] mask = FacetBitmap.full(UNIVERSE);
+
+        assertEquals(UNIVERSE, FacetBitmap.cardinality(mask));
+        assertTrue(FacetBitmap.get(mask, UNIVERSE - 1));
+        assertEquals(-1, FacetBitmap.nextSetBit(mask, UNIVERSE));
+        assertEquals(128, FacetBitmap.cardinality(FacetBitmap.full(128)));
+    }
+
+    @Test
+    void nextSetBitCrossesWordBoundaries() {
+        long[] mask = new long[FacetBitmap.wordCount(UNIVERSE)];
+        mask[0] |= 1L << 63;
+        mask[2] |= 1L << 1;
+
+        assertEquals(63, FacetBitmap.nextSetBit(mask, 0));
+        assertEquals(63, FacetBitmap.nextSetBit(mask, 63));
+        assertEquals(129, FacetBitmap.nextSetBit(mask, 64));
+        assertEquals(-1, FacetBitmap.nextSetBit(mask, 130));
+        assertEquals(-1, FacetBitmap.nextSetBit(mask, 10_000));
+    }
+
+    @Test
+    void andAndClearWorkOnMasks() {
+        long[] target = FacetBitmap.full(UNIVERSE);
+        long[] other = new long[FacetBitmap.wordCount(UNIVERSE)];
+        other[1] = 0b1011L;
+
+        FacetBitmap.and(target, other);
+        FacetBitmap.clear(target, 64);
+
+        assertFalse(FacetBitmap.get(target, 64));
+        assertTrue(FacetBitmap.get(target, 65));
+        assertTrue(FacetBitmap.get(target, 67));
+        assertEquals(2, FacetBitmap.cardinality(target));
+    }
+}
@@ -0,0 +1,67 @@
+package binh.shopee.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntervalIndexTest {
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private record Window(String name, LocalDateTime start, LocalDateTime end) {
+    }
+
+    private static Window window(String name, int startHour, int endHour) {
+        return new Window(name, T0.plusHours(startHour), T0.plusHours(endHour));
+    }
+
+    private static IntervalIndex<Window> index(Window... windows) {
+        return new IntervalIndex<>(List.of(windows), Window::start, Window::end);
+    }
+
+    private static List<String> names(List<Window> windows) {
+        return windows.stream().map(Window::name).sorted().toList();
+    }
+
+    @Test
+    void stabIncludesBothEndpoints() {
+        IntervalIndex<Window> index = index(window("a", 1, 3));
+
+        assertEquals(List.of("a"), names(index.stab(T0.plusHours(1))));
+        assertEquals(List.of("a"), names(index.stab(T0.plusHours(3))));
+        assertTrue(index.stab(T0.plusHours(1).minusNanos(1)).isEmpty());
+        assertTrue(index.stab(T0.plusHours(3).plusNanos(1)).isEmpty());
+    }
+
+    @Test
+    void longEarlyIntervalIsFoundBehindShortLaterOnes() {
+        // "long" bắt đầu sớm nhất nhưng kết thúc muộn nhất: chỉ tìm thấy nhờ maxEnd cộng dồn
+        IntervalIndex<Window> index = index(
+                window("long", 0, 10),
+                window("short1", 1, 2),
+                window("short2", 3, 4),
+                window("late", 6, 8));
+
+        assertEquals(List.of("long", "short2"), names(index.stab(T0.plusHours(4))));
+        assertEquals(List.of("long"), names(index.stab(T0.plusHours(5))));
+        assertEquals(List.of("late", "long"), names(index.stab(T0.plusHours(6))));
+        assertEquals(List.of("long"), names(index.stab(T0.plusHours(10))));
+    }
+
+    @Test
+    void touchingIntervalsBothMatchAtSharedBoundary() {
+        IntervalIndex<Window> index = index(window("first", 1, 2), window("second", 2, 3));
+
+        assertEquals(List.of("first", "second"), names(index.stab(T0.plusHours(2))));
+    }
+
+    @Test
+    void stabBeforeEverythingOrOnEmptyIndexIsEmpty() {
+        assertTrue(index(window("a", 1, 2)).stab(T0).isEmpty());
+        assertTrue(index().isEmpty());
+        assertTrue(index().stab(T0).isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+package binh.shopee.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NgramDictionaryTest {
+
+    @Test
+    void distanceCountsSingleEdits() {
+        assertEquals(0, NgramDictionary.distance("samsung", "samsung", 2));
+        assertEquals(1, NgramDictionary.distance("samsung", "samsong", 2));   // thay
+        assertEquals(1, NgramDictionary.distance("samsung", "samsungg", 2));  // thêm
+        assertEquals(1, NgramDictionary.distance("samsung", "samsng", 2));    // bớt
+    }
+
+    @Test
+    void adjacentTranspositionIsOneEdit() {
+        assertEquals(1, NgramDictionary.distance("samsnug", "samsung", 2));
+        assertEquals(1, NgramDictionary.distance("ab", "ba", 2));
+        // Levenshtein thường tính 2
+        assertEquals(2, NgramDictionary.distance("abcd", "badc", 2));
+    }
+
+    @Test
+    void distanceStopsAboveMax() {
+        assertEquals(2, NgramDictionary.distance("kitten", "sitting", 1));
+        assertEquals(3, NgramDictionary.distance("abc", "abcdef", 2));
+        assertEquals(2, NgramDictionary.distance("", "ab", 2));
+    }
+
+    @Test
+    void closestFindsTyposOrderedByDistanceThenTerm() {
+        NgramDictionary dictionary = new NgramDictionary();
+        for (String term : List.of("samsung", "samsun", "iphone", "xiaomi", "samsungs")) {
+            dictionary.add(term);
+        }
+
+        List<NgramDictionary.Match> matches = dictionary.closest("samsnug", 2);
+
+        assertEquals(List.of(
+                new NgramDictionary.Match("samsung", 1),
+                new NgramDictionary.Match("samsun", 2),
+                new NgramDictionary.Match("samsungs", 2)), matches);
+        assertEquals(List.of(new NgramDictionary.Match("iphone", 1)), dictionary.closest("ipohne", 1));
+    }
+
+    @Test
+    void closestExcludesTheQueryItselfAndNeedsPositiveDistance() {
+        NgramDictionary dictionary = new NgramDictionary();
+        dictionary.add("iphone");
+
+        assertTrue(dictionary.closest("iphone", 2).isEmpty());
+        assertTrue(dictionary.closest("iphon", 0).isEmpty());
+    }
+
+    @Test
+    void termsAreReferenceCounted() {
+        NgramDictionary dictionary = new NgramDictionary();
+        dictionary.add("xiaomi");
+        dictionary.add("xiaomi");
+
+        dictionary.remove("xiaomi");
+        assertTrue(dictionary.contains("xiaomi"));
+        assertEquals(1, dictionary.closest("xiaomj", 1).size());
+
+        dictionary.remove("xiaomi");
+        assertFalse(dictionary.contains("xiaomi"));
+        assertTrue(dictionary.closest("xiaomj", 1).isEmpty());
+
+        // Bỏ term không có không làm hỏng bộ đếm
+        dictionary.remove("xiaomi");
+        dictionary.add("xiaomi");
+        assertTrue(dictionary.contains("xiaomi"));
+    }
+}
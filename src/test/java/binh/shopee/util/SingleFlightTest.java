@@ -0,0 +1,159 @@
+package binh.shopee.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+    private static final int WAITERS = 4;
+
+    private final SingleFlight<String, Integer> flight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(WAITERS + 1);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Chặn loader cho tới khi mọi request chờ đã gộp vào load đang chạy
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flight.coalescedCount() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("waiters did not join the running load");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private List<Future<Integer>> startWaiters(String key) {
+        List<Future<Integer>> waiters = new ArrayList<>();
+        for (int i = 0; i < WAITERS; i++) {
+            waiters.add(executor.submit(() -> flight.run(key, () -> {
+                throw new AssertionError("waiter must not run its own loader");
+            })));
+        }
+        return waiters;
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Future<Integer> leader = executor.submit(() -> flight.run("k", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(release);
+            return 42;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(flight.isRunning("k"));
+
+        List<Future<Integer>> waiters = startWaiters("k");
+        awaitCoalesced(WAITERS);
+        release.countDown();
+
+        assertEquals(42, leader.get(5, TimeUnit.SECONDS));
+        for (Future<Integer> waiter : waiters) {
+            assertEquals(42, waiter.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertFalse(flight.isRunning("k"));
+    }
+
+    @Test
+    void waitersReceiveTheLeadersException() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("DB down");
+        Future<Integer> leader = executor.submit(() -> flight.run("k", () -> {
+            started.countDown();
+            await(release);
+            throw failure;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<Future<Integer>> waiters = startWaiters("k");
+        awaitCoalesced(WAITERS);
+        release.countDown();
+
+        assertSame(failure, causeOf(leader));
+        for (Future<Integer> waiter : waiters) {
+            assertSame(failure, causeOf(waiter));
+        }
+        assertFalse(flight.isRunning("k"));
+    }
+
+    @Test
+    void waitersAreReleasedWhenTheLoaderThrowsAnError() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> flight.run("k", () -> {
+            started.countDown();
+            await(release);
+            throw new OutOfMemoryError("simulated");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<Future<Integer>> waiters = startWaiters("k");
+        awaitCoalesced(WAITERS);
+        release.countDown();
+
+        for (Future<Integer> waiter : waiters) {
+            assertTrue(causeOf(waiter) instanceof OutOfMemoryError);
+        }
+    }
+
+    @Test
+    void keyIsReleasedAfterEachLoad() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, flight.run("k", loads::incrementAndGet));
+        assertEquals(2, flight.run("k", loads::incrementAndGet));
+        assertThrows(IllegalArgumentException.class, () -> flight.run("k", () -> {
+            throw new IllegalArgumentException();
+        }));
+        assertEquals(3, flight.run("k", loads::incrementAndGet));
+        assertEquals(1, flight.run("other", () -> 1));
+        assertEquals(0, flight.coalescedCount());
+    }
+
+    private static Throwable causeOf(Future<?> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (TimeoutException e) {
+            throw new AssertionError("future did not complete", e);
+        }
+        throw new AssertionError("expected failure");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("test timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}